@@ -34,12 +34,13 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.util.Iterator;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.TimeUnit;
 
 /**
  * A wrapper rowSource reading the child rowSource in a thread into a buffer and offering to the main thread in batches
  * <p>
+ * Batches are handed over through a {@link RowBufferRing} of pre-allocated buffers, the reader thread runs ahead
+ * of the consumer by at most the size of the ring.
+ * <p>
  * Created by sigmar on 21/11/2016.
  */
 public class BatchedReadSource extends GenomicIteratorBase {
@@ -48,6 +49,7 @@ public class BatchedReadSource extends GenomicIteratorBase {
     private final Row endRow = RowObj.StoR("chrN\t-1");
     private final Iterator<? extends Row> sourceIterator;
     private PollingThread readerThread;
+    private final RowBufferRing ring;
     private final Duration timeTriggerBufferFlush;
     private final Duration batchOfferTimeout;
     private final Duration timeout;
@@ -64,7 +66,7 @@ public class BatchedReadSource extends GenomicIteratorBase {
 
     private final GorMonitor gorMonitor;
 
-    private Throwable ex = null;
+    private volatile Throwable ex = null;
 
     public void setEx(Throwable throwable) {
         if (ex == null || throwable == null) {
@@ -92,47 +94,46 @@ public class BatchedReadSource extends GenomicIteratorBase {
     }
 
     private class PollingThread extends Thread {
-        SynchronousQueue<RowBuffer> rowQueue = new SynchronousQueue<>();
-        RowBuffer rowBuffer1 = new RowBuffer();
-        RowBuffer rowBuffer2 = new RowBuffer(rowBuffer1);
-        boolean stopProcessingThread = false;
+        volatile boolean stopProcessingThread = false;
+        volatile boolean keepSourceOpen = false;
         boolean didStart = false;
 
         long numberOfPollsBeforeLog;
         long numberOfPollsBeforeTimeout;
+        final long parkNs;
 
         PollingThread() {
-            rowBuffer1.setNextRowBuffer(rowBuffer2);
-
-            numberOfPollsBeforeLog = logInterval.toMillis() / batchOfferTimeout.toMillis();
+            numberOfPollsBeforeLog = Math.max(1, logInterval.toMillis() / batchOfferTimeout.toMillis());
             numberOfPollsBeforeTimeout = timeout.toMillis() / batchOfferTimeout.toMillis();
+            parkNs = batchOfferTimeout.toNanos();
         }
 
         void stopProcessing() {
             stopProcessingThread = true;
-        }
-
-        RowBuffer poll() {
-            return rowQueue.poll();
+            ring.stop();
         }
 
         public void run() {
             didStart = true;
         }
 
-        void offerBatch(RowBuffer current, Duration batchOfferTimeout) throws InterruptedException {
+        RowBuffer acquireBatch(int capacity) {
+            RowBuffer buffer = ring.acquire(parkNs);
             int count = 0;
-            while (!stopProcessingThread && !rowQueue.offer(current, batchOfferTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
-                if (count++ % numberOfPollsBeforeLog == 0) {
-                    log.debug("Offering batch for for" + batchOfferTimeout.getSeconds() * count + ", batchsize " + current.size() + " threadid: " + Thread.currentThread().getId());
+            while (!stopProcessingThread && buffer == null) {
+                if (++count % numberOfPollsBeforeLog == 0) {
+                    log.debug("Waiting for free batch for " + batchOfferTimeout.toMillis() * count + "ms, threadid: " + Thread.currentThread().getId());
                 }
+                buffer = ring.acquire(parkNs);
             }
+            if (buffer != null) buffer.setCapacity(capacity);
+            return buffer;
         }
 
         int lastCount = 0;
         int pollCount = 0;
-        RowBuffer pollBatch() throws InterruptedException {
-            RowBuffer rowBuffer = rowQueue.poll(batchOfferTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        RowBuffer pollBatch() {
+            RowBuffer rowBuffer = ring.take(parkNs);
             int count = 0;
             while (!stopProcessingThread && rowBuffer == null) {
                 if (count > numberOfPollsBeforeTimeout) {
@@ -141,7 +142,7 @@ public class BatchedReadSource extends GenomicIteratorBase {
                 if (count++ % numberOfPollsBeforeLog == 0) {
                     log.debug("BatchedReadSource polling for" + batchOfferTimeout.getSeconds() * count + ", threadid: " + Thread.currentThread().getId());
                 }
-                rowBuffer = rowQueue.poll(batchOfferTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                rowBuffer = ring.take(parkNs);
             }
             pollCount += count+1;
 
@@ -161,68 +162,48 @@ public class BatchedReadSource extends GenomicIteratorBase {
             super();
         }
 
+        /**
+         * Hand the full buffer over and pick the capacity of the next one. Batches are kept small while the
+         * consumer is waiting for rows and grown while it is behind, the ring provides backpressure.
+         */
+        RowBuffer publishBatch(RowBuffer current, long deltaTimeNs) {
+            updateTimeMeasurement(deltaTimeNs, current);
+            int capacity = ring.isConsumerWaiting() ? current.getCapacity() / 2 : current.getCapacity();
+            ring.publish();
+            return acquireBatch(capacity);
+        }
+
         @Override
         public void run() {
             super.run();
             try {
-                RowBuffer current = rowBuffer1;
-                if (timeTriggerBufferFlush.getNano() < 0) {
-                    while (!stopProcessingThread && sourceIterator.hasNext()) {
-                        Row next = sourceIterator.next();
-                        current.add(next);
-                        if (current.isFull()) {
-                            if (rowQueue.offer(current)) {
-                                current = current.nextRowBuffer();
-                                current.reduce(current.getCapacity() / 2);
-                            } else if (!current.enlarge(current.getCapacity() * 8)) {
-                                offerBatch(current, batchOfferTimeout);
-                                current = current.nextRowBuffer();
-                            }
-                        }
-                    }
-                } else {
-                    long t = System.nanoTime();
-                    long timeTriggerBufferFlushNs = timeTriggerBufferFlush.getNano();
-                    while (!stopProcessingThread && sourceIterator.hasNext()) {
-                        Row next = sourceIterator.next();
-                        current.add(next);
-                        if (current.isFull()) {
-                            long nt = System.nanoTime();
-                            if (nt - t > timeTriggerBufferFlushNs) {
-                                if (rowQueue.offer(current)) {
-                                    updateTimeMeasurement(nt - t, current);
-                                    current = current.nextRowBuffer();
-                                    current.reduce(current.getCapacity() / 2);
-                                    t = System.nanoTime();
-                                } else if (!current.enlarge(current.getCapacity() * 2)) {
-                                    updateTimeMeasurement(nt - t, current);
-                                    offerBatch(current, batchOfferTimeout);
-                                    current = current.nextRowBuffer();
-                                    t = System.nanoTime();
-                                }
-                            } else if (!current.enlarge(current.getCapacity() * 8)) {
-                                updateTimeMeasurement(nt - t, current);
-                                offerBatch(current, batchOfferTimeout);
-                                current = current.nextRowBuffer();
-                                t = System.nanoTime();
-                            }
+                RowBuffer current = acquireBatch(1);
+                long timeTriggerBufferFlushNs = timeTriggerBufferFlush.getNano();
+                long t = System.nanoTime();
+                while (current != null && !stopProcessingThread && sourceIterator.hasNext()) {
+                    Row next = sourceIterator.next();
+                    current.add(next);
+                    if (current.isFull()) {
+                        long nt = System.nanoTime();
+                        boolean flushTime = timeTriggerBufferFlushNs < 0 || nt - t > timeTriggerBufferFlushNs;
+                        if ((flushTime && ring.isConsumerWaiting()) || !current.enlarge(current.getCapacity() * 2)) {
+                            current = publishBatch(current, nt - t);
+                            t = System.nanoTime();
                         }
                     }
                 }
-                if (current.isFull()) {
-                    offerBatch(current, batchOfferTimeout);
-                    current = current.nextRowBuffer();
+                if (current != null && current.isFull()) {
+                    current = publishBatch(current, System.nanoTime() - t);
+                }
+                if (current != null) {
+                    current.add(endRow);
+                    ring.publish();
                 }
-                current.add(endRow);
-                offerBatch(current, batchOfferTimeout);
-            } catch (InterruptedException e) {
-                log.error("rowQueue put interrupted", e);
-                setEx(e);
             } catch (Throwable e) {
                 setEx(e);
                 stopProcessing();
             } finally {
-                closeSourceIterator();
+                if (!keepSourceOpen) closeSourceIterator();
             }
         }
     }
@@ -239,6 +220,7 @@ public class BatchedReadSource extends GenomicIteratorBase {
         batchOfferTimeout = brsConfig.getBatchOfferTimeout();
         timeout = Duration.ofSeconds(Long.parseLong(System.getProperty("gor.timeout.rowsource", "1800000")));
         logInterval = brsConfig.getLogInterval();
+        ring = new RowBufferRing(brsConfig.getBatchRingSize(), 1);
         this.setHeader(header);
     }
 
@@ -260,14 +242,24 @@ public class BatchedReadSource extends GenomicIteratorBase {
         return avgBatchSize;
     }
 
+    @Override
+    public double getProducerStallTimeMilliSecond() {
+        return ring.getProducerStallTimeMilliSecond();
+    }
+
+    @Override
+    public double getConsumerStallTimeMilliSecond() {
+        return ring.getConsumerStallTimeMilliSecond();
+    }
+
     @Override
     public int getCurrentBatchSize() {
-        return rowBuffer.size();
+        return rowBuffer != null ? rowBuffer.size() : 0;
     }
 
     @Override
     public int getCurrentBatchLoc() {
-        return rowBuffer.getIndex();
+        return rowBuffer != null ? rowBuffer.getIndex() : 0;
     }
 
     @Override
@@ -282,27 +274,23 @@ public class BatchedReadSource extends GenomicIteratorBase {
      */
     @Override
     public boolean hasNext() {
-        try {
-            if (rowBuffer == null) {
-                readerThread = new ReaderThread();
-                rowBuffer = readerThread.rowBuffer1;
-                readerThread.start();
-                rowBuffer = readerThread.pollBatch();
-            } else if (!rowBuffer.available()) {
-                rowBuffer = readerThread.pollBatch();
-            }
-            Throwable exception = getEx();
-            if (exception != null) {
-                if (exception instanceof GorException) {
-                    throw (GorException)exception;
-                } else {
-                    throw new GorSystemException(exception);
-                }
+        if (readerThread == null) {
+            ring.reset();
+            readerThread = new ReaderThread();
+            readerThread.start();
+            rowBuffer = readerThread.pollBatch();
+        } else if (rowBuffer != null && !rowBuffer.available()) {
+            rowBuffer = readerThread.pollBatch();
+        }
+        Throwable exception = getEx();
+        if (exception != null) {
+            if (exception instanceof GorException) {
+                throw (GorException)exception;
+            } else {
+                throw new GorSystemException(exception);
             }
-            return rowBuffer != null && rowBuffer.hasNext();
-        } catch (InterruptedException e) {
-            throw new GorSystemException("rowQueue take interrupted", e);
         }
+        return rowBuffer != null && rowBuffer.hasNext();
     }
 
     /**
@@ -321,13 +309,14 @@ public class BatchedReadSource extends GenomicIteratorBase {
     public boolean seek(String seekChr, int seekPos) {
         long t = System.nanoTime();
         try {
-            if( sourceIterator instanceof GenomicIterator ) ((GenomicIterator)sourceIterator).seek(seekChr, seekPos);
             if (readerThread != null) {
+                readerThread.keepSourceOpen = true;
                 readerThread.stopProcessing();
-                readerThread.poll();
                 readerThread.join();
                 readerThread = null;
+                rowBuffer = null;
             }
+            if( sourceIterator instanceof GenomicIterator ) ((GenomicIterator)sourceIterator).seek(seekChr, seekPos);
         } catch (InterruptedException e) {
             throw new GorSystemException("rowQueue take interrupted on seek", e);
         }
@@ -35,6 +35,7 @@ public interface BatchedReadSourceConfig extends Config {
     String BATCHEDREADSOURCETIMETRIGGERMS_KEY = "gor.bufferflush.timetrigger";
     String BATCHOFFERTIMEOUTMS_KEY = "gor.batch.offer.timeout";
     String BATCHLOGINTERVALMS_KEY = "gor.batch.log.interval";
+    String BATCHRINGSIZE_KEY = "gor.batch.ring.size";
     String BATCHMAXGORLINES_KEY = "gor.batch.max.gorlines";
     String BATCHBUFFERFILLTIME_KEY = "gor.bufferfill.time";
     String FRAMEBUFFERSIZE_KEY = "gor.cmd.framebuffer.size";
@@ -86,6 +87,11 @@ public interface BatchedReadSourceConfig extends Config {
     @Documentation("Minimum milliseconds until batch offer times out")
     Duration getBatchOfferTimeout();
 
+    @Config.Key(BATCHRINGSIZE_KEY)
+    @Config.DefaultValue("8")
+    @Documentation("Number of row buffers the reader thread can fill ahead of the consumer")
+    Integer getBatchRingSize();
+
     @Config.Key(BATCHLOGINTERVALMS_KEY)
     @Config.DefaultValue("3 seconds")
     @ConverterClass(DurationConverter.class)
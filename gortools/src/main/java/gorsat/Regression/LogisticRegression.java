@@ -56,6 +56,7 @@ abstract public class LogisticRegression {
 
     private double error;
     private boolean betaClean;
+    protected boolean covariatesUnchanged;
 
     final protected SigmoidFunction sf;
 
@@ -83,7 +84,17 @@ abstract public class LogisticRegression {
     }
 
     public boolean runRegression(double[][] x, boolean[] y, int numberOfSamples, double tol, int maxIter) {
+        return runRegression(x, y, numberOfSamples, tol, maxIter, false);
+    }
+
+    /**
+     * @param covariatesUnchanged true if the covariates {@code x[1..]} and {@code y} are the same as in the previous
+     *                            run, only the genotype column {@code x[0]} differs. The covariate only terms of the
+     *                            first Newton step are then reused from the previous run.
+     */
+    public boolean runRegression(double[][] x, boolean[] y, int numberOfSamples, double tol, int maxIter, boolean covariatesUnchanged) {
         this.numberOfSamples = numberOfSamples;
+        this.covariatesUnchanged = covariatesUnchanged;
         boolean converged;
         if (!betaClean) {
             Arrays.fill(beta, 0);
@@ -25,11 +25,19 @@ package gorsat.Regression;
 import java.util.Arrays;
 
 import static gorsat.Regression.LinearAlgebra.*;
+import static gorsat.Regression.RegressionUtilities.getTriangularMatrix;
 
 class MultipleCovariateLogisticRegression extends LogisticRegression {
 
+    // The covariate only terms of the gradient and hessian in the first run, they only depend on the covariates and y
+    final private double[] firstRunGradient;
+    final private double[][] firstRunHessian;
+    private boolean firstRunCached = false;
+
     MultipleCovariateLogisticRegression(int numberOfDepVars, int maximumNumberOfSamples) {
         super(numberOfDepVars, maximumNumberOfSamples);
+        this.firstRunGradient = new double[dim];
+        this.firstRunHessian = getTriangularMatrix(dim);
     }
 
     @Override
@@ -108,19 +116,38 @@ class MultipleCovariateLogisticRegression extends LogisticRegression {
         for (int j = 0; j < numberOfSamples; ++j) {
             gradMult[j] = y[j] ? 0.5 : -0.5;
         }
-        gradient[0] = sum(gradMult, numberOfSamples);
-        for (int i = 1; i < dim; ++i) {
-            gradient[i] = dotProd(gradMult, x[i - 1], numberOfSamples);
+        if (!covariatesUnchanged || !firstRunCached) {
+            firstRunGradient[0] = sum(gradMult, numberOfSamples);
+            double[] hess_i, x_i;
+            for (int i = 2; i < dim; ++i) {
+                firstRunGradient[i] = dotProd(gradMult, x[i - 1], numberOfSamples);
+                hess_i = firstRunHessian[i];
+                x_i = x[i - 1];
+                hess_i[0] = sum(x_i, numberOfSamples) * 0.25;
+                for (int j = 2; j <= i; ++j) {
+                    hess_i[j] = dotProd(x_i, x[j - 1], numberOfSamples) * 0.25;
+                }
+            }
+            firstRunCached = true;
         }
+
+        // The genotype terms
+        final double[] x_0 = x[0];
+        gradient[1] = dotProd(gradMult, x_0, numberOfSamples);
+        hessian[1][0] = sum(x_0, numberOfSamples) * 0.25;
+        hessian[1][1] = dotProd(x_0, x_0, numberOfSamples) * 0.25;
+        for (int i = 2; i < dim; ++i) {
+            hessian[i][1] = dotProd(x[i - 1], x_0, numberOfSamples) * 0.25;
+        }
+
+        gradient[0] = firstRunGradient[0];
         hessian[0][0] = numberOfSamples * 0.25;
-        double[] hess_i, x_i;
-        for (int i = 1; i < dim; ++i) {
-            hess_i = hessian[i];
-            x_i = x[i - 1];
-            hess_i[0] = sum(x_i, numberOfSamples) * 0.25;
-            for (int j = 1; j <= i; ++j) {
-                hess_i[j] = dotProd(x_i, x[j - 1], numberOfSamples) * 0.25;
-            }
+        for (int i = 2; i < dim; ++i) {
+            gradient[i] = firstRunGradient[i];
+            final double[] hess_i = hessian[i];
+            final double[] cached_i = firstRunHessian[i];
+            hess_i[0] = cached_i[0];
+            System.arraycopy(cached_i, 2, hess_i, 2, i - 1);
         }
     }
 }
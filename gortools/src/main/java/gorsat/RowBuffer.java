@@ -105,6 +105,10 @@ public class RowBuffer implements Iterator<Row> {
         capacity = Math.max(newsize, 1);
     }
 
+    public void setCapacity(int newsize) {
+        capacity = Math.max(Math.min(newsize, rowArray.length), 1);
+    }
+
     public Row get(int i) {
         return rowArray[i];
     }
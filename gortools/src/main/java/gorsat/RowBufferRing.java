@@ -0,0 +1,183 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded single producer / single consumer ring of pre-allocated row buffers.
+ * <p>
+ * The producer acquires a cleared buffer with {@link #acquire(long)}, fills it and hands it over with
+ * {@link #publish()}. The consumer takes buffers with {@link #take(long)} and may keep reading the taken buffer
+ * until its next call to take, which releases the buffer back to the producer. A waiting side parks and is
+ * unparked by the other side, the park time only bounds how long it sleeps before re-checking for cancellation.
+ * <p>
+ * Time spent waiting is recorded for both sides, producer stalls mean the consumer is the bottleneck and
+ * consumer stalls mean the producer is.
+ */
+public class RowBufferRing {
+    private final RowBuffer[] buffers;
+    private final int mask;
+
+    // Number of buffers handed over, only written by the producer
+    private volatile long published = 0;
+    // Number of buffers taken, only written by the consumer. Buffer taken-1 is held by the consumer.
+    private volatile long taken = 0;
+
+    private volatile Thread waitingProducer;
+    private volatile Thread waitingConsumer;
+    private volatile boolean stopped = false;
+
+    private volatile long producerStallNs = 0;
+    private volatile long consumerStallNs = 0;
+
+    /**
+     * @param size number of buffers in the ring, rounded up to a power of two, minimum four
+     * @param initialCapacity initial row capacity of the buffers
+     */
+    public RowBufferRing(int size, int initialCapacity) {
+        int ringSize = Integer.highestOneBit(Math.max(4, size) - 1) << 1;
+        buffers = new RowBuffer[ringSize];
+        for (int i = 0; i < ringSize; i++) {
+            buffers[i] = new RowBuffer(initialCapacity);
+        }
+        mask = ringSize - 1;
+    }
+
+    public int size() {
+        return buffers.length;
+    }
+
+    /**
+     * Reset the ring for reuse, must only be called when neither the producer nor the consumer is running.
+     */
+    public void reset() {
+        published = 0;
+        taken = 0;
+        stopped = false;
+    }
+
+    private boolean producerSlotFree(long slot) {
+        // One slot is kept for the buffer the consumer is reading
+        return slot - taken < buffers.length - 1;
+    }
+
+    /**
+     * @return true if the consumer has taken every published buffer, i.e. it is waiting for the producer
+     */
+    public boolean isConsumerWaiting() {
+        return published == taken;
+    }
+
+    /**
+     * @return true if the producer can acquire the next buffer without stalling
+     */
+    public boolean hasFreeSlot() {
+        return producerSlotFree(published);
+    }
+
+    /**
+     * Wait until the next producer slot is released by the consumer.
+     *
+     * @param parkNs maximum nanoseconds to park before giving up so the caller can re-check its state
+     * @return the cleared buffer to fill or null if the slot is still in use or the ring was stopped
+     */
+    public RowBuffer acquire(long parkNs) {
+        long slot = published;
+        if (!producerSlotFree(slot)) {
+            long t = System.nanoTime();
+            waitingProducer = Thread.currentThread();
+            try {
+                if (!producerSlotFree(slot) && !stopped) {
+                    LockSupport.parkNanos(this, parkNs);
+                }
+            } finally {
+                waitingProducer = null;
+                producerStallNs += System.nanoTime() - t;
+            }
+            if (!producerSlotFree(slot)) return null;
+        }
+        RowBuffer buffer = buffers[(int) (slot & mask)];
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Hand the buffer last returned by {@link #acquire(long)} over to the consumer.
+     */
+    public void publish() {
+        published = published + 1;
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Release the buffer held by the consumer and wait for the next published one.
+     *
+     * @param parkNs maximum nanoseconds to park before giving up so the caller can re-check its state
+     * @return the next buffer or null if none was published within the park time or the ring was stopped
+     */
+    public RowBuffer take(long parkNs) {
+        long slot = taken;
+        if (published == slot) {
+            long t = System.nanoTime();
+            waitingConsumer = Thread.currentThread();
+            try {
+                if (published == slot && !stopped) {
+                    LockSupport.parkNanos(this, parkNs);
+                }
+            } finally {
+                waitingConsumer = null;
+                consumerStallNs += System.nanoTime() - t;
+            }
+            if (published == slot) return null;
+        }
+        taken = slot + 1;
+        Thread producer = waitingProducer;
+        if (producer != null) LockSupport.unpark(producer);
+        return buffers[(int) (slot & mask)];
+    }
+
+    /**
+     * Stop the ring and wake up both sides.
+     */
+    public void stop() {
+        stopped = true;
+        Thread producer = waitingProducer;
+        if (producer != null) LockSupport.unpark(producer);
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public double getProducerStallTimeMilliSecond() {
+        return producerStallNs / 1000000.0;
+    }
+
+    public double getConsumerStallTimeMilliSecond() {
+        return consumerStallNs / 1000000.0;
+    }
+}
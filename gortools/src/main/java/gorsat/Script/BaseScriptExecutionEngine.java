@@ -140,7 +140,9 @@ public class BaseScriptExecutionEngine {
         } else {
             var signatureKey = AnalysisUtilities.getSignature(commandToExecute);
             var fileListKey = String.join(" ", usedFiles) + signatureKey;
-            fileSignature = fileSignatureMap.computeIfAbsent(fileListKey, (k) -> StringUtilities.createMD5(usedFiles.stream().map(x -> fileFingerPrint(x, session)).collect(Collectors.joining(" ")) + signatureKey));
+            // Fingerprints of independent inputs are resolved concurrently, the joined order is kept
+            var usedFilesStream = usedFiles.size() > 1 ? usedFiles.parallelStream() : usedFiles.stream();
+            fileSignature = fileSignatureMap.computeIfAbsent(fileListKey, (k) -> StringUtilities.createMD5(usedFilesStream.map(x -> fileFingerPrint(x, session)).collect(Collectors.joining(" ")) + signatureKey));
         }
 
         return fileSignature;
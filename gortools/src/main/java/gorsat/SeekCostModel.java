@@ -0,0 +1,90 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat;
+
+/**
+ * Chooses between seeking a source and reading through it to reach a position further ahead on the same
+ * chromosome, based on the seek latency and read speed measured on the source so far.
+ * <p>
+ * Both measurements are exponentially weighted so the estimate follows the source, e.g. when a remote source warms
+ * up. Until a read speed has been measured, reading through is tried for distances up to {@link #PROBE_DISTANCE}
+ * bases so there is something to compare the seek latency with.
+ */
+public class SeekCostModel {
+    private static final double ALPHA = 0.3;
+    // Longest distance read through to measure the read speed
+    static final long PROBE_DISTANCE = 1000000;
+
+    private double seekMs = -1.0;
+    private double basesPerMs = -1.0;
+    private int seekCount = 0;
+    private int scanCount = 0;
+
+    /**
+     * @param distance number of bases to move forward
+     * @param sourceSeekMs average seek time reported by the source, zero or less if unknown
+     * @param sourceBasesPerMs average read speed reported by the source, zero or less if unknown
+     * @return true if reading through the rows is expected to be cheaper than seeking
+     */
+    public boolean preferScan(long distance, double sourceSeekMs, double sourceBasesPerMs) {
+        if (distance <= 0) return true;
+        double seek = seekMs >= 0 ? seekMs : sourceSeekMs;
+        double speed = basesPerMs > 0 ? basesPerMs : sourceBasesPerMs;
+        if (seek <= 0) return false;
+        if (speed <= 0) return distance <= PROBE_DISTANCE;
+        return distance / speed < seek;
+    }
+
+    public boolean preferScan(long distance) {
+        return preferScan(distance, -1.0, -1.0);
+    }
+
+    public void recordSeek(long elapsedNs) {
+        double ms = elapsedNs / 1000000.0;
+        seekMs = seekMs < 0 ? ms : ALPHA * ms + (1 - ALPHA) * seekMs;
+        seekCount++;
+    }
+
+    public void recordScan(long bases, long elapsedNs) {
+        if (bases <= 0) return;
+        double speed = bases / (Math.max(elapsedNs, 1000) / 1000000.0);
+        basesPerMs = basesPerMs < 0 ? speed : ALPHA * speed + (1 - ALPHA) * basesPerMs;
+        scanCount++;
+    }
+
+    public double getSeekTimeMilliSecond() {
+        return seekMs;
+    }
+
+    public double getBasesPerMilliSecond() {
+        return basesPerMs;
+    }
+
+    public int getSeekCount() {
+        return seekCount;
+    }
+
+    public int getScanCount() {
+        return scanCount;
+    }
+}
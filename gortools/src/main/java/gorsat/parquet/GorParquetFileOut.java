@@ -11,8 +11,34 @@ import org.gorpipe.gor.function.GorRowInferFunction;
 import org.gorpipe.gor.model.Row;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class GorParquetFileOut extends Output {
+    private static final int MIN_ROW_GROUP_SIZE = 1024 * 1024;
+    private static final int WRITE_BATCH_ROWS = 4096;
+
+    /**
+     * Encoding pool shared by all writers, so writing many partitions at once does not multiply the thread count.
+     */
+    private static class EncodePool {
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                Integer.parseInt(System.getProperty("gor.parquet.parallel.threads",
+                        String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                r -> {
+                    Thread t = Executors.defaultThreadFactory().newThread(r);
+                    t.setName("parquet-encode-" + t.getId());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
     ParquetWriter<Row> parquetWriter;
     Configuration conf;
     Path path;
@@ -20,12 +46,28 @@ public class GorParquetFileOut extends Output {
     GorRowInferFunction gorRowInferFunction;
     RowBuffer rowBuffer;
     boolean nor;
+    String[] bloomColumns;
+
+    // Row group size in bases of genome covered, 0 uses the parquet default byte size
+    private final int rowGroupSpan = Integer.parseInt(System.getProperty("gor.parquet.rowgroup.span", "0"));
+    // Maximum number of row batches waiting to be encoded on the pool, 0 encodes on the calling thread
+    private final int batchesInFlight = Integer.parseInt(System.getProperty("gor.parquet.parallel.writes", "0"));
+    private final ArrayDeque<CompletableFuture<Void>> inFlight = new ArrayDeque<>();
+    private List<Row> batch;
 
     public GorParquetFileOut(String filePath, String header, boolean nor) {
+        this(filePath, header, nor, null);
+    }
+
+    /**
+     * @param bloomColumns columns to write bloom filters for, null or empty for none
+     */
+    public GorParquetFileOut(String filePath, String header, boolean nor, String[] bloomColumns) {
         conf = new Configuration();
         path = new Path(filePath);
         this.header = header;
         this.nor = nor;
+        this.bloomColumns = bloomColumns;
     }
 
     @Override
@@ -50,18 +92,101 @@ public class GorParquetFileOut extends Output {
             conf.setBoolean("nor", nor);
             conf.set("header",header);
             conf.set("schema",row.toString());
-            parquetWriter = GorParquetWriter.builder(path).withConf(conf).withWriteMode(ParquetFileWriter.Mode.OVERWRITE).build();
+            GorParquetWriter.GorParquetBuilder builder = GorParquetWriter.builder(path).withConf(conf).withWriteMode(ParquetFileWriter.Mode.OVERWRITE);
+            if (ordered && rowGroupSpan > 0) {
+                builder.withRowGroupSize(spanRowGroupSize());
+            }
+            addBloomFilters(builder);
+            parquetWriter = builder.build();
             while(rowBuffer.hasNext()) parquetWriter.write(rowBuffer.next());
         }
     }
 
+    /**
+     * Estimate the row group byte size covering rowGroupSpan bases from the row density and row size in the
+     * type inference buffer, so row groups of sparse and dense tables cover a similar genomic range.
+     */
+    private int spanRowGroupSize() {
+        Row first = rowBuffer.get(0);
+        Row last = rowBuffer.get(rowBuffer.size() - 1);
+        long bytes = 0;
+        for (int i = 0; i < rowBuffer.size(); i++) {
+            bytes += rowBuffer.get(i).length();
+        }
+        if (!first.chr.equals(last.chr) || last.pos <= first.pos) {
+            // The buffer does not give a density estimate, keep the default size
+            return ParquetWriter.DEFAULT_BLOCK_SIZE;
+        }
+        double bytesPerBase = (double) bytes / (last.pos - first.pos + 1);
+        long size = (long) (bytesPerBase * rowGroupSpan);
+        return (int) Math.max(MIN_ROW_GROUP_SIZE, Math.min(ParquetWriter.DEFAULT_BLOCK_SIZE, size));
+    }
+
+    private void addBloomFilters(GorParquetWriter.GorParquetBuilder builder) {
+        if (bloomColumns == null || bloomColumns.length == 0) return;
+        String[] cols = header.split("\t");
+        for (String bloomColumn : bloomColumns) {
+            String colName = Arrays.stream(cols).filter(bloomColumn::equalsIgnoreCase).findFirst()
+                    .orElseThrow(() -> new GorSystemException("Bloom filter column " + bloomColumn + " not in header " + header, null));
+            builder.withBloomFilterEnabled(colName, true);
+        }
+    }
+
+    private void write(Row r) throws IOException {
+        if (batchesInFlight <= 0) {
+            parquetWriter.write(r);
+            return;
+        }
+        if (batch == null) batch = new ArrayList<>(WRITE_BATCH_ROWS);
+        batch.add(r);
+        if (batch.size() == WRITE_BATCH_ROWS) submitBatch();
+    }
+
+    /**
+     * Hand the current batch to the encoding pool.  Batches of one writer are chained so they are written in order,
+     * the caller waits for the oldest batch once batchesInFlight batches are pending.
+     */
+    private void submitBatch() {
+        List<Row> rows = batch;
+        batch = null;
+        CompletableFuture<Void> previous = inFlight.isEmpty() ? CompletableFuture.completedFuture(null) : inFlight.peekLast();
+        inFlight.add(previous.thenRunAsync(() -> writeRows(rows), EncodePool.EXECUTOR));
+        while (inFlight.size() > batchesInFlight) {
+            join(inFlight.poll());
+        }
+    }
+
+    private void writeRows(List<Row> rows) {
+        try {
+            for (Row r : rows) parquetWriter.write(r);
+        } catch (IOException e) {
+            throw new GorSystemException("Error in parquet file out process", e);
+        }
+    }
+
+    private void waitForBatches() {
+        if (batch != null && !batch.isEmpty()) submitBatch();
+        while (!inFlight.isEmpty()) {
+            join(inFlight.poll());
+        }
+    }
+
+    private static void join(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new GorSystemException("Error in parquet file out process", e.getCause());
+        }
+    }
+
     @Override
     public void process(Row r) {
         if(!rowBuffer.isFull()) rowBuffer.add(r);
         else {
             try {
                 flushTypeInferBuffer();
-                parquetWriter.write(r);
+                write(r);
             } catch (IOException e) {
                 throw new GorSystemException("Error in parquet file out process", e);
             }
@@ -70,11 +195,32 @@ public class GorParquetFileOut extends Output {
 
     @Override
     public void finish() {
+        boolean written = false;
         try {
             flushTypeInferBuffer();
-            parquetWriter.close();
+            waitForBatches();
+            written = true;
         } catch (IOException e) {
             throw new GorSystemException("Error in parquet file out finish", e);
+        } finally {
+            closeWriter(written);
+        }
+    }
+
+    /**
+     * Close the writer once no batch is using it.  A close error is only thrown if the rows were written, so it
+     * does not hide the error that failed the write.
+     */
+    private void closeWriter(boolean written) {
+        // Batches chained after a failed batch complete right away
+        while (!inFlight.isEmpty()) {
+            inFlight.poll().exceptionally(e -> null).join();
+        }
+        if (parquetWriter == null) return;
+        try {
+            parquetWriter.close();
+        } catch (IOException e) {
+            if (written) throw new GorSystemException("Error in parquet file out finish", e);
         }
     }
 }
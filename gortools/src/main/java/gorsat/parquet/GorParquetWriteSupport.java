@@ -18,11 +18,17 @@ import static org.apache.parquet.schema.OriginalType.UTF8;
  * Translates a gor/nor row to corresponding format in a parquet file
  */
 public class GorParquetWriteSupport extends WriteSupport<Row> {
+    public static final String RANGE_KEY = "gor.range";
+
     RecordConsumer currentRecordConsumer;
     List<Type> types;
     boolean ordered;
     boolean nor;
     String[] schemaSplit;
+    String firstChr;
+    int firstPos;
+    String lastChr;
+    int lastPos;
 
     @Override
     public WriteContext init(Configuration configuration) {
@@ -72,6 +78,13 @@ public class GorParquetWriteSupport extends WriteSupport<Row> {
             currentRecordConsumer.addInteger(row.pos);
             currentRecordConsumer.endField(types.get(1).getName(), 1);
 
+            if (firstChr == null) {
+                firstChr = row.chr;
+                firstPos = row.pos;
+            }
+            lastChr = row.chr;
+            lastPos = row.pos;
+
             start = 2;
         }
         for(int i = start; i < types.size(); i++) {
@@ -88,4 +101,17 @@ public class GorParquetWriteSupport extends WriteSupport<Row> {
         }
         currentRecordConsumer.endMessage();
     }
+
+    /**
+     * Ordered files record the genomic range they cover in the footer, for tools inspecting the file. Readers do not
+     * use it, they skip row groups outside a range by the row group statistics
+     */
+    @Override
+    public FinalizedWriteContext finalizeWrite() {
+        Map<String,String> meta = new HashMap<>();
+        if (ordered && firstChr != null) {
+            meta.put(RANGE_KEY, firstChr + ":" + firstPos + "-" + lastChr + ":" + lastPos);
+        }
+        return new FinalizedWriteContext(meta);
+    }
 }
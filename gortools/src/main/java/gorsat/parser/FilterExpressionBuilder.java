@@ -0,0 +1,187 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.parser;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.gorpipe.exceptions.GorParsingException;
+import org.gorpipe.gor.GorScriptParser;
+import org.gorpipe.gor.SyntaxChecker;
+import org.gorpipe.gor.model.FilterExpression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a FilterExpression from the parse tree of a WHERE filter, so the filter can be pushed down to sources
+ * that evaluate filters themselves.  The parts of the filter that can not be represented become
+ * FilterExpression.Other nodes.
+ */
+public class FilterExpressionBuilder {
+    private FilterExpressionBuilder() {}
+
+    /**
+     * @return the filter expression, an Other node holding the whole filter if it does not parse
+     */
+    public static FilterExpression build(String filter) {
+        String trimmed = filter.trim();
+        ParserRuleContext ctx;
+        try {
+            ctx = new SyntaxChecker().parseFilter(trimmed);
+        } catch (GorParsingException e) {
+            return new FilterExpression.Other(filter);
+        }
+        if (ctx.stop == null || ctx.stop.getStopIndex() < trimmed.length() - 1) {
+            // The filter has trailing text the filter rule did not consume
+            return new FilterExpression.Other(filter);
+        }
+        return build(ctx);
+    }
+
+    private static FilterExpression build(ParseTree tree) {
+        if (tree instanceof GorScriptParser.Rel_exprContext || tree instanceof GorScriptParser.Rel_termContext) {
+            ParserRuleContext ctx = (ParserRuleContext) tree;
+            if (ctx.getChildCount() == 1) return build(ctx.getChild(0));
+            List<FilterExpression> operands = new ArrayList<>();
+            for (int i = 0; i < ctx.getChildCount(); i += 2) {
+                operands.add(build(ctx.getChild(i)));
+            }
+            return tree instanceof GorScriptParser.Rel_exprContext
+                    ? new FilterExpression.Or(text(ctx), operands)
+                    : new FilterExpression.And(text(ctx), operands);
+        } else if (tree instanceof GorScriptParser.Predicate_factorContext || tree instanceof GorScriptParser.PredicateContext) {
+            return build(tree.getChild(0));
+        } else if (tree instanceof GorScriptParser.Paren_rel_exprContext) {
+            return build(((GorScriptParser.Paren_rel_exprContext) tree).rel_expr());
+        } else if (tree instanceof GorScriptParser.Not_rel_exprContext) {
+            GorScriptParser.Not_rel_exprContext ctx = (GorScriptParser.Not_rel_exprContext) tree;
+            return new FilterExpression.Not(text(ctx), build(ctx.rel_expr()));
+        } else if (tree instanceof GorScriptParser.Compare_expressionsContext) {
+            return buildCompare((GorScriptParser.Compare_expressionsContext) tree);
+        } else if (tree instanceof GorScriptParser.In_expressionContext) {
+            return buildIn((GorScriptParser.In_expressionContext) tree);
+        }
+        return new FilterExpression.Other(tree instanceof ParserRuleContext ? text((ParserRuleContext) tree) : tree.getText());
+    }
+
+    private static FilterExpression buildCompare(GorScriptParser.Compare_expressionsContext ctx) {
+        FilterExpression.Operator operator = operator(((TerminalNode) ctx.getChild(1)).getSymbol().getType());
+        ParserRuleContext left = value(ctx.expression(0));
+        ParserRuleContext right = value(ctx.expression(1));
+        if (operator != null && left != null && right != null) {
+            if (left instanceof GorScriptParser.VariableContext && !(right instanceof GorScriptParser.VariableContext)) {
+                return new FilterExpression.Compare(text(ctx), left.getText(), operator, constant(right),
+                        right instanceof GorScriptParser.String_literalContext);
+            } else if (right instanceof GorScriptParser.VariableContext && !(left instanceof GorScriptParser.VariableContext)) {
+                return new FilterExpression.Compare(text(ctx), right.getText(), operator.swap(), constant(left),
+                        left instanceof GorScriptParser.String_literalContext);
+            }
+        }
+        return new FilterExpression.Other(text(ctx));
+    }
+
+    private static FilterExpression buildIn(GorScriptParser.In_expressionContext ctx) {
+        ParserRuleContext column = value(ctx.expression());
+        if (column instanceof GorScriptParser.VariableContext) {
+            List<String> values = new ArrayList<>();
+            for (GorScriptParser.String_literalContext literal : ctx.string_literal_list().string_literal()) {
+                values.add(constant(literal));
+            }
+            return new FilterExpression.In(text(ctx), column.getText(), values);
+        }
+        return new FilterExpression.Other(text(ctx));
+    }
+
+    private static FilterExpression.Operator operator(int tokenType) {
+        switch (tokenType) {
+            case GorScriptParser.EQ:
+            case GorScriptParser.S_EQ: return FilterExpression.Operator.EQ;
+            case GorScriptParser.NE: return FilterExpression.Operator.NE;
+            case GorScriptParser.LT: return FilterExpression.Operator.LT;
+            case GorScriptParser.LE: return FilterExpression.Operator.LE;
+            case GorScriptParser.GT: return FilterExpression.Operator.GT;
+            case GorScriptParser.GE: return FilterExpression.Operator.GE;
+            default: return null;
+        }
+    }
+
+    /**
+     * @return the variable, number or string literal the expression consists of, a negative number is returned as
+     * its signed factor, or null if the expression is anything else
+     */
+    private static ParserRuleContext value(GorScriptParser.ExpressionContext expression) {
+        ParseTree tree = expression;
+        while (tree != null) {
+            if (tree instanceof GorScriptParser.VariableContext || tree instanceof GorScriptParser.NumberContext
+                    || tree instanceof GorScriptParser.String_literalContext) {
+                return (ParserRuleContext) tree;
+            } else if (tree instanceof GorScriptParser.Signed_factorContext) {
+                GorScriptParser.Signed_factorContext signed = (GorScriptParser.Signed_factorContext) tree;
+                ParserRuleContext number = value(signed.xfactor());
+                return number instanceof GorScriptParser.NumberContext ? signed : null;
+            } else if (tree instanceof GorScriptParser.Paren_exprContext) {
+                tree = ((GorScriptParser.Paren_exprContext) tree).expression();
+            } else if (tree instanceof GorScriptParser.ExpressionContext || tree instanceof GorScriptParser.TermContext
+                    || tree instanceof GorScriptParser.Optional_power_factorContext || tree instanceof GorScriptParser.FactorContext
+                    || tree instanceof GorScriptParser.XfactorContext || tree instanceof GorScriptParser.ValueContext) {
+                tree = tree.getChildCount() == 1 ? tree.getChild(0) : null;
+            } else {
+                tree = null;
+            }
+        }
+        return null;
+    }
+
+    private static ParserRuleContext value(GorScriptParser.XfactorContext xfactor) {
+        ParseTree tree = xfactor;
+        while (tree != null && !(tree instanceof GorScriptParser.NumberContext)) {
+            tree = tree.getChildCount() == 1 ? tree.getChild(0) : null;
+        }
+        return (ParserRuleContext) tree;
+    }
+
+    private static String constant(ParserRuleContext ctx) {
+        if (ctx instanceof GorScriptParser.String_literalContext) {
+            String textWithQuotes = ctx.getText();
+            boolean escaped = false;
+            StringBuilder text = new StringBuilder(textWithQuotes.length() - 2);
+            for (int i = 1; i < textWithQuotes.length() - 1; i++) {
+                char c = textWithQuotes.charAt(i);
+                if (escaped || c != '\\') {
+                    text.append(c);
+                    escaped = false;
+                } else {
+                    escaped = true;
+                }
+            }
+            return text.toString();
+        }
+        return ctx.getText();
+    }
+
+    private static String text(ParserRuleContext ctx) {
+        return ctx.start.getInputStream().getText(Interval.of(ctx.start.getStartIndex(), ctx.stop.getStopIndex()));
+    }
+}
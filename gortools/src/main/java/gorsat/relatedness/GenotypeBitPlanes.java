@@ -0,0 +1,210 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.relatedness;
+
+import java.util.Arrays;
+
+/**
+ * Bit-packed genotypes for a fixed set of samples and a growing set of variants.
+ * <p>
+ * The genotype code {@code (gt - '0') & 3} of each sample is split over two bitplanes, {@code lo} holds bit 0 and
+ * {@code hi} holds bit 1, 64 variants to a word. Hence 0 is hom-ref, 1 is het, 2 is hom-alt and 3 is missing, and
+ * the per-pair relatedness statistics can be counted for a whole word of variants with a few bitwise operations and
+ * popcounts instead of branching on every genotype.
+ */
+public class GenotypeBitPlanes {
+    public static final int WORD_SIZE = 64;
+
+    private final int samples;
+    private final int words;
+    // Indexed by sample * words + word
+    private final long[] lo;
+    private final long[] hi;
+    private int variants = 0;
+
+    /**
+     * @param samples number of samples
+     * @param maxVariants maximum number of variants the planes can hold
+     */
+    public GenotypeBitPlanes(int samples, int maxVariants) {
+        this.samples = samples;
+        this.words = Math.max(1, (maxVariants + WORD_SIZE - 1) / WORD_SIZE);
+        if ((long) samples * words > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many genotypes for bitplanes: " + samples + " samples and " + maxVariants + " variants");
+        }
+        this.lo = new long[samples * words];
+        this.hi = new long[samples * words];
+    }
+
+    public int getSampleCount() {
+        return samples;
+    }
+
+    public int getVariantCount() {
+        return variants;
+    }
+
+    /**
+     * @return the number of words holding variants
+     */
+    public int getWordCount() {
+        return (variants + WORD_SIZE - 1) / WORD_SIZE;
+    }
+
+    public boolean isFull() {
+        return variants == words * WORD_SIZE;
+    }
+
+    /**
+     * Remove all variants.
+     */
+    public void clear() {
+        Arrays.fill(lo, 0L);
+        Arrays.fill(hi, 0L);
+        variants = 0;
+    }
+
+    /**
+     * Add a variant.
+     *
+     * @param gts genotype characters, one per sample
+     * @return the index of the variant
+     */
+    public int add(char[] gts) {
+        if (isFull()) {
+            throw new IllegalStateException("The genotype bitplanes are full, they hold " + variants + " variants");
+        }
+        final int variant = variants++;
+        final int word = variant / WORD_SIZE;
+        final int bit = variant % WORD_SIZE;
+        for (int sample = 0, idx = word; sample < samples; sample++, idx += words) {
+            final long code = (gts[sample] - '0') & 3;
+            lo[idx] |= (code & 1L) << bit;
+            hi[idx] |= (code >>> 1) << bit;
+        }
+        return variant;
+    }
+
+    public char get(int sample, int variant) {
+        final int idx = sample * words + variant / WORD_SIZE;
+        final int bit = variant % WORD_SIZE;
+        return (char) ('0' + ((lo[idx] >>> bit) & 1L) + (((hi[idx] >>> bit) & 1L) << 1));
+    }
+
+    /**
+     * @return mask of the bits in {@code word} which hold variants
+     */
+    public long validMask(int word) {
+        final int used = variants - word * WORD_SIZE;
+        if (used >= WORD_SIZE) return -1L;
+        return used <= 0 ? 0L : (1L << used) - 1;
+    }
+
+    /**
+     * Accumulate the KING statistics of the samples {@code i} and {@code j} over one word of variants. Nhom is not
+     * counted separately as it always equals IBS0.
+     *
+     * @return mask of the variants where both samples have a genotype, for accumulating the allele frequency terms
+     */
+    public long king(int i, int j, int word, KingCounts counts, int pair) {
+        final int idxI = i * words + word;
+        final int idxJ = j * words + word;
+        final long valid = validMask(word);
+        final long loI = lo[idxI];
+        final long hiI = hi[idxI];
+        final long loJ = lo[idxJ];
+        final long hiJ = hi[idxJ];
+
+        final long nmI = ~(loI & hiI) & valid;
+        final long nmJ = ~(loJ & hiJ) & valid;
+        final long hetI = loI & ~hiI;
+        final long hetJ = loJ & ~hiJ;
+        final long homI = nmI & ~hetI;
+        final long homJ = nmJ & ~hetJ;
+        final long both = nmI & nmJ;
+        // Both homozygous with different codes, i.e. 0/2 or 2/0
+        final long opposite = homI & homJ & (hiI ^ hiJ);
+        final int ibs0 = Long.bitCount(opposite);
+
+        counts.ibs0[pair] += ibs0;
+        counts.xx[pair] += Long.bitCount((hetI & homJ) | (homI & hetJ)) + 4 * ibs0;
+        counts.nhet[pair] += Long.bitCount(hetI & hetJ);
+        counts.naai[pair] += Long.bitCount(hetI & nmJ);
+        counts.naaj[pair] += Long.bitCount(nmI & hetJ);
+        counts.count[pair] += Long.bitCount(both);
+        return both;
+    }
+
+    /**
+     * Add up {@code values[offset + k]} for the set bits k of {@code mask}, in increasing order of k, so the result
+     * is the same as when adding them one variant at a time.
+     */
+    public static float addFloat(long mask, float[] values, int offset, float sum) {
+        while (mask != 0) {
+            sum += values[offset + Long.numberOfTrailingZeros(mask)];
+            mask &= mask - 1;
+        }
+        return sum;
+    }
+
+    /**
+     * Same as {@link #addFloat(long, float[], int, float)} with a double accumulator.
+     */
+    public static double addDouble(long mask, float[] values, int offset, double sum) {
+        while (mask != 0) {
+            sum += values[offset + Long.numberOfTrailingZeros(mask)];
+            mask &= mask - 1;
+        }
+        return sum;
+    }
+
+    /**
+     * Per pair KING counters.
+     */
+    public static class KingCounts {
+        public final int[] ibs0;
+        public final int[] xx;
+        public final int[] nhet;
+        public final int[] naai;
+        public final int[] naaj;
+        public final int[] count;
+
+        public KingCounts(int pairs) {
+            ibs0 = new int[pairs];
+            xx = new int[pairs];
+            nhet = new int[pairs];
+            naai = new int[pairs];
+            naaj = new int[pairs];
+            count = new int[pairs];
+        }
+
+        public void clear() {
+            Arrays.fill(ibs0, 0);
+            Arrays.fill(xx, 0);
+            Arrays.fill(nhet, 0);
+            Arrays.fill(naai, 0);
+            Arrays.fill(naaj, 0);
+            Arrays.fill(count, 0);
+        }
+    }
+}
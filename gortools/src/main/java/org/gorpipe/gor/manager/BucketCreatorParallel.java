@@ -0,0 +1,450 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.manager;
+
+import org.gorpipe.exceptions.GorSystemException;
+import org.gorpipe.gor.binsearch.GorZipLexOutputStream;
+import org.gorpipe.gor.driver.meta.DataType;
+import org.gorpipe.gor.model.DefaultChromoLookup;
+import org.gorpipe.gor.model.FileReader;
+import org.gorpipe.gor.model.GenomicIterator;
+import org.gorpipe.gor.model.Row;
+import org.gorpipe.gor.model.SourceRef;
+import org.gorpipe.gor.table.dictionary.DictionaryEntry;
+import org.gorpipe.gor.table.dictionary.DictionaryTable;
+import org.gorpipe.gor.table.util.PathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Helper class to create bucket files by merging the sorted bucket files directly, without going through gorpipe.
+ * <p>
+ * The merge of a bucket is split by chromosome.  The chromosomes are merged concurrently on a thread pool, each into
+ * its own gorz part file in the bucket dir, and the parts are concatenated in chromosome order into the bucket file as
+ * they complete.  Gorz blocks are compressed independently so the concatenation is a plain byte copy, skipping the
+ * header line of each part.
+ * <p>
+ * Every chromosome merge reads all the files of the bucket, so the number of merges running at once is limited to
+ * keep the open files below {@link #MAX_OPEN_FILES_KEY}, and the readers of a finished merge are reused by the next
+ * one rather than opening the files again.  A bucket with more files than that is merged in passes, first into
+ * temporary files of groups of files and then from the groups.
+ * <p>
+ * NOTE:  The parts are column encoded as with {@code write -c}, but without an external lookup table, as it is
+ *        stored in the header line and parts with different tables could not be concatenated.
+ */
+public class BucketCreatorParallel<T extends DictionaryEntry> implements BucketCreator<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(BucketCreatorParallel.class);
+
+    public static final int DEFAULT_NUMBER_WORKERS = Runtime.getRuntime().availableProcessors();
+
+    // Maximum number of files open at once while merging a bucket
+    public static final String MAX_OPEN_FILES_KEY = "gor.bucketize.max.open.files";
+
+    private final int workers;
+
+    public BucketCreatorParallel() {
+        this(DEFAULT_NUMBER_WORKERS);
+    }
+
+    public BucketCreatorParallel(int workers) {
+        this.workers = Math.max(1, workers);
+    }
+
+    @Override
+    public void createBucketsForBucketDir(DictionaryTable table, Map<String, List<T>> bucketsToCreate,
+                                          String absBucketDir, Consumer<String> callback) throws IOException {
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "bucketizer-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            int created = 0;
+            for (Map.Entry<String, List<T>> b2c : bucketsToCreate.entrySet()) {
+                String bucket = b2c.getKey();
+                long startTime = System.currentTimeMillis();
+                long rows = createBucket(table, b2c.getValue(), absBucketDir, PathUtils.getFileName(bucket), executor);
+                created++;
+                log.info("Bucketize - Created bucket {} ({}/{}) with {} rows from {} files in {} ms", bucket, created,
+                        bucketsToCreate.size(), rows, b2c.getValue().size(), System.currentTimeMillis() - startTime);
+                callback.accept(bucket);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long createBucket(DictionaryTable table, List<T> entries, String absBucketDir, String bucketFileName,
+                              ExecutorService executor) throws IOException {
+        int maxOpenFiles = Math.max(2, Integer.parseInt(System.getProperty(MAX_OPEN_FILES_KEY, "1024")));
+        List<BucketSource> sources = entries.stream()
+                .map(e -> new BucketSource(table, e))
+                .collect(Collectors.toList());
+        String header = sources.get(0).header(table.getSourceColumn());
+        List<String> chromosomes = findChromosomes(sources, executor);
+
+        FileReader fileReader = table.getFileReader();
+        String partPrefix = PathUtils.resolve(absBucketDir, "." + bucketFileName + ".parts." + UUID.randomUUID() + ".");
+        List<String> groupFiles = new ArrayList<>();
+        // Write into a temp file next to the bucket, so a failed run does not leave a partial bucket.
+        String tempFile = partPrefix + "all" + DataType.GORZ.suffix;
+        try {
+            // Too many files to have open at once, merge them in groups and then merge the groups.
+            while (sources.size() > maxOpenFiles) {
+                List<BucketSource> groups = new ArrayList<>();
+                for (int from = 0; from < sources.size(); from += maxOpenFiles) {
+                    List<BucketSource> group = sources.subList(from, Math.min(from + maxOpenFiles, sources.size()));
+                    String groupPrefix = partPrefix + "group" + groupFiles.size();
+                    String groupFile = groupPrefix + DataType.GORZ.suffix;
+                    groupFiles.add(groupFile);
+                    mergeSources(fileReader, group, chromosomes, header, groupPrefix + ".", groupFile, maxOpenFiles,
+                            executor);
+                    groups.add(new BucketSource(table, groupFile, group));
+                }
+                log.debug("Bucketize - Bucket {} merged {} files into {} groups", bucketFileName, sources.size(),
+                        groups.size());
+                sources = groups;
+            }
+            long rows = mergeSources(fileReader, sources, chromosomes, header, partPrefix, tempFile, maxOpenFiles,
+                    executor);
+            fileReader.move(tempFile, PathUtils.resolve(absBucketDir, bucketFileName));
+            return rows;
+        } finally {
+            for (String groupFile : groupFiles) {
+                deleteIfExists(fileReader, groupFile);
+            }
+            deleteIfExists(fileReader, tempFile);
+        }
+    }
+
+    /**
+     * Merge the sources into a gorz file, one part file per chromosome.  At most {@code maxOpenFiles} files of the
+     * sources are open at once.
+     *
+     * @return number of rows written
+     */
+    private long mergeSources(FileReader fileReader, List<BucketSource> sources, List<String> chromosomes,
+                              String header, String partPrefix, String outFile, int maxOpenFiles,
+                              ExecutorService executor) throws IOException {
+        List<String> partFiles = new ArrayList<>();
+        List<Future<Long>> partRows = new ArrayList<>();
+        Semaphore merges = new Semaphore(Math.min(workers, maxOpenFiles / sources.size()));
+        try {
+            for (String chr : chromosomes) {
+                String partFile = partPrefix + partFiles.size() + DataType.GORZ.suffix;
+                partFiles.add(partFile);
+                partRows.add(executor.submit(() -> {
+                    merges.acquire();
+                    try {
+                        return mergeChromosome(fileReader, sources, chr, header, partFile);
+                    } finally {
+                        merges.release();
+                    }
+                }));
+            }
+
+            long rows = 0;
+            try (OutputStream out = fileReader.getOutputStream(outFile)) {
+                out.write(headerLine(header));
+                for (int i = 0; i < partFiles.size(); i++) {
+                    long chrRows = getResult(partRows.get(i));
+                    rows += chrRows;
+                    log.debug("Bucketize - {} chromosome {} done ({}/{}), {} rows", PathUtils.getFileName(outFile),
+                            chromosomes.get(i), i + 1, chromosomes.size(), chrRows);
+                    try (InputStream in = new BufferedInputStream(fileReader.getInputStream(partFiles.get(i)))) {
+                        skipLine(in);
+                        in.transferTo(out);
+                    }
+                    fileReader.delete(partFiles.get(i));
+                }
+            }
+            return rows;
+        } finally {
+            partRows.forEach(f -> f.cancel(true));
+            sources.forEach(BucketSource::closeReaders);
+            for (String partFile : partFiles) {
+                deleteIfExists(fileReader, partFile);
+            }
+        }
+    }
+
+    /**
+     * Find the chromosomes of all the sources, the sources are scanned concurrently by seeking past each chromosome.
+     *
+     * @return the chromosomes in gor order
+     */
+    private List<String> findChromosomes(List<BucketSource> sources, ExecutorService executor) throws IOException {
+        List<Future<Set<String>>> futures = sources.stream()
+                .map(s -> executor.submit(s::chromosomes))
+                .collect(Collectors.toList());
+        Set<String> chromosomes = new TreeSet<>();
+        for (Future<Set<String>> f : futures) {
+            chromosomes.addAll(getResult(f));
+        }
+        return new ArrayList<>(chromosomes);
+    }
+
+    /**
+     * Merge the rows of one chromosome from all the sources into a gorz part file.  Rows at the same position are
+     * ordered by source, as the rows of a bucket created with gorpipe.  The readers of the sources are given back
+     * to the sources for the next merge.
+     *
+     * @return number of rows written
+     */
+    private static long mergeChromosome(FileReader fileReader, List<BucketSource> sources, String chr, String header,
+                                        String partFile) throws IOException {
+        List<GenomicIterator> iterators = new ArrayList<>(sources.size());
+        PriorityQueue<MergeHead> queue = new PriorityQueue<>(sources.size());
+        long rows = 0;
+        boolean merged = false;
+        try (GorZipLexOutputStream out = new GorZipLexOutputStream(fileReader.getOutputStream(partFile), true, false, null)) {
+            out.setHeader(header);
+            // Write the header before any block, so the blocks carry their own lookup tables and all parts share
+            // the same header line.
+            out.flush();
+            for (int i = 0; i < sources.size(); i++) {
+                GenomicIterator it = sources.get(i).borrowReader();
+                iterators.add(it);
+                it.seek(chr, 0);
+                MergeHead head = new MergeHead(i, sources.get(i), it, chr);
+                if (head.advance()) queue.add(head);
+            }
+            while (!queue.isEmpty()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new GorSystemException("Bucketize interrupted while merging " + chr, null);
+                }
+                MergeHead head = queue.poll();
+                out.write(head.row);
+                rows++;
+                if (head.advance()) queue.add(head);
+            }
+            merged = true;
+        } finally {
+            for (int i = 0; i < iterators.size(); i++) {
+                if (merged) {
+                    sources.get(i).returnReader(iterators.get(i));
+                } else {
+                    iterators.get(i).close();
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return the header line of a column encoded gorz file with an empty external lookup table
+     */
+    private static byte[] headerLine(String header) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GorZipLexOutputStream out = new GorZipLexOutputStream(bytes, true, false, null)) {
+            out.setHeader(header);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void skipLine(InputStream in) throws IOException {
+        int b;
+        do {
+            b = in.read();
+        } while (b != '\n' && b != -1);
+    }
+
+    private static void deleteIfExists(FileReader fileReader, String file) {
+        try {
+            if (fileReader.exists(file)) {
+                fileReader.delete(file);
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete temp bucket file {}", file, e);
+        }
+    }
+
+    private static <R> R getResult(Future<R> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GorSystemException("Bucketize interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new GorSystemException("Bucketize failed", cause);
+        }
+    }
+
+    /**
+     * A file going into a bucket.
+     */
+    private static class BucketSource {
+        private final SourceRef ref;
+        private final String name;
+        // Only set for files that already have the source column, rows of other sources are filtered out.
+        private final Set<String> tags;
+        // Readers not used by a running merge, kept open for the next merge
+        private final Deque<GenomicIterator> readers = new ConcurrentLinkedDeque<>();
+        private volatile boolean closed = false;
+
+        BucketSource(DictionaryTable table, DictionaryEntry entry) {
+            this.ref = new SourceRef(table.getContentReal(entry), entry.getAlias(), table.getSecurityContext(),
+                    table.getProjectPath());
+            this.name = this.ref.getName();
+            this.tags = entry.isSourceInserted() ? new HashSet<>(Arrays.asList(entry.getFilterTags())) : null;
+        }
+
+        /**
+         * A temporary file with the merged rows of a group of sources, the rows already have the source column.
+         */
+        BucketSource(DictionaryTable table, String groupFile, List<BucketSource> group) {
+            this.ref = new SourceRef(groupFile, table.getSecurityContext(), table.getProjectPath());
+            this.name = this.ref.getName();
+            this.tags = new HashSet<>();
+            for (BucketSource source : group) {
+                if (source.tags != null) {
+                    this.tags.addAll(source.tags);
+                } else {
+                    this.tags.add(source.name);
+                }
+            }
+        }
+
+        GenomicIterator open() throws IOException {
+            GenomicIterator it = this.ref.iterate(new DefaultChromoLookup(), null, null);
+            it.init(null);
+            return it;
+        }
+
+        GenomicIterator borrowReader() throws IOException {
+            GenomicIterator it = this.readers.poll();
+            return it != null ? it : open();
+        }
+
+        void returnReader(GenomicIterator it) {
+            this.readers.push(it);
+            // A merge cancelled after the bucket failed may finish after the readers were closed
+            if (this.closed) closeReaders();
+        }
+
+        void closeReaders() {
+            this.closed = true;
+            GenomicIterator it;
+            while ((it = this.readers.poll()) != null) {
+                it.close();
+            }
+        }
+
+        String header(String sourceColumn) throws IOException {
+            try (GenomicIterator it = open()) {
+                return this.tags != null ? it.getHeader() : it.getHeader() + "\t" + sourceColumn;
+            }
+        }
+
+        Set<String> chromosomes() throws IOException {
+            Set<String> chromosomes = new HashSet<>();
+            try (GenomicIterator it = open()) {
+                while (it.hasNext()) {
+                    String chr = it.next().chr;
+                    if (chromosomes.add(chr)) {
+                        it.seek(chr, Integer.MAX_VALUE);
+                    }
+                }
+            }
+            return chromosomes;
+        }
+    }
+
+    /**
+     * The current row of one source in the chromosome merge.
+     */
+    private static class MergeHead implements Comparable<MergeHead> {
+        private final int index;
+        private final BucketSource source;
+        private final GenomicIterator iterator;
+        private final String chr;
+        private Row row;
+        private String sourceValue;
+
+        MergeHead(int index, BucketSource source, GenomicIterator iterator, String chr) {
+            this.index = index;
+            this.source = source;
+            this.iterator = iterator;
+            this.chr = chr;
+        }
+
+        /**
+         * @return true if there is a next row on the chromosome
+         */
+        boolean advance() {
+            while (this.iterator.hasNext()) {
+                Row next = this.iterator.next();
+                if (!next.chr.equals(this.chr)) {
+                    return false;
+                }
+                if (this.source.tags == null) {
+                    next.addSingleColumnToRow(this.source.name);
+                    this.row = next;
+                    this.sourceValue = this.source.name;
+                    return true;
+                }
+                String value = next.colAsString(next.numCols() - 1).toString();
+                if (this.source.tags.contains(value)) {
+                    this.row = next;
+                    this.sourceValue = value;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int compareTo(MergeHead other) {
+            int cmp = Integer.compare(this.row.pos, other.row.pos);
+            if (cmp == 0) {
+                cmp = this.sourceValue.compareTo(other.sourceValue);
+            }
+            return cmp != 0 ? cmp : Integer.compare(this.index, other.index);
+        }
+    }
+}
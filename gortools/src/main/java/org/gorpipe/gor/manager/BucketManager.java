@@ -80,6 +80,9 @@ public class BucketManager<T extends DictionaryEntry> {
     public static final String HEADER_BUCKET_DIRS_LOCATION_KEY = "BUCKET_DIRS_LOCATION";
     public static final String HEADER_BUCKET_MAX_BUCKETS = "BUCKET_MAX_BUCKETS";
 
+    // Create buckets by merging the files directly (true) or with generated gorpipe scripts (false).
+    public static final boolean USE_PARALLEL_BUCKET_CREATOR = Boolean.parseBoolean(System.getProperty("gor.bucketize.parallel", "true"));
+
     protected Duration gracePeriodForDeletingBuckets = Duration.ofHours(24);
 
     // Location of the bucket files we create (absolute or relative to rootPath).
@@ -104,7 +107,7 @@ public class BucketManager<T extends DictionaryEntry> {
      */
     public BucketManager(DictionaryTable table) {
         this.table = table;
-        this.bucketCreator = new BucketCreatorGorPipe<>();
+        this.bucketCreator = USE_PARALLEL_BUCKET_CREATOR ? new BucketCreatorParallel<>() : new BucketCreatorGorPipe<>();
 
         setBucketSize(Integer.parseInt(table.getConfigTableProperty(HEADER_BUCKET_SIZE_KEY, Integer.toString(DEFAULT_BUCKET_SIZE))));
         setMinBucketSize(Integer.parseInt(table.getConfigTableProperty(HEADER_MIN_BUCKET_SIZE_KEY, Integer.toString(DEFAULT_MIN_BUCKET_SIZE))));
@@ -133,6 +136,15 @@ public class BucketManager<T extends DictionaryEntry> {
         return new Builder(table);
     }
 
+    /**
+     * Create the default bucket creator.
+     *
+     * @param workers number of workers/threads to use when creating buckets.
+     */
+    static <T extends DictionaryEntry> BucketCreator<T> createBucketCreator(int workers) {
+        return USE_PARALLEL_BUCKET_CREATOR ? new BucketCreatorParallel<>(workers) : new BucketCreatorGorPipe<>(workers);
+    }
+
     public void bucketize() {
         bucketize(DEFAULT_BUCKET_PACK_LEVEL, -1, null, false);
     }
@@ -441,9 +453,9 @@ public class BucketManager<T extends DictionaryEntry> {
     }
 
     /**
-     * Create bucket files using gorpipe.
+     * Create bucket files using the bucket creator.
      *
-     * NOTE:  We run gorpipe and a temp folder on the same drive as the final destination so the move to that
+     * NOTE:  We use a temp folder on the same drive as the final destination so the move to that
      *        destination is fast.
      *
      * @param tempTable
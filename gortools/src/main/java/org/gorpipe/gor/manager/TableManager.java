@@ -292,7 +292,7 @@ public class TableManager {
                 .bucketSize(this.bucketSize)
                 .minBucketSize(this.minBucketSize)
                 .lockType(this.lockType)
-                .bucketCreator(new BucketCreatorGorPipe(workers))
+                .bucketCreator(BucketManager.createBucketCreator(workers))
                 .build()
                 .bucketize(packLevel, maxBucketCount, bucketDirs, false);
     }
@@ -58,7 +58,8 @@ case class OutputOptions(remove: Boolean = false,
                             linkFile: String = "",
                             command: String = null,
                             infer: Boolean = false,
-                            maxseg: Boolean = false
+                            maxseg: Boolean = false,
+                            bloomCols: Array[String] = null
                            )
 
 case class ForkWrite(forkCol: Int,
@@ -29,7 +29,7 @@ import java.util.Locale
 import gorsat.Commands.{BinAggregator, BinAnalysis, BinFactory, BinInfo, BinState, Processor, RegularRowHandler}
 import gorsat.gorsatGorIterator.MapAndListUtilities
 import org.gorpipe.exceptions.GorDataException
-import org.gorpipe.gor.model.Row
+import org.gorpipe.gor.model.{PackedGenotypes, Row}
 import org.gorpipe.gor.session.GorSession
 import org.gorpipe.model.gor.RowObj
 import org.gorpipe.model.gor.iterators.LineIterator
@@ -75,6 +75,9 @@ object GorCsvCC {
     case class ColHolder() {
       var buckRows: Array[CharSequence] = _
       var splitArr: Array[SaHolder] = _
+      // Values of the bucket rows packed two bits per value, null for rows kept as text
+      var packedRows: Array[PackedGenotypes] = _
+      var packedBuffers: Array[PackedGenotypes] = _
       var phenoStatusCounter: Array[Array[Int]] = _
       var phenoStatusFloatCounter: Array[Array[Double]] = _
     }
@@ -84,6 +87,8 @@ object GorCsvCC {
     val sepval: Char = if (sepSize == 1 && valSize == -1) sepVals(0) else ','
     val unknown: Boolean = if (uv != "") true else false
     val uc: Int = if (unknown) uv.toInt else -1
+    // Single character hard calls are counted from packed values instead of the bucket rows
+    val packCalls: Boolean = valSize == 1 && !use_prob
 
     var tbpi: TagBucketPhenoInfo = _
     var groupMap = scala.collection.mutable.HashMap.empty[String, ColHolder]
@@ -102,6 +107,10 @@ object GorCsvCC {
       if (sh.buckRows == null) {
         sh.buckRows = new Array[CharSequence](maxUsedBuckets)
         sh.splitArr = new Array[SaHolder](maxUsedBuckets)
+        if (packCalls) {
+          sh.packedRows = new Array[PackedGenotypes](maxUsedBuckets)
+          sh.packedBuffers = new Array[PackedGenotypes](maxUsedBuckets)
+        }
         sh.phenoStatusCounter = new Array[Array[Int]](maxPhenoStats)
         sh.phenoStatusFloatCounter = new Array[Array[Double]](maxPhenoStats)
         var i = 0
@@ -114,6 +123,7 @@ object GorCsvCC {
       var i = 0
       while (i < sh.buckRows.length) {
         sh.buckRows(i) = null
+        if (packCalls) sh.packedRows(i) = null
         if (valSize == -1) sh.splitArr(i) = SaHolder(new scala.collection.mutable.ArrayBuffer[Int](100))
         i += 1
       }
@@ -139,8 +149,23 @@ object GorCsvCC {
       else initColHolder(singleColHolder)
     }
 
+    def packRow(sh: ColHolder, buckNo: Int, r: Row): Boolean = {
+      val size = tbpi.buckIdxToBuckSize(buckNo)
+      var packed = if (sepSize == 0) PackedGenotypes.of(r, valCol) else null
+      if (packed == null || packed.size < size) {
+        val sa = r.getSplitArray
+        packed = if (sa != null) {
+          PackedGenotypes.pack(r.getAllCols, sa(valCol - 1) + 1, sa(valCol), size, 1 + sepSize, sh.packedBuffers(buckNo))
+        } else {
+          PackedGenotypes.pack(r.colAsString(valCol), 0, size, 1 + sepSize, sh.packedBuffers(buckNo))
+        }
+        if (packed != null) sh.packedBuffers(buckNo) = packed
+      }
+      sh.packedRows(buckNo) = packed
+      packed != null
+    }
+
     def process(r: Row): Unit = {
-      line = r.colAsString(valCol)
       tbpi.buckNameToIdx.get(r.colAsString(buckCol).toString) match {
         case Some(buckNo) =>
           var sh: ColHolder = null
@@ -155,9 +180,15 @@ object GorCsvCC {
             }
           } else sh = singleColHolder
 
-          sh.buckRows(buckNo) = line
-          if (valSize == -1) {
-            splitArray(line, 0, sh.splitArr(buckNo), sepval)
+          if (packCalls && packRow(sh, buckNo, r)) {
+            // The row text is not needed for packed values, the empty placeholder marks the bucket as present
+            sh.buckRows(buckNo) = ""
+          } else {
+            line = r.colAsString(valCol)
+            sh.buckRows(buckNo) = line
+            if (valSize == -1) {
+              splitArray(line, 0, sh.splitArr(buckNo), sepval)
+            }
           }
         case None => /* Do nothing - a row representing unused bucket */
       }
@@ -187,6 +218,8 @@ object GorCsvCC {
                 sh.phenoStatusCounter(phenostatus)(uc) += 1
                 if (use_prob) sh.phenoStatusFloatCounter(phenostatus)(uc) += 1.0
               } else throw new RuntimeException("Problem with input data when generating row: " + line + "\n\n")
+            } else if (packCalls && sh.packedRows(buckNo) != null) {
+              sh.phenoStatusCounter(phenostatus)(sh.packedRows(buckNo).get(buckPos)) += 1
             } else {
               var start = 0
 
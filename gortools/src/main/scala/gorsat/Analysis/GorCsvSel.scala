@@ -30,7 +30,7 @@ import gorsat.gorsatGorIterator.MapAndListUtilities
 import gorsat.process.GenotypeLookupUtilities
 import gorsat.process.GorJavaUtilities.VCFValue
 import org.gorpipe.exceptions.GorDataException
-import org.gorpipe.gor.model.{Line, Row, RowBase}
+import org.gorpipe.gor.model.{Line, PackedGenotypes, Row, RowBase}
 import org.gorpipe.gor.session.GorSession
 import org.gorpipe.model.gor.RowObj
 import org.gorpipe.model.gor.iterators.LineIterator
@@ -120,6 +120,9 @@ object GorCsvSel {
       var buckRows: Array[CharSequence] = _
       var offsetArray: Array[Int] = _
       var splitArr: Array[SaHolder] = _
+      // Values of the bucket rows packed two bits per value, null for rows kept as text
+      var packedRows: Array[PackedGenotypes] = _
+      var packedBuffers: Array[PackedGenotypes] = _
     }
     lazy val vcfValue = new VCFValue(vcfThreshold)
 
@@ -136,6 +139,8 @@ object GorCsvSel {
       x - x / 10
     }).mkString("")).slice(0, valSize) else uv
     var unknown: Boolean = if (uv != "") true else false
+    // Single character hard calls are kept packed instead of holding on to the bucket rows
+    val packValues: Boolean = valSize == 1 && !toVCF && !outputRows
 
     var pbt: PnBucketTable = _
     var groupMap = scala.collection.mutable.HashMap.empty[String, ColHolder]
@@ -164,10 +169,15 @@ object GorCsvSel {
         sh.buckRows = new Array[CharSequence](maxUsedBuckets)
         sh.offsetArray = new Array[Int](maxUsedBuckets)
         sh.splitArr = new Array[SaHolder](maxUsedBuckets)
+        if (packValues) {
+          sh.packedRows = new Array[PackedGenotypes](maxUsedBuckets)
+          sh.packedBuffers = new Array[PackedGenotypes](maxUsedBuckets)
+        }
       }
       var i = 0
       while (i < sh.buckRows.length) {
         sh.buckRows(i) = null
+        if (packValues) sh.packedRows(i) = null
         if (valSize == -1) sh.splitArr(i) = SaHolder(new scala.collection.mutable.ArrayBuffer[Int](100))
         i += 1
       }
@@ -176,6 +186,21 @@ object GorCsvSel {
     var line: CharSequence = ""
     var maxUsedBuckets = 0
 
+    // The bucket rows held by the groups of the bin, packed values take a quarter of a byte each
+    override def memoryEstimate: Long = {
+      var total = 0L
+      for (sh <- groupMap.valuesIterator if sh.buckRows != null) {
+        var i = 0
+        while (i < sh.buckRows.length) {
+          val packed = packedRow(sh, i)
+          if (packed != null) total += 64L + packed.size / 4
+          else if (sh.buckRows(i) != null) total += 64L + 2L * sh.buckRows(i).length
+          i += 1
+        }
+      }
+      total
+    }
+
     def initialize(binInfo: BinInfo): Unit = {
       pbt = session.getCache.getObjectHashMap.get(lookupSignature).asInstanceOf[PnBucketTable]
       if (pbt == null) throw new GorDataException("Non existing bucket info for lookupSignature " + lookupSignature)
@@ -185,14 +210,6 @@ object GorCsvSel {
     }
 
     def process(r: Row): Unit = {
-      var useLineObject = false
-      if (r.isInstanceOf[Line]){
-        line = r.colAsString(valCol)
-        useLineObject = true
-      } else {
-        line = r.toString
-      }
-
       pbt.buckNameToIdx.get(r.colAsString(buckCol).toString) match {
         case Some(buckNo) =>
           var sh: ColHolder = null
@@ -207,17 +224,46 @@ object GorCsvSel {
             }
           } else sh = singleColHolder
 
-          sh.buckRows(buckNo) = line
-          val offset = if (useLineObject) 0 else r.getSplitArray()(valCol - 1) + 1
-          sh.offsetArray(buckNo) = offset
-          if (valSize == -1) {
-            splitArray(line, offset, sh.splitArr(buckNo), sepval)
+          // Values packed upstream are read from the packed words, the row text is only needed without them
+          val attached = if (packValues && sepSize == 0) PackedGenotypes.of(r, valCol) else null
+          if (attached != null && attached.size >= pbt.buckIdxToBuckSize(buckNo)) {
+            sh.packedRows(buckNo) = attached
+            // The empty placeholder marks the bucket as present
+            sh.buckRows(buckNo) = ""
+            sh.offsetArray(buckNo) = 0
+          } else {
+            var useLineObject = false
+            if (r.isInstanceOf[Line]) {
+              line = r.colAsString(valCol)
+              useLineObject = true
+            } else {
+              line = r.toString
+            }
+
+            sh.buckRows(buckNo) = line
+            val offset = if (useLineObject) 0 else r.getSplitArray()(valCol - 1) + 1
+            sh.offsetArray(buckNo) = offset
+            if (valSize == -1) {
+              splitArray(line, offset, sh.splitArr(buckNo), sepval)
+            } else if (packValues) {
+              packRow(sh, buckNo, offset, if (useLineObject) line.length else r.getSplitArray()(valCol))
+            }
           }
         case None => /* Do nothing - a row representing unused bucket */
       }
 
     }
 
+    def packRow(sh: ColHolder, buckNo: Int, offset: Int, end: Int): Unit = {
+      val packed = PackedGenotypes.pack(line, offset, end, pbt.buckIdxToBuckSize(buckNo), 1 + sepSize, sh.packedBuffers(buckNo))
+      if (packed != null) sh.packedBuffers(buckNo) = packed
+      sh.packedRows(buckNo) = packed
+      // The row text is not needed for packed values, the empty placeholder marks the bucket as present
+      if (packed != null) sh.buckRows(buckNo) = ""
+    }
+
+    def packedRow(sh: ColHolder, buckNo: Int): PackedGenotypes = if (packValues) sh.packedRows(buckNo) else null
+
     def parallelFixedSizeWithSeperator(sh: ColHolder, pipeFrom: Processor): Unit = {
       val originalLength = ladd.length()
       ladd.setLength(originalLength+pbt.numberOfPns*valSize+pbt.numberOfPns-1)
@@ -240,7 +286,9 @@ object GorCsvSel {
         } else {
           val offset = sh.offsetArray(buckNo)
           if (outCol != 0 && sepSize != 0) ladd.setCharAt(outCol*(valSize+1)-1, sepval)
-          colCharMoveFixedSize(buckPos, bucketRow, offset, ladd, outCol*(valSize+1)+originalLength, valSize)
+          val packed = packedRow(sh, buckNo)
+          if (packed != null) ladd.setCharAt(outCol*(valSize+1)+originalLength, packed.charAt(buckPos))
+          else colCharMoveFixedSize(buckPos, bucketRow, offset, ladd, outCol*(valSize+1)+originalLength, valSize)
         }
       })
     }
@@ -284,9 +332,14 @@ object GorCsvSel {
             throw new GorDataException("Problem with input data when generating row: " + line + "\n\n")
           }
         } else {
-          val offset = sh.offsetArray(buckNo)
-          val start = offset + buckPos
-          ladd.setCharAt(outCol+originalLength, bucketRow.charAt(start))
+          val packed = packedRow(sh, buckNo)
+          if (packed != null) {
+            ladd.setCharAt(outCol+originalLength, packed.charAt(buckPos))
+          } else {
+            val offset = sh.offsetArray(buckNo)
+            val start = offset + buckPos
+            ladd.setCharAt(outCol+originalLength, bucketRow.charAt(start))
+          }
         }
       })
     }
@@ -426,7 +479,9 @@ object GorCsvSel {
                     }
                     else {
                       if (outCol != 0 && sepSize != 0) ladd.append(sepval)
-                      colCharMoveFixed(buckPos, r, offset, ladd, valSize, sepSize)
+                      val packed = packedRow(sh, buckNo)
+                      if (packed != null) ladd.append(packed.charAt(buckPos))
+                      else colCharMoveFixed(buckPos, r, offset, ladd, valSize, sepSize)
                     }
                   }
                 }
@@ -25,6 +25,7 @@ package gorsat.Analysis
 import gorsat.Buckets.{PnBucketParsing, PnBucketTable}
 import gorsat.Commands.{Analysis, BinAggregator, BinAnalysis, BinFactory, BinInfo, BinState, Processor, RegularRowHandler, RowHeader}
 import gorsat.gorsatGorIterator.MapAndListUtilities
+import gorsat.relatedness.GenotypeBitPlanes
 import org.gorpipe.exceptions.GorDataException
 import org.gorpipe.gor.model.{Line, Row}
 import org.gorpipe.gor.monitor.GorMonitor
@@ -127,6 +128,19 @@ object GorKing2 {
     var line: CharSequence = ""
     var maxUsedBuckets = 0
 
+    // The bucket rows held by the groups of the bin
+    override def memoryEstimate: Long = {
+      var total = 0L
+      for (sh <- groupMap.valuesIterator if sh.buckRows != null) {
+        var i = 0
+        while (i < sh.buckRows.length) {
+          if (sh.buckRows(i) != null) total += 64L + 2L * sh.buckRows(i).length
+          i += 1
+        }
+      }
+      total
+    }
+
     def initialize(binInfo: BinInfo): Unit = {
       bui = session.getCache.getObjectHashMap.get(lookupSignature).asInstanceOf[BucketInfo]
       if (bui == null) throw new GorDataException(s"Non existing bucket info for lookupSignature $lookupSignature")
@@ -262,7 +276,7 @@ object GorKing2 {
     var numberOfPNs = 1;
     var markerNumber = 0
 
-    var gtbarray : Array[Array[Byte]] = null
+    var planes : GenotypeBitPlanes = null
     var tpqc : Array[Float] = null
     var kpqc : Array[Float] = null
     /*
@@ -271,24 +285,12 @@ object GorKing2 {
     var pns1 : Array[Int] = null
     var pns2 : Array[Int] = null
 
-    def setGTb(pn : Int, marker : Int, gt : Char) : Unit = { /* only to be used once per seat */
-      val shift = (marker % 4)*2
-      val mpos = marker / 4
-      gtbarray(pn)(mpos) = (gtbarray(pn)(mpos) | (((gt-'0') & 3) << shift)).toByte
-    }
-    def getGTb(pn : Int, marker : Int) : Char = { /* not used in the optimized access */
-      val shift : Int = (marker % 4)*2
-      val mpos : Int = marker / 4
-      return ('0'+((gtbarray(pn)(mpos) >>> shift) & 3)).toChar
-    }
-
     override def process(r: Row): Unit = {
       bh = r.bH.asInstanceOf[binaryHolder]
       if (needsInitialization) {
         needsInitialization = false
         numberOfPNs = bh.GTS.length
-        gtbarray = Array.ofDim[Byte](numberOfPNs,(maxVars+3)/4)
-        val af = bh.af
+        planes = new GenotypeBitPlanes(numberOfPNs, maxVars)
         tpqc = Array.ofDim[Float](maxVars)
         kpqc = Array.ofDim[Float](maxVars)
         /*
@@ -301,12 +303,7 @@ object GorKing2 {
       if (markerNumber < maxVars) {
         tpqc(markerNumber) = 2.0f*af*af*(1.0f-af)*(1.0f-af)
         kpqc(markerNumber) = 2.0f*af*(1.0f-af)
-        var pn = 0
-        while (pn < numberOfPNs) {
-          val gt = bh.GTS(pn)
-          setGTb(pn, markerNumber, gt)
-          pn += 1
-        }
+        planes.add(bh.GTS)
         markerNumber += 1
       } else {
         throw new GorDataException(s"Too many variants: variant at ($r.chrom,$r.pos) exceeds the maximum of $maxVars variants\n")
@@ -320,61 +317,33 @@ object GorKing2 {
     def process_group(pns1 : Array[Int], pns2 : Array[Int], symmetric_PNlists : Boolean): Unit = {
       val skip_test = if (!t_pi0 && !t_phi && !t_theta) true else false
       var outrows : List[Row] = Nil
+      val counts = new GenotypeBitPlanes.KingCounts(1)
       pns1.foreach(pn1 => {
         if (!wantsNoMore) {
           pns2.foreach(pn2 => {
             if (!wantsNoMore && (!symmetric_PNlists || pn1 < pn2)) {
-              var IBS0: Int = 0
-              var XX: Int = 0
-              var Nhet: Int = 0
-              var Nhom: Int = 0
-              var NAai: Int = 0
-              var NAaj: Int = 0
               var tpq: Double = 0.0
               var kpq: Double = 0.0
-              var count: Int = 0
-
-              var mi = 0
-              var shift = 0
-              var mpos = 0
-              var temp1 = gtbarray(pn1)(mpos)
-              var temp2 = gtbarray(pn2)(mpos)
-
-              while (mi < markerNumber) {
-
-                val gt1 = ('0' + ((temp1 >>> shift) & 3)).toChar
-                val gt2 = ('0' + ((temp2 >>> shift) & 3)).toChar
-
-                if (gt1 != '3' && gt2 != '3') {
-                  count += 1
-                  tpq += tpqc(mi)
-                  kpq += kpqc(mi)
-
-                  if (gt1 == '0' && gt2 == '2' || gt1 == '2' && gt2 == '0') IBS0 += 1
-
-                  if (gt1 == '0' && gt2 == '1' || gt1 == '1' && gt2 == '0' || gt1 == '2' && gt2 == '1' || gt1 == '1' && gt2 == '2') {
-                    XX += 1
-                  } else if (gt1 == '0' && gt2 == '2' || gt1 == '2' && gt2 == '0') {
-                    XX += 4
-                    Nhom += 1
-                  }
-
-                  if (gt1 == '1' && gt2 == '1') Nhet += 1
-
-                  if (gt1 == '1') NAai += 1
-
-                  if (gt2 == '1') NAaj += 1
-                }
-
-                mi += 1
-                shift += 2
-                if (mi % 4 == 0 && mi < markerNumber) {
-                  mpos += 1;
-                  shift = 0;
-                  temp1 = gtbarray(pn1)(mpos);
-                  temp2 = gtbarray(pn2)(mpos);
-                }
+              counts.clear()
+
+              /*
+              Each word of the bitplanes holds 64 variants, see GenotypeBitPlanes.king for how the genotype pairs are counted.
+              */
+              val words = planes.getWordCount
+              var w = 0
+              while (w < words) {
+                val both = planes.king(pn1, pn2, w, counts, 0)
+                tpq = GenotypeBitPlanes.addDouble(both, tpqc, w * GenotypeBitPlanes.WORD_SIZE, tpq)
+                kpq = GenotypeBitPlanes.addDouble(both, kpqc, w * GenotypeBitPlanes.WORD_SIZE, kpq)
+                w += 1
               }
+              val IBS0 = counts.ibs0(0)
+              val XX = counts.xx(0)
+              val Nhet = counts.nhet(0)
+              val Nhom = IBS0
+              val NAai = counts.naai(0)
+              val NAaj = counts.naaj(0)
+              val count = counts.count(0)
 
               val PNi = bh.bui.getPnNameFromIdx(pn1)
               val PNj = bh.bui.getPnNameFromIdx(pn2)
@@ -419,7 +388,7 @@ object GorKing2 {
           else jpns1groups.parallelStream().forEach(x => process_group(x, pns2,symmetric_PNlists))
 
            /* pns1groups.foreach(x => process_group(x, pns2, symmetric_PNlists)) */
-          gtbarray = Array.ofDim[Byte](1,1) /* Free the memory */
+          planes = null /* Free the memory */
         }
       }
   }
@@ -25,6 +25,7 @@ package gorsat.Analysis
 import gorsat.Buckets.{PnBucketParsing, PnBucketTable}
 import gorsat.Commands.{Analysis, BinAggregator, BinAnalysis, BinFactory, BinInfo, BinState, Processor, RegularRowHandler, RowHeader}
 import gorsat.gorsatGorIterator.MapAndListUtilities
+import gorsat.relatedness.GenotypeBitPlanes
 import org.gorpipe.exceptions.GorDataException
 import org.gorpipe.gor.model.{Line, Row}
 import org.gorpipe.gor.monitor.GorMonitor
@@ -239,20 +240,22 @@ object GorKing {
   }
 
   case class KingAggregate(pi0thr: Float, phithr: Float, thetathr: Float, t_pi0: Boolean, t_phi: Boolean, t_theta: Boolean, gm : GorMonitor) extends Analysis {
-    var IBS0: Array[Int] = _
-    var XX: Array[Int] = _
-    var Nhet: Array[Int] = _
-    var Nhom: Array[Int] = _
-    var NAai: Array[Int] = _
-    var NAaj: Array[Int] = _
+    var counts: GenotypeBitPlanes.KingCounts = _
     var tpq: Array[Float] = _
     var kpq: Array[Float] = _
-    var count: Array[Int] = _
     var needsInitialization: Boolean = true
     var bh: binaryHolder = _
     var gtSize: Int = 0
     var gtPairSize: Int = 0
-    var cancelled: Boolean = false
+    @volatile var cancelled: Boolean = false
+
+    // The genotypes are buffered in bitplanes of one word of variants and the pairs are counted a word at a time
+    var planes: GenotypeBitPlanes = _
+    var idPairs1: Array[Int] = _
+    var idPairs2: Array[Int] = _
+    val tpqc: Array[Float] = new Array[Float](GenotypeBitPlanes.WORD_SIZE)
+    val kpqc: Array[Float] = new Array[Float](GenotypeBitPlanes.WORD_SIZE)
+    val pairTileSize: Int = 4096
 
     override def isTypeInformationMaintained : Boolean = true
 
@@ -269,78 +272,67 @@ object GorKing {
         needsInitialization = false
         gtSize = bh.GTS.length
         gtPairSize = bh.bui.idPairs.length
-        IBS0 = new Array[Int](gtPairSize)
-        XX = new Array[Int](gtPairSize)
-        Nhet = new Array[Int](gtPairSize)
-        Nhom = new Array[Int](gtPairSize)
-        NAai = new Array[Int](gtPairSize)
-        NAaj = new Array[Int](gtPairSize)
+        counts = new GenotypeBitPlanes.KingCounts(gtPairSize)
         tpq = new Array[Float](gtPairSize)
         kpq = new Array[Float](gtPairSize)
-        count = new Array[Int](gtPairSize)
+        planes = new GenotypeBitPlanes(gtSize, GenotypeBitPlanes.WORD_SIZE)
+        idPairs1 = bh.bui.idPairs.map(_._1)
+        idPairs2 = bh.bui.idPairs.map(_._2)
       }
+      if (cancelled) return
 
       val af = bh.af
-      val tpqc = 2.0f*af*af*(1.0f-af)*(1.0f-af)
-      val kpqc = 2.0f*af*(1.0f-af)
-
-      var ai: Int = 0
-      while (ai < gtPairSize && !cancelled) {
-        val (pn1,pn2) = bh.bui.idPairs(ai)
-        val gt1 = bh.GTS(pn1)
-        val gt2 = bh.GTS(pn2)
-
-        if (gt1 != '3' && gt2 != '3') {
-          count(ai) += 1
-          tpq(ai) += tpqc
-          kpq(ai) += kpqc
-
-          if (gt1 == '0' && gt2 == '2' || gt1 == '2' && gt2 == '0') IBS0(ai) += 1
-          /*
-          | calc IBS0 if(values='02' or values = '20',1,0)
-          */
-          if (gt1 == '0' && gt2 == '1' || gt1 == '1' && gt2 == '0' || gt1 == '2' && gt2 == '1' || gt1 == '1' && gt2 == '2') {
-            XX(ai) += 1
-          }
-          else if (gt1 == '0' && gt2 == '2' || gt1 == '2' && gt2 == '0') {
-            XX(ai) += 4
-            Nhom(ai) += 1
-          }
-          /* else XX(ai) += 0
-          | calc XX if(values='01' or values = '10' or values = '21' or values = '12',1,if(values='02' or values = '20',4,0))
-          | calc Nhom if(values = '02' or values = '20',1,0)
-          */
-          if (gt1 == '1' && gt2 == '1') Nhet(ai) += 1
-          /*
-          | calc Nhet if(values = '11',1,0)
-           */
-          if (gt1 == '1') NAai(ai) += 1
-          /*
-          | calc NAai if(left(values,1)='1',1,0)
-          */
-          if (gt2 == '1') NAaj(ai) += 1
-          /*
-          | calc NAaj if(right(values,1)='1',1,0)
-          */
-        }
+      val mi = planes.add(bh.GTS)
+      tpqc(mi) = 2.0f*af*af*(1.0f-af)*(1.0f-af)
+      kpqc(mi) = 2.0f*af*(1.0f-af)
+      if (planes.isFull) processPlanes()
+    }
 
-        if (ai % 1000 == 0 && gm != null && gm.isCancelled()) {
-          reportWantsNoMore()
-          cancelled = true
-        }
+    /*
+    | calc IBS0 if(values='02' or values = '20',1,0)
+    | calc XX if(values='01' or values = '10' or values = '21' or values = '12',1,if(values='02' or values = '20',4,0))
+    | calc Nhet if(values = '11',1,0)
+    | calc Nhom if(values = '02' or values = '20',1,0)
+    | calc NAai if(left(values,1)='1',1,0)
+    | calc NAaj if(right(values,1)='1',1,0)
+    */
+    def processPairs(from: Int, to: Int): Unit = {
+      if (cancelled) return
+      var ai = from
+      while (ai < to) {
+        val both = planes.king(idPairs1(ai), idPairs2(ai), 0, counts, ai)
+        tpq(ai) = GenotypeBitPlanes.addFloat(both, tpqc, 0, tpq(ai))
+        kpq(ai) = GenotypeBitPlanes.addFloat(both, kpqc, 0, kpq(ai))
         ai += 1
       }
+      if (gm != null && gm.isCancelled()) cancelled = true
+    }
+
+    def processPlanes(): Unit = {
+      if (planes.getVariantCount > 0 && !cancelled) {
+        val tiles = (gtPairSize + pairTileSize - 1) / pairTileSize
+        val tileStream = java.util.stream.IntStream.range(0, tiles)
+        (if (tiles > 1) tileStream.parallel() else tileStream).forEach(t => processPairs(t * pairTileSize, ((t + 1) * pairTileSize).min(gtPairSize)))
+        if (cancelled) reportWantsNoMore()
+      }
+      planes.clear()
     }
 
     override def finish(): Unit = {
       val skip_test = if (!t_pi0 && !t_phi && !t_theta) true else false
+      if (!needsInitialization) processPlanes()
       if (!cancelled && !needsInitialization) {
+        val IBS0 = counts.ibs0
+        val XX = counts.xx
+        val Nhet = counts.nhet
+        val Nhom = counts.ibs0
+        val NAai = counts.naai
+        val NAaj = counts.naaj
+        val count = counts.count
         var ai: Int = 0
         while (ai < gtPairSize && !cancelled && !wantsNoMore) {
-          val (pn1,pn2) = bh.bui.idPairs(ai)
-          val PNi = bh.bui.getPnNameFromIdx(pn1)
-          val PNj = bh.bui.getPnNameFromIdx(pn2)
-          // System.out.println("ai "+ai+" ("+pn1+","+pn2+") = ("+PNi+","+PNj+")")
+          val PNi = bh.bui.getPnNameFromIdx(idPairs1(ai))
+          val PNj = bh.bui.getPnNameFromIdx(idPairs2(ai))
           val pi0 = IBS0(ai)/tpq(ai)
           val phi = 0.5f-XX(ai)/(4.0f*kpq(ai))
           val theta = (Nhet(ai)-2.0f*Nhom(ai))/(NAai(ai)+NAaj(ai))
@@ -354,15 +346,10 @@ object GorKing {
           ai += 1
         }
       }
-      IBS0 = null
-      XX = null
-      Nhet = null
-      Nhom = null
-      NAai = null
-      NAaj = null
+      counts = null
       tpq = null
       kpq = null
-      count = null
+      planes = null
     }
   }
 
@@ -278,7 +278,7 @@ object GorQueen {
     var gtSize1: Int = 0
     var gtSize2: Int = 0
     var gtPairSize: Int = 0
-    var cancelled: Boolean = false
+    @volatile var cancelled: Boolean = false
 
     override def isTypeInformationMaintained : Boolean = true
 
@@ -288,6 +288,12 @@ object GorQueen {
       super.setRowHeader(RowHeader(columnNames,columnTypes))
     }
 
+    // Carrier and called bits of one word of variants, the sharing is counted a word at a time
+    var carriers1: Array[Long] = _
+    var carriers2: Array[Long] = _
+    var called2: Array[Long] = _
+    var blockSize: Int = 0
+
     override def process(r: Row): Unit = {
 
       bh = r.bH.asInstanceOf[binaryHolder]
@@ -298,29 +304,58 @@ object GorQueen {
         gtPairSize = gtSize1 * gtSize2
         share = new Array[Int](gtPairSize)
         count = new Array[Int](gtPairSize)
+        carriers1 = new Array[Long](gtSize1)
+        carriers2 = new Array[Long](gtSize2)
+        called2 = new Array[Long](gtSize2)
       }
+      if (cancelled) return
 
+      val bit = 1L << blockSize
       var i: Int = 0
       while (i < bh.IDX1size) {
-        val pni = bh.IDX1(i)
+        carriers1(bh.IDX1(i)) |= bit
+        i += 1
+      }
+      var j: Int = 0
+      while (j < gtSize2) {
+        val gt2 = bh.GTS2(j)
+        if (gt2 == '1' || gt2 == '2') carriers2(j) |= bit
+        if (gt2 != '3') called2(j) |= bit
+        j += 1
+      }
+      blockSize += 1
+      if (blockSize == 64) processBlock()
+    }
+
+    def processRow(pni: Int): Unit = {
+      val c1 = carriers1(pni)
+      if (c1 != 0L && !cancelled) {
         var j: Int = 0
         var ai = pni*gtSize2
         while (j < gtSize2) {
-            val gt2 = bh.GTS2(j)
-            if (gt2 == '1' || gt2 == '2') share(ai) += 1
-            if (gt2 != '3') count(ai) += 1
-            ai += 1
-            j += 1
-        }
-        if (gm != null && gm.isCancelled()) {
-          reportWantsNoMore()
-          cancelled = true
+          share(ai) += java.lang.Long.bitCount(c1 & carriers2(j))
+          count(ai) += java.lang.Long.bitCount(c1 & called2(j))
+          ai += 1
+          j += 1
         }
-        i += 1
+        if (gm != null && gm.isCancelled()) cancelled = true
+      }
+    }
+
+    def processBlock(): Unit = {
+      if (blockSize > 0 && !cancelled) {
+        val rows = java.util.stream.IntStream.range(0, gtSize1)
+        (if (gtPairSize > 1000000) rows.parallel() else rows).forEach(pni => processRow(pni))
+        if (cancelled) reportWantsNoMore()
       }
+      java.util.Arrays.fill(carriers1, 0L)
+      java.util.Arrays.fill(carriers2, 0L)
+      java.util.Arrays.fill(called2, 0L)
+      blockSize = 0
     }
 
     override def finish(): Unit = {
+      if (!needsInitialization) processBlock()
       if (!cancelled && !needsInitialization) {
         var i: Int = 0
         while (i < gtSize1 && !cancelled && !wantsNoMore) {
@@ -344,6 +379,9 @@ object GorQueen {
       }
       share = null
       count = null
+      carriers1 = null
+      carriers2 = null
+      called2 = null
     }
   }
 
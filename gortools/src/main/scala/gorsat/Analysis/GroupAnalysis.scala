@@ -78,6 +78,8 @@ object GroupAnalysis {
 
     var groupMap = scala.collection.mutable.HashMap.empty[String, StatHolder]
     val grColsArray: Array[Int] = grCols.toArray
+    // Estimated bytes of the groups, the collected values and the list text of the bin
+    var heldBytes = 0L
 
     def formatDouble(d: Double): String = f"$d%1.1f".replace(',', '.')
 
@@ -98,8 +100,11 @@ object GroupAnalysis {
 
     def initialize(binInfo: BinInfo): Unit = {
       groupMap = scala.collection.mutable.HashMap.empty[String, StatHolder]
+      heldBytes = 0L
     }
 
+    override def memoryEstimate: Long = heldBytes
+
     def process(r: Row): Unit = {
       var sh: StatHolder = null
       val groupID = if (useGroup) r.selectedColumns(grColsArray) else ""
@@ -110,10 +115,14 @@ object GroupAnalysis {
           sh = StatHolder(numCols)
           initStatHolder(sh)
           groupMap += (groupID -> sh)
+          heldBytes += 64L + 2L * groupID.length + 300L * numCols
       }
 
       sh.allCount += 1
-      if (useCdist) sh.gList ::= r.toString
+      if (useCdist) {
+        sh.gList ::= r.toString
+        heldBytes += 64L + 2L * r.length
+      }
       var i = 0
       while (i < anyCols.size) {
         val j = anyCols(i)._1
@@ -122,10 +131,15 @@ object GroupAnalysis {
           try {
             val v = r.colAsDouble(j)
             if (!v.isNaN) {
-              if (collectLists) sh.fList(i) ::= v
+              if (collectLists) {
+                sh.fList(i) ::= v
+                heldBytes += 40L
+              }
               if (useLis) {
                 if (sh.ns(i) > 0) sh.sbuff(i).append(sepVal)
-                sh.sbuff(i).append(r.colAsString(j))
+                val s = r.colAsString(j)
+                sh.sbuff(i).append(s)
+                heldBytes += 2L * (sepVal.length + s.length)
               }
               sh.sums(i) += v
               sh.sq_sums(i) += v * v
@@ -145,10 +159,14 @@ object GroupAnalysis {
         else if (cType == 'a') {
           try {
             val v = r.colAsString(j).toString
-            if (collectLists) sh.aList(i) ::= v
+            if (collectLists) {
+              sh.aList(i) ::= v
+              heldBytes += 64L + 2L * v.length
+            }
             if (useLis) {
               if (sh.ns(i) > 0) sh.sbuff(i).append(sepVal)
-              sh.sbuff(i).append(r.colAsString(j))
+              sh.sbuff(i).append(v)
+              heldBytes += 2L * (sepVal.length + v.length)
             }
             if (sh.ns(i) == 0) {
               sh.aMin(i) = v
@@ -321,6 +339,7 @@ object GroupAnalysis {
       }
 
       groupMap = null
+      heldBytes = 0L
     }
   }
 
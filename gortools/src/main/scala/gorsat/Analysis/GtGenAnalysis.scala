@@ -27,7 +27,7 @@ import gorsat.Commands._
 import gorsat.Iterators.ChromBoundedIteratorSource
 import gorsat.gorsatGorIterator.{MapAndListUtilities, MemoryMonitorUtil}
 import org.gorpipe.exceptions.GorDataException
-import org.gorpipe.gor.model.{GenomicIterator, Row}
+import org.gorpipe.gor.model.{GenomicIterator, PackedGenotypes, Row}
 import org.gorpipe.gor.session.GorContext
 import org.gorpipe.model.gor.iterators.LineIterator
 import org.gorpipe.model.gor.RowObj
@@ -50,6 +50,8 @@ object GtGenAnalysis {
     var singleColHolder = ColHolder()
     if (!useGroup) groupMap += ("theOnlyGroup" -> singleColHolder)
     val grColsArray: Array[Int] = grCols.toArray
+    // chrom, pos, the group columns and the bucket precede the values
+    val valuesCol: Int = 3 + grCols.length
 
 
     def initColHolder(sh: ColHolder): Unit = {
@@ -109,7 +111,10 @@ object GtGenAnalysis {
         var i = 0
         while (i < sh.buckValueCols.length) {
           val line = linestart + '\t' + pbt.getBucketNameFromIdx(i) + '\t' + sh.buckValueCols(i)
-          nextProcessor.process(RowObj(line))
+          val row = RowObj(line)
+          // Buckets where all values are hard calls carry them packed for the bucket commands that follow
+          PackedGenotypes.attachColumn(row, valuesCol)
+          nextProcessor.process(row)
           i += 1
         }
       }
@@ -291,7 +296,9 @@ object GtGenAnalysis {
       }
 
       //#######
-      super.process(RowObj(s"${lr.colsSlice(0, bucketCol+1)}\t${lSeg.values.toString().replace('4','3')}"))
+      val row = RowObj(s"${lr.colsSlice(0, bucketCol+1)}\t${lSeg.values.toString().replace('4','3')}")
+      PackedGenotypes.attachColumn(row, valuesCol)
+      super.process(row)
 
       if ((lr.chr == lastLeftChr && maxLeftStop < leftStop) || lr.chr != lastLeftChr) maxLeftStop = leftStop
       lastLeftChr = lr.chr
@@ -22,6 +22,8 @@
 
 package gorsat.Analysis
 
+import java.util.stream.IntStream
+
 import gorsat.Utilities.AnalysisUtilities.{ParameterHolder, SEGinfo}
 import gorsat.Commands._
 import gorsat.Iterators.{ChromBoundedIteratorSource, RowListIterator}
@@ -32,6 +34,11 @@ import org.gorpipe.model.gor.{BinaryHolder, RowObj}
 
 object GtLDAnalysis {
 
+  /**
+    * Minimum number of word comparisons, i.e. pairs times the number of 64 bit genotype words, for the pairs of a
+    * left variant to be counted in parallel. A negative value turns parallel counting off.
+    */
+  val LD_PARALLEL_MIN_WORK: Long = System.getProperty("gor.gtld.parallel.minwork", "65536").toLong
 
   case class LDSegOverlap(ph: ParameterHolder, inRightSource: GenomicIterator, missingSeg: String, leftJoin: Boolean, fuzzFactor: Int, iJoinType: String,
                         lstop: Int, rstop: Int, lleq: List[Int], lreq: List[Int], otherCols : Array[Int], valuesCol : Int, maxSegSize: Int, plain: Boolean, inclusOnly: Boolean = false) extends Analysis {
@@ -92,6 +99,9 @@ object GtLDAnalysis {
     var gr: GroupHolder = _
     if (!useGroup) groupMap += ("#GR0#" -> singleGroupHolder)
 
+    // Right rows overlapping the current left row, in buffer order
+    val pairRows = new scala.collection.mutable.ArrayBuffer[Row]
+
     override def process(lr: Row): Unit = {
       if (useGroup && lr.chr != lastLeftChr) {
         groupMap = new scala.collection.mutable.HashMap[String, GroupHolder]
@@ -198,13 +208,12 @@ object GtLDAnalysis {
       val nextBuffer = (gr.buffer + 1) % 2
       var nextBufferSize = 0
       var i = 0
+      pairRows.clear()
       while (i < gr.bufferSize && !wantsNoMore) {
         val rSeg = gr.rowBuffer(gr.buffer)(i)
         val rr = rSeg.r
         if (lr.chr == rr.chr && lSeg.start - fuzzFactor < rSeg.stop && lSeg.stop + fuzzFactor > rSeg.start) {
-            val LDs = LDstatCalc(lr.colAsString(valuesCol).toString, rr.colAsString(valuesCol).toString)
-            nextProcessor.process(RowObj(s"${lr.chr}\t${lr.pos}\t${lr.selectedColumns(otherCols)}\t${(rr.pos - lr.pos)}\t${rr.pos}\t${rr.selectedColumns(otherCols)}\t${LDs.g00}\t${LDs.g10}\t${LDs.g20}\t${LDs.g01}\t${LDs.g11}\t${LDs.g21}\t${LDs.g02}\t${LDs.g12}\t${LDs.g22}"))
-
+          pairRows += rr
         }
         if (!((rr.chr == lr.chr && rSeg.stop + fuzzFactor < lSeg.start) || rr.chr < lr.chr)) {
           if (gr.rowBuffer(nextBuffer).size <= nextBufferSize) gr.rowBuffer(nextBuffer) += gr.rowBuffer(gr.buffer)(i)
@@ -217,6 +226,7 @@ object GtLDAnalysis {
 
       gr.buffer = nextBuffer
       gr.bufferSize = nextBufferSize
+      if (pairRows.nonEmpty) processPairs(lr)
       if ((lr.chr == lastLeftChr && maxLeftStop < leftStop) || lr.chr != lastLeftChr) maxLeftStop = leftStop
       lastLeftChr = lr.chr
       groupClean += 1
@@ -247,6 +257,29 @@ object GtLDAnalysis {
       }
     }
 
+    def processPairs(lr: Row): Unit = {
+      val lg = genotypesOf(lr, valuesCol)
+      val n = pairRows.length
+      val stats = new Array[LDstats](n)
+      if (LD_PARALLEL_MIN_WORK >= 0 && n > 1 && n.toLong * lg.g0.length >= LD_PARALLEL_MIN_WORK) {
+        IntStream.range(0, n).parallel().forEach((k: Int) => stats(k) = LDstatCalc(lg, genotypesOf(pairRows(k), valuesCol)))
+      } else {
+        var k = 0
+        while (k < n) {
+          stats(k) = LDstatCalc(lg, genotypesOf(pairRows(k), valuesCol))
+          k += 1
+        }
+      }
+      var k = 0
+      while (k < n && !wantsNoMore) {
+        val rr = pairRows(k)
+        val LDs = stats(k)
+        nextProcessor.process(RowObj(s"${lr.chr}\t${lr.pos}\t${lr.selectedColumns(otherCols)}\t${(rr.pos - lr.pos)}\t${rr.pos}\t${rr.selectedColumns(otherCols)}\t${LDs.g00}\t${LDs.g10}\t${LDs.g20}\t${LDs.g01}\t${LDs.g11}\t${LDs.g21}\t${LDs.g02}\t${LDs.g12}\t${LDs.g22}"))
+        k += 1
+      }
+      pairRows.clear()
+    }
+
     override def finish(): Unit = {
       rightSource.close
     }
@@ -259,54 +292,81 @@ object GtLDAnalysis {
 
   case class LDstats(g00 : Int, g10 : Int, g20 : Int, g01 : Int, g11 :Int, g21 : Int, g02 : Int, g12 : Int, g22 : Int)
 
-  def LDstatCalc(a : String, b : String) : LDstats = {
-    var i = 0
+  /**
+    * The genotype values of a variant as bitplanes, bit i of g0, g1 and g2 is set when value i is '0', '1' or '2'.
+    * Any other value, e.g. a missing call, sets no bit.
+    */
+  case class LDgenotypes(length: Int, g0: Array[Long], g1: Array[Long], g2: Array[Long])
+
+  def LDencode(values: CharSequence): LDgenotypes = {
+    val length = values.length
+    val words = (length + 63) >>> 6
+    val g0 = new Array[Long](words)
+    val g1 = new Array[Long](words)
+    val g2 = new Array[Long](words)
+    var w = 0
+    while (w < words) {
+      var b0 = 0L; var b1 = 0L; var b2 = 0L
+      var i = w << 6
+      val end = math.min(length, i + 64)
+      while (i < end) {
+        val c = values.charAt(i)
+        if (c == '0') b0 |= 1L << i
+        else if (c == '1') b1 |= 1L << i
+        else if (c == '2') b2 |= 1L << i
+        i += 1
+      }
+      g0(w) = b0; g1(w) = b1; g2(w) = b2
+      w += 1
+    }
+    LDgenotypes(length, g0, g1, g2)
+  }
+
+  /**
+    * The encoded genotypes of a row. Rows from the LD self-join window carry them in their type holder, other rows
+    * are encoded on first use and keep them so a buffered right row is only encoded once.
+    */
+  def genotypesOf(r: Row, valuesCol: Int): LDgenotypes = r.bH match {
+    case h: typeHolder if h.genotypes != null => h.genotypes
+    case null =>
+      val g = LDencode(r.colAsString(valuesCol))
+      r.bH = typeHolder('R', g)
+      g
+    case _ => LDencode(r.colAsString(valuesCol))
+  }
+
+  def LDstatCalc(a : String, b : String) : LDstats = LDstatCalc(LDencode(a), LDencode(b))
+
+  def LDstatCalc(a : LDgenotypes, b : LDgenotypes) : LDstats = {
+    if (b.length < a.length) {
+      throw new GorDataException("Genotype values of length " + b.length + " can not be compared with values of length " + a.length)
+    }
     var g00 = 0; var g10 = 0; var g20 = 0;
     var g01 = 0; var g11 = 0; var g21 = 0;
     var g02 = 0; var g12 = 0; var g22 = 0;
 
-    while (i < a.length) {
-      if (a(i) == '0') {
-        if (b(i) == '0') {
-          g00 += 1
-        } else if (b(i)=='1') {
-          g01 += 1
-        } else if (b(i)=='2') {
-          g02 += 1
-        }
-      } else if (a(i)=='1') {
-        if (b(i) == '0') {
-          g10 += 1
-        } else if (b(i)=='1') {
-          g11 += 1
-        } else if (b(i)=='2') {
-          g12 += 1
-        }
-      } else if (a(i)=='2') {
-        if (b(i) == '0') {
-          g20 += 1
-        } else if (b(i)=='1') {
-          g21 += 1
-        } else if (b(i)=='2') {
-          g22 += 1
-        }
-      }
-      i += 1
+    // Values of b beyond the length of a are ignored, the planes of a have no bits set there
+    var w = 0
+    while (w < a.g0.length) {
+      val a0 = a.g0(w); val a1 = a.g1(w); val a2 = a.g2(w)
+      val b0 = b.g0(w); val b1 = b.g1(w); val b2 = b.g2(w)
+      g00 += java.lang.Long.bitCount(a0 & b0); g01 += java.lang.Long.bitCount(a0 & b1); g02 += java.lang.Long.bitCount(a0 & b2)
+      g10 += java.lang.Long.bitCount(a1 & b0); g11 += java.lang.Long.bitCount(a1 & b1); g12 += java.lang.Long.bitCount(a1 & b2)
+      g20 += java.lang.Long.bitCount(a2 & b0); g21 += java.lang.Long.bitCount(a2 & b1); g22 += java.lang.Long.bitCount(a2 & b2)
+      w += 1
     }
     LDstats(g00,g10,g20,g01,g11,g21,g02,g12,g22)
   }
 
 
-  case class typeHolder(var rowType: Char) extends BinaryHolder
+  case class typeHolder(var rowType: Char, genotypes: LDgenotypes = null) extends BinaryHolder
 
   case class LDSelfJoinFactory(missingSEG: String, fuzz: Int, req: List[Int], otherCols: List[Int], valuesCol : Int, useOnlyAsLeftVar: Int) extends BinFactory {
     def create: BinState = LDSelfJoinState(missingSEG, fuzz, req, otherCols, valuesCol, useOnlyAsLeftVar)
   }
 
-  case class LDSelfJoinRowHandler(binsize: Int, fuzz: Int, binN: Int) extends RowHandler {
+  case class LDSelfJoinRowHandler(binsize: Int, fuzz: Int, binN: Int, valuesCol: Int) extends RowHandler {
     val binIDgen = RegularBinIDgen(binsize)
-    val leftType = typeHolder('L') // This object is used to denote left-row when it is received in SelfJoinState
-    val rightType = typeHolder('R') // This object is used to denote right-row
 
     def process(r: Row, BA: BinAggregator): Unit = {
       val chr = r.chr
@@ -314,10 +374,12 @@ object GtLDAnalysis {
 
       var binID = binIDgen.ID(pos)
       val (sta, sto) = binIDgen.StartAndStop(binID)
-      r.bH = leftType
+      // The genotypes are encoded once here and shared by the left- and right-row use of the variant in every bin
+      val rowType = typeHolder('L', LDencode(r.colAsString(valuesCol)))
+      r.bH = rowType
       BA.update(r, binID, chr, sta, sto)
 
-      r.bH = rightType
+      rowType.rowType = 'R'
       val start = if (pos > fuzz) pos - fuzz else 0
       val stop = pos + fuzz
       val binIDstart = binIDgen.ID(start)
@@ -361,7 +423,7 @@ object GtLDAnalysis {
              rr <- rRows.reverse) {
           if (nextProcessor.wantsNoMore) return
           if (rr.pos - fuzz - 1 < lr.pos && lr.pos <= rr.pos + fuzz && (noEquijoin || rr.selectedColumns(req) == lr.selectedColumns(req))) {
-              val LDs = LDstatCalc(lr.colAsString(valuesCol).toString, rr.colAsString(valuesCol).toString)
+              val LDs = LDstatCalc(genotypesOf(lr, valuesCol), genotypesOf(rr, valuesCol))
               val r = RowObj(s"${lr.chr}\t${lr.pos}\t${lr.selectedColumns(otherCols)}\t${rr.pos - lr.pos}\t${rr.pos}\t${rr.selectedColumns(otherCols)}\t${LDs.g00}\t${LDs.g10}\t${LDs.g20}\t${LDs.g01}\t${LDs.g11}\t${LDs.g21}\t${LDs.g02}\t${LDs.g12}\t${LDs.g22}")
               nextProcessor.process(r)
           }
@@ -381,7 +443,7 @@ object GtLDAnalysis {
   }
 
   case class LDSelfJoinAnalysis(binSize: Int, missingSEG: String, fuzz: Int, req: List[Int], otherCols : List[Int], valuesCol : Int, useOnlyAsLeftVar: Int, binN: Int) extends
-    BinAnalysis(LDSelfJoinRowHandler(binSize, fuzz, binN), BinAggregator(LDSelfJoinFactory(missingSEG, fuzz, req, otherCols, valuesCol, useOnlyAsLeftVar), binN + 10, binN)) {
+    BinAnalysis(LDSelfJoinRowHandler(binSize, fuzz, binN, valuesCol), BinAggregator(LDSelfJoinFactory(missingSEG, fuzz, req, otherCols, valuesCol, useOnlyAsLeftVar), binN + 10, binN)) {
   }
 
   def fd(d: Double): String = ("%6.4f".format(d)).replace(',', '.')
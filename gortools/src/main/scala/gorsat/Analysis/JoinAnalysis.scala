@@ -29,33 +29,120 @@ import gorsat.Iterators.{ChromBoundedIteratorSource, SingleFileSource}
 import gorsat.Utilities.IteratorUtilities
 import gorsat.gorsatGorIterator.MemoryMonitorUtil
 import gorsat.process.SourceProvider
-import gorsat.Analysis
+import gorsat.{Analysis, SeekCostModel}
 import org.gorpipe.exceptions.{GorDataException, GorParsingException}
 import org.gorpipe.gor.GorConstants
-import org.gorpipe.gor.model.{GenomicIterator, Row}
+import org.gorpipe.gor.model.{GenomicIterator, Row, SegmentIndex}
 import org.gorpipe.gor.session.GorContext
+import org.gorpipe.gor.util.DataUtil
 import org.gorpipe.model.gor.RowObj
 import org.slf4j.LoggerFactory
 
+import java.util.concurrent.ConcurrentHashMap
+
 import scala.collection.mutable.ListBuffer
 
 object  JoinAnalysis {
 
   private val logger = LoggerFactory.getLogger(this.getClass)
 
+  // Maximum number of rows scanned when building a segment index for a file without one
+  private val segmentIndexScanRows = Integer.getInteger("gor.join.segindex.scanrows", 10000000)
+  private val segmentIndexCacheSize = Integer.getInteger("gor.join.segindex.cachesize", 256)
+  // Segment indices of plain files shared by all sessions, keyed by file signature
+  private val segmentIndexCache = new ConcurrentHashMap[String, SegmentIndex]()
+  // Maximum number of right-source rows read through to reach a position instead of seeking
+  private val maxScanRows = Integer.getInteger("gor.join.maxscanrows", 10000)
+
   case class ParameterHolder(varsegleft: Boolean, varsegright: Boolean, lref: Int, rref: Int, negjoin: Boolean, caseInsensitive: Boolean, ic: Boolean, ir: Boolean)
 
+  /**
+    * Buffer of right-source segments in the order they are read, i.e. ordered by chromosome and start. Segments are
+    * removed by clearing their slot, cleared slots at the front are skipped and the buffer is compacted once more
+    * than half of it is cleared, so removing segments behind a long one does not cost a copy of the whole buffer.
+    */
+  class SegmentBuffer {
+    var buffer = new Array[SEGinfo](16)
+    // Index of the first used slot
+    var first = 0
+    // Index after the last used slot
+    var end = 0
+    // Number of cleared slots between first and end
+    private var cleared = 0
+
+    def size: Int = end - first - cleared
+
+    def isEmpty: Boolean = size == 0
+
+    def add(seg: SEGinfo): Unit = {
+      if (end == buffer.length) {
+        if (2 * size <= buffer.length) {
+          compact()
+        } else {
+          val grown = new Array[SEGinfo](2 * buffer.length)
+          System.arraycopy(buffer, 0, grown, 0, end)
+          buffer = grown
+        }
+      }
+      buffer(end) = seg
+      end += 1
+    }
+
+    def remove(i: Int): Unit = {
+      buffer(i) = null
+      cleared += 1
+    }
+
+    /**
+      * Skip cleared slots at the front and compact the buffer if it is mostly cleared.
+      */
+    def trim(): Unit = {
+      while (first < end && buffer(first) == null) {
+        first += 1
+        cleared -= 1
+      }
+      if (first == end) {
+        first = 0
+        end = 0
+      } else if (cleared > 16 && 2 * cleared > end - first) {
+        compact()
+      }
+    }
+
+    private def compact(): Unit = {
+      var j = 0
+      var i = first
+      while (i < end) {
+        val seg = buffer(i)
+        if (seg != null) {
+          buffer(j) = seg
+          j += 1
+        }
+        i += 1
+      }
+      i = j
+      while (i < end) {
+        buffer(i) = null
+        i += 1
+      }
+      first = 0
+      end = j
+      cleared = 0
+    }
+  }
+
   case class SegOverlap(ph: ParameterHolder, inRightSource: GenomicIterator, missingSeg: String, leftJoin: Boolean, fuzzFactor: Int, iJoinType: String,
-                        lstop: Int, rstop: Int, lleq: List[Int], lreq: List[Int], maxSegSize: Int, plain: Boolean, inclusOnly: Boolean = false) extends Analysis {
+                        lstop: Int, rstop: Int, lleq: List[Int], lreq: List[Int], maxSegSize: Int, plain: Boolean, inclusOnly: Boolean = false,
+                        segmentIndex: SegmentIndex = null) extends Analysis {
 
     var rightSource = new ChromBoundedIteratorSource(inRightSource)
     var rightSourceMonitorUtil: MemoryMonitorUtil = if (MemoryMonitorUtil.memoryMonitorActive) new MemoryMonitorUtil(MemoryMonitorUtil.basicOutOfMemoryHandler) else null
-    type myRowBufferType = scala.collection.mutable.ArrayBuffer[SEGinfo]
     var lastRightChr: String = GorConstants.FIRST_POSSIBLE_CHROMOSOME_VALUE
     var lastRightPos = 0
     var maxLeftStop: Int = -1
     var lastLeftChr: String = GorConstants.FIRST_POSSIBLE_CHROMOSOME_VALUE
     var lastSeekChr: String = GorConstants.FIRST_POSSIBLE_CHROMOSOME_VALUE
+    val seekCost = new SeekCostModel
 
     var joinType: String = iJoinType
 
@@ -105,11 +192,7 @@ object  JoinAnalysis {
     var ovlaps = 0
 
     case class GroupHolder() {
-      val rowBuffer = new Array[myRowBufferType](2)
-      rowBuffer(0) = new myRowBufferType
-      rowBuffer(1) = new myRowBufferType
-      var buffer = 0
-      var bufferSize = 0
+      val segments = new SegmentBuffer
     }
 
     var singleGroupHolder = GroupHolder()
@@ -158,6 +241,43 @@ object  JoinAnalysis {
       ovlaps += 1
     }
 
+    /**
+      * The right-source position to read from to find all segments overlapping the left row. Without a segment
+      * index the right source is rewound by the maximum segment size.
+      */
+    def rightSeekPosition(lr: Row): Int = {
+      if (segmentIndex != null) segmentIndex.seekPosition(lr.chr, lr.pos - fuzzFactor)
+      else (lr.pos - fuzzFactor - maxSegSize).max(0)
+    }
+
+    def seekRightSource(chr: String, pos: Int, sameChr: Boolean): Unit = {
+      val t = System.nanoTime()
+      if (sameChr) rightSource.moveToPosition(chr, pos) else rightSource.seek(chr, pos)
+      rightSource.hasNext
+      seekCost.recordSeek(System.nanoTime() - t)
+    }
+
+    /**
+      * Move the right source forward on the current chromosome, either by reading through the rows in between or by
+      * seeking, whichever is expected to be cheaper from the seek latency and read speed measured so far.
+      */
+    def moveRightSource(chr: String, pos: Int): Unit = {
+      val distance = pos - lastRightPos
+      if (seekCost.preferScan(distance, rightSource.getAvgSeekTimeMilliSecond, rightSource.getAvgBasesPerMilliSecond)) {
+        val t = System.nanoTime()
+        val nextRow = rightSource.skipTo(chr, pos, maxScanRows)
+        val elapsed = System.nanoTime() - t
+        if (nextRow == null || nextRow.chr > chr || nextRow.pos >= pos) {
+          seekCost.recordScan(distance, elapsed)
+        } else {
+          seekCost.recordScan(nextRow.pos - lastRightPos, elapsed)
+          seekRightSource(chr, pos, sameChr = true)
+        }
+      } else {
+        seekRightSource(chr, pos, sameChr = true)
+      }
+    }
+
     def nested_process(lr: Row, next_lr: Row): Unit = {
 
       if (segseg || segsnp) {
@@ -202,31 +322,32 @@ object  JoinAnalysis {
         gr = singleGroupHolder
       }
 
-      val nextBuffer = (gr.buffer + 1) % 2
-      var nextBufferSize = 0
-      var i = 0
-      while (i < gr.bufferSize) {
-        val rSeg = gr.rowBuffer(gr.buffer)(i)
-        val rr = rSeg.r
-        var use_row_again = true
-        if (lr.chr == rr.chr && lSeg.start - fuzzFactor < rSeg.stop && lSeg.stop + fuzzFactor > rSeg.start) {
-          output_row(lSeg, rSeg)
-          if (ir) use_row_again = false
-        }
-        if (!((rr.chr == lr.chr && rSeg.stop + fuzzFactor < lSeg.start) || rr.chr < lr.chr) && use_row_again) {
-          if (gr.rowBuffer(nextBuffer).size <= nextBufferSize) {
-            gr.rowBuffer(nextBuffer) += gr.rowBuffer(gr.buffer)(i)
+      // The buffer is ordered by start, so only the segments starting before the end of the left row are visited.
+      // Those that end before it are dropped, the rest can not have ended since the left row starts are increasing.
+      val segments = gr.segments
+      val buffer = segments.buffer
+      var i = segments.first
+      var moreOverlaps = true
+      while (moreOverlaps && i < segments.end) {
+        val rSeg = buffer(i)
+        if (rSeg != null) {
+          val rr = rSeg.r
+          if (rr.chr > lr.chr || (rr.chr == lr.chr && lSeg.stop + fuzzFactor <= rSeg.start)) {
+            moreOverlaps = false
           } else {
-            gr.rowBuffer(nextBuffer)(nextBufferSize) = gr.rowBuffer(gr.buffer)(i)
+            var use_row_again = true
+            if (lr.chr == rr.chr && lSeg.start - fuzzFactor < rSeg.stop) {
+              output_row(lSeg, rSeg)
+              if (ir) use_row_again = false
+            }
+            if ((rr.chr == lr.chr && rSeg.stop + fuzzFactor < lSeg.start) || rr.chr < lr.chr || !use_row_again) {
+              segments.remove(i)
+            }
           }
-          gr.rowBuffer(gr.buffer)(i) = null
-          nextBufferSize += 1
         }
         i += 1
       }
-
-      gr.buffer = nextBuffer
-      gr.bufferSize = nextBufferSize
+      segments.trim()
 
 
       //##########
@@ -237,18 +358,10 @@ object  JoinAnalysis {
           /* do nothing */
         }
         else if (lr.chr > lastRightChr) {
-          if (snpsnp || segsnp) {
-            rightSource.seek(lr.chr, (lr.pos - fuzzFactor - maxSegSize).max(0))
-          } else {
-            rightSource.seek(lr.chr, (lr.pos - fuzzFactor - maxSegSize).max(0))
-          }
+          seekRightSource(lr.chr, rightSeekPosition(lr), sameChr = false)
           lastSeekChr = lr.chr
-        } else if (lr.chr == lastRightChr && lr.pos - fuzzFactor - maxSegSize > lastRightPos) {
-          if (snpsnp || segsnp) {
-            rightSource.moveToPosition(lr.chr, (lr.pos - fuzzFactor - maxSegSize).max(0))
-          } else {
-            rightSource.moveToPosition(lr.chr, lr.pos - fuzzFactor - maxSegSize)
-          }
+        } else if (lr.chr == lastRightChr && rightSeekPosition(lr) > lastRightPos) {
+          moveRightSource(lr.chr, rightSeekPosition(lr))
           lastSeekChr = lr.chr
         }
         var keepOn = true
@@ -312,8 +425,7 @@ object  JoinAnalysis {
 
           if (use_row_again && (next_lr != null && ((rr.chr == next_lr.chr && rightStop >= next_leftStart - fuzzFactor) || rr.chr >= next_lr.chr))) {
             // Only insert row to buffer if overlap with next row
-            if (gr.rowBuffer(gr.buffer).size <= gr.bufferSize) gr.rowBuffer(gr.buffer) += rSeg else gr.rowBuffer(gr.buffer)(gr.bufferSize) = rSeg
-            gr.bufferSize += 1
+            gr.segments.add(rSeg)
           }
           if (rr.chr > lr.chr || (rr.chr == lr.chr && rightStart > leftStop + fuzzFactor)) keepOn = false // Continue until there is no overlap with the left-seg
         }
@@ -338,27 +450,18 @@ object  JoinAnalysis {
       groupClean += 1
       if (groupClean == 100000 && useGroup && groupMap.size > 1) {
         groupMap.keys.foreach(k => {
-          val gr = groupMap(k)
-          val nextBuffer = (gr.buffer + 1) % 2
-          var nextBufferSize = 0
-          var i = 0
-          while (i < gr.bufferSize) {
-            val rSeg = gr.rowBuffer(gr.buffer)(i)
-            val rr = rSeg.r
-            if (!((rr.chr == lr.chr && rSeg.stop + fuzzFactor < lSeg.start) || rr.chr < lr.chr)) {
-              if (gr.rowBuffer(nextBuffer).size <= nextBufferSize) {
-                gr.rowBuffer(nextBuffer) += gr.rowBuffer(gr.buffer)(i)
-              } else {
-                gr.rowBuffer(nextBuffer)(nextBufferSize) = gr.rowBuffer(gr.buffer)(i)
-              }
-              gr.rowBuffer(gr.buffer)(i) = null
-              nextBufferSize += 1
+          val segments = groupMap(k).segments
+          var i = segments.first
+          while (i < segments.end) {
+            val rSeg = segments.buffer(i)
+            if (rSeg != null) {
+              val rr = rSeg.r
+              if ((rr.chr == lr.chr && rSeg.stop + fuzzFactor < lSeg.start) || rr.chr < lr.chr) segments.remove(i)
             }
             i += 1
           }
-          gr.buffer = nextBuffer
-          gr.bufferSize = nextBufferSize
-          if (nextBufferSize == 0) {
+          segments.trim()
+          if (segments.isEmpty) {
             groupMap.remove(k)
           }
         })
@@ -389,13 +492,15 @@ object  JoinAnalysis {
   }
 
   case class SegJoinSegOverlap(ph: ParameterHolder, rightSource: GenomicIterator, missingB: String, leftJoin: Boolean, fuzz: Int,
-                               lstop: Int, rstop: Int, leq: List[Int], req: List[Int], maxSegSize: Int, plain: Boolean) extends Analysis {
-    this | SegOverlap(ph, rightSource, missingB, leftJoin, fuzz, "segseg", lstop, rstop, leq, req, maxSegSize, plain)
+                               lstop: Int, rstop: Int, leq: List[Int], req: List[Int], maxSegSize: Int, plain: Boolean,
+                               segmentIndex: SegmentIndex = null) extends Analysis {
+    this | SegOverlap(ph, rightSource, missingB, leftJoin, fuzz, "segseg", lstop, rstop, leq, req, maxSegSize, plain, segmentIndex = segmentIndex)
   }
 
   case class SegJoinSegOverlapInclusOnly(ph: ParameterHolder, rightSource: GenomicIterator, missingB: String, leftJoin: Boolean, fuzz: Int,
-                                         lstop: Int, rstop: Int, leq: List[Int], req: List[Int], maxSegSize: Int) extends Analysis {
-    this | SegOverlap(ph, rightSource, missingB, leftJoin, fuzz, "segseg", lstop, rstop, leq, req, maxSegSize, plain = false, inclusOnly = true)
+                                         lstop: Int, rstop: Int, leq: List[Int], req: List[Int], maxSegSize: Int,
+                                         segmentIndex: SegmentIndex = null) extends Analysis {
+    this | SegOverlap(ph, rightSource, missingB, leftJoin, fuzz, "segseg", lstop, rstop, leq, req, maxSegSize, plain = false, inclusOnly = true, segmentIndex = segmentIndex)
   }
 
   case class SegJoinSnpOverlap(ph: ParameterHolder, rightSource: GenomicIterator, missingB: String, leftJoin: Boolean, fuzz: Int,
@@ -409,13 +514,15 @@ object  JoinAnalysis {
   }
 
   case class SnpJoinSegOverlap(ph: ParameterHolder, rightSource: GenomicIterator, missingB: String, leftJoin: Boolean, fuzz: Int,
-                               rstop: Int, leq: List[Int], req: List[Int], maxSegSize: Int, plain: Boolean) extends Analysis {
-    this | SegOverlap(ph, rightSource, missingB, leftJoin, fuzz, "snpseg", 2, rstop, leq, req, maxSegSize, plain)
+                               rstop: Int, leq: List[Int], req: List[Int], maxSegSize: Int, plain: Boolean,
+                               segmentIndex: SegmentIndex = null) extends Analysis {
+    this | SegOverlap(ph, rightSource, missingB, leftJoin, fuzz, "snpseg", 2, rstop, leq, req, maxSegSize, plain, segmentIndex = segmentIndex)
   }
 
   case class SnpJoinSegOverlapInclusOnly(ph: ParameterHolder, rightSource: GenomicIterator, missingB: String, leftJoin: Boolean, fuzz: Int,
-                                         rstop: Int, leq: List[Int], req: List[Int], maxSegSize: Int) extends Analysis {
-    this | SegOverlap(ph, rightSource, missingB, leftJoin, fuzz, "snpseg", 2, rstop, leq, req, maxSegSize, plain = false, inclusOnly = true)
+                                         rstop: Int, leq: List[Int], req: List[Int], maxSegSize: Int,
+                                         segmentIndex: SegmentIndex = null) extends Analysis {
+    this | SegOverlap(ph, rightSource, missingB, leftJoin, fuzz, "snpseg", 2, rstop, leq, req, maxSegSize, plain = false, inclusOnly = true, segmentIndex = segmentIndex)
   }
 
   case class SnpJoinSnpOverlap(ph: ParameterHolder, rightSource: GenomicIterator, missingB: String, leftJoin: Boolean, fuzz: Int,
@@ -583,8 +690,10 @@ object  JoinAnalysis {
     val ph = ParameterHolder(hasOption(args, "-varseg"), hasOption(args, "-segvar"), lRef, rRef, hasOption(args, "-n"), hasOption(args, "-xcis"), hasOption(args, "-ic"), hasOption(args, "-ir"))
 
     try {
+      var segmentIndex: SegmentIndex = null
       if (!isSourceSet && !hasOption(args, "-maxseg") && !(hasOption(args, "-snpsnp") || hasOption(args, "-segsnp") || hasOption(args, "-segvar"))) { // check the size of segments if maxseg is not specified
-        maxSegSize = getFileMaxSegSize(rightFile, lstop, context)
+        segmentIndex = getFileSegmentIndex(rightFile, rstop, context)
+        maxSegSize = segmentIndex.getMaxSegSize
       }
 
 
@@ -654,9 +763,9 @@ object  JoinAnalysis {
         doLeftJoin = true
 
         if (joinType == "segseg") {
-          aPipeStep = SegJoinSegOverlap(ph, segSource, missPatt, doLeftJoin, fuzzFactor, lstop, rstop, leq, req, maxSegSize, plain) // | NegFilter(noCols, missPatt)
+          aPipeStep = SegJoinSegOverlap(ph, segSource, missPatt, doLeftJoin, fuzzFactor, lstop, rstop, leq, req, maxSegSize, plain, segmentIndex = segmentIndex) // | NegFilter(noCols, missPatt)
         } else if (joinType == "snpseg") {
-          aPipeStep = SnpJoinSegOverlap(ph, segSource, missPatt, doLeftJoin, fuzzFactor, rstop, leq, req, maxSegSize, plain) // | NegFilter(noCols, missPatt)
+          aPipeStep = SnpJoinSegOverlap(ph, segSource, missPatt, doLeftJoin, fuzzFactor, rstop, leq, req, maxSegSize, plain, segmentIndex = segmentIndex) // | NegFilter(noCols, missPatt)
         } else if (joinType == "segsnp") {
           aPipeStep = SegJoinSnpOverlap(ph, segSource, missPatt, doLeftJoin, fuzzFactor, lstop, leq, req, maxSegSize, plain) // | NegFilter(noCols, missPatt)
         } else if (joinType == "snpsnp") {
@@ -666,19 +775,19 @@ object  JoinAnalysis {
 
         if (joinType == "segseg") {
           if (inclusOnly) {
-            aPipeStep = SegJoinSegOverlapInclusOnly(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, lstop, rstop, leq, req, maxSegSize)
+            aPipeStep = SegJoinSegOverlapInclusOnly(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, lstop, rstop, leq, req, maxSegSize, segmentIndex = segmentIndex)
           } else if (onlyMin) {
             if (useToList) {
-              aPipeStep = SegJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, lstop, rstop, leq, req, maxSegSize, plain) | NClosest(groupCols, nClos) | ToList(groupCols, useCount)
+              aPipeStep = SegJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, lstop, rstop, leq, req, maxSegSize, plain, segmentIndex = segmentIndex) | NClosest(groupCols, nClos) | ToList(groupCols, useCount)
             } else {
-              aPipeStep = SegJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, lstop, rstop, leq, req, maxSegSize, plain) | NClosest(groupCols, nClos)
+              aPipeStep = SegJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, lstop, rstop, leq, req, maxSegSize, plain, segmentIndex = segmentIndex) | NClosest(groupCols, nClos)
             }
           } else {
             if (useToList) {
-              aPipeStep = SegJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, lstop, rstop, leq, req, maxSegSize, plain) | Analysis.ToList(groupCols, useCount)
+              aPipeStep = SegJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, lstop, rstop, leq, req, maxSegSize, plain, segmentIndex = segmentIndex) | Analysis.ToList(groupCols, useCount)
             }
             else {
-              aPipeStep = SegJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, lstop, rstop, leq, req, maxSegSize, plain)
+              aPipeStep = SegJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, lstop, rstop, leq, req, maxSegSize, plain, segmentIndex = segmentIndex)
             }
           }
         } else if (joinType == "segsnp") {
@@ -701,18 +810,18 @@ object  JoinAnalysis {
 
         } else if (joinType == "snpseg") {
           if (inclusOnly) {
-            aPipeStep = SnpJoinSegOverlapInclusOnly(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, rstop, leq, req, maxSegSize)
+            aPipeStep = SnpJoinSegOverlapInclusOnly(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, rstop, leq, req, maxSegSize, segmentIndex = segmentIndex)
           } else if (onlyMin) {
             if (useToList) {
-              aPipeStep = SnpJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, rstop, leq, req, maxSegSize, plain) | NClosest(groupCols, nClos) | Analysis.ToList(groupCols, useCount)
+              aPipeStep = SnpJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, rstop, leq, req, maxSegSize, plain, segmentIndex = segmentIndex) | NClosest(groupCols, nClos) | Analysis.ToList(groupCols, useCount)
             } else {
-              aPipeStep = SnpJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, rstop, leq, req, maxSegSize, plain) | NClosest(groupCols, nClos)
+              aPipeStep = SnpJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, rstop, leq, req, maxSegSize, plain, segmentIndex = segmentIndex) | NClosest(groupCols, nClos)
             }
           } else {
             if (useToList) {
-              aPipeStep = SnpJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, rstop, leq, req, maxSegSize, plain) | Analysis.ToList(groupCols, useCount)
+              aPipeStep = SnpJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, rstop, leq, req, maxSegSize, plain, segmentIndex = segmentIndex) | Analysis.ToList(groupCols, useCount)
             } else {
-              aPipeStep = SnpJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, rstop, leq, req, maxSegSize, plain)
+              aPipeStep = SnpJoinSegOverlap(ph, segSource, missingSEG, doLeftJoin, fuzzFactor, rstop, leq, req, maxSegSize, plain, segmentIndex = segmentIndex)
             }
           }
 
@@ -746,29 +855,63 @@ object  JoinAnalysis {
     }
   } // end processArguments
 
-  def getFileMaxSegSize(extFilename: String, lStop: Int, context: GorContext): Int = synchronized {
-    Option(context.getSession.getCache.getFileSegMap.get(extFilename)) match {
-      case Some(theSize) => return theSize
-      case None =>
-        var maxSegSize = 0
-        val segSource = new SingleFileSource(extFilename, context.getSession.getProjectContext.getRoot, context)
-        try {
-          var counter = 0
-          while (segSource.hasNext && counter < 10000000) {
-            val r = segSource.next()
-            val segSize = r.colAsInt(lStop) - r.pos
-            maxSegSize = maxSegSize.max(segSize)
-            counter += 1
-          }
-        } catch {
-          case e: Exception =>
-            throw new RuntimeException("Error in estimating the segment size in file: " + extFilename, e)
-        }
-        finally {
-          segSource.close()
-        }
-        context.getSession.getCache.getFileSegMap.put(extFilename, maxSegSize)
-        return maxSegSize
+  /**
+    * Get the segment index of a join right-source file. The index is read from the sidecar written with the file if
+    * there is one, otherwise it is built by scanning the file and cached.
+    */
+  def getFileSegmentIndex(extFilename: String, rStop: Int, context: GorContext): SegmentIndex = {
+    val sessionCache = context.getSession.getCache.getFileSegMap
+    val sessionKey = extFilename + "\t" + rStop
+    val cached = sessionCache.get(sessionKey)
+    if (cached != null) return cached
+
+    // Source options such as -s only filter rows, the index of the whole file is still a safe bound
+    val fileName = extFilename.trim.split("\\s+")(0)
+    val fileReader = context.getSession.getProjectContext.getFileReader
+    val plainFile = DataUtil.isGorz(fileName) || DataUtil.isGor(fileName)
+    var sharedKey: String = null
+    var index: SegmentIndex = null
+    if (plainFile) {
+      try {
+        sharedKey = fileName + "\t" + rStop + "\t" + fileReader.getFileSignature(fileName)
+        index = segmentIndexCache.get(sharedKey)
+        if (index == null) index = SegmentIndex.load(fileReader, fileName, rStop)
+      } catch {
+        case e: Exception =>
+          logger.debug("Unable to resolve signature of " + fileName, e)
+          sharedKey = null
+      }
+    }
+    if (index == null) index = scanSegmentIndex(extFilename, rStop, context)
+
+    if (sharedKey != null) {
+      if (segmentIndexCache.size >= segmentIndexCacheSize) segmentIndexCache.clear()
+      segmentIndexCache.put(sharedKey, index)
+    }
+    sessionCache.put(sessionKey, index)
+    index
+  }
+
+  private def scanSegmentIndex(extFilename: String, rStop: Int, context: GorContext): SegmentIndex = {
+    val index = new SegmentIndex(rStop)
+    val segSource = new SingleFileSource(extFilename, context.getSession.getProjectContext.getRoot, context)
+    try {
+      var counter = 0
+      var lastChr: String = null
+      while (segSource.hasNext && counter < segmentIndexScanRows) {
+        val r = segSource.next()
+        index.add(r)
+        lastChr = r.chr
+        counter += 1
+      }
+      if (segSource.hasNext) index.markPartial(lastChr)
+    } catch {
+      case e: Exception =>
+        throw new RuntimeException("Error in estimating the segment size in file: " + extFilename, e)
+    }
+    finally {
+      segSource.close()
     }
+    index
   }
-}
\ No newline at end of file
+}
@@ -23,58 +23,44 @@
 package gorsat.Analysis
 
 import gorsat.Regression.LinearRegression
-import org.gorpipe.gor.model.Row
+import org.gorpipe.gor.model.{Row, RowBuilder}
 import org.gorpipe.gor.session.GorSession
-import org.gorpipe.model.gor.RowObj
+import org.gorpipe.util.NumericUtils
+
+import scala.collection.mutable.ArrayBuffer
 
 class LinearRegressionAnalysis(lookUpSignature: String, session: GorSession, valCol: Int, sepVal: Option[String], imputed: Boolean, phenoFile: String, covarFile: Option[String])
   extends RegressionAnalysis[Double](lookUpSignature, session, valCol, sepVal, imputed, phenoFile, covarFile) {
 
-  var linRegObjects: Array[LinearRegression] =_
-
-  override def setup(): Unit = {
-    super.setup()
-    linRegObjects = Array.tabulate(ri.phenoNames.length)(_ => new LinearRegression(ri.size, ri.betaLength - 1))
-  }
-
-  override def process(r: Row): Unit = {
-    val values = r.colAsString(valCol).toString
-    r.removeColumn(valCol)
-    val baseColumnsAsString = r.toString
+  // The QR factorization is done in place, overwriting the covariate columns and the phenotypes
+  override protected def reusesCovariates: Boolean = false
 
-    val genoType = ri.genos
-    val filter = ri.genoFilter
+  override protected def createWorker(): RegressionWorker = new LinearRegressionWorker
 
-    setGenotypesAndFilter(values, genoType, filter)
-
-    ri.phenoTable.zipWithIndex.map({ case (phenos, idx) =>
-      val (x, y, numberOfSamples) = setupRegressionData(genoType, filter, phenos, idx)
+  class LinearRegressionWorker extends RegressionWorker {
+    val linRegObjects: Array[LinearRegression] = Array.tabulate(ri.phenoNames.length)(_ => new LinearRegression(ri.size, ri.betaLength - 1))
 
+    override protected def fit(idx: Int, numberOfSamples: Int, covariatesUnchanged: Boolean, baseAndPhenoColumns: String, out: ArrayBuffer[Row]): Unit = {
       val linRegObj = linRegObjects(idx)
-      linRegObj.setData(x, numberOfSamples)
-      linRegObj.runRegression(y)
-
-      val baseAndPhenoColumns = baseColumnsAsString + "\t" + ri.phenoNames(idx)
-      writeOut(baseAndPhenoColumns, linRegObj)
-    }).foreach(outRows => outRows.foreach(outRow => nextProcessor.process(outRow)))
+      linRegObj.setData(xs(idx), numberOfSamples)
+      linRegObj.runRegression(ys(idx))
+      writeOut(baseAndPhenoColumns, linRegObj, out, rowBuilder)
+    }
   }
 
-  private def writeOut(baseAndPhenoColumns: String, linRegObj: LinearRegression): Iterable[Row] = {
-    ri.betaNames.zipWithIndex.map({
-      case (name, idx) =>
-        val lineBuilder = new StringBuilder(baseAndPhenoColumns)
-        lineBuilder.append('\t')
-        lineBuilder.append(name)
-        lineBuilder.append('\t')
-        lineBuilder.append("%.5g".format(linRegObj.beta(idx)))
-        lineBuilder.append('\t')
-        lineBuilder.append("%.5g".format(linRegObj.betaError(idx)))
-        lineBuilder.append('\t')
-        lineBuilder.append("%.5g".format(linRegObj.tStats(idx)))
-        lineBuilder.append('\t')
-        lineBuilder.append("%.5g".format(linRegObj.pValues(idx)))
-        RowObj.apply(lineBuilder)
-    })
+  private def writeOut(baseAndPhenoColumns: String, linRegObj: LinearRegression, out: ArrayBuffer[Row], rowBuilder: RowBuilder): Unit = {
+    // The base and phenotype columns are written once and shared by the rows of all betas
+    val baseColumns = rowBuilder.clear().addColumns(baseAndPhenoColumns).numColumns()
+    var idx = 0
+    while (idx < ri.betaNames.length) {
+      rowBuilder.truncate(baseColumns).add(ri.betaNames(idx))
+      NumericUtils.appendGeneralFormat(rowBuilder.column(), linRegObj.beta(idx), 5)
+      NumericUtils.appendGeneralFormat(rowBuilder.column(), linRegObj.betaError(idx), 5)
+      NumericUtils.appendGeneralFormat(rowBuilder.column(), linRegObj.tStats(idx), 5)
+      NumericUtils.appendGeneralFormat(rowBuilder.column(), linRegObj.pValues(idx), 5)
+      out += rowBuilder.build()
+      idx += 1
+    }
   }
 
   override def parsePhenoValue(s: String): (Double, Boolean) = {
@@ -23,60 +23,47 @@
 package gorsat.Analysis
 
 import gorsat.Regression.LogisticRegression
-import org.gorpipe.gor.model.Row
+import org.gorpipe.gor.model.{Row, RowBuilder}
 import org.gorpipe.gor.session.GorSession
-import org.gorpipe.model.gor.RowObj
+import org.gorpipe.util.NumericUtils
+
+import scala.collection.mutable.ArrayBuffer
 
 class LogisticRegressionAnalysis(lookUpSignature: String, session: GorSession, valCol: Int, sepVal: Option[String], imputed: Boolean, phenoFile: String, covarFile: Option[String])
   extends RegressionAnalysis[Boolean](lookUpSignature, session, valCol, sepVal, imputed, phenoFile, covarFile) {
   val maxIter = 20
   val tol = 1e-5
-  var logRegObjects: Array[LogisticRegression] =_
-
-  override def setup(): Unit = {
-    super.setup()
-    logRegObjects = Array.tabulate(ri.phenoNames.length)(_ => LogisticRegression.getGorLogisticRegressionObject(ri.betaLength - 1, ri.size))
-  }
-
-  override def process(r: Row): Unit = {
-    val values = r.colAsString(valCol).toString
-    r.removeColumn(valCol)
-    val baseColumnsAsString = r.toString
 
-    val genoType = ri.genos
-    val filter = ri.genoFilter
+  override protected def reusesCovariates: Boolean = true
 
-    setGenotypesAndFilter(values, genoType, filter)
+  override protected def createWorker(): RegressionWorker = new LogisticRegressionWorker
 
-    ri.phenoTable.zipWithIndex.map({ case (phenos, idx) =>
-      val (x, y, numberOfSamples) = setupRegressionData(genoType, filter, phenos, idx)
+  class LogisticRegressionWorker extends RegressionWorker {
+    val logRegObjects: Array[LogisticRegression] = Array.tabulate(ri.phenoNames.length)(_ => LogisticRegression.getGorLogisticRegressionObject(ri.betaLength - 1, ri.size))
 
+    override protected def fit(idx: Int, numberOfSamples: Int, covariatesUnchanged: Boolean, baseAndPhenoColumns: String, out: ArrayBuffer[Row]): Unit = {
       val logRegObj = logRegObjects(idx)
-      val converged = logRegObj.runRegression(x, y, numberOfSamples, tol, maxIter)
-
-      val baseAndPhenoColumns = baseColumnsAsString + "\t" + ri.phenoNames(idx)
-      writeOut(baseAndPhenoColumns, logRegObj, converged)
-    }).foreach(outRows => outRows.foreach(outRow => nextProcessor.process(outRow)))
+      val converged = logRegObj.runRegression(xs(idx), ys(idx), numberOfSamples, tol, maxIter, covariatesUnchanged)
+      writeOut(baseAndPhenoColumns, logRegObj, converged, out, rowBuilder)
+    }
   }
 
-  private def writeOut(baseAndPhenoColumns: String, logRegObj: LogisticRegression, converged: Boolean): Iterable[Row] = {
-    ri.betaNames.zipWithIndex.map({
-      case (name, idx) =>
-        val lineBuilder = new StringBuilder(baseAndPhenoColumns)
-        lineBuilder.append('\t')
-        lineBuilder.append(name)
-        if (converged) {
-          lineBuilder.append('\t')
-          lineBuilder.append("%.5g".format(logRegObj.beta(idx)))
-          lineBuilder.append('\t')
-          lineBuilder.append("%.5g".format(logRegObj.zStats(idx)))
-          lineBuilder.append('\t')
-          lineBuilder.append("%.5g".format(logRegObj.pValues(idx)))
-        } else {
-          lineBuilder.append("\t\t\t")
-        }
-        RowObj.apply(lineBuilder)
-    })
+  private def writeOut(baseAndPhenoColumns: String, logRegObj: LogisticRegression, converged: Boolean, out: ArrayBuffer[Row], rowBuilder: RowBuilder): Unit = {
+    // The base and phenotype columns are written once and shared by the rows of all betas
+    val baseColumns = rowBuilder.clear().addColumns(baseAndPhenoColumns).numColumns()
+    var idx = 0
+    while (idx < ri.betaNames.length) {
+      rowBuilder.truncate(baseColumns).add(ri.betaNames(idx))
+      if (converged) {
+        NumericUtils.appendGeneralFormat(rowBuilder.column(), logRegObj.beta(idx), 5)
+        NumericUtils.appendGeneralFormat(rowBuilder.column(), logRegObj.zStats(idx), 5)
+        NumericUtils.appendGeneralFormat(rowBuilder.column(), logRegObj.pValues(idx), 5)
+      } else {
+        rowBuilder.add("").add("").add("")
+      }
+      out += rowBuilder.build()
+      idx += 1
+    }
   }
 
   override def parsePhenoValue(s: String): (Boolean, Boolean) = {
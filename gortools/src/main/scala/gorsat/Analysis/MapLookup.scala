@@ -25,8 +25,9 @@ package gorsat.Analysis
 import gorsat.Commands.Analysis
 import gorsat.gorsatGorIterator.MapAndListUtilities
 import gorsat.gorsatGorIterator.MapAndListUtilities.singleHashMap
-import org.gorpipe.gor.model.Row
-import org.gorpipe.gor.session.GorSession
+import org.gorpipe.gor.model.{Row, RowBase}
+import org.gorpipe.gor.session.{GorSession, LookupTableCache}
+import org.gorpipe.gor.util.{LookupKey, LookupTable}
 import org.gorpipe.model.gor.RowObj
 import org.gorpipe.model.gor.iterators.LineIterator
 
@@ -49,23 +50,34 @@ case class MapLookup(session: GorSession,
   var key: String = _
   var mapVal: String = ""
   var colMap: singleHashMap = _
+  var tableReference: LookupTableCache.Reference = _
+  var table: LookupTable = _
   val colArray: Array[Int] = columns
+  private val lookupKey = new LookupKey(columns, caseInsensitive)
 
   override def setup(): Unit = {
     val useSet = inSet || (cartesian && outCols.length == 1)
     if (iteratorCommand != "") colMap = MapAndListUtilities.getSingleHashMap(iteratorCommand, iterator,
       caseInsensitive, columns.length, outCols, useSet, skipEmpty,session)
-    else colMap = MapAndListUtilities.getSingleHashMap(fileName, caseInsensitive, columns.length,
-      outCols, useSet, skipEmpty, session)
+    else {
+      tableReference = MapAndListUtilities.acquireSingleLookupTable(fileName, caseInsensitive, columns.length,
+        outCols, useSet, skipEmpty, session)
+      colMap = tableReference.getTable
+    }
+    table = colMap match {
+      case t: LookupTable => t
+      case _ => null
+    }
   }
 
-  override def process(r: Row): Unit = {
-    if (singleCol) key = r.colAsString(columns.head).toString
-    else {
-      // key = (r.colAsString(columns(0)) /: columns.tail.map(c => r.colAsString(c))) (_ + "#" + _)
-      key = r.selectedColumns(colArray)
+  override def finish(): Unit = {
+    if (tableReference != null) {
+      tableReference.close()
+      tableReference = null
     }
+  }
 
+  override def process(r: Row): Unit = {
     if (cartesian) {
       val allCols = r.getAllCols
       if (outCols.length == 1) {
@@ -74,8 +86,10 @@ case class MapLookup(session: GorSession,
         colMap.entrySet().forEach(y => super.process(RowObj.apply(s"$allCols\t${y.getKey}\t${y.getValue}")))
       }
     } else {
-      Option(colMap.get(if (caseInsensitive) key.toUpperCase else key)) match {
-        case Some(x) => if (inSet) {
+      val entry = if (table != null) table.find(rowKey(r)) else -1
+      val value = if (table != null) null else colMap.get(stringKey(r))
+      if (entry >= 0 || value != null) {
+        if (inSet) {
           if (negate) {
             if (inSetCol) {
               r.addSingleColumnToRow("0")
@@ -87,14 +101,36 @@ case class MapLookup(session: GorSession,
               super.process(r)
             } else super.process(r)
           }
+        } else if (entry >= 0) {
+          super.process(rowWithValue(r, entry))
         } else {
-          val row = r.rowWithAddedColumn(x)
-          super.process(row)
+          super.process(r.rowWithAddedColumn(value))
         }
-
-        case None => if (returnMissing) super.process(r.rowWithAddedColumn(missingVal))
+      } else {
+        if (returnMissing) super.process(r.rowWithAddedColumn(missingVal))
         else if (negate) super.process(r)
       }
     }
   }
-}
\ No newline at end of file
+
+  /**
+    * The lookup key, viewed directly in the row when possible
+    */
+  private def rowKey(r: Row): CharSequence = {
+    if (lookupKey.set(r)) lookupKey else stringKey(r)
+  }
+
+  private def stringKey(r: Row): String = {
+    key = if (singleCol) r.colAsString(columns.head).toString else r.selectedColumns(colArray)
+    if (caseInsensitive) key.toUpperCase else key
+  }
+
+  private def rowWithValue(r: Row, entry: Int): Row = r match {
+    case rb: RowBase if rb.getAllCols != null && rb.getSplitArray != null =>
+      val sb = new java.lang.StringBuilder(rb.length + 64)
+      sb.append(rb.getAllCols).append('\t')
+      table.appendValue(entry, sb)
+      rb.rowWithAppendedColumns(sb)
+    case _ => r.rowWithAddedColumn(table.entryValue(entry))
+  }
+}
@@ -25,8 +25,9 @@ package gorsat.Analysis
 import gorsat.Commands.Analysis
 import gorsat.gorsatGorIterator.MapAndListUtilities
 import gorsat.gorsatGorIterator.MapAndListUtilities.multiHashMap
-import org.gorpipe.gor.model.Row
-import org.gorpipe.gor.session.GorSession
+import org.gorpipe.gor.model.{Row, RowBase}
+import org.gorpipe.gor.session.{GorSession, LookupTableCache}
+import org.gorpipe.gor.util.{LookupKey, LookupTable}
 import org.gorpipe.model.gor.RowObj
 import org.gorpipe.model.gor.iterators.LineIterator
 
@@ -38,29 +39,68 @@ case class MultiMapLookup(session: GorSession, iteratorCommand: String, iterator
   var key: String = _
   var mapVal: String = ""
   var colMap: multiHashMap = _
+  var tableReference: LookupTableCache.Reference = _
+  var table: LookupTable = _
+  private val lookupKey = new LookupKey(columns, caseInsensitive)
 
   override def setup(): Unit = {
     if (iteratorCommand != "") colMap = MapAndListUtilities.getMultiHashMap(iteratorCommand, iterator,
       caseInsensitive, columns.length, outCols, session)
-    else colMap = MapAndListUtilities.getMultiHashMap(fileName, caseInsensitive, columns.length, outCols,
-      session)
+    else {
+      tableReference = MapAndListUtilities.acquireMultiLookupTable(fileName, caseInsensitive, columns.length,
+        outCols, session)
+      table = tableReference.getTable
+      colMap = table.asMultiMap()
+    }
   }
 
-  override def process(r: Row): Unit = {
-
-    if (singleCol) key = r.colAsString(columns.head).toString
-    else key = r.selectedColumns(columns)
+  override def finish(): Unit = {
+    if (tableReference != null) {
+      tableReference.close()
+      tableReference = null
+    }
+  }
 
+  override def process(r: Row): Unit = {
     val allCols = r.getAllCols
     if (cartesian) {
       colMap.asScala.foreach(x => x._2.filter(y => !y.startsWith("#")).foreach(z => {
         super.process(RowObj.apply(s"$allCols\t$z"))
       }))
+    } else if (table != null) {
+      val entry = table.find(if (lookupKey.set(r)) lookupKey else stringKey(r))
+      if (entry >= 0) processValues(r, table.entryValue(entry))
+      else if (returnMissing) super.process(RowObj.apply(s"$allCols\t$missingVal"))
     } else {
-      Option(colMap.get(if (caseInsensitive) key.toUpperCase else key)) match {
+      Option(colMap.get(stringKey(r))) match {
         case Some(x) => x.foreach(y => super.process(RowObj.apply(s"$allCols\t$y")))
         case None => if (returnMissing) super.process(RowObj.apply(s"$allCols\t$missingVal"))
       }
     }
   }
+
+  private def stringKey(r: Row): String = {
+    key = if (singleCol) r.colAsString(columns.head).toString else r.selectedColumns(columns)
+    if (caseInsensitive) key.toUpperCase else key
+  }
+
+  /**
+    * Output a row for each of the newline separated values of a table entry
+    */
+  private def processValues(r: Row, values: String): Unit = {
+    var start = 0
+    while (start <= values.length) {
+      var end = values.indexOf('\n', start)
+      if (end < 0) end = values.length
+      r match {
+        case rb: RowBase if rb.getAllCols != null && rb.getSplitArray != null =>
+          val sb = new java.lang.StringBuilder(rb.length + 1 + end - start)
+          sb.append(rb.getAllCols).append('\t').append(values, start, end)
+          super.process(rb.rowWithAppendedColumns(sb))
+        case _ =>
+          super.process(RowObj.apply(s"${r.getAllCols}\t${values.substring(start, end)}"))
+      }
+      start = end + 1
+    }
+  }
 }
@@ -24,7 +24,7 @@ package gorsat.Analysis
 
 import gorsat.Commands.{Analysis, BinAggregator, BinAnalysis, BinFactory, BinInfo, BinState, Processor, RegularBinIDgen, RowHandler}
 import org.gorpipe.exceptions.GorDataException
-import org.gorpipe.gor.model.Row
+import org.gorpipe.gor.model.{Row, RowBuilder}
 import org.gorpipe.gor.session.GorSession
 import org.gorpipe.model.gor.{BinaryHolder, RowObj}
 import org.gorpipe.model.gor.iterators.RefSeq
@@ -88,10 +88,16 @@ object GorPileup {
     var singleStatHolder = StatHolder()
     val notUsedYet = "#"
     var theRefBase: Char = '?'
+    val rowBuilder = new RowBuilder()
     val priors = new Array[Double](10)
 
     var thePos = 0
 
+    // The group states and the group names, a state with its likelihoods is about 160 bytes
+    override def memoryEstimate: Long = {
+      if (useGroup) groupStates.length * 160L + groupIDs.iterator.map(64L + 2L * _.length).sum else 160L
+    }
+
     def formatDouble(d: Double): String = "%1.1f".format(d).replace(',', '.')
 
     def formatDouble4(d: Double): String = "%1.4f".format(d).replace(',', '.')
@@ -210,20 +216,14 @@ object GorPileup {
       for (key <- allKeys; if key._1 != notUsedYet) {
         var sh: StatHolder = null
         if (useGroup) sh = groupStates(key._2) else sh = singleStatHolder
-        val lineBuilder = new StringBuilder
-        lineBuilder.append(bi.chr)
-        lineBuilder.append('\t')
-        lineBuilder.append(bi.sto)
-        lineBuilder.append('\t')
+        rowBuilder.clear().add(bi.chr).add(bi.sto)
         if (useGroup) {
-          lineBuilder.append(key._1)
-          lineBuilder.append('\t')
+          rowBuilder.addColumns(key._1)
         }
-        lineBuilder.append(theRefBase)
-        lineBuilder.append('\t')
+        rowBuilder.add(theRefBase)
 
         if (depthOnly) {
-          lineBuilder.append(sh.As)
+          rowBuilder.add(sh.As)
         } else {
           var majorAllele = "?"
           var minorAllele = "?"
@@ -240,47 +240,34 @@ object GorPileup {
             })
             chiSquare = if (majorAllele == minorAllele) 0.0 else lowAlleleSquare / (lowAlleleSum / 3.0)
           }
-          lineBuilder.append(majorAllele)
-          lineBuilder.append('\t')
-          lineBuilder.append(minorAllele)
-          lineBuilder.append('\t')
-          lineBuilder.append(formatDouble(scala.math.sqrt(chiSquare)))
-          lineBuilder.append('\t')
-          lineBuilder.append(sh.As + sh.Cs + sh.Gs + sh.Ts + sh.Dels)
-          lineBuilder.append('\t')
-          lineBuilder.append(sh.As)
-          lineBuilder.append('\t')
-          lineBuilder.append(sh.Cs)
-          lineBuilder.append('\t')
-          lineBuilder.append(sh.Gs)
-          lineBuilder.append('\t')
-          lineBuilder.append(sh.Ts)
-          lineBuilder.append('\t')
-          lineBuilder.append(sh.Dels)
-          lineBuilder.append('\t')
-          lineBuilder.append(sh.Ins)
+          rowBuilder.add(majorAllele)
+          rowBuilder.add(minorAllele)
+          rowBuilder.add(formatDouble(scala.math.sqrt(chiSquare)))
+          rowBuilder.add(sh.As + sh.Cs + sh.Gs + sh.Ts + sh.Dels)
+          rowBuilder.add(sh.As)
+          rowBuilder.add(sh.Cs)
+          rowBuilder.add(sh.Gs)
+          rowBuilder.add(sh.Ts)
+          rowBuilder.add(sh.Dels)
+          rowBuilder.add(sh.Ins)
         }
         if (callSnps) {
           val pTot = sh.likelihoods.sum
           val pCond = sh.likelihoods.map(p => p / pTot)
           val pOrd = iupacArray.zip(pCond).toList.sortWith((x, y) => x._2 > y._2).toArray
 
-          lineBuilder.append('\t')
-          lineBuilder.append(pOrd(0)._1)
-          lineBuilder.append('\t')
-          lineBuilder.append(formatDouble4(pOrd(0)._2))
+          rowBuilder.add(pOrd(0)._1)
+          rowBuilder.add(formatDouble4(pOrd(0)._2))
           val lod = java.lang.Math.log10(pOrd(0)._2 / pOrd(1)._2)
-          lineBuilder.append('\t')
-          lineBuilder.append(formatDouble(lod))
-          lineBuilder.append('\t')
-          lineBuilder.append(pOrd(1)._1)
+          rowBuilder.add(formatDouble(lod))
+          rowBuilder.add(pOrd(1)._1)
           if (theRefBase.toUpper != pOrd(0)._1) {
-            lineBuilder.append("\t1")
-          } else lineBuilder.append("\t0")
+            rowBuilder.add('1')
+          } else rowBuilder.add('0')
 
         } // callSnps
 
-        nextProcessor.process(RowObj(lineBuilder.toString))
+        nextProcessor.process(rowBuilder.build(bi.chr, bi.sto))
 
       }
     }
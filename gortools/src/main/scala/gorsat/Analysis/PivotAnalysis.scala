@@ -23,8 +23,7 @@
 package gorsat.Analysis
 
 import gorsat.Commands._
-import org.gorpipe.gor.model.Row
-import org.gorpipe.model.gor.RowObj
+import org.gorpipe.gor.model.{Row, RowBuilder}
 
 object PivotAnalysis {
 
@@ -36,11 +35,18 @@ object PivotAnalysis {
     var allColumns: Array[Array[(String, Boolean)]] = _
     var groupMap = Map.empty[String, Array[Array[(String, Boolean)]]]
     val grColsArray: Array[Int] = groupCols.filter(x => x > 1)
+    val theOtherCols = new java.lang.StringBuilder
+    val rowBuilder = new RowBuilder()
+    // Estimated bytes of the groups and the pivoted values of the bin
+    var heldBytes = 0L
 
     def initialize(binInfo: BinInfo): Unit = {
       groupMap = Map.empty[String, Array[Array[(String, Boolean)]]]
+      heldBytes = 0L
     }
 
+    override def memoryEstimate: Long = heldBytes
+
     def process(r: Row): Unit = {
       val groupID = if (grColsArray.length > 0) r.selectedColumns(grColsArray) + "\t" else ""
 
@@ -58,13 +64,18 @@ object PivotAnalysis {
             i += 1
           }
           groupMap += (groupID -> allColumns)
+          heldBytes += 64L + 2L * groupID.length + 32L * pivotMap.size * valueCols.length
       }
 
       pivotMap.get(r.colAsString(pivotCol).toString.trim) match {
         case Some(index) =>
           var j = 0
           while (j < valueCols.length) {
-            if (!allColumns(index)(j)._2) allColumns(index)(j) = (r.colAsString(valueCols(j)).toString, true)
+            if (!allColumns(index)(j)._2) {
+              val value = r.colAsString(valueCols(j)).toString
+              allColumns(index)(j) = (value, true)
+              heldBytes += 64L + 2L * value.length
+            }
             j += 1
           }
         case None => /* do nothing - pivot value not listed */
@@ -74,7 +85,7 @@ object PivotAnalysis {
     def sendToNextProcessor(bi: BinInfo, nextProcessor: Processor): Unit = {
       for (key <- groupMap.keys) {
         allColumns = groupMap(key)
-        val theOtherCols = new StringBuilder
+        theOtherCols.setLength(0)
         theOtherCols.append(key)
         var i = 0
         while (i < pivotMap.size) {
@@ -94,8 +105,8 @@ object PivotAnalysis {
           i += 1
           if (i < pivotMap.size) theOtherCols.append("\t")
         }
-        val outRow = RowObj(bi.chr, bi.sto, theOtherCols.toString())
-        nextProcessor.process(outRow)
+        rowBuilder.clear().add(bi.chr).add(bi.sto).addColumns(theOtherCols)
+        nextProcessor.process(rowBuilder.build(bi.chr, bi.sto))
       }
     }
   }
@@ -23,7 +23,7 @@
 package gorsat.Analysis
 
 import gorsat.Commands._
-import org.gorpipe.gor.model.Row
+import org.gorpipe.gor.model.{Row, RowBuilder}
 import org.gorpipe.gor.session.GorSession
 
 import scala.collection.mutable.ArrayBuffer
@@ -62,6 +62,9 @@ object RankAnalysis {
 
     var rownum = 0
     var allRows = new ArrayBuffer[(Row, RankInfoHolder)]
+    // Estimated bytes of the buffered rows and the rank values of the bin
+    var heldBytes = 0L
+    val rowBuilder = new RowBuilder()
 
     def formatDouble(d: Double): String = ("%1.4f".format(d)).replace(',', '.')
 
@@ -73,8 +76,11 @@ object RankAnalysis {
       groupMap = Map.empty[String, StatHolder]
       rownum = 0
       allRows = new ArrayBuffer[(Row, RankInfoHolder)]
+      heldBytes = 0L
     }
 
+    override def memoryEstimate: Long = heldBytes
+
     def process(r: Row): Unit = {
       var sh: StatHolder = null
 
@@ -86,6 +92,7 @@ object RankAnalysis {
           sh = StatHolder()
           initStatHolder(sh)
           groupMap += (groupID -> sh)
+          heldBytes += 64L + 2L * groupID.length
       }
 
       val xx = (r, RankInfoHolder())
@@ -93,6 +100,8 @@ object RankAnalysis {
       val theValue = r.colAsDouble(rankCol)
       sh.fList ::= (rownum, theValue)
       rownum += 1
+      // The row, its rank info and the value in the group list
+      heldBytes += 200L + 2L * r.length
     }
 
     def sendToNextProcessor(bi: BinInfo, nextProcessor: Processor): Unit = {
@@ -171,28 +180,23 @@ object RankAnalysis {
       while (i < allRows.size) {
         val x = allRows(i)
         if (x._2.rank <= pa.maxRank) {
-          val sBuilder = new StringBuilder
-          sBuilder.append(x._2.rank)
+          rowBuilder.clear().addRow(x._1)
+          rowBuilder.add(x._2.rank)
           if (pa.useDistr) {
-            sBuilder.append('\t')
-            sBuilder.append(formatDouble((x._2.cum + 0.0) / x._2.count))
-            sBuilder.append('\t')
-            sBuilder.append(formatDouble((x._2.freq + 0.0) / x._2.count))
+            rowBuilder.add(formatDouble((x._2.cum + 0.0) / x._2.count))
+            rowBuilder.add(formatDouble((x._2.freq + 0.0) / x._2.count))
           }
           if (pa.useZ) {
-            sBuilder.append('\t')
-            sBuilder.append(formatDouble(x._2.z))
+            rowBuilder.add(formatDouble(x._2.z))
           }
           if (pa.useCount) {
-            sBuilder.append('\t')
-            sBuilder.append(x._2.count)
+            rowBuilder.add(x._2.count)
           }
           if (pa.useRankOne) {
-            sBuilder.append('\t')
-            sBuilder.append(allRows(x._2.rOne)._1.colAsString(rankCol))
+            rowBuilder.add(allRows(x._2.rOne)._1.colAsString(rankCol))
           }
 
-          nextProcessor.process(x._1.rowWithAddedColumn(sBuilder.toString))
+          nextProcessor.process(rowBuilder.build(x._1.chr, x._1.pos))
         }
         allRows(i) = null
         i += 1
@@ -22,16 +22,110 @@
 
 package gorsat.Analysis
 
+import java.util.concurrent.{CompletableFuture, CompletionException, ConcurrentLinkedQueue}
+
 import gorsat.Commands.Analysis
 import gorsat.gorsatGorIterator.MapAndListUtilities
 import gorsat.process.GorJavaUtilities
 import org.gorpipe.exceptions.GorDataException
+import org.gorpipe.gor.model.{Row, RowBuilder}
 import org.gorpipe.gor.session.GorSession
 
+import scala.collection.mutable.ArrayBuffer
+
+/**
+  * Base class of the regression analyses. The variants are fitted in batches on the common fork join pool, each batch
+  * by a worker with its own regression objects and buffers, and the resulting rows are sent on in input order.
+  */
 abstract class RegressionAnalysis[T: Manifest](lookUpSignature: String, session: GorSession, valCol: Int, sepVal: Option[String], imputed: Boolean, phenoFile: String, covarFile: Option[String]) extends Analysis {
 
   var ri: RegressionInfo =_
 
+  val batchSize: Int = Integer.getInteger("gor.regression.batch.size", 256).intValue().max(1)
+  val maxPendingBatches: Int = Integer.getInteger("gor.regression.pending.batches", 2 * Runtime.getRuntime.availableProcessors()).intValue().max(1)
+
+  private val idleWorkers = new ConcurrentLinkedQueue[RegressionWorker]()
+  private val pendingBatches = new java.util.ArrayDeque[CompletableFuture[ArrayBuffer[Row]]]()
+  private var batchValues = new Array[String](batchSize)
+  private var batchBaseColumns = new Array[String](batchSize)
+  private var batchCount = 0
+
+  /**
+    * True if the regression leaves the covariate columns and the phenotypes untouched, so they can be reused for the
+    * next variant when the samples used are the same.
+    */
+  protected def reusesCovariates: Boolean
+
+  protected def createWorker(): RegressionWorker
+
+  override def process(r: Row): Unit = {
+    if (wantsNoMore) return
+    val values = r.colAsString(valCol).toString
+    r.removeColumn(valCol)
+    batchValues(batchCount) = values
+    batchBaseColumns(batchCount) = r.toString
+    batchCount += 1
+    if (batchCount == batchSize) {
+      submitBatch()
+      sendBatches(false)
+    }
+  }
+
+  override def finish(): Unit = {
+    if (isInErrorState) {
+      pendingBatches.forEach(batch => batch.cancel(false))
+      pendingBatches.clear()
+    } else {
+      submitBatch()
+      sendBatches(true)
+    }
+    batchCount = 0
+    idleWorkers.clear()
+  }
+
+  private def submitBatch(): Unit = {
+    if (batchCount > 0) {
+      val values = batchValues
+      val baseColumns = batchBaseColumns
+      val count = batchCount
+      batchValues = new Array[String](batchSize)
+      batchBaseColumns = new Array[String](batchSize)
+      batchCount = 0
+      pendingBatches.add(CompletableFuture.supplyAsync(() => fitBatch(values, baseColumns, count)))
+    }
+  }
+
+  /**
+    * Send the rows of the finished batches in order, waiting for the oldest batch while there are too many pending.
+    */
+  private def sendBatches(all: Boolean): Unit = {
+    while (!pendingBatches.isEmpty && (all || pendingBatches.size > maxPendingBatches || pendingBatches.peek.isDone)) {
+      val rows = try {
+        pendingBatches.poll().join()
+      } catch {
+        case e: CompletionException => throw e.getCause
+      }
+      var i = 0
+      while (i < rows.length && !wantsNoMore) {
+        nextProcessor.process(rows(i))
+        i += 1
+      }
+    }
+  }
+
+  private def fitBatch(values: Array[String], baseColumns: Array[String], count: Int): ArrayBuffer[Row] = {
+    var worker = idleWorkers.poll()
+    if (worker == null) worker = createWorker()
+    val rows = new ArrayBuffer[Row](count * ri.phenoNames.length * ri.betaLength)
+    var i = 0
+    while (i < count) {
+      worker.fitVariant(values(i), baseColumns(i), rows)
+      i += 1
+    }
+    idleWorkers.add(worker)
+    rows
+  }
+
   override def setup(): Unit = {
     ri = session.getCache.getObjectHashMap.computeIfAbsent(lookUpSignature, _ => {
       val phenoFileTrav = MapAndListUtilities.getStringTraversable(phenoFile, session)
@@ -150,16 +244,52 @@ abstract class RegressionAnalysis[T: Manifest](lookUpSignature: String, session:
       }
     }
 
-  protected def setupRegressionData(genoType: Array[Double], filter: Array[Boolean], phenos: Array[T], idx: Int): (Array[Array[Double]], Array[T], Int) = {
-    val x = ri.xs(idx)
-    val y = ri.ys(idx)
-    val phenoFilter = ri.phenoFilter(idx)
-    val numberOfSamples = doubleFilter(genoType, filter, phenoFilter, x.head)
-    x.tail zip ri.covars foreach { case (xc, cc) =>
-      doubleFilter(cc, filter, phenoFilter, xc)
+  /**
+    * Fits the variants of a batch, one worker is only used by one thread at a time.
+    */
+  abstract class RegressionWorker {
+    val genos: Array[Double] = Array.ofDim(ri.size)
+    val genoFilter: Array[Boolean] = Array.ofDim(ri.size)
+    val xs: Array[Array[Array[Double]]] = Array.ofDim(ri.phenoNames.length, ri.betaLength - 1, ri.size)
+    val ys: Array[Array[T]] = Array.ofDim[T](ri.phenoNames.length, ri.size)
+    // The number of samples of each phenotype if the last variant had no missing genotypes, else -1
+    val completeSamples: Array[Int] = Array.fill(ri.phenoNames.length)(-1)
+    val rowBuilder = new RowBuilder()
+
+    def fitVariant(values: String, baseColumns: String, out: ArrayBuffer[Row]): Unit = {
+      setGenotypesAndFilter(values, genos, genoFilter)
+      var complete = true
+      var i = 0
+      while (complete && i < genoFilter.length) {
+        complete = genoFilter(i)
+        i += 1
+      }
+      var idx = 0
+      while (idx < ri.phenoNames.length) {
+        val numberOfSamples = doubleFilter(genos, genoFilter, ri.phenoFilter(idx), xs(idx).head)
+        val covariatesUnchanged = reusesCovariates && complete && completeSamples(idx) == numberOfSamples
+        if (!covariatesUnchanged) setupCovariates(idx)
+        completeSamples(idx) = if (complete && reusesCovariates) numberOfSamples else -1
+        fit(idx, numberOfSamples, covariatesUnchanged, baseColumns + "\t" + ri.phenoNames(idx), out)
+        idx += 1
+      }
+    }
+
+    private def setupCovariates(idx: Int): Unit = {
+      val x = xs(idx)
+      val phenoFilter = ri.phenoFilter(idx)
+      var i = 0
+      while (i < ri.covars.length) {
+        doubleFilter(ri.covars(i), genoFilter, phenoFilter, x(i + 1))
+        i += 1
+      }
+      doubleFilter(ri.phenoTable(idx), genoFilter, phenoFilter, ys(idx))
     }
-    doubleFilter(phenos, filter, phenoFilter, y)
-    (x, y, numberOfSamples)
+
+    /**
+      * Fit the model of phenotype idx to xs(idx) and ys(idx) and add the result rows to out.
+      */
+    protected def fit(idx: Int, numberOfSamples: Int, covariatesUnchanged: Boolean, baseAndPhenoColumns: String, out: ArrayBuffer[Row]): Unit
   }
 
   case class RegressionInfo(
@@ -175,10 +305,5 @@ abstract class RegressionAnalysis[T: Manifest](lookUpSignature: String, session:
     betaNames(0) = "Intercept"
     betaNames(1) = "Genotype"
     if (covarNames.length > 0) System.arraycopy(covarNames, 0, betaNames, 2, covarNames.length)
-
-    val xs: Array[Array[Array[Double]]] = Array.ofDim(phenoNames.length, betaLength - 1, size)
-    val ys: Array[Array[T]] = Array.ofDim[T](phenoNames.length, size)
-    val genoFilter: Array[Boolean] = Array.ofDim(size)
-    val genos: Array[Double] = Array.ofDim(size)
   }
 }
@@ -83,6 +83,23 @@ case class SortGenome(header: String, session: GorSession, sortInfo: Array[Row.S
     runner.run(RowArrayIterator(outputArray, outputArray.length), OutFile.driver(outputFile, sortFileReader, header, skipHeader = false, OutputOptions(writeMeta = false)))
   }
 
+  /**
+    * Rough heap estimate of the buffered rows, two bytes per character plus a fixed overhead per row.
+    */
+  def memoryEstimate: Long = bufferSize * 2L + lines * 64L
+
+  /**
+    * Write the buffered rows to a temporary file to release their memory.
+    *
+    * @return the memory estimate of the rows written
+    */
+  def spill(): Long = {
+    if (lines == 0) return 0L
+    val released = memoryEstimate
+    flushToDisk()
+    released
+  }
+
   private def ensureSorted(): Unit = {
     if (!alreadySorted) util.Arrays.parallelSort(inputArray, 0, lines, (o1: Row, o2: Row) => o1.advancedCompare(o2, sortInfo))
   }
@@ -34,7 +34,7 @@ import org.gorpipe.gor.util.DataUtil
 
 
 class Write extends CommandInfo("WRITE",
-  CommandArguments("-r -c -m -inferschema -maxseg -noheader", "-d -f -i -t -l -tags -card -prefix -link", 0),
+  CommandArguments("-r -c -m -inferschema -maxseg -noheader", "-d -f -i -t -l -tags -card -prefix -link -bloom", 0),
   CommandOptions(gorCommand = true, norCommand = true, verifyCommand = true)) {
   override def processArguments(context: GorContext, argString: String, iargs: Array[String], args: Array[String], executeNor: Boolean, forcedInputHeader: String): CommandParsingResult = {
 
@@ -71,6 +71,18 @@ class Write extends CommandInfo("WRITE",
 
     val card = stringValueOfOptionWithDefault(args, "-card", null)
 
+    val bloomCols = if (hasOption(args, "-bloom")) {
+      if (!DataUtil.isParquet(fileName.toUpperCase) && !useFolder.exists(f => DataUtil.isParquet(f.toUpperCase))) {
+        throw new GorParsingException("Option -bloom is only valid when writing parquet files.", "-bloom")
+      }
+      val cols = replaceSingleQuotes(stringValueOfOption(args, "-bloom")).split(",").map(x => x.trim).filter(_.nonEmpty).distinct
+      // The fork column is not written with -r
+      val headerCols = forcedInputHeader.split("\t").zipWithIndex.filter(c => !remove || c._2 != forkCol).map(_._1)
+      cols.find(c => !headerCols.exists(_.equalsIgnoreCase(c))).foreach(c =>
+        throw new GorParsingException(s"Bloom filter column $c is not in the header.", "-bloom"))
+      cols
+    } else null
+
     var prefixFile: Option[String] = None
     var prefix: Option[String] = None
     if (hasOption(args, "-prefix")) {
@@ -143,7 +155,8 @@ class Write extends CommandInfo("WRITE",
           linkFile = link,
           command = argString,
           infer = infer,
-          maxseg = maxseg
+          maxseg = maxseg,
+          bloomCols = bloomCols
         )
       ),
       fixedHeader
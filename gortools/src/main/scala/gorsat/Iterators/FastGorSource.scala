@@ -24,7 +24,7 @@ package gorsat.Iterators
 
 import gorsat.Commands.CommandParseUtilities
 import org.gorpipe.exceptions.GorParsingException
-import org.gorpipe.gor.model.{GorOptions, MonitorIterator}
+import org.gorpipe.gor.model.{FilterExpression, GorOptions, MonitorIterator}
 import org.gorpipe.gor.monitor.GorMonitor
 import org.gorpipe.gor.session.GorContext
 import org.gorpipe.gor.util.StringUtil
@@ -115,4 +115,9 @@ class FastGorSource(inOptions: String, gorRoot: String, context: GorContext, exe
     if (theSource == null) openSource()
     theSource.pushdownFilter(gorwhere)
   }
+
+  override def pushdownFilter(filter: FilterExpression): Boolean = {
+    if (theSource == null) openSource()
+    theSource.pushdownFilter(filter)
+  }
 }
@@ -23,7 +23,7 @@
 package gorsat.Iterators
 
 import org.gorpipe.exceptions.GorSystemException
-import org.gorpipe.gor.model.{GenomicIterator, GenomicIteratorBase, Row}
+import org.gorpipe.gor.model.{FilterExpression, GenomicIterator, GenomicIteratorBase, Row}
 
 class SingleRowIteratorSource(theIterator: GenomicIterator) extends GenomicIteratorBase {
   protected var myNext : Row = _
@@ -70,6 +70,21 @@ class SingleRowIteratorSource(theIterator: GenomicIterator) extends GenomicItera
     theIterator.moveToPosition(seekChr,seekPos, maxReads)
   }
 
+  /**
+    * Read through the rows before the given position instead of seeking.
+    *
+    * @param maxReads maximum number of rows to read through
+    * @return the next row, at or after the position unless maxReads rows were read, or null if there are no more rows
+    */
+  def skipTo(seekChr: String, seekPos: Int, maxReads: Int): Row = {
+    var reads = 0
+    while (reads < maxReads && hasNext && (myNext.chr < seekChr || (myNext.chr == seekChr && myNext.pos < seekPos))) {
+      mustReCheck = true
+      reads += 1
+    }
+    if (hasNext) myNext else null
+  }
+
   def close(): Unit = {
     theIterator.close()
   }
@@ -77,5 +92,7 @@ class SingleRowIteratorSource(theIterator: GenomicIterator) extends GenomicItera
 
   override def pushdownFilter(gorwhere: String): Boolean = theIterator.pushdownFilter(gorwhere)
 
+  override def pushdownFilter(filter: FilterExpression): Boolean = theIterator.pushdownFilter(filter)
+
   override def pushdownTop(limit: Int): Boolean = theIterator.pushdownTop(limit)
 }
@@ -23,7 +23,8 @@
 package gorsat.Outputs
 
 import gorsat.Commands.Output
-import org.gorpipe.gor.model.{FileReader, Row}
+import org.gorpipe.gor.model.{FileReader, Row, RowBase}
+import org.gorpipe.gor.util.RowOutputStream
 
 /**
   * @param name Name of the file to be written.
@@ -32,7 +33,7 @@ import org.gorpipe.gor.model.{FileReader, Row}
   * @param append Whether we should write the output to the beginning or end of the file.
   */
 class CmdFileOut(name: String, fileReader: FileReader, header: String, skipHeader: Boolean = false, append: Boolean = false) extends Output {
-  val out = new java.io.BufferedWriter(new java.io.OutputStreamWriter(fileReader.getOutputStream(name, append)))
+  val out = new RowOutputStream(fileReader.getOutputStream(name, append))
 
   def setup(): Unit = {
     if (header != null & !skipHeader) {
@@ -45,7 +46,10 @@ class CmdFileOut(name: String, fileReader: FileReader, header: String, skipHeade
   }
 
   def process(r: Row): Unit = {
-    out.write(r.otherCols)
+    r match {
+      case _: RowBase => r.writeNorRowToStream(out)
+      case _ => out.write(r.otherCols)
+    }
     out.write('\n')
   }
 
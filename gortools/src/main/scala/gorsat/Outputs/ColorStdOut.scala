@@ -31,6 +31,8 @@ case class ColorStdOut(instance: PipeInstance = null, colorFormatter: RowColoriz
 
   var headerPrinted : Boolean = false
 
+  override protected def writeRow(r: Row): Unit = out.write(processRow(r))
+
   override protected def processRow(r: Row): String = {
     if (instance == null) return r.toString()
 
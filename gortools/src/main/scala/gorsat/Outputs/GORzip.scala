@@ -28,7 +28,7 @@ import java.util.zip.Deflater
 import gorsat.Commands.{Analysis, Output}
 import org.gorpipe.gor.binsearch.{GorIndexType, GorZipLexOutputStream}
 import org.gorpipe.gor.driver.meta.DataType
-import org.gorpipe.gor.model.{FileReader, GorMeta, Row}
+import org.gorpipe.gor.model.{FileReader, GorMeta, Row, SegmentIndex}
 import org.gorpipe.gor.util.DataUtil
 
 import java.nio.file.Paths
@@ -64,6 +64,16 @@ class GORzip(fileName: String, fileReader: FileReader, header: String = null, sk
     try {
       out.close()
       getMeta.setMd5(out.getMd5)
+      val segmentIndex = getMeta.getSegmentIndex
+      if (segmentIndex != null && !append) {
+        segmentIndex.setSignature(fileReader.getFileSignature(fileName))
+        val segout = fileReader.getOutputStream(fileName + SegmentIndex.SUFFIX)
+        try {
+          segmentIndex.write(segout)
+        } finally {
+          segout.close()
+        }
+      }
     } finally {
       if (options.writeMeta) {
         val metaout = fileReader.getOutputStream(DataUtil.toFile(fileName, DataType.META))
@@ -30,6 +30,8 @@ case class NorColorStdOut(instance: PipeInstance = null, colorFormatter: RowColo
 
   var headerPrinted : Boolean = false
 
+  override protected def writeRow(r: Row): Unit = out.write(processRow(r))
+
   override protected def processRow(r: Row): String = {
     if (instance == null) return r.toString()
 
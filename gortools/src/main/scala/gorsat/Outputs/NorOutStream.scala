@@ -22,7 +22,7 @@
 
 package gorsat.Outputs
 
-import org.gorpipe.gor.model.Row
+import org.gorpipe.gor.model.{Row, RowBase}
 
 import java.io.OutputStream
 
@@ -35,6 +35,11 @@ class NorOutStream(val header: String = null, val outputStream: OutputStream, sk
     header.split("\t", -1).slice(2, 1000000).mkString("\t") + "\n"
   }
 
+  override protected def writeRow(r: Row): Unit = r match {
+    case _: RowBase => r.writeNorRowToStream(out)
+    case _ => out.write(processRow(r))
+  }
+
   override protected def processRow(r: Row): String = {
     r.otherCols()
   }
@@ -34,10 +34,10 @@ import htsjdk.tribble.util.LittleEndianOutputStream
 import htsjdk.variant.vcf.VCFCodec
 import org.gorpipe.exceptions.GorResourceException
 import org.gorpipe.gor.binsearch.GorIndexType
-import org.gorpipe.gor.model.{FileReader, Row}
-import org.gorpipe.gor.util.DataUtil
+import org.gorpipe.gor.model.{FileReader, Row, RowBase}
+import org.gorpipe.gor.util.{DataUtil, RowOutputStream}
 
-import java.io.{BufferedOutputStream, File, FileInputStream, FileNotFoundException, FileOutputStream, OutputStream, Writer}
+import java.io.{File, FileInputStream, FileNotFoundException, FileOutputStream, OutputStream}
 
 /**
   * @param name Name of the file to be written.
@@ -61,8 +61,7 @@ class OutFile(name: String, fileReader: FileReader, header: String, skipHeader:
     } else {
       interceptingFileOutputStream
     }
-  val out: Writer =
-    new java.io.OutputStreamWriter(new BufferedOutputStream(gzippedOutputStream, 1024 * 128))
+  val out = new RowOutputStream(gzippedOutputStream, 1024 * 128)
 
   override def getName: String = name
 
@@ -76,7 +75,10 @@ class OutFile(name: String, fileReader: FileReader, header: String, skipHeader:
   }
 
   def process(r: Row): Unit = {
-    out.write(r.toString)
+    r match {
+      case _: RowBase => r.writeRowToStream(out)
+      case _ => out.write(r.toString)
+    }
     out.write('\n')
   }
 
@@ -159,7 +161,7 @@ object OutFile {
       } else if (DataUtil.isTsv(nameUpper) || DataUtil.isNor(nameUpper)) {
         new NorFileOut(name, fileReader, header, skipHeader, append, options.md5, options.md5File)
       } else if (DataUtil.isParquet(nameUpper)) {
-        new GorParquetFileOut(name, header, options.nor)
+        new GorParquetFileOut(name, header, options.nor, options.bloomCols)
       } else if (options.nor) {
         new CmdFileOut(name, fileReader, header, skipHeader, append)
       } else {
@@ -23,22 +23,31 @@
 package gorsat.Outputs
 
 import gorsat.Commands.Output
-import org.gorpipe.gor.model.Row
+import org.gorpipe.gor.model.{Row, RowBase}
+import org.gorpipe.gor.util.RowOutputStream
 
 import java.io.OutputStream
 
 class OutStream(header: String = null, outputStream: OutputStream) extends Output {
-  val out = new java.io.BufferedWriter(new java.io.OutputStreamWriter(outputStream), 1024 * 100)
+  val out = new RowOutputStream(outputStream)
 
   def setup(): Unit = {
     if (header != null) out.write(processHeader(header) + "\n")
   }
 
   def process(r: Row): Unit = {
-    out.write(processRow(r).toString)
+    writeRow(r)
     out.write('\n')
   }
 
+  /**
+    * Write the row text, a RowBase writes its characters straight into the output buffer.
+    */
+  protected def writeRow(r: Row): Unit = r match {
+    case _: RowBase => r.writeRowToStream(out)
+    case _ => out.write(processRow(r))
+  }
+
   def finish(): Unit = {
     out.flush
     out.close
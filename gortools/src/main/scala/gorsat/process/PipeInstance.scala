@@ -36,6 +36,7 @@ import gorsat.Script.{ScriptEngineFactory, ScriptExecutionEngine, ScriptParsers}
 import gorsat.Utilities.IteratorUtilities.validHeader
 import gorsat._
 import gorsatGorIterator.{MemoryMonitorUtil, gorsatGorIterator}
+import gorsat.parser.FilterExpressionBuilder
 import process.GorJavaUtilities.CmdParams
 import process.GorPipe.brsConfig
 import org.gorpipe.exceptions.{GorParsingException, GorResourceException, GorSystemException, GorUserException}
@@ -474,7 +475,7 @@ class PipeInstance(context: GorContext, outputValidateOrder: Boolean = false) ex
   }
 
   def pushdownFilter(filter: String): Boolean = {
-    theInputSource.pushdownFilter(filter)
+    theInputSource.pushdownFilter(FilterExpressionBuilder.build(filter))
   }
 
   def pushdownCalc(calc: String): Boolean = {
@@ -29,6 +29,7 @@ import java.util.Arrays;
 
 import static gorsat.Regression.ComputationTestUtils.getRandomBooleanVector;
 import static gorsat.Regression.ComputationTestUtils.getRandomMatrix;
+import static gorsat.Regression.ComputationTestUtils.getRandomVector;
 
 public class UTestLogisticRegression {
 
@@ -131,6 +132,24 @@ public class UTestLogisticRegression {
         Assert.assertArrayEquals(zStats, glr.zStats, 1e-3);
     }
 
+    @Test
+    public void testUnchangedCovariates() {
+        final int numberOfSamples = 1000;
+        final double[][] x = getRandomMatrix(4, numberOfSamples, 0, 10);
+        final boolean[] y = getRandomBooleanVector(numberOfSamples);
+        final LogisticRegression reusing = LogisticRegression.getGorLogisticRegressionObject(4, numberOfSamples);
+        final LogisticRegression plain = LogisticRegression.getGorLogisticRegressionObject(4, numberOfSamples);
+        for (int i = 0; i < 10; i++) {
+            //Only the genotype column changes, the results should be EXACTLY the same as when fitting from scratch.
+            x[0] = getRandomVector(numberOfSamples, 0, 2);
+            final boolean converged = reusing.runRegression(x, y, numberOfSamples, 1e-5, 20, i > 0);
+            Assert.assertEquals(plain.runRegression(x, y, numberOfSamples, 1e-5, 20), converged);
+            Assert.assertArrayEquals(plain.beta, reusing.beta, 0);
+            Assert.assertArrayEquals(plain.zStats, reusing.zStats, 0);
+            Assert.assertArrayEquals(plain.pValues, reusing.pValues, 0);
+        }
+    }
+
     @Test
     public void testGetGorLogisticRegressionObject() {
         LogisticRegression glr;
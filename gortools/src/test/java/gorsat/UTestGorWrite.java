@@ -341,6 +341,16 @@ public class UTestGorWrite {
         }
     }
 
+    @Test
+    public void testWriteBloomColumnNotInHeader() {
+        Path tmpfile = tmpdir.resolve("bloom.parquet");
+        Assert.assertThrows(GorParsingException.class, () -> TestUtils.runGorPipeCount(
+                "gor ../tests/data/gor/dbsnp_test.gorz | write -bloom notacolumn " + tmpfile));
+        Assert.assertThrows("The fork column is not written with -r", GorParsingException.class, () -> TestUtils.runGorPipeCount(
+                "gor ../tests/data/gor/dbsnp_test.gorz | write -r -f differentrsIDs -bloom differentrsIDs " + tmpdir.resolve("bloom_#{fork}.parquet")));
+        Assert.assertFalse(Files.exists(tmpfile));
+    }
+
     @Test
     public void testGorWriteStandardOut() throws IOException {
         // Not sure what this test is doing with stdout!
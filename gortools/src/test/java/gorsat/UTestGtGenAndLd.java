@@ -23,6 +23,7 @@
 package gorsat;
 
 import com.google.common.io.Files;
+import gorsat.Analysis.GtLDAnalysis;
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.Ignore;
@@ -32,6 +33,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Random;
 
 
 public class UTestGtGenAndLd {
@@ -149,4 +151,27 @@ public class UTestGtGenAndLd {
 
         Assert.assertEquals(result1, result2);
     }
+
+    @Test
+    public void testLdStatCalcMatchesCharCount() {
+        Random random = new Random(17);
+        for (int len : new int[] {0, 1, 63, 64, 65, 200}) {
+            StringBuilder a = new StringBuilder();
+            StringBuilder b = new StringBuilder();
+            for (int i = 0; i < len; i++) {
+                a.append("01233".charAt(random.nextInt(5)));
+                b.append("01233".charAt(random.nextInt(5)));
+            }
+            int[][] counts = new int[3][3];
+            for (int i = 0; i < len; i++) {
+                int x = a.charAt(i) - '0';
+                int y = b.charAt(i) - '0';
+                if (x < 3 && y < 3) counts[x][y]++;
+            }
+            GtLDAnalysis.LDstats stats = GtLDAnalysis.LDstatCalc(a.toString(), b.toString());
+            int[] expected = {counts[0][0], counts[1][0], counts[2][0], counts[0][1], counts[1][1], counts[2][1], counts[0][2], counts[1][2], counts[2][2]};
+            int[] actual = {stats.g00(), stats.g10(), stats.g20(), stats.g01(), stats.g11(), stats.g21(), stats.g02(), stats.g12(), stats.g22()};
+            Assert.assertArrayEquals("Length " + len, expected, actual);
+        }
+    }
 }
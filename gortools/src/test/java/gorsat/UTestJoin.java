@@ -26,6 +26,9 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class UTestJoin {
     private static final Logger log = LoggerFactory.getLogger(UTestJoin.class);
 
@@ -538,6 +541,47 @@ public class UTestJoin {
         TestUtils.assertJoinQuery(leftLines, rightLines, joinQuery, expected);
     }
 
+    @Test
+    public void joinSegSegLongOverlappingSegments() {
+        // Long right segments stay buffered while the short ones between them are dropped, so the buffer is
+        // compacted many times, and the buffer is emptied on the change to chr2.
+        List<String> leftLines = new ArrayList<>();
+        List<String> rightLines = new ArrayList<>();
+        List<int[]> rightSegs = new ArrayList<>();
+        leftLines.add("Chrom\tStart\tEnd\tLeft1");
+        rightLines.add("Chrom\tStart\tEnd\tRight1");
+        for (String chr : new String[]{"chr1", "chr2"}) {
+            for (int i = 0; i < 600; i++) {
+                int start = i * 10 + 1;
+                int stop = start + (i % 7 == 0 ? 3000 : i % 3 == 0 ? 400 : 15);
+                rightLines.add(chr + "\t" + start + "\t" + stop + "\tR" + i);
+                rightSegs.add(new int[]{chr.equals("chr1") ? 1 : 2, start, stop, i});
+            }
+            for (int j = 0; j < 900; j++) {
+                int start = j * 7 + 1;
+                leftLines.add(chr + "\t" + start + "\t" + (start + (j % 50 == 0 ? 200 : 5)) + "\tL" + j);
+            }
+        }
+
+        // Every overlapping right row, in the order of the right source, for each left row
+        List<String> expected = new ArrayList<>();
+        expected.add("Chrom\tStart\tEnd\tLeft1\tdistance\tStartx\tEndx\tRight1\n");
+        for (String left : leftLines.subList(1, leftLines.size())) {
+            String[] cols = left.split("\t");
+            int chr = cols[0].equals("chr1") ? 1 : 2;
+            int start = Integer.parseInt(cols[1]);
+            int stop = Integer.parseInt(cols[2]);
+            for (int[] seg : rightSegs) {
+                if (seg[0] == chr && start < seg[2] && stop > seg[1]) {
+                    expected.add(left + "\t0\t" + seg[1] + "\t" + seg[2] + "\tR" + seg[3] + "\n");
+                }
+            }
+        }
+
+        TestUtils.assertJoinQuery(leftLines.toArray(new String[0]), rightLines.toArray(new String[0]),
+                "gor %s | join -segseg %s", expected.toArray(new String[0]));
+    }
+
     @Test
     public void joinSegSegIncludedOnly() {
         String[] leftLines = {
@@ -0,0 +1,123 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat;
+
+import org.gorpipe.gor.model.Row;
+import org.gorpipe.model.gor.RowObj;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class UTestRowBufferRing {
+    private static final long PARK_NS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void testRingSizeIsPowerOfTwo() {
+        Assert.assertEquals(4, new RowBufferRing(1, 1).size());
+        Assert.assertEquals(8, new RowBufferRing(5, 1).size());
+        Assert.assertEquals(8, new RowBufferRing(8, 1).size());
+    }
+
+    @Test
+    public void testProducerBlocksWhenRingIsFull() {
+        RowBufferRing ring = new RowBufferRing(4, 1);
+        for (int i = 0; i < ring.size() - 1; i++) {
+            Assert.assertNotNull(ring.acquire(PARK_NS));
+            ring.publish();
+        }
+        Assert.assertFalse(ring.hasFreeSlot());
+        Assert.assertNull(ring.acquire(PARK_NS));
+        Assert.assertTrue(ring.getProducerStallTimeMilliSecond() > 0.0);
+
+        // The first take hands over the slot kept for the buffer the consumer reads
+        Assert.assertNotNull(ring.take(PARK_NS));
+        Assert.assertTrue(ring.hasFreeSlot());
+        Assert.assertNotNull(ring.acquire(PARK_NS));
+        ring.publish();
+
+        // The consumer may still read the taken buffer, it is only released by the next take
+        Assert.assertFalse(ring.hasFreeSlot());
+        Assert.assertNull(ring.acquire(PARK_NS));
+        Assert.assertNotNull(ring.take(PARK_NS));
+        Assert.assertTrue(ring.hasFreeSlot());
+        Assert.assertNotNull(ring.acquire(PARK_NS));
+    }
+
+    @Test
+    public void testConsumerWaitsForProducer() {
+        RowBufferRing ring = new RowBufferRing(4, 1);
+        Assert.assertTrue(ring.isConsumerWaiting());
+        Assert.assertNull(ring.take(PARK_NS));
+        Assert.assertTrue(ring.getConsumerStallTimeMilliSecond() > 0.0);
+    }
+
+    @Test
+    public void testStopWakesConsumer() throws InterruptedException {
+        RowBufferRing ring = new RowBufferRing(4, 1);
+        Thread consumer = new Thread(() -> ring.take(TimeUnit.MINUTES.toNanos(1)));
+        consumer.start();
+        Thread.sleep(50);
+        ring.stop();
+        consumer.join(10000);
+        Assert.assertFalse(consumer.isAlive());
+    }
+
+    @Test
+    public void testRowsArriveInOrder() throws InterruptedException {
+        int rowCount = 100000;
+        RowBufferRing ring = new RowBufferRing(4, 16);
+        Thread producer = new Thread(() -> {
+            RowBuffer current = null;
+            for (int i = 0; i < rowCount; i++) {
+                while (current == null) current = ring.acquire(PARK_NS);
+                current.add(RowObj.StoR("chr1\t" + i));
+                if (current.isFull()) {
+                    ring.publish();
+                    current = null;
+                }
+            }
+            while (current == null) current = ring.acquire(PARK_NS);
+            current.add(RowObj.StoR("chrN\t-1"));
+            ring.publish();
+        });
+        producer.start();
+
+        int expected = 0;
+        boolean done = false;
+        while (!done) {
+            RowBuffer buffer = ring.take(PARK_NS);
+            if (buffer == null) continue;
+            while (buffer.available()) {
+                Row row = buffer.next();
+                if (row.pos == -1) {
+                    done = true;
+                } else {
+                    Assert.assertEquals(expected++, row.pos);
+                }
+            }
+        }
+        producer.join();
+        Assert.assertEquals(rowCount, expected);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UTestSeekCostModel {
+
+    @Test
+    public void testSeeksUntilSeekTimeIsKnown() {
+        SeekCostModel model = new SeekCostModel();
+        Assert.assertFalse(model.preferScan(1000));
+        Assert.assertTrue(model.preferScan(0));
+    }
+
+    @Test
+    public void testTriesScanningBeforeReadSpeedIsKnown() {
+        SeekCostModel model = new SeekCostModel();
+        model.recordSeek(5000000);
+        Assert.assertTrue(model.preferScan(SeekCostModel.PROBE_DISTANCE));
+        Assert.assertFalse("Long distances are not read through to measure the speed",
+                model.preferScan(SeekCostModel.PROBE_DISTANCE + 1));
+    }
+
+    @Test
+    public void testPicksCheaperStrategy() {
+        SeekCostModel model = new SeekCostModel();
+        model.recordSeek(10000000); // 10ms
+        model.recordScan(100000, 1000000); // 100000 bases in 1ms
+        Assert.assertEquals(10.0, model.getSeekTimeMilliSecond(), 1e-9);
+        Assert.assertEquals(100000.0, model.getBasesPerMilliSecond(), 1e-9);
+        Assert.assertTrue(model.preferScan(500000));
+        Assert.assertFalse(model.preferScan(5000000));
+    }
+
+    @Test
+    public void testUsesSourceMeasurementsAsFallback() {
+        SeekCostModel model = new SeekCostModel();
+        Assert.assertTrue(model.preferScan(1000, 10.0, 1000.0));
+        Assert.assertFalse(model.preferScan(100000, 10.0, 1000.0));
+
+        model.recordSeek(1000000000); // 1s, own measurements take precedence
+        Assert.assertTrue(model.preferScan(100000, 10.0, 1000.0));
+    }
+
+    @Test
+    public void testMeasurementsAreSmoothed() {
+        SeekCostModel model = new SeekCostModel();
+        model.recordSeek(10000000);
+        model.recordSeek(20000000);
+        Assert.assertEquals(13.0, model.getSeekTimeMilliSecond(), 1e-9);
+        Assert.assertEquals(2, model.getSeekCount());
+    }
+}
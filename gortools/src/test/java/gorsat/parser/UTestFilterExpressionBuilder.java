@@ -0,0 +1,74 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.parser;
+
+import org.gorpipe.gor.model.FilterExpression;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class UTestFilterExpressionBuilder {
+    @Test
+    public void compareColumnWithConstant() {
+        FilterExpression expression = FilterExpressionBuilder.build("pos >= 100");
+        Assert.assertTrue(expression instanceof FilterExpression.Compare);
+        FilterExpression.Compare compare = (FilterExpression.Compare) expression;
+        Assert.assertEquals("pos", compare.getColumn());
+        Assert.assertEquals(FilterExpression.Operator.GE, compare.getOperator());
+        Assert.assertEquals("100", compare.getValue());
+        Assert.assertFalse(compare.isStringValue());
+    }
+
+    @Test
+    public void constantOnTheLeftIsSwapped() {
+        FilterExpression.Compare compare = (FilterExpression.Compare) FilterExpressionBuilder.build("-5 < pos");
+        Assert.assertEquals(FilterExpression.Operator.GT, compare.getOperator());
+        Assert.assertEquals("-5", compare.getValue());
+    }
+
+    @Test
+    public void conjunctsKeepTheirText() {
+        FilterExpression expression = FilterExpressionBuilder.build("Chrom = 'chr1' and len(ref) > 1 and (alt = 'A' or not(alt = 'C'))");
+        Assert.assertTrue(expression instanceof FilterExpression.And);
+        Assert.assertEquals(3, expression.conjuncts().size());
+        Assert.assertEquals("Chrom = 'chr1'", expression.conjuncts().get(0).getText());
+        Assert.assertTrue(expression.conjuncts().get(1) instanceof FilterExpression.Other);
+        Assert.assertTrue(expression.conjuncts().get(2) instanceof FilterExpression.Or);
+        FilterExpression.Or or = (FilterExpression.Or) expression.conjuncts().get(2);
+        Assert.assertTrue(or.getOperands().get(1) instanceof FilterExpression.Not);
+    }
+
+    @Test
+    public void inList() {
+        FilterExpression.In in = (FilterExpression.In) FilterExpressionBuilder.build("rsid in ('rs1','rs2')");
+        Assert.assertEquals("rsid", in.getColumn());
+        Assert.assertEquals(Arrays.asList("rs1", "rs2"), in.getValues());
+    }
+
+    @Test
+    public void columnComparisonIsOther() {
+        Assert.assertTrue(FilterExpressionBuilder.build("ref = alt") instanceof FilterExpression.Other);
+        Assert.assertTrue(FilterExpressionBuilder.build("pos + 1 > 10") instanceof FilterExpression.Other);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.relatedness;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class UTestGenotypeBitPlanes {
+
+    @Test
+    public void testAddAndGet() {
+        GenotypeBitPlanes planes = new GenotypeBitPlanes(3, 70);
+        for (int v = 0; v < 70; v++) {
+            planes.add(new char[]{(char) ('0' + v % 4), '1', '3'});
+        }
+        Assert.assertFalse(planes.isFull());
+        Assert.assertEquals(2, planes.getWordCount());
+        Assert.assertEquals(-1L, planes.validMask(0));
+        Assert.assertEquals(0x3FL, planes.validMask(1));
+        for (int v = 0; v < 70; v++) {
+            Assert.assertEquals((char) ('0' + v % 4), planes.get(0, v));
+            Assert.assertEquals('1', planes.get(1, v));
+            Assert.assertEquals('3', planes.get(2, v));
+        }
+        planes.clear();
+        Assert.assertEquals(0, planes.getVariantCount());
+        Assert.assertEquals('0', planes.get(0, 3));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddWhenFull() {
+        GenotypeBitPlanes planes = new GenotypeBitPlanes(1, 1);
+        for (int v = 0; v <= GenotypeBitPlanes.WORD_SIZE; v++) {
+            planes.add(new char[]{'0'});
+        }
+    }
+
+    @Test
+    public void testKingMatchesScalar() {
+        final Random random = new Random(17);
+        final int samples = 12;
+        final int variants = 150;
+        final char[][] gts = new char[variants][samples];
+        final float[] tpqc = new float[variants];
+        final GenotypeBitPlanes planes = new GenotypeBitPlanes(samples, variants);
+        for (int v = 0; v < variants; v++) {
+            for (int s = 0; s < samples; s++) {
+                gts[v][s] = (char) ('0' + random.nextInt(4));
+            }
+            tpqc[v] = random.nextFloat();
+            planes.add(gts[v]);
+        }
+
+        final GenotypeBitPlanes.KingCounts counts = new GenotypeBitPlanes.KingCounts(1);
+        for (int i = 0; i < samples; i++) {
+            for (int j = 0; j < samples; j++) {
+                counts.clear();
+                float tpq = 0.0f;
+                for (int w = 0; w < planes.getWordCount(); w++) {
+                    final long both = planes.king(i, j, w, counts, 0);
+                    tpq = GenotypeBitPlanes.addFloat(both, tpqc, w * GenotypeBitPlanes.WORD_SIZE, tpq);
+                }
+
+                int ibs0 = 0, xx = 0, nhet = 0, naai = 0, naaj = 0, count = 0;
+                float expectedTpq = 0.0f;
+                for (int v = 0; v < variants; v++) {
+                    final char gt1 = gts[v][i];
+                    final char gt2 = gts[v][j];
+                    if (gt1 == '3' || gt2 == '3') continue;
+                    count++;
+                    expectedTpq += tpqc[v];
+                    final boolean opposite = gt1 == '0' && gt2 == '2' || gt1 == '2' && gt2 == '0';
+                    if (opposite) {
+                        ibs0++;
+                        xx += 4;
+                    } else if (gt1 != gt2 && (gt1 == '1' || gt2 == '1')) {
+                        xx++;
+                    }
+                    if (gt1 == '1' && gt2 == '1') nhet++;
+                    if (gt1 == '1') naai++;
+                    if (gt2 == '1') naaj++;
+                }
+
+                Assert.assertEquals(ibs0, counts.ibs0[0]);
+                Assert.assertEquals(xx, counts.xx[0]);
+                Assert.assertEquals(nhet, counts.nhet[0]);
+                Assert.assertEquals(naai, counts.naai[0]);
+                Assert.assertEquals(naaj, counts.naaj[0]);
+                Assert.assertEquals(count, counts.count[0]);
+                Assert.assertEquals(Float.floatToIntBits(expectedTpq), Float.floatToIntBits(tpq));
+            }
+        }
+    }
+}
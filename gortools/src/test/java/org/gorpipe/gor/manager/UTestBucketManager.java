@@ -293,6 +293,80 @@ public class UTestBucketManager {
         Assert.assertEquals("Only on bucket should be created", 1, buckets.size());
     }
 
+    @Test
+    public void testParallelBucketCreatorMatchesGorPipe() throws Exception {
+        String name = "testParallelBucketCreatorMatchesGorPipe";
+        String[] sources = IntStream.range(1, 30).mapToObj(i -> String.format("PN%d", i)).toArray(size -> new String[size]);
+        Map<String, List<String>> dataFiles = GorDictionarySetup.createDataFilesMap(
+                name, workDirPath, 29, new int[]{1, 10, 2, 22, 3}, 10, "PN", true, sources);
+        DictionaryTable table = TestUtils.createDictionaryWithData(name, workDirPath, dataFiles);
+        List<DictionaryEntry> entries = table.selectAll();
+
+        Path bucketDir = Files.createDirectory(workDirPath.resolve("buckets"));
+        List<String> created = new ArrayList<>();
+        new BucketCreatorGorPipe<>().createBucketsForBucketDir(table,
+                Collections.singletonMap("b/b_gorpipe.gorz", entries), bucketDir.toString(), created::add);
+        new BucketCreatorParallel<>(3).createBucketsForBucketDir(table,
+                Collections.singletonMap("b/b_parallel.gorz", entries), bucketDir.toString(), created::add);
+
+        Assert.assertEquals(Arrays.asList("b/b_gorpipe.gorz", "b/b_parallel.gorz"), created);
+        String expected = TestUtils.runGorPipe("gor " + bucketDir.resolve("b_gorpipe.gorz"));
+        Assert.assertEquals(29 * 5 * 10, expected.split("\n").length - 1);
+        Assert.assertEquals(expected, TestUtils.runGorPipe("gor " + bucketDir.resolve("b_parallel.gorz")));
+        Assert.assertEquals("Temp part files should be removed", 2, Files.list(bucketDir).count());
+    }
+
+    @Test
+    public void testParallelBucketCreatorWritesColumnEncodedGorz() throws Exception {
+        String name = "testParallelBucketCreatorWritesColumnEncodedGorz";
+        String[] sources = IntStream.range(1, 6).mapToObj(i -> String.format("PN%d", i)).toArray(size -> new String[size]);
+        Map<String, List<String>> dataFiles = GorDictionarySetup.createDataFilesMap(
+                name, workDirPath, 5, new int[]{1, 2, 3}, 10, "PN", true, sources);
+        DictionaryTable table = TestUtils.createDictionaryWithData(name, workDirPath, dataFiles);
+        List<DictionaryEntry> entries = table.selectAll();
+
+        Path bucketDir = Files.createDirectory(workDirPath.resolve("buckets"));
+        new BucketCreatorGorPipe<>().createBucketsForBucketDir(table,
+                Collections.singletonMap("b/b_gorpipe.gorz", entries), bucketDir.toString(), b -> {});
+        new BucketCreatorParallel<>(3).createBucketsForBucketDir(table,
+                Collections.singletonMap("b/b_parallel.gorz", entries), bucketDir.toString(), b -> {});
+
+        byte[] gorpipe = Files.readAllBytes(bucketDir.resolve("b_gorpipe.gorz"));
+        byte[] parallel = Files.readAllBytes(bucketDir.resolve("b_parallel.gorz"));
+        int headerEnd = indexOf(parallel, (byte) '\n', 0);
+        int tableStart = indexOf(parallel, (byte) 0, 0);
+        Assert.assertTrue("Header should have the lookup table of column encoding", tableStart > 0 && tableStart < headerEnd);
+        // Each block line is chr, pos and then the block type, as written by write -c
+        int blockStart = indexOf(parallel, (byte) '\t', indexOf(parallel, (byte) '\t', headerEnd) + 1) + 1;
+        int expectedBlockStart = indexOf(gorpipe, (byte) '\t', indexOf(gorpipe, (byte) '\t', indexOf(gorpipe, (byte) '\n', 0)) + 1) + 1;
+        Assert.assertEquals("Blocks should be column encoded", gorpipe[expectedBlockStart], parallel[blockStart]);
+        Assert.assertEquals(TestUtils.runGorPipe("gor " + bucketDir.resolve("b_gorpipe.gorz")),
+                TestUtils.runGorPipe("gor " + bucketDir.resolve("b_parallel.gorz")));
+    }
+
+    @Test
+    public void testParallelBucketCreatorMoreFilesThanMaxOpenFiles() throws Exception {
+        String name = "testParallelBucketCreatorMoreFilesThanMaxOpenFiles";
+        String[] sources = IntStream.range(1, 30).mapToObj(i -> String.format("PN%d", i)).toArray(size -> new String[size]);
+        Map<String, List<String>> dataFiles = GorDictionarySetup.createDataFilesMap(
+                name, workDirPath, 29, new int[]{1, 10, 2, 22, 3}, 10, "PN", true, sources);
+        DictionaryTable table = TestUtils.createDictionaryWithData(name, workDirPath, dataFiles);
+        List<DictionaryEntry> entries = table.selectAll();
+
+        Path bucketDir = Files.createDirectory(workDirPath.resolve("buckets"));
+        new BucketCreatorGorPipe<>().createBucketsForBucketDir(table,
+                Collections.singletonMap("b/b_gorpipe.gorz", entries), bucketDir.toString(), b -> {});
+        // 29 files merged in groups of 4, and the 8 groups merged in groups of 4 again before the last merge
+        System.setProperty(BucketCreatorParallel.MAX_OPEN_FILES_KEY, "4");
+        new BucketCreatorParallel<>(3).createBucketsForBucketDir(table,
+                Collections.singletonMap("b/b_parallel.gorz", entries), bucketDir.toString(), b -> {});
+
+        String expected = TestUtils.runGorPipe("gor " + bucketDir.resolve("b_gorpipe.gorz"));
+        Assert.assertEquals(29 * 5 * 10, expected.split("\n").length - 1);
+        Assert.assertEquals(expected, TestUtils.runGorPipe("gor " + bucketDir.resolve("b_parallel.gorz")));
+        Assert.assertEquals("Temp group files should be removed", 2, Files.list(bucketDir).count());
+    }
+
     @Test
     public void testFindBucketsToDelete() throws Exception {
         String name = "testFindBucketsToDelete";
@@ -808,6 +882,13 @@ public class UTestBucketManager {
         Assert.assertEquals("Not all lines bucketized", 0, table.needsBucketizing().size());
     }
 
+    private static int indexOf(byte[] bytes, byte b, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == b) return i;
+        }
+        return -1;
+    }
+
     private DictionaryTable createTable(Path path) {
         return new DictionaryTable.Builder<>(path).useHistory(true).validateFiles(false).build();
     }
@@ -0,0 +1,67 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Analysis
+
+import gorsat.Commands.{BinAggregator, BinFactory}
+import org.gorpipe.model.gor.RowObj
+import org.junit.Assert
+import org.junit.runner.RunWith
+import org.scalatest.funsuite.AnyFunSuite
+import org.scalatestplus.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class UTestBinStateMemory extends AnyFunSuite {
+
+  private val rows = (1 to 100).map(i => s"chr1\t$i\tvalue$i\tgroup${i % 10}")
+
+  private def peakMemory(factory: BinFactory): Long = {
+    val aggregator = BinAggregator(factory, 2, 1, memoryBudget = 0)
+    aggregator.setNextProcessor(AnalysisSink())
+    rows.foreach(r => aggregator.update(RowObj(r), 0, "chr1", 0, 1000))
+    aggregator.finalFlush()
+    aggregator.peakMemoryEstimate
+  }
+
+  test("group reports the memory of its open bin") {
+    val factory = GroupAnalysis.AggregateFactory(1000, useSegment = false, useCount = true, useCdist = false,
+      useMax = false, useMin = false, useMed = false, useDis = false, useSet = true, useLis = true, useAvg = false,
+      useStd = false, useSum = false, acCols = List(2), icCols = Nil, fcCols = Nil, grCols = List(3), setLen = 10000,
+      truncate = false, sepVal = ",")
+    val peak = peakMemory(factory)
+    Assert.assertTrue(s"Peak memory of a group bin should be counted, was $peak", peak > 0)
+    // The set and list of all the values are held, at least two bytes per character
+    Assert.assertTrue(s"Peak memory should cover the collected values, was $peak",
+      peak >= 2 * 2 * rows.map(_.split("\t")(2).length).sum)
+  }
+
+  test("rank reports the memory of the buffered rows") {
+    val peak = peakMemory(RankAnalysis.RankFactory(1000, 1, List(3), RankAnalysis.Parameters()))
+    Assert.assertTrue(s"Peak memory should cover the buffered rows, was $peak", peak >= 2 * rows.map(_.length).sum)
+  }
+
+  test("pivot reports the memory of the pivoted values") {
+    val pivotValues = (0 until 10).map(i => s"group$i").toArray
+    val peak = peakMemory(PivotAnalysis.PivotFactory(Array(0, 1), 3, pivotValues, Array(2), ""))
+    Assert.assertTrue(s"Peak memory of a pivot bin should be counted, was $peak", peak > 0)
+  }
+}
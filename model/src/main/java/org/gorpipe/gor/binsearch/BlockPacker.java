@@ -23,6 +23,7 @@
 package org.gorpipe.gor.binsearch;
 
 import org.gorpipe.exceptions.GorSystemException;
+import org.gorpipe.gor.model.PackedGenotypes;
 import org.gorpipe.gor.util.ByteTextBuilder;
 import org.gorpipe.gor.util.GLongHashMap;
 import org.gorpipe.gor.util.Util;
@@ -45,7 +46,7 @@ import java.util.zip.DeflaterOutputStream;
  * type: zero terminated sequence of typeid
  * {@literal typeid: byte := 3->intoffset, 4-> shortoffset, 5->byteoffset, 6->longseq, 7->incr, 8->constant, 9->unsigned byte diff, 10->unsigned short diff, 11->unsigned int diff}
  * {@literal 12->signed byte diff, 13->signed short diff, 19->empty, 20->charseq, 21->varcharseq, 22->textlookup, 23->sametext, 24->externalTextLookup, 25->externalTextLookupWithDiff}
- * {@literal 26->externalTextLookupWithCycle, 28->textlookupWithDiff, 29->externalTextLookupWith16bitDiff}
+ * {@literal 26->externalTextLookupWithCycle, 28->textlookupWithDiff, 29->externalTextLookupWith16bitDiff, 30->genotypes}
  * column: sequence of coldata
  * coldata: { longseq | byteoffset | shortoffset | intoffset | incr | constant | usbytediff | sbytediff | ushortdiff | sshortdiff | uintdiff | charseq | varcharseq | textlookup | textlookupdiff | sametest }
  * longseq: sequence of 64 bits
@@ -64,12 +65,20 @@ import java.util.zip.DeflaterOutputStream;
  * textlookup: 8 bit length, varcharseq of distinct values and byteseq of references
  * textlookupdiff: 8 bit length, varcharseq of distinct values and byteseq of references diffs, i.e. first value is v[0], i-th value is v[i]-v[i-1]
  * sametext: varchar constant
+ * genotypes: 32 bit value length and the values of each row packed two bits per value
  *
  * @version $Id$
  */
 public class BlockPacker {
     private static final Logger log = LoggerFactory.getLogger(BlockPacker.class);
-    private static final String[] ENCODE_TYPES = {"", "", "", "ioff", "soff", "boff", "lseq", "incr", "lconst", "ubdiff", "usdiff", "uidiff", "bdiff", "sdiff", "", "", "", "", "", "empty", "cseq", "vcseq", "tlookup", "tconst", "exttlookup", "exttlookupdiff", "", "lookupcycle", "lookupdiff", "extlookupdiffmulti"};
+    private static final String[] ENCODE_TYPES = {"", "", "", "ioff", "soff", "boff", "lseq", "incr", "lconst", "ubdiff", "usdiff", "uidiff", "bdiff", "sdiff", "", "", "", "", "", "empty", "cseq", "vcseq", "tlookup", "tconst", "exttlookup", "exttlookupdiff", "", "lookupcycle", "lookupdiff", "extlookupdiffmulti", "gtpack"};
+
+    /**
+     * Pack text columns of hard call genotype values, e.g. 0120..., two bits per value. Off by default as blocks
+     * with packed columns can not be read by older versions.
+     */
+    public static final boolean PACK_GENOTYPES = Boolean.parseBoolean(System.getProperty("gor.gorz.packgenotypes", "false"));
+    private static final int MIN_GENOTYPE_LENGTH = 16;
 
     /**
      * Decode a block previously encoded by format defined by this class
@@ -184,6 +193,22 @@ public class BlockPacker {
     }
 
     public static int encode(byte[] src, int bufferLen, byte[] dest, Map<Integer, Map<String, Integer>> mapExternalTables, boolean allowAddExtTable, int extTableSize) {
+        return encode(src, bufferLen, dest, mapExternalTables, allowAddExtTable, extTableSize, PACK_GENOTYPES);
+    }
+
+    /**
+     * Encoded the specifed block into the specified destination buffer
+     *
+     * @param src               The block to encode
+     * @param bufferLen         The number of bytes of the block
+     * @param dest              The destination byte buffer
+     * @param mapExternalTables A map of available external tables
+     * @param allowAddExtTable  True if the map of external tables can be appended
+     * @param extTableSize      The total number of bytes allowed to be written into the external map
+     * @param packGenotypes     True if columns of genotype values can be packed
+     * @return The number of bytes written
+     */
+    public static int encode(byte[] src, int bufferLen, byte[] dest, Map<Integer, Map<String, Integer>> mapExternalTables, boolean allowAddExtTable, int extTableSize, boolean packGenotypes) {
         // Start by parsing the block into a column based data model (matrix of strings)
         final ArrayList<ArrayList<String>> data = toStringMatrix(src, bufferLen);
         final int rowcnt = data.get(0).size();
@@ -197,7 +222,7 @@ public class BlockPacker {
         }
 
         // Analyze each column and choose the best storage format
-        final ColEncoder[] encoders = chooseEncoders(data, rowcnt, mapExternalTables, allowAddExtTable, extTableSize);
+        final ColEncoder[] encoders = chooseEncoders(data, rowcnt, mapExternalTables, allowAddExtTable, extTableSize, packGenotypes);
 
         // Encode the block into the destination buffer according to choosen formats
         ByteArray.writeUnsignedShort(dest, 0, ByteOrder.BIG_ENDIAN, rowcnt); // Row count
@@ -348,9 +373,9 @@ public class BlockPacker {
         return size;
     }
 
-    private static ColEncoder[] chooseEncoders(final ArrayList<ArrayList<String>> data, final int rowcnt, Map<Integer, Map<String, Integer>> mapExternalTables, boolean allowAddExtTable, int extTableSize) {
+    private static ColEncoder[] chooseEncoders(final ArrayList<ArrayList<String>> data, final int rowcnt, Map<Integer, Map<String, Integer>> mapExternalTables, boolean allowAddExtTable, int extTableSize, boolean packGenotypes) {
         // Start by analyzing column types, i.e. string vs long vs double, non null columns vs contains null
-        final ColType[] types = analyzeTypes(data, rowcnt);
+        final ColType[] types = analyzeTypes(data, rowcnt, packGenotypes);
         final ColEncoder[] encoders = new ColEncoder[types.length];
         for (int i = 0; i < types.length; i++) {
             int extTableUsed = 0;
@@ -367,12 +392,16 @@ public class BlockPacker {
         return encoders;
     }
 
-    private static ColType[] analyzeTypes(ArrayList<ArrayList<String>> data, int rowcnt) {
+    private static ColType[] analyzeTypes(ArrayList<ArrayList<String>> data, int rowcnt, boolean packGenotypes) {
         final int[] types = new int[data.size()];
         Object[][] values = new Object[data.size()][rowcnt];
         Arrays.fill(types, 1);
-        // Types: 1->long no null, 2->long with null, 3->double no null, 4->double with null, 5->text, 6->empty
+        // Types: 1->long no null, 2->long with null, 3->double no null, 4->double with null, 5->text, 6->empty, 7->genotypes
         for (int i = 0; i < types.length; i++) {
+            if (packGenotypes && GenotypeColType.isGenotypes(data.get(i))) {
+                types[i] = 7;
+                continue;
+            }
             Number[] column = new Number[rowcnt];
             values[i] = column;
             final ArrayList<String> list = data.get(i);
@@ -416,7 +445,9 @@ public class BlockPacker {
 
         final ColType[] res = new ColType[types.length];
         for (int i = 0; i < types.length; i++) {
-            if (types[i] == 5) {
+            if (types[i] == 7) {
+                res[i] = new GenotypeColType(data.get(i));
+            } else if (types[i] == 5) {
                 res[i] = new TextColType(data.get(i));
             } else if (types[i] == 6) {
                 res[i] = new EmptyColType();
@@ -820,6 +851,26 @@ public class BlockPacker {
                 };
 
 
+            case 30: // Genotypes, i.e. the value length followed by the values of each row packed two bits per value
+                final int length30 = ByteArray.readIntBigEndian(src, pos);
+                final int rowLength30 = PackedGenotypes.packedLength(length30);
+                final int start30 = pos + 4;
+                return new RowDecoder() {
+                    int srcpos = start30;
+
+                    @Override
+                    final int decodeNext(byte[] bytes, int offset) {
+                        PackedGenotypes.unpackTo(src, srcpos, length30, bytes, offset);
+                        srcpos += rowLength30;
+                        return length30;
+                    }
+
+                    @Override
+                    final int getReadLen() {
+                        return 4 + rowLength30 * rowcnt;
+                    }
+                };
+
             default:
                 throw new GorSystemException("Unexpected data type " + type + " when decoding packed block", null);
         }
@@ -1307,4 +1358,54 @@ public class BlockPacker {
             return createVarcharEncoder(org);
         }
     }
+
+    static class GenotypeColType extends ColType {
+        final ArrayList<String> data;
+        final int length;
+
+        GenotypeColType(ArrayList<String> data) {
+            super(false);
+            this.data = data;
+            this.length = data.get(0).length();
+        }
+
+        /**
+         * @return true if the values are hard call genotypes, i.e. text of 0-3 of the same length in every row
+         */
+        static boolean isGenotypes(ArrayList<String> data) {
+            final String first = data.get(0);
+            if (first == null || first.length() < MIN_GENOTYPE_LENGTH) {
+                return false;
+            }
+            final int length = first.length();
+            for (String value : data) {
+                if (value == null || value.length() != length) {
+                    return false;
+                }
+                for (int i = 0; i < length; i++) {
+                    if (PackedGenotypes.code(value.charAt(i)) < 0) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        ColEncoder createEncoder(Map<String, Integer> mapColExternalTable, boolean allowAddExtTable, int extTableFreeSpace) {
+            return new ColEncoder(30) {
+                @Override
+                int encode(byte[] bytes, int offset) {
+                    ByteArray.writeInt(bytes, offset, ByteOrder.BIG_ENDIAN, length);
+                    int pos = offset + 4;
+                    final int rowLength = PackedGenotypes.packedLength(length);
+                    for (String value : data) {
+                        PackedGenotypes.packTo(value, bytes, pos);
+                        pos += rowLength;
+                    }
+                    return pos - offset;
+                }
+            };
+        }
+    }
 }
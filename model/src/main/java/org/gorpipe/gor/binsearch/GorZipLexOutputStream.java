@@ -41,10 +41,15 @@ import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.Deflater;
 
 /**
@@ -70,6 +75,10 @@ public class GorZipLexOutputStream extends OutputStream {
     private final boolean useZStd = Boolean.parseBoolean(System.getProperty("gor.compression.useZStd", "false"));
     private final BufferInfo[] cachedOutput = new BufferInfo[16];
     private int cachedOutputIdx = 0;
+    // Maximum number of blocks compressed ahead of the writer, 0 compresses in batches on the writer thread
+    private final int maxBlocksInFlight = Integer.parseInt(System.getProperty("gor.gorz.parallel.blocks", "0"));
+    private final ArrayDeque<Future<BufferInfo>> blocksInFlight = new ArrayDeque<>();
+    private final ArrayDeque<BufferInfo> freeBuffers = new ArrayDeque<>();
     private final byte byteToWrite;
 
     private final int compressionLevel;
@@ -79,6 +88,21 @@ public class GorZipLexOutputStream extends OutputStream {
     private String lastChr = null;
     private int lastPos = 0;
 
+    /**
+     * Compression pool shared by all writers, so parallel partition writes do not multiply the thread count.
+     */
+    private static class CompressionPool {
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                Integer.parseInt(System.getProperty("gor.gorz.parallel.threads",
+                        String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                r -> {
+                    Thread t = Executors.defaultThreadFactory().newThread(r);
+                    t.setName("gorz-compress-" + t.getId());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
     static class BufferInfo {
         byte[] keyInBytes; //the chr and pos fields of the last line in block as byte array.
         byte[] block; //Buffer to write data block to.
@@ -281,12 +305,18 @@ public class GorZipLexOutputStream extends OutputStream {
         if (this.cachedOutputIdx != 0) {
             writeCachedData();
         }
+        writeBlocksInFlight();
         this.target.flush();
     }
 
     @Override
     public void close() throws IOException {
-        flush();
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            cancelBlocksInFlight();
+            throw e;
+        }
 
         if (this.idx != null) {
             this.idx.writeLastEntry();
@@ -322,6 +352,13 @@ public class GorZipLexOutputStream extends OutputStream {
     }
 
     private void writeBlock(byte[] keyInBytes, byte[] block, int blockLen) throws IOException {
+        if (this.maxBlocksInFlight > 0 && this.isHeaderWritten) {
+            // The external table is fixed once the header is written, compress the block in the background
+            final BufferInfo bi = this.freeBuffers.isEmpty() ? new BufferInfo() : this.freeBuffers.poll();
+            bi.updateVariables(keyInBytes, block, blockLen);
+            submitBlock(bi);
+            return;
+        }
         // Cache prepared blocks and do not write to file so that an external table can be better
         if (this.cachedOutput[this.cachedOutputIdx] == null) {
             this.cachedOutput[this.cachedOutputIdx] = new BufferInfo();
@@ -385,43 +422,98 @@ public class GorZipLexOutputStream extends OutputStream {
 
     private void writeCachedData() throws IOException {
         writeHeader();
-        Arrays.stream(this.cachedOutput, 0, this.cachedOutputIdx).parallel().forEach(bufferInfo -> {
-            int len = this.useZStd ? zipItZStd(bufferInfo, compressionLevel) : zipItZLib(bufferInfo, compressionLevel);
-            byte[] buffer = bufferInfo.block;
-            byte[] zipBuffer = bufferInfo.zipBuffer;
-            int siz = base64 ? base64Length(len, true) : base128Length(len);
-            if( buffer.length < siz ) {
-                int newLen = buffer.length;
-                while ((newLen <<= 1) < siz);
-                buffer = new byte[newLen];
-                bufferInfo.block = buffer;
+        if (this.maxBlocksInFlight > 0) {
+            for (int i = 0; i < this.cachedOutputIdx; ++i) {
+                submitBlock(this.cachedOutput[i]);
+                this.cachedOutput[i] = null;
             }
-            if( base64 ) {
-                siz = Base64.getEncoder().encode(Arrays.copyOfRange(zipBuffer,0,len), buffer);
-            } else ByteArray.to7Bit(zipBuffer, len, buffer);
-            bufferInfo.blockLen = siz;
-        });
+            this.cachedOutputIdx = 0;
+            return;
+        }
+        Arrays.stream(this.cachedOutput, 0, this.cachedOutputIdx).parallel().forEach(this::compressBlock);
 
-        BufferInfo bufferInfo;
         for (int i = 0; i < this.cachedOutputIdx; ++i) {
-            bufferInfo = this.cachedOutput[i];
-            final byte[] keyInBytes = bufferInfo.keyInBytes;
-            this.target.write(keyInBytes);
-            this.target.write('\t');
-            this.target.write(this.byteToWrite);
-            this.target.write(bufferInfo.block, 0, bufferInfo.blockLen);
-            this.target.write('\n');
-
-            if (this.idx != null) {
-                this.start += 3 + keyInBytes.length + bufferInfo.blockLen;
-                String key = new String(keyInBytes);
-                String[] components = key.split("\t");
-                this.idx.putFilePosition(components[0], Integer.parseInt(components[1]), this.start);
-            }
+            writeCompressedBlock(this.cachedOutput[i]);
         }
         this.cachedOutputIdx = 0;
     }
 
+    /**
+     * Submit a block for compression, writing out the oldest blocks in order while too many are in flight.
+     */
+    private void submitBlock(BufferInfo bufferInfo) throws IOException {
+        while (this.blocksInFlight.size() >= this.maxBlocksInFlight) {
+            writeOldestBlockInFlight();
+        }
+        this.blocksInFlight.add(CompressionPool.EXECUTOR.submit(() -> {
+            compressBlock(bufferInfo);
+            return bufferInfo;
+        }));
+    }
+
+    private void writeOldestBlockInFlight() throws IOException {
+        final BufferInfo bufferInfo;
+        try {
+            bufferInfo = this.blocksInFlight.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GorSystemException("Interrupted while compressing gorz block", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GorSystemException("Failed compressing gorz block", e.getCause());
+        }
+        writeCompressedBlock(bufferInfo);
+        this.freeBuffers.add(bufferInfo);
+    }
+
+    private void writeBlocksInFlight() throws IOException {
+        while (!this.blocksInFlight.isEmpty()) {
+            writeOldestBlockInFlight();
+        }
+    }
+
+    private void cancelBlocksInFlight() {
+        Future<BufferInfo> f;
+        while ((f = this.blocksInFlight.poll()) != null) {
+            f.cancel(false);
+        }
+    }
+
+    private void compressBlock(BufferInfo bufferInfo) {
+        int len = this.useZStd ? zipItZStd(bufferInfo, compressionLevel) : zipItZLib(bufferInfo, compressionLevel);
+        byte[] buffer = bufferInfo.block;
+        byte[] zipBuffer = bufferInfo.zipBuffer;
+        int siz = base64 ? base64Length(len, true) : base128Length(len);
+        if( buffer.length < siz ) {
+            int newLen = buffer.length;
+            while ((newLen <<= 1) < siz);
+            buffer = new byte[newLen];
+            bufferInfo.block = buffer;
+        }
+        if( base64 ) {
+            siz = Base64.getEncoder().encode(Arrays.copyOfRange(zipBuffer,0,len), buffer);
+        } else ByteArray.to7Bit(zipBuffer, len, buffer);
+        bufferInfo.blockLen = siz;
+    }
+
+    private void writeCompressedBlock(BufferInfo bufferInfo) throws IOException {
+        final byte[] keyInBytes = bufferInfo.keyInBytes;
+        this.target.write(keyInBytes);
+        this.target.write('\t');
+        this.target.write(this.byteToWrite);
+        this.target.write(bufferInfo.block, 0, bufferInfo.blockLen);
+        this.target.write('\n');
+
+        if (this.idx != null) {
+            this.start += 3 + keyInBytes.length + bufferInfo.blockLen;
+            String key = new String(keyInBytes);
+            String[] components = key.split("\t");
+            this.idx.putFilePosition(components[0], Integer.parseInt(components[1]), this.start);
+        }
+    }
+
     private static byte[] zipItZLib(byte[] buffer, int compressionLevel) {
         final Deflater deflater = new Deflater(compressionLevel);
         deflater.setInput(buffer);
@@ -0,0 +1,181 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.driver;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.gorpipe.gor.driver.meta.SourceMetadata;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process wide cache of data source existence and metadata, shared by all sessions.
+ * <p>
+ * Checking existence, length, last modified and unique id of a source is a round trip on network file systems and
+ * object stores, and the same sources are checked repeatedly within and across queries.  The cache keeps the answers
+ * for the configured time to live.  That a source does not exist is kept for a separate, usually shorter, time.
+ * <p>
+ * Sources are keyed by their full path.  Writes, deletes and moves done through the driver in this JVM invalidate
+ * the affected sources, changes made by other processes are seen when the entries expire.
+ */
+public class DataSourceMetadataCache {
+
+    /**
+     * Loader of a value from the data source.
+     */
+    public interface Loader<V> {
+        V load() throws IOException;
+    }
+
+    private static class Entry {
+        final long created = System.nanoTime();
+        volatile Boolean exists;
+        // Kept apart from exists, object stores report a directory prefix as existing but not as a file
+        volatile Boolean fileExists;
+        volatile SourceMetadata metadata;
+    }
+
+    private final Cache<String, Entry> cache;
+    private final long negativeTtlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public DataSourceMetadataCache(Duration ttl, Duration negativeTtl, int maxEntries) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl.toNanos(), TimeUnit.NANOSECONDS)
+                .build();
+        this.negativeTtlNanos = Math.min(negativeTtl.toNanos(), ttl.toNanos());
+    }
+
+    /**
+     * Create the cache from the driver config.
+     *
+     * @return the cache or null if it is disabled
+     */
+    public static DataSourceMetadataCache fromConfig(GorDriverConfig config) {
+        if (config == null || config.metadataCacheTtl() == null || config.metadataCacheTtl().isZero()
+                || config.metadataCacheTtl().isNegative()) {
+            return null;
+        }
+        return new DataSourceMetadataCache(config.metadataCacheTtl(), config.metadataCacheNegativeTtl(),
+                config.metadataCacheMaxEntries());
+    }
+
+    private Entry entry(String key) {
+        Entry entry = this.cache.get(key, k -> new Entry());
+        if ((entry.exists == Boolean.FALSE || entry.fileExists == Boolean.FALSE) && System.nanoTime() - entry.created > this.negativeTtlNanos) {
+            // Negative answers expire sooner, start over with a new entry
+            this.cache.asMap().remove(key, entry);
+            entry = this.cache.get(key, k -> new Entry());
+        }
+        return entry;
+    }
+
+    /**
+     * @return the cached existence of the source, loaded if not cached
+     */
+    public boolean exists(String key, Loader<Boolean> loader) throws IOException {
+        Entry entry = entry(key);
+        Boolean exists = entry.exists;
+        if (exists != null) {
+            this.hits.increment();
+            return exists;
+        }
+        this.misses.increment();
+        exists = loader.load();
+        entry.exists = exists;
+        return exists;
+    }
+
+    /**
+     * @return the cached answer to whether the source exists as a file, loaded if not cached
+     */
+    public boolean fileExists(String key, Loader<Boolean> loader) throws IOException {
+        Entry entry = entry(key);
+        Boolean fileExists = entry.fileExists;
+        if (fileExists != null) {
+            this.hits.increment();
+            return fileExists;
+        }
+        this.misses.increment();
+        fileExists = loader.load();
+        entry.fileExists = fileExists;
+        return fileExists;
+    }
+
+    /**
+     * @return the cached metadata of the source, loaded if not cached
+     */
+    public SourceMetadata getSourceMetadata(String key, Loader<SourceMetadata> loader) throws IOException {
+        Entry entry = entry(key);
+        SourceMetadata metadata = entry.metadata;
+        if (metadata != null) {
+            this.hits.increment();
+            return metadata;
+        }
+        this.misses.increment();
+        metadata = loader.load();
+        entry.metadata = metadata;
+        return metadata;
+    }
+
+    /**
+     * Forget what is known about the source, e.g. when it is written to.
+     */
+    public void invalidate(String key) {
+        this.invalidations.increment();
+        this.cache.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    public long getInvalidationCount() {
+        return this.invalidations.sum();
+    }
+
+    public long size() {
+        return this.cache.estimatedSize();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DataSourceMetadataCache[size=%d, hits=%d, misses=%d, invalidations=%d]",
+                size(), getHitCount(), getMissCount(), getInvalidationCount());
+    }
+}
@@ -153,6 +153,23 @@ public interface GorDriverConfig extends Config {
     @ConverterClass(EnhancedBooleanConverter.class)
     boolean supportLinkFolders();
 
+    @Documentation("How long existence and metadata of data sources are cached, shared by all sessions. Zero disables the cache.")
+    @Key("org.gorpipe.gor.driver.metadata_cache.ttl")
+    @DefaultValue("0 seconds")
+    @ConverterClass(DurationConverter.class)
+    Duration metadataCacheTtl();
+
+    @Documentation("How long it is cached that a data source does not exist, capped by the metadata cache ttl.")
+    @Key("org.gorpipe.gor.driver.metadata_cache.negative_ttl")
+    @DefaultValue("5 seconds")
+    @ConverterClass(DurationConverter.class)
+    Duration metadataCacheNegativeTtl();
+
+    @Documentation("Maximum number of data sources in the metadata cache.")
+    @Key("org.gorpipe.gor.driver.metadata_cache.max_entries")
+    @DefaultValue("100000")
+    int metadataCacheMaxEntries();
+
     @Documentation("Plink executable.")
     @Key("org.gorpipe.gor.driver.plink.executable")
     @DefaultValue("plink2")
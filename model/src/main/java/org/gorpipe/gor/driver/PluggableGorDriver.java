@@ -33,6 +33,8 @@ import org.gorpipe.gor.driver.meta.SourceType;
 import org.gorpipe.gor.driver.providers.stream.FileCache;
 import org.gorpipe.gor.driver.providers.stream.StreamSourceIteratorFactory;
 import org.gorpipe.gor.driver.providers.stream.StreamSourceProvider;
+import org.gorpipe.gor.driver.providers.stream.sources.StreamSource;
+import org.gorpipe.gor.driver.providers.stream.sources.wrappers.MetadataCacheWrapper;
 import org.gorpipe.gor.model.FileReader;
 import org.gorpipe.gor.model.GenomicIterator;
 import org.gorpipe.gor.model.GenomicIteratorBase;
@@ -56,6 +58,8 @@ public class PluggableGorDriver implements GorDriver {
     private final Map<SourceType, SourceProvider> sourceTypeToSourceProvider = new HashMap<>();
 
     private final GorDriverConfig config;
+    // Null if metadata caching is disabled
+    private final DataSourceMetadataCache metadataCache;
 
     private static PluggableGorDriver instance;
 
@@ -66,6 +70,7 @@ public class PluggableGorDriver implements GorDriver {
             }
         }
         this.config = config;
+        this.metadataCache = DataSourceMetadataCache.fromConfig(config);
     }
 
     public static PluggableGorDriver instance() {
@@ -185,7 +190,18 @@ public class PluggableGorDriver implements GorDriver {
                 ? PathUtils.resolve(sourceReference.commonRoot,sourceReference.getUrl())
                 : sourceReference.getUrl();
         SourceProvider provider = providerFromFileName(providerFileName);
-        return provider.resolveDataSource(sourceReference);
+        DataSource source = provider.resolveDataSource(sourceReference);
+        if (metadataCache != null && source instanceof StreamSource) {
+            return new MetadataCacheWrapper(metadataCache, (StreamSource) source);
+        }
+        return source;
+    }
+
+    /**
+     * @return the process wide data source metadata cache or null if it is disabled
+     */
+    public DataSourceMetadataCache getMetadataCache() {
+        return metadataCache;
     }
 
     /**
@@ -36,6 +36,7 @@ import org.gorpipe.gor.driver.providers.stream.sources.wrappers.CachedSourceWrap
 import org.gorpipe.gor.driver.providers.stream.sources.wrappers.ExtendedRangeWrapper;
 import org.gorpipe.gor.driver.providers.stream.sources.wrappers.FullRangeWrapper;
 import org.gorpipe.gor.driver.providers.stream.sources.wrappers.RetryWrapper;
+import org.gorpipe.gor.driver.providers.stream.sources.wrappers.WrappedDataSource;
 import org.gorpipe.gor.driver.utils.RetryHandler;
 import org.gorpipe.gor.model.FileReader;
 import org.gorpipe.gor.model.GenomicIterator;
@@ -134,7 +135,7 @@ public abstract class StreamSourceProvider implements SourceProvider {
 
     private String readLinkContent(DataSource source) throws IOException {
         String path = StreamUtils.readString((StreamSource) source, 10000);
-        if (source instanceof FileSource) { //FileSource handling is a special case due to FileSource.close() implementation
+        if (unwrap(source) instanceof FileSource) { //FileSource handling is a special case due to FileSource.close() implementation
             source.close();
         }
         if (path.length() < 10000) {
@@ -150,6 +151,13 @@ public abstract class StreamSourceProvider implements SourceProvider {
         }
     }
 
+    private static DataSource unwrap(DataSource source) {
+        while (source instanceof WrappedDataSource wrapped) {
+            source = wrapped.getWrapped();
+        }
+        return source;
+    }
+
     /**
      * Wrap core data source with wrappers providing extended functionality
      */
@@ -0,0 +1,304 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.driver.providers.stream.datatypes.parquet;
+
+import org.apache.hadoop.fs.Path;
+import org.gorpipe.exceptions.GorSystemException;
+import org.gorpipe.gor.model.Row;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Row reader decoding row groups on a worker pool, a batch of rows at a time.
+ * <p>
+ * A row group is decoded ahead on the pool only while it holds a permit of the in-flight budget. The budget is
+ * shared by all readers of an iterator, so the row groups and batches held in memory do not grow with the number of
+ * files read. A row group decoded ahead holds at most {@link #BATCHES_AHEAD} batches that have not been read. When
+ * no permit is free the next row group is decoded on the calling thread as it is read, so a reader always makes
+ * progress without waiting for other readers to release permits.
+ * <p>
+ * In ordered mode the rows are returned in the order of the row groups, so a reader over the row groups of one
+ * sorted file can take part in the ordered merge of files.  Unordered mode returns a batch of any row group that
+ * has one ready, for nor reads.
+ */
+class ParallelParquetRowReader extends ParquetRowReader {
+    private static final int BATCHES_AHEAD = 2;
+
+    /**
+     * Decoding pool shared by all readers, so reading many tables at once does not multiply the thread count.
+     */
+    private static class DecodePool {
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                Integer.parseInt(System.getProperty("gor.parquet.parallel.threads",
+                        String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                r -> {
+                    Thread t = Executors.defaultThreadFactory().newThread(r);
+                    t.setName("parquet-decode-" + t.getId());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * A row group of a file, given by the file range holding its column chunks.
+     */
+    static class RowGroup {
+        final Path path;
+        final String part;
+        final long start;
+        final long end;
+
+        RowGroup(Path path, String part, long start, long end) {
+            this.path = path;
+            this.part = part;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Decodes the rows of a row group a batch at a time, used by one thread at a time.
+     */
+    interface BatchDecoder extends AutoCloseable {
+        /**
+         * @return the rows of the next batch or null when all rows of the row group have been read
+         */
+        List<Row> next();
+
+        @Override
+        void close();
+    }
+
+    /**
+     * A row group being read, with the batches decoded ahead of the reader.
+     */
+    private class RowGroupStream implements Runnable {
+        private final RowGroup rowGroup;
+        private final boolean permit;
+        private final ArrayDeque<List<Row>> ready = new ArrayDeque<>();
+        private BatchDecoder decoder;
+        private Future<?> future;
+        private boolean running = false;
+        private boolean done = false;
+        private boolean closed = false;
+        private Throwable error;
+
+        RowGroupStream(RowGroup rowGroup, boolean permit) {
+            this.rowGroup = rowGroup;
+            this.permit = permit;
+        }
+
+        /**
+         * Decode batches ahead on the pool, only called for streams holding a permit.
+         */
+        synchronized void decodeAhead() {
+            if (!running && !done && !closed && ready.size() < BATCHES_AHEAD) {
+                running = true;
+                future = DecodePool.EXECUTOR.submit(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    synchronized (this) {
+                        if (closed || done || ready.size() >= BATCHES_AHEAD) break;
+                    }
+                    List<Row> rows = decode();
+                    if (rows == null) break;
+                    synchronized (this) {
+                        ready.add(rows);
+                        notifyAll();
+                    }
+                }
+            } catch (Throwable t) {
+                synchronized (this) {
+                    error = t;
+                }
+            } finally {
+                synchronized (this) {
+                    running = false;
+                    if (closed) closeDecoder();
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Decode the next batch, on the pool while running or on the reader thread otherwise.
+         */
+        private List<Row> decode() {
+            if (decoder == null) decoder = decoders.apply(rowGroup);
+            List<Row> rows = decoder.next();
+            if (rows == null) {
+                synchronized (this) {
+                    done = true;
+                    closeDecoder();
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * @return true if take will not wait for the pool
+         */
+        synchronized boolean isReady() {
+            return !ready.isEmpty() || !running;
+        }
+
+        /**
+         * @return the next batch of rows or null when all rows of the row group have been read
+         */
+        synchronized List<Row> take() throws InterruptedException {
+            while (true) {
+                if (error != null) {
+                    if (error instanceof RuntimeException) throw (RuntimeException) error;
+                    throw new GorSystemException("Error while reading parquet row group " + rowGroup.path, error);
+                }
+                List<Row> rows = ready.poll();
+                if (rows != null) {
+                    if (permit) decodeAhead();
+                    return rows;
+                }
+                if (done) return null;
+                if (!running) {
+                    rows = decode();
+                    if (permit) decodeAhead();
+                    return rows;
+                }
+                wait();
+            }
+        }
+
+        synchronized void close() {
+            if (closed) return;
+            closed = true;
+            ready.clear();
+            if (running && future.cancel(false)) running = false;
+            // A running decode closes the decoder when it finishes
+            if (!running) closeDecoder();
+            if (permit) budget.release();
+        }
+
+        private void closeDecoder() {
+            if (decoder != null) {
+                decoder.close();
+                decoder = null;
+            }
+        }
+    }
+
+    private final Function<RowGroup, BatchDecoder> decoders;
+    private final ArrayDeque<RowGroup> pending;
+    private final Semaphore budget;
+    private final boolean ordered;
+    private final ArrayDeque<RowGroupStream> streams = new ArrayDeque<>();
+    private List<Row> rows = Collections.emptyList();
+    private int index = 0;
+
+    /**
+     * @param rowGroups the row groups to read, in file order
+     * @param decoders opens a decoder for a row group, called on the worker threads
+     * @param budget permits for row groups decoded ahead, shared by all readers of an iterator
+     */
+    ParallelParquetRowReader(Collection<RowGroup> rowGroups, Function<RowGroup, BatchDecoder> decoders, Semaphore budget, boolean ordered) {
+        super(rowGroups.isEmpty() ? null : rowGroups.iterator().next().part);
+        this.decoders = decoders;
+        this.pending = new ArrayDeque<>(rowGroups);
+        this.budget = budget;
+        this.ordered = ordered;
+        hasNext();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (index >= rows.size()) {
+            if (!nextBatch()) return false;
+        }
+        row = rows.get(index++);
+        return true;
+    }
+
+    private boolean nextBatch() {
+        startStreams();
+        try {
+            while (!streams.isEmpty()) {
+                RowGroupStream stream = ordered ? streams.peek() : readyStream();
+                List<Row> batch = stream.take();
+                if (batch != null) {
+                    rows = batch;
+                    index = 0;
+                    return true;
+                }
+                streams.remove(stream);
+                stream.close();
+                startStreams();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GorSystemException("Interrupted while reading parquet row groups", e);
+        }
+        return false;
+    }
+
+    /**
+     * Start decoding the next row groups ahead while permits are free, and make sure there is a row group to read
+     * from when any are left.
+     */
+    private void startStreams() {
+        // Ordered readers decode nothing ahead until they are first read, so readers of files waiting in the merge
+        // hold little
+        boolean ahead = !ordered || row != null;
+        while (ahead && !pending.isEmpty() && budget.tryAcquire()) {
+            RowGroupStream stream = new RowGroupStream(pending.poll(), true);
+            streams.add(stream);
+            stream.decodeAhead();
+        }
+        if (streams.isEmpty() && !pending.isEmpty()) {
+            streams.add(new RowGroupStream(pending.poll(), false));
+        }
+    }
+
+    private RowGroupStream readyStream() {
+        for (RowGroupStream stream : streams) {
+            if (stream.isReady()) return stream;
+        }
+        return streams.peek();
+    }
+
+    @Override
+    public void close() {
+        pending.clear();
+        streams.forEach(RowGroupStream::close);
+        streams.clear();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.driver.providers.stream.datatypes.parquet;
+
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.PrimitiveComparator;
+import org.apache.parquet.schema.PrimitiveType;
+
+/**
+ * A row filter evaluated directly on the vectors of a column batch.
+ */
+@FunctionalInterface
+public interface ParquetBatchFilter {
+
+    boolean test(ParquetColumnBatch batch, int row);
+
+    /**
+     * Compile a parquet filter predicate against the columns of a batch.  Nulls follow the parquet semantics, only
+     * not equal accepts a null value when comparing with a non null value.
+     *
+     * @return the filter or null if the predicate uses operators, columns or value types the batch can not evaluate
+     */
+    static ParquetBatchFilter compile(FilterPredicate predicate, ParquetColumnBatch batch) {
+        if (predicate instanceof Operators.And) {
+            Operators.And and = (Operators.And) predicate;
+            ParquetBatchFilter left = compile(and.getLeft(), batch);
+            ParquetBatchFilter right = compile(and.getRight(), batch);
+            return left != null && right != null ? (b, r) -> left.test(b, r) && right.test(b, r) : null;
+        } else if (predicate instanceof Operators.Or) {
+            Operators.Or or = (Operators.Or) predicate;
+            ParquetBatchFilter left = compile(or.getLeft(), batch);
+            ParquetBatchFilter right = compile(or.getRight(), batch);
+            return left != null && right != null ? (b, r) -> left.test(b, r) || right.test(b, r) : null;
+        } else if (predicate instanceof Operators.Not) {
+            ParquetBatchFilter inner = compile(((Operators.Not) predicate).getPredicate(), batch);
+            return inner != null ? (b, r) -> !inner.test(b, r) : null;
+        } else if (predicate instanceof Operators.ColumnFilterPredicate) {
+            return compileColumn((Operators.ColumnFilterPredicate<?>) predicate, batch);
+        }
+        return null;
+    }
+
+    private static ParquetBatchFilter compileColumn(Operators.ColumnFilterPredicate<?> predicate, ParquetColumnBatch batch) {
+        String[] path = predicate.getColumn().getColumnPath().toArray();
+        int col = path.length == 1 ? batch.columnIndex(path[0]) : -1;
+        if (col < 0) return null;
+
+        Object value = predicate.getValue();
+        boolean notEq = predicate instanceof Operators.NotEq;
+        if (value == null) {
+            if (predicate instanceof Operators.Eq) return (b, r) -> b.isNull(col, r);
+            if (notEq) return (b, r) -> !b.isNull(col, r);
+            return null;
+        }
+
+        ValueComparison comparison = valueComparison(batch.getType(col), col, value);
+        if (comparison == null) return null;
+
+        if (predicate instanceof Operators.Eq) {
+            return (b, r) -> !b.isNull(col, r) && comparison.compare(b, r) == 0;
+        } else if (notEq) {
+            return (b, r) -> b.isNull(col, r) || comparison.compare(b, r) != 0;
+        } else if (predicate instanceof Operators.Lt) {
+            return (b, r) -> !b.isNull(col, r) && comparison.compare(b, r) < 0;
+        } else if (predicate instanceof Operators.LtEq) {
+            return (b, r) -> !b.isNull(col, r) && comparison.compare(b, r) <= 0;
+        } else if (predicate instanceof Operators.Gt) {
+            return (b, r) -> !b.isNull(col, r) && comparison.compare(b, r) > 0;
+        } else if (predicate instanceof Operators.GtEq) {
+            return (b, r) -> !b.isNull(col, r) && comparison.compare(b, r) >= 0;
+        }
+        return null;
+    }
+
+    /**
+     * Compares the value of a column in a row with a constant
+     */
+    @FunctionalInterface
+    interface ValueComparison {
+        int compare(ParquetColumnBatch batch, int row);
+    }
+
+    private static ValueComparison valueComparison(PrimitiveType type, int col, Object value) {
+        PrimitiveComparator<?> comparator = type.comparator();
+        switch (type.getPrimitiveTypeName()) {
+            case INT32:
+                if (!(value instanceof Integer)) return null;
+                int intValue = (Integer) value;
+                return (b, r) -> comparator.compare(b.getInt(col, r), intValue);
+            case INT64:
+                if (!(value instanceof Long)) return null;
+                long longValue = (Long) value;
+                return (b, r) -> comparator.compare(b.getLong(col, r), longValue);
+            case FLOAT:
+                if (!(value instanceof Float)) return null;
+                float floatValue = (Float) value;
+                return (b, r) -> comparator.compare(b.getFloat(col, r), floatValue);
+            case DOUBLE:
+                if (!(value instanceof Double)) return null;
+                double doubleValue = (Double) value;
+                return (b, r) -> comparator.compare(b.getDouble(col, r), doubleValue);
+            case BOOLEAN:
+                if (!(value instanceof Boolean)) return null;
+                boolean booleanValue = (Boolean) value;
+                return (b, r) -> comparator.compare(b.getBoolean(col, r), booleanValue);
+            default:
+                if (!(value instanceof Binary)) return null;
+                @SuppressWarnings("unchecked")
+                PrimitiveComparator<Binary> binaryComparator = (PrimitiveComparator<Binary>) comparator;
+                Binary binaryValue = (Binary) value;
+                return (b, r) -> binaryComparator.compare(b.getBinary(col, r), binaryValue);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.driver.providers.stream.datatypes.parquet;
+
+import org.gorpipe.gor.model.Row;
+import org.gorpipe.gor.model.RowBuilder;
+
+/**
+ * Builds gor or nor rows from the rows of column batches, with the partition value added as a column.
+ * Not thread safe, each reader keeps its own builder.
+ */
+class ParquetBatchRowBuilder {
+    private final RowBuilder rowBuilder = new RowBuilder();
+    private final boolean nor;
+    private final String part;
+    private final boolean prependPart;
+    private final boolean appendPart;
+
+    /**
+     * @param nor build nor rows, prefixed with chrN and 0
+     * @param prependPart add the partition value as the first column after the nor prefix
+     * @param appendPart add the partition value as the last column
+     */
+    ParquetBatchRowBuilder(boolean nor, String part, boolean prependPart, boolean appendPart) {
+        this.nor = nor;
+        this.part = part;
+        this.prependPart = prependPart && part != null;
+        this.appendPart = appendPart && part != null;
+    }
+
+    Row build(ParquetColumnBatch batch, int r) {
+        rowBuilder.clear();
+        if (nor) rowBuilder.add("chrN").add('0');
+        if (prependPart) rowBuilder.add(part);
+        for (int c = 0; c < batch.numColumns(); c++) {
+            if (batch.isText(c)) {
+                rowBuilder.addColumns(batch.getString(c, r));
+            } else {
+                batch.appendValue(rowBuilder.column(), c, r);
+            }
+        }
+        if (appendPart) rowBuilder.add(part);
+        return nor ? rowBuilder.build("chrN", 0) : rowBuilder.build();
+    }
+}
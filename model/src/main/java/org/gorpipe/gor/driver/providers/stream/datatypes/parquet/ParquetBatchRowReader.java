@@ -0,0 +1,114 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.driver.providers.stream.datatypes.parquet;
+
+import org.apache.parquet.schema.OriginalType;
+import org.gorpipe.exceptions.GorSystemException;
+
+import java.io.IOException;
+
+/**
+ * Row reader building rows from column batches.  The rows are built column by column from the vectors, with the
+ * partition value added as a column, so no record is assembled and no row text is split or copied.
+ */
+public class ParquetBatchRowReader extends ParquetRowReader {
+    private final ParquetColumnBatchReader batchReader;
+    private final ParquetColumnBatch batch;
+    private final ParquetBatchRowBuilder rowBuilder;
+    private final int[] sortCols;
+    private int current = -1;
+
+    /**
+     * @param nor build nor rows, prefixed with chrN and 0
+     * @param sortCols one based sort columns compared when merging nor files, or null
+     * @param prependPart add the partition value as the first column after the nor prefix
+     * @param appendPart add the partition value as the last column
+     */
+    public ParquetBatchRowReader(ParquetColumnBatchReader batchReader, int batchSize, boolean nor, int[] sortCols,
+                                 String part, boolean prependPart, boolean appendPart) {
+        super(part);
+        this.batchReader = batchReader;
+        this.batch = batchReader.createBatch(batchSize);
+        this.rowBuilder = new ParquetBatchRowBuilder(nor, part, prependPart, appendPart);
+        this.sortCols = nor ? sortCols : null;
+        hasNext();
+    }
+
+    /**
+     * @return the batch holding the current row
+     */
+    public ParquetColumnBatch getBatch() {
+        return batch;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (++current >= batch.size()) {
+            try {
+                if (!batchReader.nextBatch(batch)) {
+                    return false;
+                }
+            } catch (IOException e) {
+                throw new GorSystemException("Error while reading parquet file", e);
+            }
+            current = 0;
+        }
+        row = rowBuilder.build(batch, current);
+        return true;
+    }
+
+    @Override
+    public int compareTo(ParquetRowReader o) {
+        if (sortCols != null && o instanceof ParquetBatchRowReader) {
+            ParquetBatchRowReader other = (ParquetBatchRowReader) o;
+            for (int i : sortCols) {
+                int k = compareColumn(i - 1, other);
+                if (k != 0) return k;
+            }
+            return 0;
+        }
+        return super.compareTo(o);
+    }
+
+    private int compareColumn(int col, ParquetBatchRowReader other) {
+        OriginalType originalType = batch.getType(col).getOriginalType();
+        if (originalType == OriginalType.INT_32) {
+            return Integer.compare(batch.getInt(col, current), other.batch.getInt(col, other.current));
+        }
+        String value = batch.getString(col, current);
+        String otherValue = other.batch.getString(col, other.current);
+        if (originalType == OriginalType.DECIMAL) {
+            return Double.compare(Double.parseDouble(value), Double.parseDouble(otherValue));
+        }
+        return value.compareTo(otherValue);
+    }
+
+    @Override
+    public void close() {
+        try {
+            batchReader.close();
+        } catch (IOException e) {
+            // Dont care
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.driver.providers.stream.datatypes.parquet;
+
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+import org.gorpipe.gor.model.ParquetLine;
+
+import java.util.List;
+
+/**
+ * A batch of rows from a flat parquet schema, decoded column by column into primitive vectors.
+ * <p>
+ * Each column keeps a vector matching its physical type and a null flag per row. Values are valid until the batch is
+ * filled again, the batch is reused by the reader for every row group so consumers that keep values must copy them.
+ */
+public class ParquetColumnBatch {
+    private final MessageType schema;
+    private final ColumnDescriptor[] columns;
+    private final PrimitiveType[] types;
+    private final int capacity;
+    private int size = 0;
+
+    private final boolean[][] nulls;
+    private final int[][] ints;
+    private final long[][] longs;
+    private final float[][] floats;
+    private final double[][] doubles;
+    private final boolean[][] booleans;
+    private final Binary[][] binaries;
+
+    public ParquetColumnBatch(MessageType schema, int capacity) {
+        if (!isSupported(schema)) {
+            throw new IllegalArgumentException("Column batches only support flat schemas: " + schema);
+        }
+        this.schema = schema;
+        this.capacity = capacity;
+        List<ColumnDescriptor> descriptors = schema.getColumns();
+        int numColumns = descriptors.size();
+        columns = descriptors.toArray(new ColumnDescriptor[0]);
+        types = new PrimitiveType[numColumns];
+        nulls = new boolean[numColumns][];
+        ints = new int[numColumns][];
+        longs = new long[numColumns][];
+        floats = new float[numColumns][];
+        doubles = new double[numColumns][];
+        booleans = new boolean[numColumns][];
+        binaries = new Binary[numColumns][];
+        for (int c = 0; c < numColumns; c++) {
+            types[c] = columns[c].getPrimitiveType();
+            nulls[c] = new boolean[capacity];
+            switch (types[c].getPrimitiveTypeName()) {
+                case INT32: ints[c] = new int[capacity]; break;
+                case INT64: longs[c] = new long[capacity]; break;
+                case FLOAT: floats[c] = new float[capacity]; break;
+                case DOUBLE: doubles[c] = new double[capacity]; break;
+                case BOOLEAN: booleans[c] = new boolean[capacity]; break;
+                default: binaries[c] = new Binary[capacity]; break;
+            }
+        }
+    }
+
+    /**
+     * @return true if every field of the schema is a primitive value occurring at most once per row
+     */
+    public static boolean isSupported(MessageType schema) {
+        for (Type field : schema.getFields()) {
+            if (!field.isPrimitive() || field.isRepetition(Type.Repetition.REPEATED)) return false;
+        }
+        return true;
+    }
+
+    public MessageType getSchema() {
+        return schema;
+    }
+
+    public int numColumns() {
+        return columns.length;
+    }
+
+    public PrimitiveType getType(int col) {
+        return types[col];
+    }
+
+    /**
+     * @return index of the column or -1 if the batch does not have it
+     */
+    public int columnIndex(String name) {
+        return schema.containsField(name) ? schema.getFieldIndex(name) : -1;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Decode the next rows from the column readers, one reader per column positioned at the first row to read.
+     */
+    void read(ColumnReader[] readers, int rows) {
+        for (int c = 0; c < columns.length; c++) {
+            ColumnReader reader = readers[c];
+            int maxDefinitionLevel = columns[c].getMaxDefinitionLevel();
+            boolean[] isNull = nulls[c];
+            switch (types[c].getPrimitiveTypeName()) {
+                case INT32: {
+                    int[] vector = ints[c];
+                    for (int r = 0; r < rows; r++) {
+                        isNull[r] = reader.getCurrentDefinitionLevel() != maxDefinitionLevel;
+                        if (!isNull[r]) vector[r] = reader.getInteger();
+                        reader.consume();
+                    }
+                    break;
+                }
+                case INT64: {
+                    long[] vector = longs[c];
+                    for (int r = 0; r < rows; r++) {
+                        isNull[r] = reader.getCurrentDefinitionLevel() != maxDefinitionLevel;
+                        if (!isNull[r]) vector[r] = reader.getLong();
+                        reader.consume();
+                    }
+                    break;
+                }
+                case FLOAT: {
+                    float[] vector = floats[c];
+                    for (int r = 0; r < rows; r++) {
+                        isNull[r] = reader.getCurrentDefinitionLevel() != maxDefinitionLevel;
+                        if (!isNull[r]) vector[r] = reader.getFloat();
+                        reader.consume();
+                    }
+                    break;
+                }
+                case DOUBLE: {
+                    double[] vector = doubles[c];
+                    for (int r = 0; r < rows; r++) {
+                        isNull[r] = reader.getCurrentDefinitionLevel() != maxDefinitionLevel;
+                        if (!isNull[r]) vector[r] = reader.getDouble();
+                        reader.consume();
+                    }
+                    break;
+                }
+                case BOOLEAN: {
+                    boolean[] vector = booleans[c];
+                    for (int r = 0; r < rows; r++) {
+                        isNull[r] = reader.getCurrentDefinitionLevel() != maxDefinitionLevel;
+                        if (!isNull[r]) vector[r] = reader.getBoolean();
+                        reader.consume();
+                    }
+                    break;
+                }
+                default: {
+                    Binary[] vector = binaries[c];
+                    for (int r = 0; r < rows; r++) {
+                        isNull[r] = reader.getCurrentDefinitionLevel() != maxDefinitionLevel;
+                        vector[r] = isNull[r] ? null : reader.getBinary().copy();
+                        reader.consume();
+                    }
+                    break;
+                }
+            }
+        }
+        size = rows;
+    }
+
+    /**
+     * Keep only the rows accepted by the filter, moving them to the front of the vectors.
+     */
+    void retain(ParquetBatchFilter filter) {
+        int kept = 0;
+        for (int r = 0; r < size; r++) {
+            if (filter.test(this, r)) {
+                if (kept != r) moveRow(r, kept);
+                kept++;
+            }
+        }
+        size = kept;
+    }
+
+    private void moveRow(int from, int to) {
+        for (int c = 0; c < columns.length; c++) {
+            nulls[c][to] = nulls[c][from];
+            switch (types[c].getPrimitiveTypeName()) {
+                case INT32: ints[c][to] = ints[c][from]; break;
+                case INT64: longs[c][to] = longs[c][from]; break;
+                case FLOAT: floats[c][to] = floats[c][from]; break;
+                case DOUBLE: doubles[c][to] = doubles[c][from]; break;
+                case BOOLEAN: booleans[c][to] = booleans[c][from]; break;
+                default: binaries[c][to] = binaries[c][from]; break;
+            }
+        }
+    }
+
+    public boolean isNull(int col, int row) {
+        return nulls[col][row];
+    }
+
+    public int getInt(int col, int row) {
+        return ints[col][row];
+    }
+
+    public long getLong(int col, int row) {
+        return longs[col][row];
+    }
+
+    public float getFloat(int col, int row) {
+        return floats[col][row];
+    }
+
+    public double getDouble(int col, int row) {
+        return doubles[col][row];
+    }
+
+    public boolean getBoolean(int col, int row) {
+        return booleans[col][row];
+    }
+
+    public Binary getBinary(int col, int row) {
+        return binaries[col][row];
+    }
+
+    /**
+     * @return the value as text, formatted the same way as ParquetLine formats it, null values are empty
+     */
+    public String getString(int col, int row) {
+        if (nulls[col][row]) return "";
+        switch (types[col].getPrimitiveTypeName()) {
+            case INT32: return String.valueOf(ints[col][row]);
+            case INT64: return String.valueOf(longs[col][row]);
+            case FLOAT: return String.valueOf(floats[col][row]);
+            case DOUBLE: return String.valueOf(doubles[col][row]);
+            case BOOLEAN: return String.valueOf(booleans[col][row]);
+            case INT96: return ParquetLine.timestampToString(binaries[col][row]);
+            case FIXED_LEN_BYTE_ARRAY:
+                if (binaries[col][row].length() == 16) return ParquetLine.decimalToString(binaries[col][row]);
+                return binaries[col][row].toStringUsingUTF8().replace('\n', '_');
+            default: return binaries[col][row].toStringUsingUTF8().replace('\n', '_');
+        }
+    }
+
+    /**
+     * @return true if the column holds text, which may contain tabs
+     */
+    public boolean isText(int col) {
+        PrimitiveType.PrimitiveTypeName typeName = types[col].getPrimitiveTypeName();
+        return typeName == PrimitiveType.PrimitiveTypeName.BINARY
+                || typeName == PrimitiveType.PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY;
+    }
+
+    /**
+     * Append the value as text to the builder, see {@link #getString(int, int)}.
+     */
+    public void appendValue(StringBuilder sb, int col, int row) {
+        if (nulls[col][row]) return;
+        switch (types[col].getPrimitiveTypeName()) {
+            case INT32: sb.append(ints[col][row]); break;
+            case INT64: sb.append(longs[col][row]); break;
+            case FLOAT: sb.append(floats[col][row]); break;
+            case DOUBLE: sb.append(doubles[col][row]); break;
+            case BOOLEAN: sb.append(booleans[col][row]); break;
+            default: sb.append(getString(col, row)); break;
+        }
+    }
+}
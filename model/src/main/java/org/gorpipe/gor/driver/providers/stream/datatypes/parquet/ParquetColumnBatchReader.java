@@ -0,0 +1,171 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.driver.providers.stream.datatypes.parquet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.HadoopReadOptions;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads a parquet file with a flat schema into column batches, using the column readers directly instead of
+ * assembling a record per row.
+ * <p>
+ * Row groups are skipped with the filter predicate through the footer statistics, dictionaries and bloom filters.
+ * The rows of the remaining row groups are filtered on the decoded vectors.
+ */
+public class ParquetColumnBatchReader implements AutoCloseable {
+    private final ParquetFileReader reader;
+    private final MessageType schema;
+    private final ColumnDescriptor[] columns;
+    private final ColumnReader[] columnReaders;
+    private final GroupConverter converter;
+    private final String createdBy;
+    private ParquetBatchFilter rowFilter;
+    private long rowsLeftInGroup = 0;
+
+    /**
+     * @param requestedSchema projection of the file schema to read or null to read all columns
+     * @param predicate filter predicate for the rows or null
+     */
+    public ParquetColumnBatchReader(InputFile file, Configuration configuration, MessageType requestedSchema, FilterPredicate predicate) throws IOException {
+        this(file, configuration, requestedSchema, predicate, -1, -1);
+    }
+
+    /**
+     * Read only the row groups with their midpoint in the file range [start, end), the whole file if start is negative.
+     */
+    public ParquetColumnBatchReader(InputFile file, Configuration configuration, MessageType requestedSchema, FilterPredicate predicate,
+                                    long start, long end) throws IOException {
+        ParquetReadOptions.Builder options = HadoopReadOptions.builder(configuration).useColumnIndexFilter(false);
+        if (predicate != null) options.withRecordFilter(FilterCompat.get(predicate));
+        if (start >= 0) options.withRange(start, end);
+        reader = ParquetFileReader.open(file, options.build());
+        schema = requestedSchema != null ? requestedSchema : reader.getFooter().getFileMetaData().getSchema();
+        reader.setRequestedSchema(schema);
+        createdBy = reader.getFooter().getFileMetaData().getCreatedBy();
+
+        List<ColumnDescriptor> descriptors = schema.getColumns();
+        columns = descriptors.toArray(new ColumnDescriptor[0]);
+        columnReaders = new ColumnReader[columns.length];
+        converter = new NoopGroupConverter(columns.length);
+    }
+
+    public MessageType getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return true if the schema can be read into column batches
+     */
+    public boolean isSupported() {
+        return ParquetColumnBatch.isSupported(schema);
+    }
+
+    public ParquetColumnBatch createBatch(int capacity) {
+        return new ParquetColumnBatch(schema, capacity);
+    }
+
+    /**
+     * Set the filter applied to the rows of each batch, see {@link ParquetBatchFilter#compile}.
+     */
+    public void setRowFilter(ParquetBatchFilter rowFilter) {
+        this.rowFilter = rowFilter;
+    }
+
+    /**
+     * Fill the batch with the next rows, a batch never spans row groups.
+     *
+     * @return false when there are no more rows
+     */
+    public boolean nextBatch(ParquetColumnBatch batch) throws IOException {
+        while (rowsLeftInGroup > 0 || nextRowGroup()) {
+            int rows = (int) Math.min(batch.capacity(), rowsLeftInGroup);
+            batch.read(columnReaders, rows);
+            rowsLeftInGroup -= rows;
+            if (rowFilter != null) batch.retain(rowFilter);
+            if (batch.size() > 0) return true;
+        }
+        batch.read(columnReaders, 0);
+        return false;
+    }
+
+    private boolean nextRowGroup() throws IOException {
+        PageReadStore pages = reader.readNextFilteredRowGroup();
+        if (pages == null) return false;
+        ColumnReadStoreImpl store = new ColumnReadStoreImpl(pages, converter, schema, createdBy);
+        for (int i = 0; i < columns.length; i++) {
+            columnReaders[i] = store.getColumnReader(columns[i]);
+        }
+        rowsLeftInGroup = pages.getRowCount();
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * The column readers require converters, values are read from the readers so the converters do nothing
+     */
+    private static class NoopGroupConverter extends GroupConverter {
+        private final PrimitiveConverter[] converters;
+
+        NoopGroupConverter(int numColumns) {
+            converters = new PrimitiveConverter[numColumns];
+            for (int i = 0; i < numColumns; i++) {
+                converters[i] = new PrimitiveConverter() {};
+            }
+        }
+
+        @Override
+        public Converter getConverter(int fieldIndex) {
+            return converters[fieldIndex];
+        }
+
+        @Override
+        public void start() {
+            // Nothing to do
+        }
+
+        @Override
+        public void end() {
+            // Nothing to do
+        }
+    }
+}
@@ -28,16 +28,19 @@ import org.apache.parquet.example.data.Group;
 import org.apache.parquet.filter2.compat.FilterCompat;
 import org.apache.parquet.filter2.predicate.FilterApi;
 import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.LogicalInverseRewriter;
 import org.apache.parquet.filter2.predicate.Operators;
 import org.apache.parquet.hadoop.ParquetFileReader;
 import org.apache.parquet.hadoop.ParquetReader;
 import org.apache.parquet.hadoop.api.ReadSupport;
 import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
 import org.apache.parquet.hadoop.metadata.ParquetMetadata;
 import org.apache.parquet.hadoop.util.HadoopInputFile;
 import org.apache.parquet.io.InputFile;
 import org.apache.parquet.io.api.Binary;
 import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
 import org.apache.parquet.schema.PrimitiveType;
 import org.apache.parquet.schema.Type;
 import org.gorpipe.exceptions.GorSystemException;
@@ -54,12 +57,20 @@ import org.gorpipe.model.gor.RowObj;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Semaphore;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 
 public class ParquetFileIterator extends GenomicIteratorBase {
+    // Read nor and partitioned tables, where rows are built as text anyway, through column batches
+    private static final boolean VECTORIZED = Boolean.parseBoolean(System.getProperty("gor.parquet.vectorized", "true"));
+    private static final int BATCH_SIZE = Integer.parseInt(System.getProperty("gor.parquet.batch.size", "4096"));
+    // Maximum number of row groups decoded ahead on the worker pool, shared by all files of the iterator, 0 reads on
+    // the consumer thread
+    private final int rowGroupsInFlight = Integer.parseInt(System.getProperty("gor.parquet.parallel.rowgroups", "0"));
+
     private final PriorityQueue<ParquetRowReader> mergeParquet = new PriorityQueue<>();
     private List<Path> parquetPaths = new ArrayList<>();
     private List<Path> parquetPathsForSeek = new ArrayList<>();
@@ -72,6 +83,9 @@ public class ParquetFileIterator extends GenomicIteratorBase {
     private MessageType schema;
     private FilterPredicate filterPredicate;
     private FilterPredicate seekfilterPredicate;
+    private String rangeStopChr;
+    private int rangeStop = -1;
+    private FilterPredicate combinedPredicate;
     private FilterCompat.Filter filter;
     private String partitioningCol;
     private boolean partColPresent;
@@ -173,21 +187,175 @@ public class ParquetFileIterator extends GenomicIteratorBase {
     }
 
     private void updateFilter() {
-        if(filterPredicate!=null && seekfilterPredicate!=null) filter = FilterCompat.get(FilterApi.and(filterPredicate,seekfilterPredicate));
-        else if(filterPredicate!=null) filter = FilterCompat.get(filterPredicate);
-        else if(seekfilterPredicate!=null) filter = FilterCompat.get(seekfilterPredicate);
-        else filter = null;
+        if(filterPredicate!=null && seekfilterPredicate!=null) combinedPredicate = FilterApi.and(filterPredicate,seekfilterPredicate);
+        else if(filterPredicate!=null) combinedPredicate = filterPredicate;
+        else combinedPredicate = seekfilterPredicate;
+        filter = combinedPredicate != null ? FilterCompat.get(combinedPredicate) : null;
     }
 
     private ParquetRowReader initParquetReader(Path parquetFilePath) throws IOException {
+        String[] partCol = extractPartCol(parquetFilePath.toString());
+        String part = partCol != null ? partCol[1] : null;
+
+        if (useBatchReader()) {
+            ParquetRowReader batchRowReader = initBatchRowReader(parquetFilePath, part);
+            if (batchRowReader != null) return batchRowReader;
+        }
+
         ParquetReader.Builder<Group> parquetBuilder = ParquetReader.builder(readSupport, parquetFilePath).withConf(configuration);
         if(filter!=null) parquetBuilder.withFilter(filter);
         ParquetReader<Group> reader = parquetBuilder.build();
 
+        return nor ? new NorParquetRowReader(reader, sortCols, part) : new ParquetRowReader(reader, lookup, part);
+    }
+
+    private boolean useBatchReader() {
+        return VECTORIZED && (nor || (partitioningCol != null && !partColPresent));
+    }
+
+    /**
+     * @return a row reader on column batches or null if the schema or the filter is not supported by batches
+     */
+    private ParquetRowReader initBatchRowReader(Path parquetFilePath, String part) throws IOException {
+        ParquetColumnBatchReader batchReader = new ParquetColumnBatchReader(HadoopInputFile.fromPath(parquetFilePath, configuration),
+                configuration, requestedSchema(), combinedPredicate);
+        try {
+            if (!batchReader.isSupported()) {
+                batchReader.close();
+                return null;
+            }
+            if (combinedPredicate != null) {
+                ParquetBatchFilter rowFilter = compileRowFilter(combinedPredicate, batchReader.createBatch(0));
+                if (rowFilter == null) {
+                    batchReader.close();
+                    return null;
+                }
+                batchReader.setRowFilter(rowFilter);
+            }
+            return new ParquetBatchRowReader(batchReader, BATCH_SIZE, nor, sortCols, part, prependPart(), appendPart());
+        } catch (RuntimeException e) {
+            batchReader.close();
+            throw e;
+        }
+    }
+
+    private MessageType requestedSchema() {
+        String readSchema = configuration.get(ReadSupport.PARQUET_READ_SCHEMA);
+        return readSchema != null ? MessageTypeParser.parseMessageType(readSchema) : null;
+    }
+
+    private static ParquetBatchFilter compileRowFilter(FilterPredicate predicate, ParquetColumnBatch batch) {
+        // Compile the predicate with NOT pushed down, the same way the record reader evaluates it
+        return ParquetBatchFilter.compile(LogicalInverseRewriter.rewrite(predicate), batch);
+    }
+
+    private boolean prependPart() {
+        return partitioningCol != null && !partColPresent && partitioningCol.equalsIgnoreCase("chrom") && nor;
+    }
+
+    private boolean appendPart() {
+        return partitioningCol != null && !partColPresent && !partitioningCol.equalsIgnoreCase("chrom");
+    }
+
+    /**
+     * Row groups can be decoded on the worker pool when the schema and filter are supported by column batches and
+     * the nor merge does not compare sort columns. This includes plain gor reads, which then get rows built from
+     * the column batches instead of ParquetLine rows.
+     */
+    private boolean useParallelReader() {
+        if (rowGroupsInFlight <= 0 || !VECTORIZED || (nor && sortCols != null && sortCols.length > 1)) return false;
+        MessageType readSchema = Optional.ofNullable(requestedSchema()).orElse(schema);
+        if (!ParquetColumnBatch.isSupported(readSchema)) return false;
+        return combinedPredicate == null || compileRowFilter(combinedPredicate, new ParquetColumnBatch(readSchema, 0)) != null;
+    }
+
+    private void parallelInit() {
+        List<List<ParallelParquetRowReader.RowGroup>> fileRowGroups = parquetPaths.parallelStream()
+                .map(this::listRowGroups).collect(Collectors.toList());
+        parquetPaths.clear();
+
+        FilterPredicate predicate = combinedPredicate;
+        MessageType readSchema = requestedSchema();
+        Function<ParallelParquetRowReader.RowGroup, ParallelParquetRowReader.BatchDecoder> decoders =
+                rowGroup -> openRowGroup(rowGroup, predicate, readSchema);
+        // One budget for all readers, so the memory held does not grow with the number of files
+        Semaphore budget = new Semaphore(rowGroupsInFlight);
+        List<ParquetRowReader> parquetRowReaders;
+        if (nor) {
+            // Nor rows have no order, rows are returned from any row group of any file as soon as they are decoded
+            List<ParallelParquetRowReader.RowGroup> rowGroups = fileRowGroups.stream().flatMap(List::stream).collect(Collectors.toList());
+            parquetRowReaders = Collections.singletonList(new ParallelParquetRowReader(rowGroups, decoders, budget, false));
+        } else {
+            // Each file is read in row group order and the files are merged
+            parquetRowReaders = fileRowGroups.parallelStream()
+                    .map(rowGroups -> new ParallelParquetRowReader(rowGroups, decoders, budget, true))
+                    .collect(Collectors.toList());
+        }
+        parquetRowReaders.stream().filter(p -> p.row != null).forEach(mergeParquet::add);
+    }
+
+    private List<ParallelParquetRowReader.RowGroup> listRowGroups(Path parquetFilePath) {
         String[] partCol = extractPartCol(parquetFilePath.toString());
         String part = partCol != null ? partCol[1] : null;
+        List<ParallelParquetRowReader.RowGroup> rowGroups = new ArrayList<>();
+        try (ParquetFileReader reader = ParquetFileReader.open(HadoopInputFile.fromPath(parquetFilePath, configuration))) {
+            for (BlockMetaData block : reader.getFooter().getBlocks()) {
+                rowGroups.add(new ParallelParquetRowReader.RowGroup(parquetFilePath, part, block.getStartingPos(),
+                        block.getStartingPos() + block.getCompressedSize()));
+            }
+        } catch (IOException e) {
+            throw new GorSystemException("Error while reading parquet footer " + parquetFilePath, e);
+        }
+        return rowGroups;
+    }
 
-        return nor ? new NorParquetRowReader(reader, sortCols, part) : new ParquetRowReader(reader, lookup, part);
+    private ParallelParquetRowReader.BatchDecoder openRowGroup(ParallelParquetRowReader.RowGroup rowGroup, FilterPredicate predicate,
+                                                               MessageType readSchema) {
+        ParquetColumnBatchReader batchReader;
+        try {
+            batchReader = new ParquetColumnBatchReader(HadoopInputFile.fromPath(rowGroup.path, configuration),
+                    configuration, readSchema, predicate, rowGroup.start, rowGroup.end);
+        } catch (IOException e) {
+            throw new GorSystemException("Error while reading parquet file " + rowGroup.path, e);
+        }
+        ParquetColumnBatch batch = batchReader.createBatch(BATCH_SIZE);
+        if (predicate != null) {
+            ParquetBatchFilter rowFilter = compileRowFilter(predicate, batch);
+            if (rowFilter == null) {
+                closeQuietly(batchReader);
+                throw new GorSystemException("Filter " + predicate + " is not supported for " + rowGroup.path, null);
+            }
+            batchReader.setRowFilter(rowFilter);
+        }
+        ParquetBatchRowBuilder rowBuilder = new ParquetBatchRowBuilder(nor, rowGroup.part, prependPart(), appendPart());
+        return new ParallelParquetRowReader.BatchDecoder() {
+            @Override
+            public List<Row> next() {
+                try {
+                    if (!batchReader.nextBatch(batch)) return null;
+                } catch (IOException e) {
+                    throw new GorSystemException("Error while reading parquet file " + rowGroup.path, e);
+                }
+                List<Row> rows = new ArrayList<>(batch.size());
+                for (int r = 0; r < batch.size(); r++) {
+                    rows.add(rowBuilder.build(batch, r));
+                }
+                return rows;
+            }
+
+            @Override
+            public void close() {
+                closeQuietly(batchReader);
+            }
+        };
+    }
+
+    private static void closeQuietly(ParquetColumnBatchReader batchReader) {
+        try {
+            batchReader.close();
+        } catch (IOException e) {
+            // Dont care
+        }
     }
 
     class Path2ParquetReader implements Function<Path, ParquetRowReader> {
@@ -209,7 +377,9 @@ public class ParquetFileIterator extends GenomicIteratorBase {
     }
 
     private void subInit() throws IOException {
-        if( nor && (sortCols == null || sortCols.length == 1) ) {
+        if (useParallelReader()) {
+            parallelInit();
+        } else if( nor && (sortCols == null || sortCols.length == 1) ) {
             if( parquetPaths.size() > 0 ) {
                 ParquetRowReader parquetRowReader = initParquetReader(parquetPaths.remove(0));
                 if (parquetRowReader.row != null) mergeParquet.add(parquetRowReader);
@@ -262,14 +432,28 @@ public class ParquetFileIterator extends GenomicIteratorBase {
         return super.getHeader();
     }
 
+    @Override
+    public void setRequestedRange(String chr, int pos, String stopChr, int stop) {
+        rangeStopChr = stopChr != null ? stopChr : chr;
+        rangeStop = stop;
+    }
+
     @Override
     public boolean seek(String chr, int pos) {
+        return seek(chr, pos, chr.equals(rangeStopChr) ? rangeStop : -1);
+    }
+
+    @Override
+    public boolean seek(String chr, int pos, int end) {
+        // The range is part of the filter, so row groups outside it are skipped by their statistics
         Binary bin = Binary.fromString(chr);
         String[] header = getHeader().split("\t");
-        if(pos<=1) {
-            seekfilterPredicate = FilterApi.eq(FilterApi.binaryColumn(header[0]), bin);
-        } else {
-            seekfilterPredicate = FilterApi.and(FilterApi.eq(FilterApi.binaryColumn(header[0]), bin),FilterApi.gtEq(FilterApi.intColumn(header[1]), pos));
+        seekfilterPredicate = FilterApi.eq(FilterApi.binaryColumn(header[0]), bin);
+        if(pos>1) {
+            seekfilterPredicate = FilterApi.and(seekfilterPredicate, positionFilter(header[1], pos, true));
+        }
+        if(end>0 && end<Integer.MAX_VALUE) {
+            seekfilterPredicate = FilterApi.and(seekfilterPredicate, positionFilter(header[1], end, false));
         }
         updateFilter();
         mergeParquet.forEach(ParquetRowReader::close);
@@ -278,6 +462,17 @@ public class ParquetFileIterator extends GenomicIteratorBase {
         return true;
     }
 
+    private FilterPredicate positionFilter(String posCol, int pos, boolean from) {
+        boolean longPos = schema.containsField(posCol) && schema.getType(posCol).isPrimitive()
+                && schema.getType(posCol).asPrimitiveType().getPrimitiveTypeName() == PrimitiveType.PrimitiveTypeName.INT64;
+        if (longPos) {
+            Operators.LongColumn column = FilterApi.longColumn(posCol);
+            return from ? FilterApi.gtEq(column, (long) pos) : FilterApi.ltEq(column, (long) pos);
+        }
+        Operators.IntColumn column = FilterApi.intColumn(posCol);
+        return from ? FilterApi.gtEq(column, pos) : FilterApi.ltEq(column, pos);
+    }
+
     private Row row;
 
     @Override
@@ -285,7 +480,9 @@ public class ParquetFileIterator extends GenomicIteratorBase {
         ParquetRowReader parquetRowReader = mergeParquet.poll();
         if (parquetRowReader != null) {
             row = parquetRowReader.next();
-            if(partitioningCol!=null&&!partColPresent) {
+            // Batch row readers add the partition value when building the row
+            if(partitioningCol!=null&&!partColPresent&&!(parquetRowReader instanceof ParquetBatchRowReader)
+                    &&!(parquetRowReader instanceof ParallelParquetRowReader)) {
                 if(partitioningCol.equalsIgnoreCase("chrom")) {
                     row = RowObj.apply(nor ? "chrN\t0\t"+parquetRowReader.getPart()+"\t"+row.otherCols() : row.toString());
                 } else {
@@ -313,78 +510,6 @@ public class ParquetFileIterator extends GenomicIteratorBase {
         return row;
     }
 
-    private FilterPredicate intFilter(String valStr,String colName,char comp,boolean eq) {
-        int ival = Integer.parseInt(valStr);
-        Operators.IntColumn intColumn = FilterApi.intColumn(colName);
-        if(comp=='=') return FilterApi.eq(intColumn, ival);
-        else if(comp=='<') return eq?FilterApi.ltEq(intColumn, ival):FilterApi.lt(intColumn, ival);
-        else if(eq) return FilterApi.gtEq(intColumn, ival);
-        else return FilterApi.gt(intColumn, ival);
-    }
-
-    private FilterPredicate longFilter(String valStr,String colName,char comp,boolean eq) {
-        long lval = Long.parseLong(valStr);
-        Operators.LongColumn longColumn = FilterApi.longColumn(colName);
-        if (comp == '=') return FilterApi.eq(longColumn, lval);
-        else if (comp == '<') return eq ? FilterApi.ltEq(longColumn, lval) : FilterApi.lt(longColumn, lval);
-        else if (eq) return FilterApi.gtEq(longColumn, lval);
-        else return FilterApi.gt(longColumn, lval);
-    }
-
-    private FilterPredicate doubleFilter(String valStr,String colName,char comp,boolean eq) {
-        double dval = Double.parseDouble(valStr);
-        Operators.DoubleColumn doubleColumn = FilterApi.doubleColumn(colName);
-        if(comp=='=') return FilterApi.eq(doubleColumn, dval);
-        else if(comp=='<') return eq?FilterApi.ltEq(doubleColumn, dval):FilterApi.lt(doubleColumn, dval);
-        else if(eq) return FilterApi.gtEq(doubleColumn, dval);
-        else return FilterApi.gt(doubleColumn, dval);
-    }
-
-    private FilterPredicate stringFilter(String valStr,String colName,char comp,boolean eq) {
-        Binary bin = Binary.fromString(valStr);
-        Operators.BinaryColumn binaryColumn = FilterApi.binaryColumn(colName);
-        if(comp=='=') return FilterApi.eq(binaryColumn, bin);
-        else if(comp=='<') return eq?FilterApi.ltEq(binaryColumn, bin):FilterApi.lt(binaryColumn, bin);
-        else if(eq) return FilterApi.gtEq(binaryColumn, bin);
-        else return FilterApi.gt(binaryColumn, bin);
-    }
-
-    private FilterPredicate inFilter(String all,String colName) {
-        String[] split = all.split(",");
-        Operators.BinaryColumn binaryColumn = FilterApi.binaryColumn(colName);
-        FilterPredicate newFilterPredicate = null;
-        for(String val : split) {
-            String valStr = val.trim().replace("'","");
-            Binary bin = Binary.fromString(valStr);
-            FilterPredicate tmpFilterPredicate = FilterApi.eq(binaryColumn, bin);
-            if(newFilterPredicate==null) {
-                newFilterPredicate = tmpFilterPredicate;
-            } else {
-                newFilterPredicate = FilterApi.or(newFilterPredicate, tmpFilterPredicate);
-            }
-        }
-        return newFilterPredicate;
-    }
-
-    private FilterPredicate getFilterPredicate(PrimitiveType.PrimitiveTypeName primName, String filterStr, String valStr, String colName, char comp, char comp2, boolean eq) {
-        if (primName.equals(PrimitiveType.PrimitiveTypeName.INT32)) {
-            return intFilter(valStr,colName,comp,eq);
-        } else if (primName.equals(PrimitiveType.PrimitiveTypeName.INT64)) {
-            return longFilter(valStr,colName,comp,eq);
-        } else if (primName.equals(PrimitiveType.PrimitiveTypeName.DOUBLE)) {
-            return doubleFilter(valStr,colName,comp,eq);
-        } else if(filterStr.endsWith("'")) {
-            valStr = filterStr.substring(colName.length()+(eq?3:2),filterStr.length()-1);
-            return stringFilter(valStr,colName,comp,eq);
-        } else if(filterStr.endsWith(")")) {
-            if(comp=='i' && comp2=='n' && filterStr.charAt(colName.length()+2)=='(') {
-                String all = filterStr.substring(colName.length()+3,filterStr.length()-1);
-                return inFilter(all,colName);
-            }
-        }
-        return null;
-    }
-
     private void mergeWithPreviousFilter(FilterPredicate newFilterPredicate) {
         if (filterPredicate == null) {
             filterPredicate = newFilterPredicate;
@@ -394,38 +519,38 @@ public class ParquetFileIterator extends GenomicIteratorBase {
         updateFilter();
     }
 
+    @Override
+    public boolean pushdownFilter(FilterExpression filter) {
+        // Each conjunct that translates is pushed down, the WHERE step is only dropped if all of them are
+        ParquetFilterTranslator translator = new ParquetFilterTranslator(schema, getHeader().split("\t"));
+        boolean all = true;
+        for (FilterExpression conjunct : filter.conjuncts()) {
+            FilterPredicate predicate = translator.translate(conjunct);
+            if (predicate != null) {
+                mergeWithPreviousFilter(predicate);
+            } else {
+                all = false;
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Filters given as text only support the in(...) form of tag filters, on the last column.  Where filters are
+     * pushed down parsed, see {@link #pushdownFilter(FilterExpression)}.
+     */
     @Override
     public boolean pushdownFilter(String origFilterStr) {
         String filterStr = origFilterStr.replace(" ","");
-        String filterUpper = filterStr.toUpperCase();
-        String[] header = getHeader().split("\t");
-        if(filterUpper.startsWith("IN(")) {
-            String all = filterStr.substring(3,filterStr.length()-1);
-            FilterPredicate newFilterPredicate = inFilter(all,header[header.length-1]);
-            mergeWithPreviousFilter(newFilterPredicate);
-            return true;
-        } else {
-            int i = 0;
-            for (; i < header.length; i++) {
-                String col = header[i].toUpperCase();
-                if (filterUpper.startsWith(col)) break;
-            }
-            if (i < header.length) {
-                String col = header[i];
-                char comp = filterStr.charAt(col.length());
-                char comp2 = filterStr.charAt(col.length() + 1);
-                if (comp == '<' || comp == '>' || comp == '=' || comp == 'i') {
-                    boolean eq = (comp == '<' || comp == '>') && comp2 == '=';
-                    String valStr = filterStr.substring(col.length() + (eq ? 2 : 1), filterStr.length() - 1);
-
-                    PrimitiveType.PrimitiveTypeName primName = schema.getColumns().get(i).getPrimitiveType().getPrimitiveTypeName();
-                    FilterPredicate newFilterPredicate = getFilterPredicate(primName, filterStr, valStr, col, comp, comp2, eq);
-
-                    if (newFilterPredicate != null) {
-                        mergeWithPreviousFilter(newFilterPredicate);
-                        return true;
-                    }
-                }
+        if(filterStr.toUpperCase().startsWith("IN(") && filterStr.endsWith(")")) {
+            String[] header = getHeader().split("\t");
+            List<String> values = Arrays.stream(filterStr.substring(3,filterStr.length()-1).split(","))
+                    .map(val -> val.trim().replace("'","")).collect(Collectors.toList());
+            FilterPredicate newFilterPredicate = new ParquetFilterTranslator(schema, header)
+                    .translate(new FilterExpression.In(origFilterStr, header[header.length-1], values));
+            if (newFilterPredicate != null) {
+                mergeWithPreviousFilter(newFilterPredicate);
+                return true;
             }
         }
         return false;
@@ -0,0 +1,199 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.driver.providers.stream.datatypes.parquet;
+
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+import org.gorpipe.gor.model.FilterExpression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translates gor filter expressions to parquet filter predicates.
+ * <p>
+ * Only expressions the parquet filter evaluates exactly as the gor WHERE step does are translated.  Null values are
+ * read as empty text, so comparisons that are true for an empty text also accept nulls.  Numeric columns are only
+ * compared with numeric constants and text columns with string constants.
+ */
+class ParquetFilterTranslator {
+    private final MessageType schema;
+    private final String[] header;
+
+    /**
+     * @param schema the parquet file schema
+     * @param header the gor header of the source, used to resolve #n column references
+     */
+    ParquetFilterTranslator(MessageType schema, String[] header) {
+        this.schema = schema;
+        this.header = header;
+    }
+
+    /**
+     * @return the predicate or null if the expression can not be translated
+     */
+    FilterPredicate translate(FilterExpression expression) {
+        if (expression instanceof FilterExpression.And) {
+            return combine(((FilterExpression.And) expression).getOperands(), true);
+        } else if (expression instanceof FilterExpression.Or) {
+            return combine(((FilterExpression.Or) expression).getOperands(), false);
+        } else if (expression instanceof FilterExpression.Not) {
+            FilterPredicate operand = translate(((FilterExpression.Not) expression).getOperand());
+            return operand != null ? FilterApi.not(operand) : null;
+        } else if (expression instanceof FilterExpression.Compare) {
+            return translateCompare((FilterExpression.Compare) expression);
+        } else if (expression instanceof FilterExpression.In) {
+            return translateIn((FilterExpression.In) expression);
+        }
+        return null;
+    }
+
+    private FilterPredicate combine(List<FilterExpression> operands, boolean and) {
+        FilterPredicate result = null;
+        for (FilterExpression operand : operands) {
+            FilterPredicate predicate = translate(operand);
+            if (predicate == null) return null;
+            result = result == null ? predicate : and ? FilterApi.and(result, predicate) : FilterApi.or(result, predicate);
+        }
+        return result;
+    }
+
+    /**
+     * @return the primitive schema field for the gor column or null if the file does not have it
+     */
+    private PrimitiveType resolveColumn(String column) {
+        String name = column;
+        if (column.startsWith("#")) {
+            try {
+                int index = Integer.parseInt(column.substring(1)) - 1;
+                if (index < 0 || index >= header.length) return null;
+                name = header[index];
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        for (Type field : schema.getFields()) {
+            if (field.getName().equalsIgnoreCase(name)) {
+                return field.isPrimitive() && !field.isRepetition(Type.Repetition.REPEATED) ? field.asPrimitiveType() : null;
+            }
+        }
+        return null;
+    }
+
+    private FilterPredicate translateCompare(FilterExpression.Compare compare) {
+        PrimitiveType type = resolveColumn(compare.getColumn());
+        if (type == null) return null;
+        String name = type.getName();
+        String value = compare.getValue();
+        FilterExpression.Operator operator = compare.getOperator();
+        try {
+            switch (type.getPrimitiveTypeName()) {
+                case INT32:
+                    return compare.isStringValue() ? null : compare(FilterApi.intColumn(name), operator, Integer.parseInt(value));
+                case INT64:
+                    return compare.isStringValue() ? null : compare(FilterApi.longColumn(name), operator, Long.parseLong(value));
+                case DOUBLE:
+                    return compare.isStringValue() ? null : compare(FilterApi.doubleColumn(name), operator, Double.parseDouble(value));
+                case BINARY:
+                    return compare.isStringValue() ? compareText(FilterApi.binaryColumn(name), operator, value) : null;
+                default:
+                    return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static <T extends Comparable<T>, C extends Operators.Column<T> & Operators.SupportsLtGt> FilterPredicate compare(C column, FilterExpression.Operator operator, T value) {
+        switch (operator) {
+            case EQ: return FilterApi.eq(column, value);
+            case NE: return FilterApi.notEq(column, value);
+            case LT: return FilterApi.lt(column, value);
+            case LE: return FilterApi.ltEq(column, value);
+            case GT: return FilterApi.gt(column, value);
+            default: return FilterApi.gtEq(column, value);
+        }
+    }
+
+    private static FilterPredicate compareText(Operators.BinaryColumn column, FilterExpression.Operator operator, String value) {
+        if (value.isEmpty()) {
+            // Null values are read as empty text
+            if (operator == FilterExpression.Operator.EQ) {
+                return FilterApi.or(FilterApi.eq(column, null), FilterApi.eq(column, Binary.EMPTY));
+            } else if (operator == FilterExpression.Operator.NE) {
+                return FilterApi.and(FilterApi.notEq(column, null), FilterApi.notEq(column, Binary.EMPTY));
+            }
+            return null;
+        }
+        FilterPredicate predicate = compare(column, operator, Binary.fromString(value));
+        if (operator == FilterExpression.Operator.LT || operator == FilterExpression.Operator.LE) {
+            // The empty text of a null value is less than any non empty constant
+            predicate = FilterApi.or(FilterApi.eq(column, null), predicate);
+        }
+        return predicate;
+    }
+
+    private FilterPredicate translateIn(FilterExpression.In in) {
+        PrimitiveType type = resolveColumn(in.getColumn());
+        if (type == null || in.getValues().isEmpty()) return null;
+        String name = type.getName();
+        List<FilterPredicate> predicates = new ArrayList<>();
+        for (String value : in.getValues()) {
+            switch (type.getPrimitiveTypeName()) {
+                case INT32:
+                case INT64:
+                    // The column text must match the constant, so only canonical integers are translated
+                    long number;
+                    try {
+                        number = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                    if (!Long.toString(number).equals(value)) return null;
+                    if (type.getPrimitiveTypeName() == PrimitiveType.PrimitiveTypeName.INT32) {
+                        if (number != (int) number) continue;
+                        predicates.add(FilterApi.eq(FilterApi.intColumn(name), (int) number));
+                    } else {
+                        predicates.add(FilterApi.eq(FilterApi.longColumn(name), number));
+                    }
+                    break;
+                case BINARY:
+                    predicates.add(compareText(FilterApi.binaryColumn(name), FilterExpression.Operator.EQ, value));
+                    break;
+                default:
+                    return null;
+            }
+        }
+        if (predicates.isEmpty()) return null;
+        FilterPredicate result = predicates.get(0);
+        for (int i = 1; i < predicates.size(); i++) {
+            result = FilterApi.or(result, predicates.get(i));
+        }
+        return result;
+    }
+}
@@ -52,6 +52,13 @@ public class ParquetRowReader implements Comparable<ParquetRowReader>, Iterator<
         this.part = part;
         hasNext();
     }
+
+    /**
+     * For subclasses reading rows without a record reader, the subclass reads the first row
+     */
+    protected ParquetRowReader(String part) {
+        this.part = part;
+    }
     
     public String getPart() {
         return part;
@@ -0,0 +1,168 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.driver.providers.stream.sources.wrappers;
+
+import org.gorpipe.gor.driver.DataSource;
+import org.gorpipe.gor.driver.DataSourceMetadataCache;
+import org.gorpipe.gor.driver.providers.stream.sources.StreamSource;
+import org.gorpipe.gor.driver.providers.stream.sources.StreamSourceMetadata;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.attribute.FileAttribute;
+
+/**
+ * Answers existence and metadata of the wrapped source from the process wide metadata cache and invalidates the
+ * cached entries when the source is changed through it.
+ * <p>
+ * Sources opened for writing always ask the wrapped source.  Metadata of sources resolved from link files is not
+ * cached as it includes the modification time of the link.
+ */
+public class MetadataCacheWrapper extends WrappedStreamSource {
+    private final DataSourceMetadataCache cache;
+
+    public MetadataCacheWrapper(DataSourceMetadataCache cache, StreamSource wrapped) {
+        super(wrapped);
+        this.cache = cache;
+    }
+
+    private String key() {
+        return getWrapped().getFullPath();
+    }
+
+    private boolean useCache() {
+        return !getSourceReference().writeSource;
+    }
+
+    @Override
+    public boolean exists() throws IOException {
+        return useCache() ? cache.exists(key(), getWrapped()::exists) : getWrapped().exists();
+    }
+
+    @Override
+    public boolean fileExists() throws IOException {
+        return useCache() ? cache.fileExists(key(), getWrapped()::fileExists) : getWrapped().fileExists();
+    }
+
+    @Override
+    public StreamSourceMetadata getSourceMetadata() throws IOException {
+        if (useCache() && getSourceReference().getLinkLastModified() == null) {
+            return (StreamSourceMetadata) cache.getSourceMetadata(key(), getWrapped()::getSourceMetadata);
+        }
+        return getWrapped().getSourceMetadata();
+    }
+
+    @Override
+    public OutputStream getOutputStream(long position) throws IOException {
+        return invalidateOnClose(super.getOutputStream(position));
+    }
+
+    @Override
+    public OutputStream getOutputStream(boolean append) throws IOException {
+        return invalidateOnClose(super.getOutputStream(append));
+    }
+
+    private OutputStream invalidateOnClose(OutputStream out) {
+        cache.invalidate(key());
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    cache.invalidate(key());
+                }
+            }
+        };
+    }
+
+    @Override
+    public void delete() throws IOException {
+        try {
+            super.delete();
+        } finally {
+            cache.invalidate(key());
+        }
+    }
+
+    @Override
+    public void deleteDirectory() throws IOException {
+        try {
+            super.deleteDirectory();
+        } finally {
+            cache.invalidate(key());
+        }
+    }
+
+    @Override
+    public String move(DataSource dest) throws IOException {
+        try {
+            return super.move(dest);
+        } finally {
+            cache.invalidate(key());
+            cache.invalidate(dest.getFullPath());
+        }
+    }
+
+    @Override
+    public String copy(DataSource dest) throws IOException {
+        try {
+            return super.copy(dest);
+        } finally {
+            cache.invalidate(dest.getFullPath());
+        }
+    }
+
+    @Override
+    public String createDirectory(FileAttribute<?>... attrs) throws IOException {
+        try {
+            return super.createDirectory(attrs);
+        } finally {
+            cache.invalidate(key());
+        }
+    }
+
+    @Override
+    public String createDirectoryIfNotExists(FileAttribute<?>... attrs) throws IOException {
+        try {
+            return super.createDirectoryIfNotExists(attrs);
+        } finally {
+            cache.invalidate(key());
+        }
+    }
+
+    @Override
+    public String createDirectories(FileAttribute<?>... attrs) throws IOException {
+        try {
+            return super.createDirectories(attrs);
+        } finally {
+            cache.invalidate(key());
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.model;
+
+import org.gorpipe.exceptions.GorDataException;
+import org.gorpipe.exceptions.GorSystemException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads an ordered db query with one cursor per chromosome, each on its own pooled connection.
+ * <p>
+ * The chromosomes are given in query order and each cursor reads its chromosome ordered by position, so returning
+ * the chromosomes one after the other gives the same rows in the same order as the single ordered query.  At most
+ * maxInFlight cursors read ahead on the worker pool, each holding a bounded queue of row batches.
+ * <p>
+ * The pool is shared by all readers, so the cursors of one reader can wait in the pool queue while other readers
+ * hold every worker with full queues.  When the consumer has waited for a cursor that has not started it takes the
+ * cursor back and reads the chromosome on its own thread, so a pipe reading several sources never deadlocks.
+ */
+class DbChromosomeReader implements Iterator<Row>, AutoCloseable {
+    private static final int BATCH_ROWS = 1000;
+    private static final int QUEUE_BATCHES = 8;
+    private static final List<Row> END = Collections.emptyList();
+    private static final long TAKE_WAIT_MS = 50;
+
+    /**
+     * Cursor pool shared by all readers, it should stay well below the connection pool size.
+     */
+    private static class CursorPool {
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                Integer.parseInt(System.getProperty("gor.db.parallel.threads", "4")),
+                r -> {
+                    Thread t = Executors.defaultThreadFactory().newThread(r);
+                    t.setName("db-cursor-" + t.getId());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Reads the current row of a result set with the given column count
+     */
+    interface RowReader {
+        Row read(ResultSet rs, int columnCount) throws SQLException;
+    }
+
+    private final DbConnection dbSource;
+    private final String sql;
+    private final List<Object> parameters;
+    private final RowReader rowReader;
+    private final int fetchSize;
+    private final int maxInFlight;
+    private final ArrayDeque<String> pending;
+    private final ArrayDeque<ChromosomeCursor> inFlight = new ArrayDeque<>();
+    private volatile boolean closed = false;
+    private Iterator<Row> batch = Collections.emptyIterator();
+
+    /**
+     * @param chromosomes the chromosomes to read, in query order
+     * @param sql query with the chromosome as first parameter, ordered by position
+     * @param parameters the remaining query parameters
+     */
+    DbChromosomeReader(DbConnection dbSource, List<String> chromosomes, String sql, List<Object> parameters,
+                       RowReader rowReader, int fetchSize, int maxInFlight) {
+        this.dbSource = dbSource;
+        this.sql = sql;
+        this.parameters = parameters;
+        this.rowReader = rowReader;
+        this.fetchSize = fetchSize;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.pending = new ArrayDeque<>(chromosomes);
+        startCursors();
+    }
+
+    private void startCursors() {
+        while (inFlight.size() < maxInFlight && !pending.isEmpty()) {
+            ChromosomeCursor cursor = new ChromosomeCursor(pending.poll());
+            cursor.future = CursorPool.EXECUTOR.submit(cursor);
+            inFlight.add(cursor);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!batch.hasNext()) {
+            ChromosomeCursor cursor = inFlight.peek();
+            if (cursor == null) return false;
+            List<Row> rows = cursor.take();
+            if (rows == END) {
+                inFlight.poll();
+                if (cursor.error != null) {
+                    throw new GorDataException("Error reading Db chromosome " + cursor.chromosome + ". " + cursor.error.getMessage(), cursor.error);
+                }
+                startCursors();
+            } else {
+                batch = rows.iterator();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Row next() {
+        return hasNext() ? batch.next() : null;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        pending.clear();
+        for (ChromosomeCursor cursor : inFlight) {
+            cursor.cancel();
+        }
+        inFlight.clear();
+    }
+
+    private class ChromosomeCursor implements Runnable {
+        final String chromosome;
+        final BlockingQueue<List<Row>> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        Future<?> future;
+        volatile Exception error;
+        // Set when the consumer took the cursor back from the pool and reads it on its own thread
+        private boolean inline;
+        private Connection conn;
+        private PreparedStatement stmt;
+        private ResultSet rs;
+        private int columnCount;
+
+        ChromosomeCursor(String chromosome) {
+            this.chromosome = chromosome;
+        }
+
+        private void open() throws SQLException {
+            conn = dbSource.getConnection();
+            conn.setAutoCommit(false);
+            stmt = conn.prepareStatement(sql);
+            stmt.setFetchSize(fetchSize);
+            stmt.setString(1, chromosome);
+            int i = 2;
+            for (Object parameter : parameters) {
+                stmt.setObject(i++, parameter);
+            }
+            rs = stmt.executeQuery();
+            columnCount = rs.getMetaData().getColumnCount();
+        }
+
+        /**
+         * @return the next batch of rows or END when the chromosome has been read or the reader closed
+         */
+        private List<Row> readBatch() throws SQLException {
+            List<Row> rows = new ArrayList<>(BATCH_ROWS);
+            while (!closed && rows.size() < BATCH_ROWS && rs.next()) {
+                rows.add(rowReader.read(rs, columnCount));
+            }
+            return rows.isEmpty() ? END : rows;
+        }
+
+        private void closeCursor() {
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+                if (conn != null) conn.close();
+            } catch (SQLException e) {
+                // Nothing more to read from the cursor
+            } finally {
+                rs = null;
+                stmt = null;
+                conn = null;
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                open();
+                List<Row> rows;
+                while ((rows = readBatch()) != END) {
+                    put(rows);
+                }
+            } catch (SQLException | RuntimeException e) {
+                error = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                closeCursor();
+            }
+            try {
+                put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void put(List<Row> rows) throws InterruptedException {
+            while (!closed && !queue.offer(rows, 100, TimeUnit.MILLISECONDS)) {
+                // Wait for the consumer, re-checking for close
+            }
+        }
+
+        List<Row> take() {
+            if (inline) {
+                return readInline();
+            }
+            try {
+                List<Row> rows;
+                while ((rows = queue.poll(TAKE_WAIT_MS, TimeUnit.MILLISECONDS)) == null) {
+                    // A cursor that never got a worker will not get one while other readers hold them all
+                    if (future.cancel(false)) {
+                        inline = true;
+                        try {
+                            open();
+                        } catch (SQLException | RuntimeException e) {
+                            error = e;
+                            closeCursor();
+                            return END;
+                        }
+                        return readInline();
+                    }
+                }
+                return rows;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GorSystemException("Interrupted while reading Db chromosome " + chromosome, e);
+            }
+        }
+
+        private List<Row> readInline() {
+            try {
+                List<Row> rows = readBatch();
+                if (rows == END) closeCursor();
+                return rows;
+            } catch (SQLException | RuntimeException e) {
+                error = e;
+                closeCursor();
+                return END;
+            }
+        }
+
+        void cancel() {
+            if (inline) {
+                closeCursor();
+            } else {
+                future.cancel(true);
+                queue.clear();
+            }
+        }
+    }
+}
@@ -22,6 +22,8 @@
 
 package org.gorpipe.gor.model;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.gorpipe.exceptions.GorDataException;
 import org.gorpipe.exceptions.GorSystemException;
 import org.gorpipe.gor.driver.providers.rows.sources.db.DbScope;
@@ -32,8 +34,11 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * DbGenomicIterator allows iterating genomic data in the database. It allows subclassing to enable
@@ -42,7 +47,15 @@ import java.util.List;
  */
 public class DbGenomicIterator extends GenomicIteratorBase {
     private static final Logger log = LoggerFactory.getLogger(DbGenomicIterator.class);
+    // Result set columns per source and query, so iterators on the same table don't query for metadata
+    private static final Cache<String, List<String>> RESULT_SET_COLUMNS_CACHE = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(Long.parseLong(System.getProperty("gor.db.metadata.cache.expire", "300")), TimeUnit.SECONDS).build();
+    // The fetch size starts small so seeks reading few rows return fast and doubles while the cursor is read through
+    private static final int INITIAL_FETCH_SIZE = Integer.parseInt(System.getProperty("gor.db.fetchsize.initial", "200"));
+    private static final int MAX_FETCH_SIZE = Integer.parseInt(System.getProperty("gor.db.fetchsize.max", "10000"));
     private final String securityContext;
+    private final DbConnection dbSource;
     private Connection conn;
     private PreparedStatement stmt;
     private ResultSet rs;
@@ -54,6 +67,13 @@ public class DbGenomicIterator extends GenomicIteratorBase {
     private final List<DbScope> dbScopes;
     private List<DbScope> dbScopesUsed;
     private boolean seekInitialized;
+    private boolean queryStarted;
+    private int columnCount;
+    private int fetchSize;
+    private int rowsInFetch;
+    // Number of chromosome cursors reading ahead on pooled connections for full scans, 0 reads with a single cursor
+    private final int parallelCursors = Integer.parseInt(System.getProperty("gor.db.parallel.cursors", "0"));
+    private DbChromosomeReader chromosomeReader;
 
     public DbGenomicIterator(ChromoLookup lookup, String databaseSource, String tableName, String chrColName, String posColName, List<DbScope> dbScopes, String securityContext) {
         this.lookup = lookup;
@@ -64,7 +84,7 @@ public class DbGenomicIterator extends GenomicIteratorBase {
         this.seekInitialized = false;
         this.securityContext = securityContext;
 
-        final DbConnection dbSource = DbConnection.lookup(databaseSource);
+        dbSource = DbConnection.lookup(databaseSource);
         if (dbSource == null) {
             throw new GorSystemException("Unknown Database Source: " + databaseSource + " is not a registered source.", null);
         }
@@ -88,53 +108,119 @@ public class DbGenomicIterator extends GenomicIteratorBase {
 
     @Override
     public String getHeader() {
+        return getHeaderFromResultSetColumns(getResultsSetColumnsGracefully());
+    }
+
+    /**
+     * Run the full ordered query, unless a seek has already positioned the iterator
+     */
+    private void startQuery() {
+        if (queryStarted || conn == null) return;
+        queryStarted = true;
         try {
-            if (rs == null) {
-                stmt = conn.prepareStatement(sqlOrdered(scoping(sqlbase, true)));
-                stmt.setFetchSize(2000);
-                if (!dbScopesUsed.isEmpty()) {
-                    int i = 1;
-                    for (DbScope dbScope : dbScopesUsed) {
-                        stmt.setObject(i, dbScope.getValue());
-                        i++;
-                    }
-                }
-                try {
+            if (parallelCursors > 0) {
+                startChromosomeReader();
+                return;
+            }
+            stmt = conn.prepareStatement(sqlOrdered(scoping(sqlbase, true)));
+            stmt.setFetchSize(INITIAL_FETCH_SIZE);
+            bindScopes(stmt, 1);
+            try {
+                rs = stmt.executeQuery();
+            } catch (SQLException ex) {
+                if (ex.getErrorCode() == 904) { // Invalid identifier implies there is no such scoping column, try again assuming no scoping
+                    log.info("Scoping column(s) {} not found in query {}, assume no scoping", DbScope.dbScopesColumnsToString(dbScopesUsed), sqlbase);
+                    stmt.close();
+                    stmt = conn.prepareStatement(sqlOrdered(sqlbase));
+                    stmt.setFetchSize(INITIAL_FETCH_SIZE);
                     rs = stmt.executeQuery();
-                } catch (SQLException ex) {
-                    if (ex.getErrorCode() == 904) { // Invalid identifier implies there is no such scoping column, try again assuming no scoping
-                        log.info("Scoping column(s) {} not found in query {}, assume no scoping", DbScope.dbScopesColumnsToString(dbScopesUsed), sqlbase);
-                        stmt = conn.prepareStatement(sqlOrdered(sqlbase));
-                        stmt.setFetchSize(2000);
-                        rs = stmt.executeQuery();
-                    } else {
-                        throw ex;
-                    }
+                } else {
+                    throw ex;
                 }
-                // Might need to add a try/catch here, in case we need a non scoping query on data that typically will be scoped.
-                hasNext = rs.next();
             }
-            return getHeaderFromResultSetMetaData(rs.getMetaData());
+            initFetch();
+        } catch (SQLException ex) {
+            throw new GorDataException("Error reading Db. " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Read each chromosome with its own cursor on a pooled connection, the chromosomes are listed in the same
+     * order as the ordered query returns them
+     */
+    private void startChromosomeReader() throws SQLException {
+        boolean scoped = !dbScopesUsed.isEmpty();
+        List<String> chromosomes;
+        try {
+            chromosomes = queryChromosomes(scoped);
         } catch (SQLException ex) {
-            throw new GorDataException("Error getting Header. " + ex.getMessage(), ex);
+            if (scoped && ex.getErrorCode() == 904) { // Invalid identifier implies there is no such scoping column, try again assuming no scoping
+                log.info("Scoping column(s) {} not found in query {}, assume no scoping", DbScope.dbScopesColumnsToString(dbScopesUsed), sqlbase);
+                scoped = false;
+                chromosomes = queryChromosomes(false);
+            } else {
+                throw ex;
+            }
+        }
+        String chromSql = sqlbase + " where " + chrColName + " = ?";
+        String sql = (scoped ? scoping(chromSql, false) : chromSql) + " order by " + posColName;
+        List<Object> parameters = scoped ? dbScopesUsed.stream().map(DbScope::getValue).collect(Collectors.toList()) : Collections.emptyList();
+        chromosomeReader = new DbChromosomeReader(dbSource, chromosomes, sql, parameters, this::readRow, MAX_FETCH_SIZE, parallelCursors);
+    }
+
+    private List<String> queryChromosomes(boolean scoped) throws SQLException {
+        List<String> chromosomes = new ArrayList<>();
+        try (PreparedStatement chromStmt = conn.prepareStatement("select distinct " + chrColName + " from ("
+                + (scoped ? scoping(sqlbase, true) : sqlbase) + ") chroms order by " + chrColName)) {
+            if (scoped) bindScopes(chromStmt, 1);
+            try (ResultSet chromRs = chromStmt.executeQuery()) {
+                while (chromRs.next()) {
+                    chromosomes.add(chromRs.getString(1));
+                }
+            }
+        }
+        return chromosomes;
+    }
+
+    private void bindScopes(PreparedStatement statement, int first) throws SQLException {
+        int i = first;
+        for (DbScope dbScope : dbScopesUsed) {
+            statement.setObject(i, dbScope.getValue());
+            i++;
         }
     }
 
-    private String getHeaderFromResultSetMetaData(ResultSetMetaData md) throws SQLException {
+    private void initFetch() throws SQLException {
+        columnCount = rs.getMetaData().getColumnCount();
+        fetchSize = INITIAL_FETCH_SIZE;
+        rowsInFetch = 0;
+        hasNext = rs.next();
+    }
+
+    private void advance() throws SQLException {
+        hasNext = rs.next();
+        if (++rowsInFetch == fetchSize && fetchSize < MAX_FETCH_SIZE) {
+            // A whole fetch has been read, ask for larger fetches from now on
+            fetchSize = Math.min(MAX_FETCH_SIZE, fetchSize * 2);
+            rowsInFetch = 0;
+            rs.setFetchSize(fetchSize);
+        }
+    }
+
+    private String getHeaderFromResultSetColumns(List<String> columns) {
         final IntHashMap map = new IntHashMap();
         // Setup one to one mapping of source column to header array destination
-        for (int i = 0; i < md.getColumnCount(); i++) { // Assume scoping column is always first in query
+        for (int i = 0; i < columns.size(); i++) { // Assume scoping column is always first in query
             final int headerPosition = (!dbScopesUsed.isEmpty()) ? (i == 0 ? -dbScopesUsed.size() : i - dbScopesUsed.size()) : i;
             if (headerPosition >= 0) {
                 map.put(i, headerPosition);
             }
         }
         String[] header = new String[map.size()];
-        int metaDataColumnCount = md.getColumnCount();
-        for (int sourcePosition = 0; sourcePosition < metaDataColumnCount; sourcePosition++) {
+        for (int sourcePosition = 0; sourcePosition < columns.size(); sourcePosition++) {
             final int headerPosition = map.get(sourcePosition, -1);
             if (headerPosition >= 0) {
-                header[headerPosition] = md.getColumnName(sourcePosition + 1);
+                header[headerPosition] = columns.get(sourcePosition);
             }
         }
         return String.join("\t",header);
@@ -184,7 +270,8 @@ public class DbGenomicIterator extends GenomicIteratorBase {
     private List<String> getResultsSetColumnsGracefully() {
         List<String> resultSetColumns;
         try {
-            resultSetColumns = fetchResultSetMetaData();
+            resultSetColumns = RESULT_SET_COLUMNS_CACHE.get(dbSource.url + "\t" + dbSource.user + "\t" + sqlbase,
+                    k -> fetchResultSetMetaData());
         } catch (Exception e) {
             try {
                 this.conn.close();
@@ -199,33 +286,47 @@ public class DbGenomicIterator extends GenomicIteratorBase {
     private List<String> fetchResultSetMetaData() {
         List<String> resultSetColumns = new ArrayList<>();
         try (PreparedStatement preparedStatement = conn.prepareStatement(sqlbase)) {
-            preparedStatement.setFetchSize(1);
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                ResultSetMetaData resultSetMetaData = resultSet.getMetaData();
-                int columnCount = resultSetMetaData.getColumnCount();
-                for (int i = 1; i <= columnCount; i++) {
-                    resultSetColumns.add(resultSetMetaData.getColumnName(i));
+            // Most drivers describe a prepared query without running it, otherwise read a single row
+            ResultSetMetaData resultSetMetaData = preparedStatement.getMetaData();
+            if (resultSetMetaData != null) {
+                addColumns(resultSetMetaData, resultSetColumns);
+            } else {
+                preparedStatement.setMaxRows(1);
+                preparedStatement.setFetchSize(1);
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    addColumns(resultSet.getMetaData(), resultSetColumns);
+                } catch (SQLException ex) {
+                    throw new GorDataException("Error result metadata set. " + ex.getMessage(), ex);
                 }
-            } catch (SQLException ex) {
-                throw new GorDataException("Error result metadata set. " + ex.getMessage(), ex);
             }
-
         } catch (SQLException ex) {
             throw new GorDataException("Error in prepare statement after getting result set with " + resultSetColumns.size() + " columns. " + ex.getMessage(), ex);
         }
         return resultSetColumns;
     }
 
+    private static void addColumns(ResultSetMetaData resultSetMetaData, List<String> resultSetColumns) throws SQLException {
+        int columnCount = resultSetMetaData.getColumnCount();
+        for (int i = 1; i <= columnCount; i++) {
+            resultSetColumns.add(resultSetMetaData.getColumnName(i));
+        }
+    }
+
     @Override
     public boolean seek(String chr, int pos) {
         try {
+            if (chromosomeReader != null) {
+                chromosomeReader.close();
+                chromosomeReader = null;
+            }
+            queryStarted = true;
             if (rs != null) rs.close();
             if (!seekInitialized) {
                 if (stmt != null) stmt.close();
                 stmt = conn.prepareStatement(sqlOrdered(scoping(sqlbase + " where " + chrColName + " = ? and " + posColName + " >= ?", false)));
-                stmt.setFetchSize(2000);
                 seekInitialized = true;
             }
+            stmt.setFetchSize(INITIAL_FETCH_SIZE);
             stmt.setString(1, chr);
             stmt.setInt(2, pos);
             if (!dbScopesUsed.isEmpty()) {
@@ -236,7 +337,7 @@ public class DbGenomicIterator extends GenomicIteratorBase {
                 }
             }
             rs = stmt.executeQuery();
-            hasNext = rs.next();
+            initFetch();
             return hasNext;
         } catch (SQLException ex) {
             throw new GorDataException("Error seeking. " + ex.getMessage(), ex);
@@ -252,41 +353,55 @@ public class DbGenomicIterator extends GenomicIteratorBase {
 
     @Override
     public boolean hasNext() {
+        startQuery();
+        if (chromosomeReader != null) {
+            return chromosomeReader.hasNext();
+        }
         return hasNext;
     }
 
     @Override
     public Row next() {
+        startQuery();
+        if (chromosomeReader != null) {
+            return chromosomeReader.next();
+        }
         if (!hasNext) {
             return null;
         }
         try {
             assert rs != null;
-            // We need to find where chrom and pos columns are.
-            int idx = dbScopesUsed.size() + 1;
-            StringBuilder stringBuilder = new StringBuilder();
-
-            // Get chrom and pos columns
-            stringBuilder.append(rs.getString(idx++));
-            stringBuilder.append("\t");
-            stringBuilder.append(rs.getInt(idx++));
-            // Loop through remainder of columns after chrom and pos
-            while (idx <= rs.getMetaData().getColumnCount()) {
-                stringBuilder.append("\t");
-                stringBuilder.append(removeInvalidCharacters(rs.getString(idx++)));
-            }
-            hasNext = rs.next();
-            return RowObj.apply(stringBuilder);
+            Row row = readRow(rs, columnCount);
+            advance();
+            return row;
         } catch (SQLException ex) {
             throw new GorDataException("Error reading Db - " + DbScope.dbScopesToString(dbScopes) + " securityContext: " + securityContext + ex.getMessage(), ex);
         }
     }
 
+    private Row readRow(ResultSet rs, int columnCount) throws SQLException {
+        // We need to find where chrom and pos columns are.
+        int idx = dbScopesUsed.size() + 1;
+        StringBuilder stringBuilder = new StringBuilder();
+
+        // Get chrom and pos columns
+        stringBuilder.append(rs.getString(idx++));
+        stringBuilder.append("\t");
+        stringBuilder.append(rs.getInt(idx++));
+        // Loop through remainder of columns after chrom and pos
+        while (idx <= columnCount) {
+            stringBuilder.append("\t");
+            stringBuilder.append(removeInvalidCharacters(rs.getString(idx++)));
+        }
+        return RowObj.apply(stringBuilder);
+    }
+
     @Override
     public void close() {
         try {
             try {
                 try {
+                    if (chromosomeReader != null) chromosomeReader.close();
                     if (rs != null) rs.close();
                 } catch (Exception e) {
                     log.error(e.getMessage(), e);
@@ -299,6 +414,7 @@ public class DbGenomicIterator extends GenomicIteratorBase {
         } catch (Exception e) {
             log.error(e.getMessage(), e);
         } finally {
+            chromosomeReader = null;
             rs = null;
             stmt = null;
             conn = null;
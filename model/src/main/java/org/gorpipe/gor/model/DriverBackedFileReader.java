@@ -22,6 +22,8 @@
 
 package org.gorpipe.gor.model;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.apache.parquet.Strings;
 import org.gorpipe.exceptions.ExceptionUtilities;
 import org.gorpipe.exceptions.GorException;
@@ -36,6 +38,7 @@ import org.gorpipe.gor.driver.providers.rows.RowIteratorSource;
 import org.gorpipe.gor.driver.providers.stream.sources.StreamSource;
 import org.gorpipe.gor.driver.providers.stream.sources.file.FileSourceType;
 import org.gorpipe.gor.table.dictionary.DictionaryTable;
+import org.gorpipe.gor.table.dictionary.DictionaryTableReader;
 import org.gorpipe.gor.table.util.PathUtils;
 import org.gorpipe.gor.util.DataUtil;
 import org.gorpipe.gor.util.StringUtil;
@@ -47,8 +50,12 @@ import java.io.*;
 import java.net.URI;
 import java.nio.file.*;
 import java.nio.file.attribute.FileAttribute;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -59,6 +66,10 @@ public class DriverBackedFileReader extends FileReader {
 
     private String DEFAULT_COMMON_ROOT = "./";
     private static final Logger log = LoggerFactory.getLogger(DriverBackedFileReader.class);
+    // Files behind dictionary signatures by dictionary unique id, common root and tags, shared by all sessions
+    private static final Cache<String, List<String>> SIGNATURE_FILES_CACHE = Caffeine.newBuilder()
+            .maximumSize(Integer.parseInt(System.getProperty("gor.table.signature.cache.size", "10000")))
+            .expireAfterAccess(1, TimeUnit.HOURS).build();
 
     private final String securityContext;
     protected final String commonRoot;
@@ -321,11 +332,26 @@ public class DriverBackedFileReader extends FileReader {
     public String getDictionarySignature(String dictionary, String[] tags) throws IOException {
         final DataSource source = resolveUrl(dictionary);
         String dictpath = PathUtils.fixFileSchema(source.getName());
+        DataSource dictSource = source;
         if (source.isDirectory()) {
             dictpath = URI.create(dictpath).resolve(GorOptions.DEFAULT_FOLDER_DICTIONARY_NAME).toString();
+            dictSource = resolveUrl(dictpath);
         }
-        return new DictionaryTable.Builder<>(dictpath).fileReader(this).build()
-                .getSignature(true, source.getSourceReference().commonRoot, tags);
+        final String uniqueId = dictSource.exists() ? dictSource.getSourceMetadata().getUniqueId() : null;
+        final String commonRoot = source.getSourceReference().commonRoot;
+
+        // Loading a large dictionary is the expensive part, the files behind the tags only change with the dictionary
+        List<String> signatureFiles;
+        if (uniqueId != null) {
+            String sortedTags = tags != null ? Arrays.stream(tags).sorted().collect(Collectors.joining(",")) : "";
+            String key = uniqueId + '\t' + dictpath + '\t' + commonRoot + '\t' + sortedTags;
+            String path = dictpath;
+            signatureFiles = SIGNATURE_FILES_CACHE.get(key,
+                    k -> new DictionaryTable.Builder<>(path).fileReader(this).build().getSignatureFiles(tags));
+        } else {
+            signatureFiles = new DictionaryTable.Builder<>(dictpath).fileReader(this).build().getSignatureFiles(tags);
+        }
+        return DictionaryTableReader.getSignature(signatureFiles, securityContext, commonRoot);
     }
 
     @Override
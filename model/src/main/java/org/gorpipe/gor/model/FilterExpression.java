@@ -0,0 +1,192 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parsed gor WHERE filter, for sources that can evaluate filters themselves.
+ * <p>
+ * Comparisons of a column with a constant, IN lists, AND, OR and NOT are represented as nodes.  Anything else, e.g.
+ * function calls or comparisons between columns, is an {@link Other} node that sources can not push down.  Every node
+ * keeps the text it was parsed from.
+ */
+public abstract class FilterExpression {
+    public enum Operator {
+        EQ, NE, LT, LE, GT, GE;
+
+        /**
+         * @return the operator with the operands swapped, i.e. a op b == b op.swap() a
+         */
+        public Operator swap() {
+            switch (this) {
+                case LT: return GT;
+                case LE: return GE;
+                case GT: return LT;
+                case GE: return LE;
+                default: return this;
+            }
+        }
+    }
+
+    private final String text;
+
+    protected FilterExpression(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @return the filter text of this expression
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the expressions that must all be true for this expression to be true
+     */
+    public List<FilterExpression> conjuncts() {
+        return Collections.singletonList(this);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    public static class And extends FilterExpression {
+        private final List<FilterExpression> operands;
+
+        public And(String text, List<FilterExpression> operands) {
+            super(text);
+            this.operands = operands;
+        }
+
+        public List<FilterExpression> getOperands() {
+            return operands;
+        }
+
+        @Override
+        public List<FilterExpression> conjuncts() {
+            return operands;
+        }
+    }
+
+    public static class Or extends FilterExpression {
+        private final List<FilterExpression> operands;
+
+        public Or(String text, List<FilterExpression> operands) {
+            super(text);
+            this.operands = operands;
+        }
+
+        public List<FilterExpression> getOperands() {
+            return operands;
+        }
+    }
+
+    public static class Not extends FilterExpression {
+        private final FilterExpression operand;
+
+        public Not(String text, FilterExpression operand) {
+            super(text);
+            this.operand = operand;
+        }
+
+        public FilterExpression getOperand() {
+            return operand;
+        }
+    }
+
+    /**
+     * Comparison of a column with a constant.  The column is a column name or #n for the n-th column.
+     */
+    public static class Compare extends FilterExpression {
+        private final String column;
+        private final Operator operator;
+        private final String value;
+        private final boolean stringValue;
+
+        public Compare(String text, String column, Operator operator, String value, boolean stringValue) {
+            super(text);
+            this.column = column;
+            this.operator = operator;
+            this.value = value;
+            this.stringValue = stringValue;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public Operator getOperator() {
+            return operator;
+        }
+
+        /**
+         * @return the constant, without quotes for string constants
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return true if the constant is a string literal, false if it is a number
+         */
+        public boolean isStringValue() {
+            return stringValue;
+        }
+    }
+
+    /**
+     * Test if the text of a column is in a list of string constants.
+     */
+    public static class In extends FilterExpression {
+        private final String column;
+        private final List<String> values;
+
+        public In(String text, String column, List<String> values) {
+            super(text);
+            this.column = column;
+            this.values = values;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public List<String> getValues() {
+            return values;
+        }
+    }
+
+    /**
+     * Any other filter expression.
+     */
+    public static class Other extends FilterExpression {
+        public Other(String text) {
+            super(text);
+        }
+    }
+}
@@ -140,6 +140,17 @@ public interface GenomicIterator extends Iterator<Row>, RowSourceStats, AutoClos
         return false;
     }
 
+    /**
+     * Sends the parsed gor filter down to the source iterator.
+     * The source iterator may evaluate the conjuncts of the filter it supports,
+     * the WHERE step is kept unless the source evaluates the whole filter.
+     * @param filter
+     * @return true if the whole filter is successfully pushed down
+     */
+    default boolean pushdownFilter(FilterExpression filter) {
+        return pushdownFilter(filter.getText());
+    }
+
     /**
      * Pushes down a one-to-one line (.map) function corresponding to
      * the gor calc step. The source iterator pushdownCalc implementation
@@ -140,6 +140,11 @@ public abstract class GenomicIteratorAdapterBase extends GenomicIteratorBase {
         return iterator.pushdownFilter(where);
     }
 
+    @Override
+    public boolean pushdownFilter(FilterExpression filter) {
+        return iterator.pushdownFilter(filter);
+    }
+
     @Override
     public boolean pushdownSelect(String[] colList) {
         return iterator.pushdownSelect(colList);
@@ -41,6 +41,7 @@ public class GorMeta extends BaseMeta {
     Row inferRow = null;
     GorRowInferFunction gorRowInferFunction;
     int maxseg = -1;
+    SegmentIndex segmentIndex = null;
 
     public void setQuery(String query) {
         setProperty(HEADER_QUERY_KEY, query);
@@ -63,7 +64,10 @@ public class GorMeta extends BaseMeta {
         if (infer) {
            gorRowInferFunction = new GorRowInferFunction();
         }
-        if (maxseg) this.maxseg = 0;
+        if (maxseg) {
+            this.maxseg = 0;
+            segmentIndex = new SegmentIndex(2);
+        }
         this.setFileHeader(header.split("\t"));
 
         lineCount = 0;
@@ -85,7 +89,10 @@ public class GorMeta extends BaseMeta {
         maxPos = ir.pos;
 
         lineCount++;
-        if (maxseg!=-1) maxseg = Math.max(maxseg, ir.colAsInt(2)-maxPos);
+        if (maxseg!=-1) {
+            maxseg = Math.max(maxseg, ir.colAsInt(2)-maxPos);
+            segmentIndex.add(ir);
+        }
         if (cardColIndex >= 0) cardSet.add(ir.colAsString(cardColIndex).toString());
     }
 
@@ -99,6 +106,13 @@ public class GorMeta extends BaseMeta {
         }
     }
 
+    /**
+     * @return the segment index collected when writing with max segment stats or null
+     */
+    public SegmentIndex getSegmentIndex() {
+        return segmentIndex;
+    }
+
     public String[] getCordColTags() {
         if (cardSet.size() > 0) {
             return cardSet.toArray(new String[0]);
@@ -79,6 +79,8 @@ public class GorOptions {
     public static final String DEFAULT_FOLDER_DICTIONARY_NAME = "thedict.gord";
 
     private static final Logger log = LoggerFactory.getLogger(GorOptions.class);
+    // Minimum number of sources with a known range for them to be merged lazily by range, 0 turns it off
+    private static final int LAZY_RANGE_SOURCES = Integer.parseInt(System.getProperty("gor.dictionary.lazy.range.sources", "32"));
 
     public GorSession getSession() {
         return session;
@@ -458,9 +460,22 @@ public class GorOptions {
     List<GenomicIterator> getIterators() {
         Stream<SourceRef> inRange = files.stream().filter(ref -> chrname == null || ref.isInRange(chrname, begin, end));
         Stream<SourceRef> withTag = inRange.filter( ref -> columnTags == null || ref.analyzeQueryTags(columnTags, insertSource) != SourceRef.NO_TAG);
-        Stream<GenomicIterator> iteratorStream = withTag.parallel().map(this::createGenomicIteratorFromRef);
+        List<SourceRef> refs = withTag.collect(Collectors.toList());
+
+        // Sources with a known range are opened lazily, as the scan or a seek reaches their range
+        List<SourceRef> rangeRefs = Collections.emptyList();
+        if (LAZY_RANGE_SOURCES > 0 && refs.size() >= LAZY_RANGE_SOURCES) {
+            Map<Boolean, List<SourceRef>> split = refs.stream().collect(Collectors.partitioningBy(GorOptions::isLazyRangeSource));
+            if (split.get(true).size() >= LAZY_RANGE_SOURCES) {
+                refs = split.get(false);
+                rangeRefs = split.get(true);
+            }
+        }
 
-        List<GenomicIterator> genomicIterators = iteratorStream.collect(Collectors.toList());
+        List<GenomicIterator> genomicIterators = refs.parallelStream().map(this::createGenomicIteratorFromRef).collect(Collectors.toList());
+        if (!rangeRefs.isEmpty()) {
+            genomicIterators.add(new RangeMergeIterator(rangeRefs, this::createGenomicIteratorFromRef, insertSource));
+        }
 
         if (genomicIterators.isEmpty()) {
             // No iterator in range, add dummy one (that will not return any rows) as we must return at least one.
@@ -476,6 +491,11 @@ public class GorOptions {
         return genomicIterators;
     }
 
+    private static boolean isLazyRangeSource(SourceRef ref) {
+        return ref.startChr != null && ref.startPos >= 0 && ref.stopChr != null && ref.stopPos >= 0
+                && !ref.sourceAlreadyInserted && !ref.isStandardIn();
+    }
+
     private GenomicIterator createGenomicIteratorFromRef(SourceRef ref) {
         GenomicIterator i;
         try {
@@ -791,7 +811,8 @@ public class GorOptions {
         isNoLineFilter = isNoLineFilter || !table.getLineFilter();
         this.hasLocalDictonaryFile = hasLocalDictonaryFile || !gord.getValidTags().isEmpty() /*!table.getAllActiveTags().isEmpty()*/;  // Does not count as dictionary if no tags
 
-        final Dictionary.DictionaryLine[] fileList = gord.getSources(this.columnTags, allowBucketAccess, isSilentTagFilter);
+        // Entries whose range does not overlap the query range are left out before any source is created
+        final Dictionary.DictionaryLine[] fileList = gord.getSources(this.columnTags, allowBucketAccess, isSilentTagFilter, this.chrname, this.begin, this.end);
         this.isDictionaryWithBuckets = gord.isDictionaryWithBuckets; //Arrays.stream(fileList).anyMatch(file -> file.sourceInserted);
         final boolean hasTags = !(this.columnTags == null || this.columnTags.isEmpty());
         if (!hasTags && gord.getAnyBucketHasDeletedFile()) {
@@ -0,0 +1,228 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.model;
+
+import org.gorpipe.model.gor.BinaryHolder;
+
+import java.util.Arrays;
+
+/**
+ * Hard call genotypes packed two bits per value, 32 values per long.
+ * <p>
+ * The codes 0 to 3 are the genotype value characters '0' to '3' of the value strings used by the bucketized
+ * genotype commands. A holder can be attached to a row, {@link #of(Row, int)} only returns it for the row and
+ * column it was attached to, and only while the row content has not been replaced, so rows rebuilt or modified by
+ * other steps fall back to their text.
+ */
+public class PackedGenotypes extends BinaryHolder {
+    private long[] words;
+    private int size;
+
+    private Row row;
+    private int column = -1;
+    private CharSequence rowText;
+    private int[] rowSplitArray;
+
+    public PackedGenotypes(int size) {
+        this.words = new long[wordCount(size)];
+        this.size = size;
+    }
+
+    private static int wordCount(int size) {
+        return (size + 31) >>> 5;
+    }
+
+    /**
+     * @return the genotype code of the character or -1 if it is not a hard call
+     */
+    public static int code(int c) {
+        int code = c - '0';
+        return (code & ~3) == 0 ? code : -1;
+    }
+
+    /**
+     * Pack the values at start, start + stride, ... of the text.
+     *
+     * @param reuse holder to pack into, may be null
+     * @return the packed values or null if there are too few values or one of them is not a hard call
+     */
+    public static PackedGenotypes pack(CharSequence values, int start, int count, int stride, PackedGenotypes reuse) {
+        return pack(values, start, values.length(), count, stride, reuse);
+    }
+
+    /**
+     * Pack the values at start, start + stride, ... of the text before end.
+     *
+     * @param reuse holder to pack into, may be null
+     * @return the packed values or null if there are too few values or one of them is not a hard call
+     */
+    public static PackedGenotypes pack(CharSequence values, int start, int end, int count, int stride, PackedGenotypes reuse) {
+        if (count > 0 && start + (long) (count - 1) * stride >= end) return null;
+        PackedGenotypes packed = reuse != null ? reuse : new PackedGenotypes(count);
+        packed.resize(count);
+        long[] words = packed.words;
+        int p = start;
+        for (int w = 0; w < words.length; w++) {
+            int n = Math.min(32, count - (w << 5));
+            long word = 0;
+            for (int i = 0; i < n; i++) {
+                int code = code(values.charAt(p));
+                if (code < 0) return null;
+                word |= (long) code << (i << 1);
+                p += stride;
+            }
+            words[w] = word;
+        }
+        return packed;
+    }
+
+    /**
+     * Resize and clear the holder and detach it from its row.
+     */
+    public void resize(int size) {
+        int wc = wordCount(size);
+        if (words.length < wc) {
+            words = new long[wc];
+        } else {
+            Arrays.fill(words, 0, wc, 0L);
+        }
+        this.size = size;
+        detach();
+    }
+
+    private void detach() {
+        row = null;
+        column = -1;
+        rowText = null;
+        rowSplitArray = null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int i) {
+        return (int) (words[i >>> 5] >>> ((i & 31) << 1)) & 3;
+    }
+
+    public void set(int i, int code) {
+        int shift = (i & 31) << 1;
+        words[i >>> 5] = words[i >>> 5] & ~(3L << shift) | (long) code << shift;
+    }
+
+    public char charAt(int i) {
+        return (char) ('0' + get(i));
+    }
+
+    /**
+     * @return the packed words, only the first (size + 31) / 32 are in use
+     */
+    public long[] getWords() {
+        return words;
+    }
+
+    /**
+     * Append the values as text with the separator between them, no separator if it is 0.
+     */
+    public void appendTo(StringBuilder sb, char sep) {
+        for (int i = 0; i < size; i++) {
+            if (sep != 0 && i > 0) sb.append(sep);
+            sb.append(charAt(i));
+        }
+    }
+
+    /**
+     * Attach the holder to the row as the packed values of the column.
+     */
+    public void attach(Row r, int column) {
+        r.bH = this;
+        this.row = r;
+        this.column = column;
+        this.rowText = r.getAllCols();
+        this.rowSplitArray = r.getSplitArray();
+    }
+
+    /**
+     * Pack the column of the row, one value per character, and attach the values to the row.
+     *
+     * @return the attached values or null if the column holds other values than hard calls
+     */
+    public static PackedGenotypes attachColumn(Row r, int column) {
+        final int[] sa = r.getSplitArray();
+        if (sa == null) return null;
+        final int start = column == 0 ? 0 : sa[column - 1] + 1;
+        final PackedGenotypes packed = pack(r.getAllCols(), start, sa[column] - start, 1, null);
+        if (packed != null) packed.attach(r, column);
+        return packed;
+    }
+
+    /**
+     * @return the packed values of the column if they were attached to this row, else null
+     */
+    public static PackedGenotypes of(Row r, int column) {
+        if (r.bH instanceof PackedGenotypes) {
+            PackedGenotypes packed = (PackedGenotypes) r.bH;
+            if (packed.row == r && packed.column == column && packed.rowText == r.getAllCols()
+                    && packed.rowSplitArray == r.getSplitArray()) {
+                return packed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of bytes used to store count values with {@link #packTo}
+     */
+    public static int packedLength(int count) {
+        return (count + 3) >>> 2;
+    }
+
+    /**
+     * Pack the text of hard calls into bytes, four values per byte.
+     *
+     * @return false if one of the values is not a hard call, the destination is then partially written
+     */
+    public static boolean packTo(CharSequence values, byte[] dest, int offset) {
+        int count = values.length();
+        for (int i = 0; i < count; i += 4) {
+            int n = Math.min(4, count - i);
+            int b = 0;
+            for (int j = 0; j < n; j++) {
+                int code = code(values.charAt(i + j));
+                if (code < 0) return false;
+                b |= code << (j << 1);
+            }
+            dest[offset + (i >>> 2)] = (byte) b;
+        }
+        return true;
+    }
+
+    /**
+     * Unpack count values written by {@link #packTo} as text bytes.
+     */
+    public static void unpackTo(byte[] src, int srcOffset, int count, byte[] dest, int destOffset) {
+        for (int i = 0; i < count; i++) {
+            dest[destOffset + i] = (byte) ('0' + ((src[srcOffset + (i >>> 2)] >>> ((i & 3) << 1)) & 3));
+        }
+    }
+}
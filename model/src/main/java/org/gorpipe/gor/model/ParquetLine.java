@@ -134,14 +134,28 @@ public class ParquetLine extends Row {
     public String extractDecimal(Group thegroup, int colNum, int idx) {
         var bin = thegroup.getBinary(colNum, idx);
         if (bin.length()==16) {
-            BigInteger bigInteger = new BigInteger(bin.getBytes());
-            BigDecimal big = new BigDecimal(bigInteger, 18);
-            return big.toString();
+            return decimalToString(bin);
         } else return thegroup.getValueToString(colNum, idx).replace('\n', '_');
     }
 
+    /**
+     * Format a 16 byte fixed length decimal with scale 18
+     */
+    public static String decimalToString(Binary bin) {
+        BigInteger bigInteger = new BigInteger(bin.getBytes());
+        BigDecimal big = new BigDecimal(bigInteger, 18);
+        return big.toString();
+    }
+
     public String extractTimestamp(Group thegroup, int colNum, int idx) {
-        var int96Bytes = thegroup.getInt96(colNum, idx).toByteBuffer().order(ByteOrder.nativeOrder());
+        return timestampToString(thegroup.getInt96(colNum, idx));
+    }
+
+    /**
+     * Format an int96 timestamp, nanoseconds of the day followed by the julian day
+     */
+    public static String timestampToString(Binary int96) {
+        var int96Bytes = int96.toByteBuffer().order(ByteOrder.nativeOrder());
         int julianDay = int96Bytes.getInt(8);
         long nanos = int96Bytes.getLong(0);
 
@@ -29,6 +29,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Queue;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.IntStream;
 
@@ -62,6 +63,10 @@ import java.util.stream.IntStream;
  *    
  *    {@code final GenomicIterator git = new RangeMergeIterator(sources).filter(r -> !r.isProgress);}
  *
+ * 7) The sources can be opened with a custom opener, e.g. to apply the tag filtering of dictionary sources. When
+ *    source insertion is requested each row gets the source name of its iterator appended and the iterator reports
+ *    the source as already inserted, so it can be merged with other sources by a MergeIterator.
+ *
  * @author Hjalti Thor Isleifsson
  */
 public class RangeMergeIterator extends GenomicIteratorBase {
@@ -78,13 +83,25 @@ public class RangeMergeIterator extends GenomicIteratorBase {
     private Row progressRow;
     private Predicate<Row> rf;
     private int[] cols;
+    private final Function<SourceRef, GenomicIterator> opener;
+    private final boolean insertSource;
 
     public RangeMergeIterator(List<SourceRef> references) {
+        this(references, null, false);
+    }
+
+    /**
+     * @param opener       opens the iterator of a source, or null to iterate the source directly
+     * @param insertSource true if the source name of each iterator should be appended to its rows
+     */
+    public RangeMergeIterator(List<SourceRef> references, Function<SourceRef, GenomicIterator> opener, boolean insertSource) {
         this.numberOfSources = references.size();
         if (this.numberOfSources == 0) {
             throw new IllegalArgumentException("There must be at least one source");
         }
         this.sources = references;
+        this.opener = opener;
+        this.insertSource = insertSource;
         this.iterators = new GenomicIterator[this.numberOfSources];
         this.rows = new Row[this.numberOfSources];
         this.waitingIterators = new PriorityQueue<>(this.numberOfSources, getInComparator());
@@ -141,7 +158,7 @@ public class RangeMergeIterator extends GenomicIteratorBase {
         final int next = this.waitingIterators.poll();
         final GenomicIterator nextIt = getIterator(next);
         if (nextIt.hasNext()) {
-            this.rows[next] = nextIt.next();
+            this.rows[next] = nextRow(nextIt);
             this.iterators[next] = nextIt;
             this.waitingRows.add(next);
         } else {
@@ -151,9 +168,14 @@ public class RangeMergeIterator extends GenomicIteratorBase {
     }
 
     private GenomicIterator getIterator(int idx) throws IOException {
-        GenomicIterator nextIt = this.sources.get(idx).iterate(new DefaultChromoLookup(), null,
-                getContext() != null ? getContext().getSession() : null);
-        nextIt.init(null);
+        GenomicIterator nextIt;
+        if (this.opener != null) {
+            nextIt = this.opener.apply(this.sources.get(idx));
+        } else {
+            nextIt = this.sources.get(idx).iterate(new DefaultChromoLookup(), null,
+                    getContext() != null ? getContext().getSession() : null);
+            nextIt.init(null);
+        }
         if (this.rf != null) {
             nextIt = nextIt.filter(this.rf);
         }
@@ -163,10 +185,18 @@ public class RangeMergeIterator extends GenomicIteratorBase {
         return nextIt;
     }
 
+    private Row nextRow(GenomicIterator it) {
+        final Row row = it.next();
+        if (this.insertSource && !it.isSourceAlreadyInserted()) {
+            row.addSingleColumnToRow(it.getSourceName());
+        }
+        return row;
+    }
+
     private void readFromIterator(int idx) {
         final GenomicIterator it = this.iterators[idx];
         if (it.hasNext()) {
-            this.rows[idx] = it.next();
+            this.rows[idx] = nextRow(it);
             this.waitingRows.add(idx);
         } else {
             this.rows[idx] = null;
@@ -203,16 +233,23 @@ public class RangeMergeIterator extends GenomicIteratorBase {
     public String getHeader() {
         final String candidateHeader = super.getHeader();
         if (candidateHeader == null || candidateHeader.equals("")) {
+            final String header;
             if (this.waitingRows.isEmpty()) {
-                return activateAndRead();
+                header = activateAndRead();
             } else {
-                return this.iterators[this.waitingRows.peek()].getHeader();
+                header = this.iterators[this.waitingRows.peek()].getHeader();
             }
+            return this.insertSource ? header + "\tSource" : header;
         } else {
             return candidateHeader;
         }
     }
 
+    @Override
+    public boolean isSourceAlreadyInserted() {
+        return this.insertSource || super.isSourceAlreadyInserted();
+    }
+
     private String activateAndRead() {
         String toReturn;
         try {
@@ -295,7 +332,7 @@ public class RangeMergeIterator extends GenomicIteratorBase {
 
             nextGIt.seek(chr, pos);
             if (nextGIt.hasNext()) {
-                final Row next = nextGIt.next();
+                final Row next = nextRow(nextGIt);
                 this.rows[nextItIdx] = next;
                 this.iterators[nextItIdx] = nextGIt;
                 this.waitingRows.add(nextItIdx);
@@ -358,7 +395,13 @@ public class RangeMergeIterator extends GenomicIteratorBase {
 
     @Override
     public GenomicIterator filter(Predicate<Row> rf) {
-        this.rf = rf;
+        this.rf = this.rf == null ? rf : this.rf.and(rf);
+        // Iterators opened for the header are already active
+        for (int i = 0; i < this.numberOfSources; i++) {
+            if (this.iterators[i] != null) {
+                this.iterators[i] = this.iterators[i].filter(rf);
+            }
+        }
         return this;
     }
 
@@ -23,6 +23,7 @@
 package org.gorpipe.gor.model;
 
 import org.gorpipe.exceptions.GorDataException;
+import org.gorpipe.gor.util.RowOutputStream;
 import org.gorpipe.model.gor.BinaryHolder;
 import org.gorpipe.model.gor.RowObj;
 
@@ -135,12 +136,14 @@ public class RowBase extends Row implements Serializable {
 
     @Override
     public void writeRowToStream(OutputStream outputStream) throws IOException {
-        outputStream.write(toString().getBytes());
+        RowOutputStream.writeChars(outputStream, allCols, 0, allCols.length());
     }
 
     @Override
     public void writeNorRowToStream(OutputStream outputStream) throws IOException {
-        outputStream.write(otherCols().getBytes());
+        if (numCols() > 2) {
+            RowOutputStream.writeChars(outputStream, allCols, splitArray[1] + 1, allCols.length());
+        }
     }
 
     @Override
@@ -421,6 +424,29 @@ public class RowBase extends Row implements Serializable {
         allCols = allCols + "\t" + s;
     }
 
+    /**
+     * Creates a new row from a builder holding the contents of this row followed by a tab and added columns.
+     * Only the added columns are scanned for tabs, the split array of this row is reused.
+     *
+     * @param sb builder starting with the contents of this row
+     * @return A row with all the columns from the current row, plus the added columns
+     */
+    public Row rowWithAppendedColumns(StringBuilder sb) {
+        final int start = allCols.length() + 1;
+        final int end = sb.length();
+        int added = 1;
+        for (int i = start; i < end; i++) {
+            if (sb.charAt(i) == '\t') added++;
+        }
+        final int[] newSplitArray = Arrays.copyOf(splitArray, splitArray.length + added);
+        int c = splitArray.length;
+        for (int i = start; i < end; i++) {
+            if (sb.charAt(i) == '\t') newSplitArray[c++] = i;
+        }
+        newSplitArray[c] = end;
+        return new RowBase(chr, pos, sb, newSplitArray, null);
+    }
+
     @Override
     public Row rowWithSelectedColumns(int[] columns) {
         final int[] newSplitArray = new int[columns.length];
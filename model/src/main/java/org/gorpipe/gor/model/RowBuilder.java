@@ -0,0 +1,211 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.model;
+
+import org.gorpipe.exceptions.GorDataException;
+
+import java.util.Arrays;
+
+/**
+ * Builds rows column by column into a reusable buffer, recording the column offsets as they are written so the
+ * built row needs no split pass over its text.
+ * <p>
+ * A builder is meant to be kept by an analysis step and reused for every row it outputs. {@link #build()} copies the
+ * text and offsets into the new row, so the built rows are independent of the builder and can be buffered downstream.
+ * The builder itself is not thread safe.
+ * <p>
+ * Columns are added with the {@code add} methods, {@link #addColumns(CharSequence)} for text that can hold several
+ * tab separated columns and {@link #column()} to append a column with a formatter writing to a StringBuilder. Text
+ * appended through {@link #column()} must not contain tabs.
+ */
+public class RowBuilder {
+    private final StringBuilder buffer;
+    private int[] splitArray;
+    private int numColumns = 0;
+    private boolean columnOpen = false;
+
+    public RowBuilder() {
+        this(256);
+    }
+
+    public RowBuilder(int initialCapacity) {
+        buffer = new StringBuilder(initialCapacity);
+        splitArray = new int[16];
+    }
+
+    /**
+     * Remove all columns.
+     */
+    public RowBuilder clear() {
+        buffer.setLength(0);
+        numColumns = 0;
+        columnOpen = false;
+        return this;
+    }
+
+    /**
+     * @return number of columns added so far
+     */
+    public int numColumns() {
+        closeColumn();
+        return numColumns;
+    }
+
+    /**
+     * Remove the columns after the first {@code columns} columns, e.g. to reuse a common prefix for several rows.
+     */
+    public RowBuilder truncate(int columns) {
+        closeColumn();
+        if (columns < 0 || columns > numColumns) {
+            throw new IllegalArgumentException("Can not truncate " + numColumns + " columns to " + columns);
+        }
+        numColumns = columns;
+        buffer.setLength(columns == 0 ? 0 : splitArray[columns - 1]);
+        return this;
+    }
+
+    /**
+     * Open a new column and return the buffer to append its text to.
+     */
+    public StringBuilder column() {
+        closeColumn();
+        if (numColumns > 0) buffer.append('\t');
+        columnOpen = true;
+        return buffer;
+    }
+
+    public RowBuilder add(CharSequence value) {
+        column().append(value);
+        return this;
+    }
+
+    public RowBuilder add(String value) {
+        column().append(value);
+        return this;
+    }
+
+    public RowBuilder add(char value) {
+        column().append(value);
+        return this;
+    }
+
+    public RowBuilder add(int value) {
+        column().append(value);
+        return this;
+    }
+
+    public RowBuilder add(long value) {
+        column().append(value);
+        return this;
+    }
+
+    /**
+     * Add text holding one or more tab separated columns.
+     */
+    public RowBuilder addColumns(CharSequence text) {
+        StringBuilder sb = column();
+        int start = sb.length();
+        sb.append(text);
+        int end = sb.length();
+        for (int i = start; i < end; i++) {
+            if (sb.charAt(i) == '\t') {
+                endColumn(i);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Add all columns of a row, using its split array when it has one.
+     */
+    public RowBuilder addRow(Row row) {
+        int[] rowSplit = row.getSplitArray();
+        if (rowSplit == null) {
+            return addColumns(row.getAllCols());
+        }
+        CharSequence text = row.getAllCols();
+        int columns = row.numCols();
+        StringBuilder sb = column();
+        int offset = sb.length();
+        sb.append(text, 0, rowSplit[columns - 1]);
+        for (int i = 0; i < columns - 1; i++) {
+            endColumn(offset + rowSplit[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Build a row with a copy of the columns, the chromosome and position are read from the first two columns.
+     */
+    public Row build() {
+        closeColumn();
+        if (numColumns < 2) {
+            throw new GorDataException("Row must have at least two columns, chromosome and position: " + buffer);
+        }
+        String chr = buffer.substring(0, splitArray[0]);
+        int pos = parsePosition(buffer, splitArray[0] + 1, splitArray[1]);
+        return build(chr, pos);
+    }
+
+    /**
+     * Build a row with a copy of the columns, the given chromosome and position must match the first two columns.
+     */
+    public Row build(String chr, int pos) {
+        closeColumn();
+        return new RowBase(chr, pos, buffer.toString(), Arrays.copyOf(splitArray, numColumns), null);
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+
+    private void closeColumn() {
+        if (columnOpen) {
+            endColumn(buffer.length());
+            columnOpen = false;
+        }
+    }
+
+    private void endColumn(int end) {
+        if (numColumns == splitArray.length) {
+            splitArray = Arrays.copyOf(splitArray, 2 * splitArray.length);
+        }
+        splitArray[numColumns++] = end;
+    }
+
+    private static int parsePosition(CharSequence text, int start, int stop) {
+        if (start == stop) return 0;
+        boolean negative = text.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        int num = 0;
+        while (i < stop) {
+            char c = text.charAt(i++);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Error in " + text.subSequence(start, stop) + ". Row: " + text + " column: 1");
+            }
+            num = num * 10 + (c - '0');
+        }
+        return negative ? -num : num;
+    }
+}
@@ -41,6 +41,20 @@ public interface RowSourceStats {
         return 0.0;
     }
 
+    /**
+     * @return total milliseconds the reading thread has waited for the consumer to release buffers
+     */
+    default double getProducerStallTimeMilliSecond() {
+        return 0.0;
+    }
+
+    /**
+     * @return total milliseconds the consumer has waited for the reading thread to provide rows
+     */
+    default double getConsumerStallTimeMilliSecond() {
+        return 0.0;
+    }
+
     default int getCurrentBatchSize() {
         return 0;
     }
@@ -0,0 +1,259 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.model;
+
+import org.gorpipe.exceptions.GorDataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Index of segment stop positions, binned by segment start position per chromosome.
+ * <p>
+ * For every bin the largest stop of the segments starting in it is kept. A reader that needs all segments
+ * ending at or after a position can then seek to the start of the first bin that holds such a segment, instead of
+ * rewinding by the length of the longest segment in the whole file.
+ * <p>
+ * The index is written as a sidecar next to the data file, see {@link #SUFFIX}. The sidecar records the signature
+ * of the data file it was built from so a stale sidecar is never used.
+ */
+public class SegmentIndex {
+    private static final Logger log = LoggerFactory.getLogger(SegmentIndex.class);
+
+    public static final String SUFFIX = ".segidx";
+    public static final int DEFAULT_BIN_SIZE = Integer.getInteger("gor.segindex.binsize", 100000);
+
+    private static final String MAGIC = "#SEGIDX";
+    private static final int VERSION = 1;
+    private static final String NONE = "*";
+
+    private final int binSize;
+    private final int stopCol;
+    private final Map<String, int[]> binMaxStop = new HashMap<>();
+    private Map<String, int[]> prefixMaxStop = null;
+    private int maxSegSize = 0;
+    // When the index was built from the first rows of a file only, chromosomes up to coveredChr are indexed
+    private String coveredChr = null;
+    private String signature = null;
+
+    public SegmentIndex(int stopCol) {
+        this(stopCol, DEFAULT_BIN_SIZE);
+    }
+
+    public SegmentIndex(int stopCol, int binSize) {
+        if (binSize <= 0) throw new IllegalArgumentException("Bin size must be positive: " + binSize);
+        this.stopCol = stopCol;
+        this.binSize = binSize;
+    }
+
+    public int getBinSize() {
+        return binSize;
+    }
+
+    /**
+     * @return zero based column of the segment stop position
+     */
+    public int getStopCol() {
+        return stopCol;
+    }
+
+    public int getMaxSegSize() {
+        return maxSegSize;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public void setSignature(String signature) {
+        this.signature = signature;
+    }
+
+    public boolean isComplete() {
+        return coveredChr == null;
+    }
+
+    public void add(Row r) {
+        add(r.chr, r.pos, r.colAsInt(stopCol));
+    }
+
+    public void add(String chr, int start, int stop) {
+        maxSegSize = Math.max(maxSegSize, stop - start);
+        int bin = Math.max(start, 0) / binSize;
+        int[] bins = binMaxStop.get(chr);
+        if (bins == null) {
+            bins = new int[bin + 1];
+            binMaxStop.put(chr, bins);
+        } else if (bins.length <= bin) {
+            bins = Arrays.copyOf(bins, Math.max(bin + 1, 2 * bins.length));
+            binMaxStop.put(chr, bins);
+        }
+        if (bins[bin] < stop) bins[bin] = stop;
+        prefixMaxStop = null;
+    }
+
+    /**
+     * Mark the index as built from the rows up to the given chromosome only. Rows on later chromosomes and on the
+     * given chromosome itself are not covered by the bins, positions there fall back to the maximum segment size.
+     */
+    public void markPartial(String lastChr) {
+        coveredChr = lastChr;
+        prefixMaxStop = null;
+    }
+
+    private boolean covers(String chr) {
+        return coveredChr == null || chr.compareTo(coveredChr) < 0;
+    }
+
+    private Map<String, int[]> prefixMax() {
+        Map<String, int[]> prefix = prefixMaxStop;
+        if (prefix == null) {
+            prefix = new HashMap<>();
+            for (Map.Entry<String, int[]> e : binMaxStop.entrySet()) {
+                int[] bins = e.getValue();
+                int[] p = new int[bins.length];
+                int max = Integer.MIN_VALUE;
+                for (int i = 0; i < bins.length; i++) {
+                    max = Math.max(max, bins[i]);
+                    p[i] = max;
+                }
+                prefix.put(e.getKey(), p);
+            }
+            prefixMaxStop = prefix;
+        }
+        return prefix;
+    }
+
+    /**
+     * Find the position to seek to in order to read every segment on the chromosome whose stop is at or after pos.
+     *
+     * @return a position no larger than pos, such that no segment starting before it stops at or after pos
+     */
+    public int seekPosition(String chr, int pos) {
+        int fallback = Math.max(0, pos - maxSegSize);
+        if (pos <= 0 || !covers(chr)) return fallback;
+        int[] prefix = prefixMax().get(chr);
+        if (prefix == null) return fallback;
+
+        // First bin holding a segment that stops at or after pos, the prefix maxima are non-decreasing
+        int lo = 0;
+        int hi = prefix.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prefix[mid] < pos) lo = mid + 1;
+            else hi = mid;
+        }
+        long binStart = (long) lo * binSize;
+        return Math.max(fallback, (int) Math.min(binStart, pos));
+    }
+
+    public void write(OutputStream os) throws IOException {
+        Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+        writer.write(MAGIC + "\t" + VERSION + "\t" + binSize + "\t" + stopCol + "\t" + maxSegSize + "\t"
+                + (coveredChr == null ? NONE : coveredChr) + "\t" + (signature == null ? NONE : signature) + "\n");
+        Map<String, int[]> sorted = new TreeMap<>(binMaxStop);
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, int[]> e : sorted.entrySet()) {
+            int[] bins = e.getValue();
+            for (int i = 0; i < bins.length; i++) {
+                if (bins[i] > 0) {
+                    sb.setLength(0);
+                    sb.append(e.getKey()).append('\t').append(i).append('\t').append(bins[i]).append('\n');
+                    writer.write(sb.toString());
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    public static SegmentIndex read(BufferedReader reader) throws IOException {
+        String header = reader.readLine();
+        String[] cols = header != null ? header.split("\t") : new String[0];
+        if (cols.length != 7 || !MAGIC.equals(cols[0])) {
+            throw new GorDataException("Not a segment index, header: " + header);
+        }
+        try {
+            if (Integer.parseInt(cols[1]) != VERSION) {
+                throw new GorDataException("Unsupported segment index version " + cols[1]);
+            }
+            SegmentIndex index = new SegmentIndex(Integer.parseInt(cols[3]), Integer.parseInt(cols[2]));
+            index.maxSegSize = Integer.parseInt(cols[4]);
+            if (!NONE.equals(cols[5])) index.coveredChr = cols[5];
+            if (!NONE.equals(cols[6])) index.signature = cols[6];
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                int t1 = line.indexOf('\t');
+                int t2 = line.indexOf('\t', t1 + 1);
+                String chr = line.substring(0, t1);
+                int bin = Integer.parseInt(line.substring(t1 + 1, t2));
+                int stop = Integer.parseInt(line.substring(t2 + 1));
+                int[] bins = index.binMaxStop.get(chr);
+                if (bins == null || bins.length <= bin) {
+                    bins = bins == null ? new int[bin + 1] : Arrays.copyOf(bins, Math.max(bin + 1, 2 * bins.length));
+                    index.binMaxStop.put(chr, bins);
+                }
+                bins[bin] = Math.max(bins[bin], stop);
+            }
+            return index;
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw new GorDataException("Corrupt segment index", e);
+        }
+    }
+
+    /**
+     * Load the segment index sidecar of a file.
+     *
+     * @return the index or null if there is no valid sidecar for the current version of the file
+     */
+    public static SegmentIndex load(FileReader fileReader, String file, int stopCol) {
+        String indexFile = file + SUFFIX;
+        try {
+            if (!fileReader.exists(indexFile)) return null;
+            SegmentIndex index;
+            try (BufferedReader reader = fileReader.getReader(indexFile)) {
+                index = read(reader);
+            }
+            if (index.stopCol != stopCol) return null;
+            if (index.signature == null || !index.signature.equals(fileReader.getFileSignature(file))) {
+                log.debug("Ignoring stale segment index {}", indexFile);
+                return null;
+            }
+            return index;
+        } catch (IOException | GorDataException e) {
+            log.warn("Unable to read segment index {}", indexFile, e);
+            return null;
+        }
+    }
+}
@@ -26,19 +26,37 @@ import org.gorpipe.exceptions.GorDataException;
 import org.gorpipe.exceptions.GorResourceException;
 import org.gorpipe.gor.driver.adapters.PositionAwareInputStream;
 import org.gorpipe.gor.driver.providers.stream.sources.StreamSource;
+import org.gorpipe.gor.util.BgzfBlockReader;
+import org.gorpipe.gor.util.BgzfLineReader;
 import org.gorpipe.gor.util.NCGZIPInputStream;
 import org.gorpipe.gor.util.StringUtil;
 import org.gorpipe.model.gor.RowObj;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
 /**
- * Simple genomic iterator for zipped vcf files, can not be seeked into
+ * Simple genomic iterator for zipped vcf files without an index.
+ * <p>
+ * BGZF compressed files are decompressed in parallel and can be seeked into. An index of the first row in each
+ * block is collected while reading, a seek moves to the closest block before the position that has been read and
+ * reads forward from there. There is no index of blocks that have not been read, so a seek ahead of what has been
+ * read decompresses and scans every block up to the position. Plain gzip files are read through a single gunzip
+ * stream and can not be seeked into.
+ * <p>
+ * Vcf files are usually in karyotypic chromosome order, so positions are compared by the order in which the
+ * chromosomes are first read from the file. A chromosome that has not been read yet is looked for ahead, seeking to
+ * a chromosome that is not in the file reads to the end of it. If a chromosome shows up again after another one
+ * the rows are not grouped by chromosome, and seeks fall back to scanning from the first row for the first row of
+ * the chromosome at or after the position.
  */
 public class VcfGzGenomicIterator extends GenomicIteratorBase {
 
@@ -54,18 +72,59 @@ public class VcfGzGenomicIterator extends GenomicIteratorBase {
     int len = 0;
     private String fileName;
 
+    // BGZF reading, null for plain gzip and uncompressed files
+    private BgzfLineReader bgzf;
+    private Row nextRow;
+    private long nextRowOffset;
+    private long dataOffset = -1;
+    // Last row before nextRow, when known, so a seek between the two rows does not need to move
+    private String prevChr;
+    private int prevPos;
+    private final BlockIndex blockIndex = new BlockIndex();
+
+    // Rank of each chromosome in the order it was first read
+    private final Map<String, Integer> chrRanks = new HashMap<>();
+    private int lastRowRank = -1;
+    private boolean ordered = true;
+
+    // Chromosome of the previous line and its name after renaming
+    private byte[] lastChrBytes = new byte[0];
+    private String lastChrName = null;
+    private boolean lastChrRenamed = false;
+    private int lastChrRank;
+    // Chromosome of the previous text line and its name after renaming
+    private String lastTextChr = null;
+    private String lastTextChrName = null;
+    private int[] tabs = new int[32];
+    private int tabCount;
+    private int rowPos;
+
     public enum ChrNameSystem {
         WITH_CHR_PREFIX,
         WITHOUT_CHR_PREFIX,
     }
 
+    private interface LineSupplier {
+        String readLine() throws IOException;
+    }
+
     public VcfGzGenomicIterator(ChromoLookup lookup) {
         this.lookup = lookup;
     }
 
     public VcfGzGenomicIterator(ChromoLookup lookup, String file, StreamSource streamsource, boolean compressed) throws IOException {
-        this(lookup, file, new BufferedReader(new InputStreamReader(compressed ? new GZIPInputStream(new NCGZIPInputStream(new PositionAwareInputStream(streamsource.open()))) : streamsource.open())));
+        this(lookup);
         this.streamSource = streamsource;
+        InputStream is = new BufferedInputStream(streamsource.open(), 1 << 16);
+        if (compressed && isBgzf(is)) {
+            bgzf = new BgzfLineReader(new BgzfBlockReader(is, streamsource::open));
+            fileName = file;
+            readHeader(file, bgzf::readLineAsString);
+            nextRow = readRow();
+            if (nextRow != null) dataOffset = nextRowOffset;
+        } else {
+            init(file, new BufferedReader(new InputStreamReader(compressed ? new GZIPInputStream(new NCGZIPInputStream(new PositionAwareInputStream(is))) : is)));
+        }
     }
 
     public VcfGzGenomicIterator(ChromoLookup lookup, String file, BufferedReader reader) throws IOException {
@@ -73,10 +132,26 @@ public class VcfGzGenomicIterator extends GenomicIteratorBase {
         init(file, reader);
     }
 
+    private static boolean isBgzf(InputStream is) throws IOException {
+        byte[] header = new byte[16];
+        is.mark(header.length);
+        int n = 0;
+        int r;
+        while (n < header.length && (r = is.read(header, n, header.length - n)) > 0) {
+            n += r;
+        }
+        is.reset();
+        return BgzfBlockReader.isBgzf(header, n);
+    }
+
     public void init(String file, BufferedReader reader) throws IOException {
         fileName = file;
         this.reader = reader;
+        readHeader(file, reader::readLine);
+        next = reader.readLine();
+    }
 
+    private void readHeader(String file, LineSupplier reader) throws IOException {
         // Must iterate to the beginning of the file, ignoring commenting header lines
         String line;
         String contig = "##contig=<ID=";
@@ -117,18 +192,101 @@ public class VcfGzGenomicIterator extends GenomicIteratorBase {
         }
 
         setHeader(String.join("\t",headerAll));
-
-        next = reader.readLine();
     }
 
     @Override
     public boolean seek(String chr, int pos) {
-        // Could use tabix to seek and read
-        throw new RuntimeException("Cant seek to gzipped .vcf files");
+        if (bgzf == null) {
+            // Could use tabix to seek and read
+            throw new RuntimeException("Cant seek to gzipped .vcf files");
+        }
+        try {
+            if (ordered) {
+                int entry = blockIndex.floor(chr, pos);
+                if (prevChr != null && compare(prevChr, prevPos, chr, pos) < 0) {
+                    // The position is ahead, jump forward if a later block is known to start before it, otherwise
+                    // every block up to the position is read
+                    if (entry >= 0 && blockIndex.offsets[entry] > nextRowOffset) moveTo(blockIndex.offsets[entry]);
+                } else {
+                    // Move back to the closest indexed row before the position, or to the first row
+                    long offset = entry >= 0 ? blockIndex.offsets[entry] : dataOffset;
+                    if (offset < 0) return false;
+                    moveTo(offset);
+                }
+                skipTo(chr, pos);
+            }
+            if (!ordered) {
+                // The rows are not grouped by chromosome, scan from the first row
+                if (dataOffset < 0) return false;
+                moveTo(dataOffset);
+                scanTo(chr, pos);
+            }
+        } catch (IOException e) {
+            throw new GorResourceException("Error seeking in file", fileName, e);
+        }
+        return nextRow != null;
+    }
+
+    private void moveTo(long offset) throws IOException {
+        bgzf.seek(offset);
+        nextRow = null;
+        prevChr = null;
+        lastRowRank = -1;
+    }
+
+    private void skipTo(String chr, int pos) throws IOException {
+        if (nextRow != null) {
+            if (compare(nextRow.chr, nextRow.pos, chr, pos) >= 0) return;
+            prevChr = nextRow.chr;
+            prevPos = nextRow.pos;
+            nextRow = null;
+        }
+        // Only the chromosome and position are parsed for the rows skipped
+        while (bgzf.readLine()) {
+            if (bgzf.getLineEnd() == bgzf.getLineStart()) continue;
+            parseLine();
+            indexLine();
+            if (compare(lastChrName, rowPos, chr, pos) >= 0) {
+                nextRow = createRow();
+                return;
+            }
+            prevChr = lastChrName;
+            prevPos = rowPos;
+        }
+    }
+
+    /**
+     * Scan forward for the first row of the chromosome at or after the position, for files not in chromosome order.
+     */
+    private void scanTo(String chr, int pos) throws IOException {
+        while (bgzf.readLine()) {
+            if (bgzf.getLineEnd() == bgzf.getLineStart()) continue;
+            parseLine();
+            indexLine();
+            if (lastChrName.equals(chr) && rowPos >= pos) {
+                nextRow = createRow();
+                return;
+            }
+        }
+    }
+
+    private int compare(String chr1, int pos1, String chr2, int pos2) {
+        int c = Integer.compare(rank(chr1), rank(chr2));
+        return c != 0 ? c : Integer.compare(pos1, pos2);
+    }
+
+    private int rank(String chr) {
+        Integer rank = chrRanks.get(chr);
+        // A chromosome that has not been read can only come later in the file
+        return rank != null ? rank : Integer.MAX_VALUE;
     }
 
     @Override
     public boolean hasNext() {
+        if (bgzf != null) {
+            if (nextRow == null) nextRow = readRowUnchecked();
+            return nextRow != null;
+        }
         if (next != null) {
             return true;
         }
@@ -140,18 +298,127 @@ public class VcfGzGenomicIterator extends GenomicIteratorBase {
         return next != null;
     }
 
+    /**
+     * Build the row for a text line, a renamed chromosome replaces the first column before the line is parsed.
+     */
     private Row createRow(String s) {
-        Row row = RowObj.apply(s);
-        String chr = lookup.chrToName(row.chr);
-        if (!chr.equals(row.chr)) {
-            String s2 = String.format("%s\t%d\t%s", chr, row.pos, row.otherCols());
-            row = RowObj.apply(s2);
+        int tab = s.indexOf('\t');
+        if (tab > 0) {
+            if (lastTextChr == null || tab != lastTextChr.length() || !s.startsWith(lastTextChr)) {
+                lastTextChr = s.substring(0, tab);
+                lastTextChrName = lookup.chrToName(lastTextChr);
+            }
+            if (!lastTextChrName.equals(lastTextChr)) {
+                s = lastTextChrName.concat(s.substring(tab));
+            }
+        }
+        return RowObj.apply(s);
+    }
+
+    private Row readRowUnchecked() {
+        try {
+            return readRow();
+        } catch (IOException e) {
+            throw new GorResourceException("Error reading file", fileName, e);
         }
-        return row;
+    }
+
+    private Row readRow() throws IOException {
+        while (bgzf.readLine()) {
+            if (bgzf.getLineEnd() == bgzf.getLineStart()) continue;
+            parseLine();
+            indexLine();
+            return createRow();
+        }
+        return null;
+    }
+
+    /**
+     * Find the tabs, chromosome name and position of the current line.
+     */
+    private void parseLine() {
+        byte[] line = bgzf.getLine();
+        int start = bgzf.getLineStart();
+        int end = bgzf.getLineEnd();
+        tabCount = 0;
+        for (int i = start; i < end; i++) {
+            if (line[i] == '\t') {
+                if (tabCount == tabs.length) tabs = Arrays.copyOf(tabs, 2 * tabs.length);
+                tabs[tabCount++] = i;
+            }
+        }
+        if (tabCount < 2) {
+            throw new GorDataException("Invalid vcf line in file " + fileName + ": " + new String(line, start, end - start, StandardCharsets.UTF_8));
+        }
+
+        int chrLength = tabs[0] - start;
+        if (lastChrName == null || !Arrays.equals(line, start, tabs[0], lastChrBytes, 0, lastChrBytes.length)) {
+            lastChrBytes = Arrays.copyOfRange(line, start, tabs[0]);
+            String chr = new String(line, start, chrLength, StandardCharsets.UTF_8);
+            lastChrName = lookup.chrToName(chr);
+            lastChrRenamed = !lastChrName.equals(chr);
+            lastChrRank = chrRanks.computeIfAbsent(lastChrName, k -> chrRanks.size());
+        }
+
+        int p = 0;
+        for (int i = tabs[0] + 1; i < tabs[1]; i++) {
+            int d = line[i] - '0';
+            if (d < 0 || d > 9) {
+                throw new GorDataException("Invalid position in vcf file " + fileName + ": " + new String(line, start, end - start, StandardCharsets.UTF_8));
+            }
+            p = p * 10 + d;
+        }
+        rowPos = p;
+    }
+
+    private void indexLine() {
+        nextRowOffset = bgzf.getLineOffset();
+        if (lastChrRank < lastRowRank) ordered = false;
+        lastRowRank = lastChrRank;
+        blockIndex.add(nextRowOffset, lastChrName, rowPos);
+    }
+
+    /**
+     * Build the row for the parsed line, the renamed chromosome replaces the first column without reparsing.
+     */
+    private Row createRow() {
+        byte[] line = bgzf.getLine();
+        int start = bgzf.getLineStart();
+        int end = bgzf.getLineEnd();
+        int rest = tabs[0];
+        boolean ascii = true;
+        for (int i = rest; i < end && ascii; i++) {
+            ascii = line[i] >= 0;
+        }
+        if (!ascii) {
+            String s = new String(line, rest, end - rest, StandardCharsets.UTF_8);
+            return RowObj.apply(lastChrName + s);
+        }
+
+        String cols = lastChrRenamed
+                ? lastChrName.concat(new String(line, rest, end - rest, StandardCharsets.ISO_8859_1))
+                : new String(line, start, end - start, StandardCharsets.ISO_8859_1);
+        int shift = lastChrName.length() - (rest - start);
+        int[] splitArray = new int[tabCount + 1];
+        for (int i = 0; i < tabCount; i++) {
+            splitArray[i] = tabs[i] - start + shift;
+        }
+        splitArray[tabCount] = cols.length();
+        return new RowBase(lastChrName, rowPos, cols, splitArray, null);
     }
 
     @Override
     public Row next() {
+        if (bgzf != null) {
+            if (nextRow == null) nextRow = readRowUnchecked();
+            Row row = nextRow;
+            if (row != null) {
+                prevChr = row.chr;
+                prevPos = row.pos;
+            }
+            nextRow = null;
+            return row;
+        }
         if (next == null) {
             try {
                 next = reader.readLine();
@@ -170,6 +437,14 @@ public class VcfGzGenomicIterator extends GenomicIteratorBase {
 
     @Override
     public void close() {
+        if (bgzf != null) {
+            try {
+                bgzf.close();
+                bgzf = null;
+            } catch (Exception e) {
+                throw new RuntimeException("Failed closing VcfGzGenomicIterator reader", e);
+            }
+        }
         if (reader != null) {
             try {
                 reader.close();
@@ -188,4 +463,42 @@ public class VcfGzGenomicIterator extends GenomicIteratorBase {
             }
         }
     }
+
+    /**
+     * The first row of every block read so far, in file order.
+     */
+    private class BlockIndex {
+        long[] offsets = new long[64];
+        String[] chrs = new String[64];
+        int[] positions = new int[64];
+        int size = 0;
+
+        void add(long offset, String chr, int pos) {
+            long block = offset >>> 16;
+            if (size > 0 && block <= offsets[size - 1] >>> 16) return;
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * size);
+                chrs = Arrays.copyOf(chrs, 2 * size);
+                positions = Arrays.copyOf(positions, 2 * size);
+            }
+            offsets[size] = offset;
+            chrs[size] = chr;
+            positions[size] = pos;
+            size++;
+        }
+
+        /**
+         * @return the last entry before the position or -1 if there is none
+         */
+        int floor(String chr, int pos) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(chrs[mid], positions[mid], chr, pos) < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo - 1;
+        }
+    }
 }
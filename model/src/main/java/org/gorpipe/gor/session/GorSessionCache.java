@@ -22,6 +22,7 @@
 
 package org.gorpipe.gor.session;
 
+import org.gorpipe.gor.model.SegmentIndex;
 import org.gorpipe.util.Pair;
 
 import java.util.HashMap;
@@ -42,7 +43,7 @@ public class GorSessionCache {
     private final Map<String, Map<String, String[]>> multiHashMaps = new HashMap<>(); // Synchronized on access
     private final Map<String, String[]> listMaps = new HashMap<>();   // Synchronized on access
     private final Map<String, Object> objectHashMap = new ConcurrentHashMap<>();
-    private final Map<String, Integer> fileSegMap = new ConcurrentHashMap<>();
+    private final Map<String, SegmentIndex> fileSegMap = new ConcurrentHashMap<>();
     private final Map<String, Set<String>> sets = new HashMap<>();  // Synchronized on access
 
 
@@ -78,7 +79,7 @@ public class GorSessionCache {
         return objectHashMap;
     }
 
-    public Map<String, Integer> getFileSegMap() {
+    public Map<String, SegmentIndex> getFileSegMap() {
         return fileSegMap;
     }
 
@@ -0,0 +1,209 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.session;
+
+import org.gorpipe.exceptions.GorSystemException;
+import org.gorpipe.gor.util.LookupTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Process wide cache of lookup tables, shared by all sessions in the JVM.
+ * <p>
+ * Tables are keyed by the signature of the file they were read from and the column specification used, so parallel
+ * partitions of the same query (and later queries) reading the same lookup file share a single copy. A table is
+ * built only once, concurrent requests for a table that is being built wait for it. Tables are reference counted,
+ * tables no longer referenced are kept until the memory of unreferenced tables exceeds
+ * {@link #IDLE_BYTES_KEY}, then the least recently used ones are dropped.
+ */
+public class LookupTableCache {
+    private static final Logger log = LoggerFactory.getLogger(LookupTableCache.class);
+
+    public static final String IDLE_BYTES_KEY = "gor.lookup.cache.idle.bytes";
+    private static final long idleBytes = Long.parseLong(System.getProperty(IDLE_BYTES_KEY, "1073741824"));
+
+    private static final Map<String, CacheEntry> tables = new ConcurrentHashMap<>();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private LookupTableCache() {}
+
+    private static class CacheEntry {
+        final CompletableFuture<LookupTable> table = new CompletableFuture<>();
+        volatile int refCount = 0;
+        volatile long lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Reference to a cached lookup table, must be closed when the table is no longer used.
+     */
+    public static class Reference implements AutoCloseable {
+        private final String key;
+        private final CacheEntry entry;
+        private final LookupTable table;
+        private boolean closed = false;
+
+        private Reference(String key, CacheEntry entry, LookupTable table) {
+            this.key = key;
+            this.entry = entry;
+            this.table = table;
+        }
+
+        public LookupTable getTable() {
+            return table;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                if (entry != null) release(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Wrap a table that should not be shared in a reference.
+     */
+    public static Reference unshared(LookupTable table) {
+        return new Reference(null, null, table);
+    }
+
+    /**
+     * Get a reference to the table for the key, building it with the builder if it is not in the cache.
+     *
+     * @param key     file signature and column specification of the table
+     * @param builder builds the table, called at most once per key while the table is cached
+     * @return reference to the table
+     */
+    public static Reference acquire(String key, Supplier<LookupTable> builder) {
+        boolean[] created = new boolean[1];
+        CacheEntry entry = tables.compute(key, (k, e) -> {
+            if (e == null) {
+                e = new CacheEntry();
+                created[0] = true;
+            }
+            e.refCount++;
+            e.lastUsed = System.nanoTime();
+            return e;
+        });
+
+        if (created[0]) {
+            misses.incrementAndGet();
+            try {
+                entry.table.complete(builder.get());
+            } catch (Throwable t) {
+                tables.remove(key, entry);
+                entry.table.completeExceptionally(t);
+                throw t;
+            }
+        } else {
+            hits.incrementAndGet();
+        }
+
+        try {
+            return new Reference(key, entry, entry.table.join());
+        } catch (CompletionException e) {
+            release(key, entry);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GorSystemException("Failed building lookup table", e.getCause());
+        }
+    }
+
+    /**
+     * Release a reference to an entry. The entry cached under the key may be a newer one if the entry was removed
+     * after a failed build, only the acquired entry is released.
+     */
+    private static void release(String key, CacheEntry entry) {
+        tables.computeIfPresent(key, (k, e) -> {
+            if (e == entry) {
+                e.refCount--;
+                e.lastUsed = System.nanoTime();
+            }
+            return e;
+        });
+        evictIdle();
+    }
+
+    private static synchronized void evictIdle() {
+        List<Map.Entry<String, CacheEntry>> idle = new ArrayList<>();
+        long idleSize = 0;
+        for (Map.Entry<String, CacheEntry> e : tables.entrySet()) {
+            CacheEntry entry = e.getValue();
+            if (entry.refCount == 0 && entry.table.isDone() && !entry.table.isCompletedExceptionally()) {
+                idle.add(e);
+                idleSize += entry.table.join().getMemoryUsage();
+            }
+        }
+        if (idleSize <= idleBytes) return;
+
+        idle.sort(Comparator.comparingLong(e -> e.getValue().lastUsed));
+        for (Map.Entry<String, CacheEntry> e : idle) {
+            if (idleSize <= idleBytes) break;
+            long size = e.getValue().table.join().getMemoryUsage();
+            // Only remove the entry if it has not been acquired again in the meantime
+            boolean[] removed = new boolean[1];
+            tables.computeIfPresent(e.getKey(), (k, entry) -> {
+                removed[0] = entry == e.getValue() && entry.refCount == 0;
+                return removed[0] ? null : entry;
+            });
+            if (removed[0]) {
+                log.debug("Evicting lookup table {} of size {} from cache", e.getKey(), size);
+                idleSize -= size;
+            }
+        }
+    }
+
+    /**
+     * Drop all tables not currently referenced.
+     */
+    public static void clear() {
+        for (String key : tables.keySet()) {
+            tables.computeIfPresent(key, (k, e) -> e.refCount == 0 && e.table.isDone() ? null : e);
+        }
+    }
+
+    public static int size() {
+        return tables.size();
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+}
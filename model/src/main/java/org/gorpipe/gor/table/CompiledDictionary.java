@@ -0,0 +1,353 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.table;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import org.gorpipe.exceptions.GorDataException;
+import org.gorpipe.gor.model.FileReader;
+import org.gorpipe.gor.table.util.PathUtils;
+import org.gorpipe.util.collection.IntArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Compiled binary form of a gor dictionary, written as a sidecar next to the .gord file, see {@link #SUFFIX}.
+ * <p>
+ * The sidecar holds the parsed dictionary with all strings interned, the tag to line posting lists, the bucket
+ * membership and a genomic range index over the lines, so opening a large dictionary does not have to split and
+ * parse the text file. Local sidecars are memory mapped. The sidecar records the signature of the .gord file it
+ * was compiled from so a stale sidecar is never used.
+ * <p>
+ * Layout, all numbers are big endian ints and a string is its UTF-8 length followed by the bytes:
+ * <pre>
+ * magic version signature
+ * stringCount string*
+ * bucketCount (bucket totalCount activeCount tagCount tag* deletedCount deletedAlias*)*
+ * lineCount (file bucketIdx alias startChr startPos stopChr stopPos tagCount tag*)*
+ * tagCount (tag lineCount line*)*
+ * rangeCount line*
+ * </pre>
+ * Strings are referred to by their index in the string table, -1 stands for null.
+ */
+public class CompiledDictionary {
+    private static final Logger log = LoggerFactory.getLogger(CompiledDictionary.class);
+
+    public static final String SUFFIX = ".gordc";
+    static final boolean READ_COMPILED = Boolean.parseBoolean(System.getProperty("gor.dictionary.compiled.read", "true"));
+    public static final boolean WRITE_COMPILED = Boolean.parseBoolean(System.getProperty("gor.dictionary.compiled.write", "false"));
+
+    private static final int MAGIC = 0x474f5244; // GORD
+    private static final int VERSION = 1;
+
+    private CompiledDictionary() {
+    }
+
+    /**
+     * Compile the dictionary and write the sidecar next to it.
+     */
+    public static void compile(FileReader fileReader, String path) throws IOException {
+        final String signature = fileReader.getFileSignature(path);
+        if (signature == null || signature.isEmpty()) {
+            log.debug("Not compiling {}, it has no signature to validate against", path);
+            return;
+        }
+        final String compiledPath = path + SUFFIX;
+        final String tempPath = compiledPath + ".temp";
+        try (InputStream is = fileReader.getInputStream(path);
+             BufferedReader br = new BufferedReader(new InputStreamReader(is));
+             OutputStream os = new BufferedOutputStream(fileReader.getOutputStream(tempPath))) {
+            write(br, path, signature, os);
+        }
+        fileReader.move(tempPath, compiledPath);
+    }
+
+    static void write(BufferedReader reader, String path, String signature, OutputStream os) throws IOException {
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        final Map<String, BucketInfo> buckets = new LinkedHashMap<>();
+        final List<Dictionary.DictionaryLine> activeLines = new ArrayList<>();
+        final Map<String, IntArray> tagsToLines = new LinkedHashMap<>();
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.charAt(0) == '#') continue;
+            final Dictionary.DictionaryLine dictLine = Dictionary.parseDictionaryLine(line, path, Dictionary.FileReference::unresolved);
+            if (dictLine == null) continue;
+            if (dictLine.bucket != null) {
+                final BucketInfo bucket = buckets.computeIfAbsent(dictLine.bucket, b -> new BucketInfo());
+                bucket.totalCount++;
+                if (dictLine.isDeleted) {
+                    bucket.deletedAliases.add(dictLine.alias);
+                    bucket.tags.add(dictLine.alias);
+                } else {
+                    bucket.activeCount++;
+                    bucket.tags.addAll(dictLine.tags);
+                }
+            }
+            if (!dictLine.isDeleted) {
+                for (String tag : dictLine.tags) {
+                    tagsToLines.computeIfAbsent(tag, t -> new IntArray()).add(activeLines.size());
+                }
+                activeLines.add(dictLine);
+            }
+        }
+
+        final DataOutputStream out = new DataOutputStream(os);
+        final List<String> bucketNames = new ArrayList<>(buckets.keySet());
+        final Map<String, Integer> bucketIdx = new HashMap<>();
+        for (String bucket : bucketNames) bucketIdx.put(bucket, bucketIdx.size());
+
+        // Intern every string up front so the string table can be written first
+        for (Map.Entry<String, BucketInfo> e : buckets.entrySet()) {
+            intern(strings, e.getKey());
+            e.getValue().tags.forEach(t -> intern(strings, t));
+            e.getValue().deletedAliases.forEach(a -> intern(strings, a));
+        }
+        for (Dictionary.DictionaryLine dictLine : activeLines) {
+            intern(strings, dictLine.fileRef.physical);
+            intern(strings, dictLine.alias);
+            intern(strings, dictLine.startChr);
+            intern(strings, dictLine.stopChr);
+            if (dictLine.tags != null) dictLine.tags.forEach(t -> intern(strings, t));
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, signature);
+        out.writeInt(strings.size());
+        for (String s : strings.keySet()) writeString(out, s);
+
+        out.writeInt(buckets.size());
+        for (Map.Entry<String, BucketInfo> e : buckets.entrySet()) {
+            final BucketInfo bucket = e.getValue();
+            out.writeInt(strings.get(e.getKey()));
+            out.writeInt(bucket.totalCount);
+            out.writeInt(bucket.activeCount);
+            writeStringIds(out, strings, bucket.tags);
+            writeStringIds(out, strings, bucket.deletedAliases);
+        }
+
+        out.writeInt(activeLines.size());
+        for (Dictionary.DictionaryLine dictLine : activeLines) {
+            out.writeInt(strings.get(dictLine.fileRef.physical));
+            out.writeInt(dictLine.bucket != null ? bucketIdx.get(dictLine.bucket) : -1);
+            out.writeInt(id(strings, dictLine.alias));
+            out.writeInt(id(strings, dictLine.startChr));
+            out.writeInt(dictLine.startPos);
+            out.writeInt(id(strings, dictLine.stopChr));
+            out.writeInt(dictLine.stopPos);
+            if (dictLine.tags == null) {
+                out.writeInt(-1);
+            } else {
+                writeStringIds(out, strings, dictLine.tags);
+            }
+        }
+
+        out.writeInt(tagsToLines.size());
+        for (Map.Entry<String, IntArray> e : tagsToLines.entrySet()) {
+            out.writeInt(strings.get(e.getKey()));
+            writeInts(out, e.getValue().toArray());
+        }
+
+        writeInts(out, DictionaryRangeIndex.sortedByStart(activeLines.toArray(new Dictionary.DictionaryLine[0])));
+        out.flush();
+    }
+
+    /**
+     * Load the compiled sidecar of a dictionary.
+     *
+     * @return the dictionary or null if there is no valid sidecar for the current version of the dictionary
+     */
+    static Dictionary load(String path, FileReader fileReader, String uniqueId, String commonRoot, boolean useCache) {
+        final String compiledPath = path + SUFFIX;
+        try {
+            if (!fileReader.exists(compiledPath)) return null;
+            final ByteBuffer buffer = open(fileReader, compiledPath);
+            final Dictionary.FileReference dictFileParent = Dictionary.getDictionaryFileParent(path, commonRoot);
+            final Dictionary dictionary = read(buffer, path, uniqueId, dictFileParent, Dictionary.getBucketsPath(dictFileParent, commonRoot), useCache);
+            if (dictionary == null) {
+                log.debug("Ignoring stale compiled dictionary {}", compiledPath);
+            }
+            return dictionary;
+        } catch (IOException | GorDataException e) {
+            log.warn("Unable to read compiled dictionary {}", compiledPath, e);
+            return null;
+        }
+    }
+
+    private static ByteBuffer open(FileReader fileReader, String compiledPath) throws IOException {
+        if (PathUtils.isLocal(compiledPath)) {
+            final Path local = fileReader.toAbsolutePath(compiledPath);
+            if (Files.isRegularFile(local)) {
+                try (FileChannel channel = FileChannel.open(local, StandardOpenOption.READ)) {
+                    return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+        }
+        try (InputStream is = fileReader.getInputStream(compiledPath)) {
+            return ByteBuffer.wrap(is.readAllBytes());
+        }
+    }
+
+    /**
+     * @return the dictionary or null if the sidecar was compiled from another version of the dictionary
+     */
+    static Dictionary read(ByteBuffer buffer, String path, String uniqueId, Dictionary.FileReference dictFileParent,
+                           Dictionary.FileReference bucketsParent, boolean useCache) {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new GorDataException("Not a compiled dictionary: " + path + SUFFIX);
+            }
+            final int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new GorDataException("Unsupported compiled dictionary version " + version);
+            }
+            if (!readString(buffer).equals(uniqueId)) {
+                return null;
+            }
+
+            final String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) strings[i] = readString(buffer);
+
+            final int bucketCount = buffer.getInt();
+            final Map<String, Integer> bucketToIdx = new HashMap<>();
+            final String[] bucketNames = new String[bucketCount];
+            final int[] bucketTotalCounts = new int[bucketCount];
+            final int[] bucketActiveCounts = new int[bucketCount];
+            final String[] resetBucketNames = new String[bucketCount];
+            final Set<String>[] bucketTags = new Set[bucketCount];
+            final Multimap<String, String> bucketHasDeletedFile = ArrayListMultimap.create();
+            for (int i = 0; i < bucketCount; i++) {
+                final String bucket = strings[buffer.getInt()];
+                bucketNames[i] = bucket;
+                bucketToIdx.put(bucket, i);
+                bucketTotalCounts[i] = buffer.getInt();
+                bucketActiveCounts[i] = buffer.getInt();
+                resetBucketNames[i] = Dictionary.resolveBucketPath(bucket, bucketsParent);
+                bucketTags[i] = readStringSet(buffer, strings);
+                final int deletedCount = buffer.getInt();
+                if (deletedCount > 0) {
+                    final String bucketFileName = Paths.get(bucket).getFileName().toString();
+                    for (int j = 0; j < deletedCount; j++) {
+                        bucketHasDeletedFile.put(bucketFileName, string(strings, buffer.getInt()));
+                    }
+                }
+            }
+
+            final Dictionary.DictionaryLine[] activeLines = new Dictionary.DictionaryLine[buffer.getInt()];
+            for (int i = 0; i < activeLines.length; i++) {
+                final Dictionary.FileReference fileRef = Dictionary.resolveFilePath(strings[buffer.getInt()], dictFileParent);
+                final int bucketIdx = buffer.getInt();
+                final String alias = string(strings, buffer.getInt());
+                final String startChr = string(strings, buffer.getInt());
+                final int startPos = buffer.getInt();
+                final String stopChr = string(strings, buffer.getInt());
+                final int stopPos = buffer.getInt();
+                final Set<String> tags = readStringSet(buffer, strings);
+                activeLines[i] = new Dictionary.DictionaryLine(fileRef, bucketIdx >= 0 ? bucketNames[bucketIdx] : null, alias,
+                        startChr, startPos, stopChr, stopPos, tags, false, false);
+            }
+
+            final int tagCount = buffer.getInt();
+            final Map<String, int[]> tagsToLines = new HashMap<>(2 * tagCount);
+            for (int i = 0; i < tagCount; i++) {
+                final String tag = strings[buffer.getInt()];
+                tagsToLines.put(tag, readInts(buffer));
+            }
+            final Set<String> validTags = new HashSet<>(tagsToLines.keySet());
+
+            final DictionaryRangeIndex rangeIndex = new DictionaryRangeIndex(activeLines, readInts(buffer));
+            return new Dictionary(path, uniqueId, tagsToLines, activeLines, bucketToIdx, bucketTotalCounts, bucketActiveCounts,
+                    resetBucketNames, bucketTags, bucketHasDeletedFile, validTags, rangeIndex, useCache);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new GorDataException("Corrupt compiled dictionary " + path + SUFFIX, e);
+        }
+    }
+
+    private static class BucketInfo {
+        int totalCount;
+        int activeCount;
+        final Set<String> tags = new LinkedHashSet<>();
+        final List<String> deletedAliases = new ArrayList<>();
+    }
+
+    private static void intern(Map<String, Integer> strings, String s) {
+        if (s != null) strings.putIfAbsent(s, strings.size());
+    }
+
+    private static int id(Map<String, Integer> strings, String s) {
+        return s != null ? strings.get(s) : -1;
+    }
+
+    private static String string(String[] strings, int id) {
+        return id >= 0 ? strings[id] : null;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStringIds(DataOutputStream out, Map<String, Integer> strings, Collection<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String s : values) out.writeInt(id(strings, s));
+    }
+
+    private static Set<String> readStringSet(ByteBuffer buffer, String[] strings) {
+        final int count = buffer.getInt();
+        if (count < 0) return null;
+        final Set<String> set = new HashSet<>(2 * count);
+        for (int i = 0; i < count; i++) set.add(string(strings, buffer.getInt()));
+        return set;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) out.writeInt(v);
+    }
+
+    private static int[] readInts(ByteBuffer buffer) {
+        final int[] values = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * values.length);
+        return values;
+    }
+}
@@ -46,6 +46,7 @@ import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 /**
@@ -132,6 +133,7 @@ public class Dictionary {
     private final boolean useCache;
 
     private final Map<String, DictionaryLine[]> tagsToListCache;
+    private volatile DictionaryRangeIndex rangeIndex; //Range index over the active lines, built on first use if not compiled.
 
     private static String dictCacheKeyFromPathAndRoot(String path, String commonRoot) {
         return PathUtils.resolve(commonRoot, path);
@@ -171,11 +173,11 @@ public class Dictionary {
         }
     }
 
-    private Dictionary(String path, String uniqueId, Map<String, int[]> tagsToActiveLines,
-                       DictionaryLine[] activeDictionaryLines, Map<String, Integer> mapBucketIndex,
-                       int[] bucketTotalCount, int[] bucketActiveCount, String[] bucketResetNames,
-                       Set<String>[] bucketTags, Multimap<String, String> bucketHasDeletedFile, Set<String> validTags,
-                       boolean useCache) {
+    Dictionary(String path, String uniqueId, Map<String, int[]> tagsToActiveLines,
+               DictionaryLine[] activeDictionaryLines, Map<String, Integer> mapBucketIndex,
+               int[] bucketTotalCount, int[] bucketActiveCount, String[] bucketResetNames,
+               Set<String>[] bucketTags, Multimap<String, String> bucketHasDeletedFile, Set<String> validTags,
+               DictionaryRangeIndex rangeIndex, boolean useCache) {
         this.path = path;
         this.fileSignature = uniqueId;
         this.tagsToActiveLines = tagsToActiveLines;
@@ -190,6 +192,7 @@ public class Dictionary {
         this.isDictionaryWithBuckets = this.bucketTotalCount.length > 0;
         this.useCache = useCache;
         this.tagsToListCache = this.useCache ? new ConcurrentHashMap<>() : null;
+        this.rangeIndex = rangeIndex;
     }
 
     public DictionaryLine[] getSources(Set<String> tags, boolean allowBucketAccess, boolean isSilentTagFilter) {
@@ -197,14 +200,33 @@ public class Dictionary {
         final Set<String> badTags = new HashSet<>();
         if (this.useCache) {
             final String orderedTags = orderTags(tags);
-            toReturn = tagsToListCache.compute(orderedTags, (key, list) -> list == null ? generateList(tags, allowBucketAccess, badTags) : list);
+            toReturn = tagsToListCache.compute(orderedTags, (key, list) -> list == null ? generateList(tags, allowBucketAccess, badTags, null) : list);
             // Removing the entry from cache due to invalid tags should be separate from throwing the data exception
             if (badTags.size() > 0) {
                 tagsToListCache.remove(orderedTags);
             }
         } else {
-            toReturn = generateList(tags, allowBucketAccess, badTags);
+            toReturn = generateList(tags, allowBucketAccess, badTags, null);
         }
+        return sourcesOrDummy(toReturn, badTags, isSilentTagFilter);
+    }
+
+    /**
+     * Get the sources for the tags, leaving out lines whose genomic range does not overlap the given range.
+     * Lines without a range are always included. The lists are not cached as they depend on the range.
+     *
+     * @param chr the chromosome the query is restricted to, or null for no restriction
+     */
+    public DictionaryLine[] getSources(Set<String> tags, boolean allowBucketAccess, boolean isSilentTagFilter, String chr, int start, int end) {
+        if (chr == null || chr.isEmpty()) {
+            return getSources(tags, allowBucketAccess, isSilentTagFilter);
+        }
+        final Set<String> badTags = new HashSet<>();
+        final DictionaryLine[] toReturn = generateList(tags, allowBucketAccess, badTags, rangeIndex().overlapping(chr, start, end));
+        return sourcesOrDummy(toReturn, badTags, isSilentTagFilter);
+    }
+
+    private DictionaryLine[] sourcesOrDummy(DictionaryLine[] toReturn, Set<String> badTags, boolean isSilentTagFilter) {
         final boolean hasInvalidTags = badTags.size() > 0;
 
         // Here we throw the data exception if the call is not silent
@@ -223,7 +245,10 @@ public class Dictionary {
         }
     }
 
-    private DictionaryLine[] generateList(Set<String> tags, boolean allowBucketAccess, Set<String> badTags) {
+    /**
+     * @param candidateLines sorted indices of the active lines to choose from, or null for all lines
+     */
+    private DictionaryLine[] generateList(Set<String> tags, boolean allowBucketAccess, Set<String> badTags, int[] candidateLines) {
         final int[] filesToOptimize;
         final IntArray bucketUsedCounts = new IntArray();
         final IntArray bucketTotalCount = new IntArray();
@@ -236,28 +261,41 @@ public class Dictionary {
         int numberOfFilesWithoutBucket = 0;
         final List<Set<String>> bucketTagsList = new ArrayList<>();
 
-        if (tags != null && tags.size() > 0) {
+        final boolean hasTags = tags != null && tags.size() > 0;
+        if (hasTags || candidateLines != null) {
+            final List<int[]> lineLists = new ArrayList<>();
+            if (hasTags) {
+                for (String tag : tags) {
+                    if (this.validTags.contains(tag)) lineLists.add(this.tagsToActiveLines.get(tag));
+                    else badTags.add(tag);
+                }
+            } else {
+                lineLists.add(candidateLines);
+            }
+            final boolean[] isCandidate = hasTags && candidateLines != null ? new boolean[this.activeDictionaryLines.length] : null;
+            if (isCandidate != null) {
+                for (int i : candidateLines) isCandidate[i] = true;
+            }
             Set<Integer> filesToOptimizeTmp = new LinkedHashSet<>();
             newBucketToIdx = new HashMap<>();
-            for (String tag : tags) {
-                if (this.validTags.contains(tag)) {
-                    for (int i : this.tagsToActiveLines.get(tag)) {
-                        filesToOptimizeTmp.add(i);
-                        final String bucket = this.activeDictionaryLines[i].bucket;
-                        if (bucket == null) numberOfFilesWithoutBucket++;
-                        else {
-                            final int bucketIdx = newBucketToIdx.computeIfAbsent(bucket, bucketbucket -> {
-                                bucketUsedCounts.add(0);
-                                final int idx = this.mapBucketIndex.get(bucketbucket);
-                                bucketTotalCount.add(this.bucketTotalCount[idx]);
-                                resetBucketNames.add(this.bucketResetNames[idx]);
-                                bucketTagsList.add(this.bucketTags[idx]);
-                                return newBucketToIdx.size();
-                            });
-                            bucketUsedCounts.increment(bucketIdx);
-                        }
+            for (int[] lines : lineLists) {
+                for (int i : lines) {
+                    if (isCandidate != null && !isCandidate[i]) continue;
+                    filesToOptimizeTmp.add(i);
+                    final String bucket = this.activeDictionaryLines[i].bucket;
+                    if (bucket == null) numberOfFilesWithoutBucket++;
+                    else {
+                        final int bucketIdx = newBucketToIdx.computeIfAbsent(bucket, bucketbucket -> {
+                            bucketUsedCounts.add(0);
+                            final int idx = this.mapBucketIndex.get(bucketbucket);
+                            bucketTotalCount.add(this.bucketTotalCount[idx]);
+                            resetBucketNames.add(this.bucketResetNames[idx]);
+                            bucketTagsList.add(this.bucketTags[idx]);
+                            return newBucketToIdx.size();
+                        });
+                        bucketUsedCounts.increment(bucketIdx);
                     }
-                } else badTags.add(tag);
+                }
             }
             filesToOptimize = new int[filesToOptimizeTmp.size()];
             int idx = 0;
@@ -302,6 +340,29 @@ public class Dictionary {
         throw new GorDataException(message);
     }
 
+    /**
+     * Get the active lines whose genomic range overlaps the given range. Lines without a range are always included.
+     *
+     * @return the overlapping lines in dictionary order
+     */
+    public DictionaryLine[] getActiveLinesOverlapping(String chr, int start, int end) {
+        final int[] lineIndices = rangeIndex().overlapping(chr, start, end);
+        final DictionaryLine[] lines = new DictionaryLine[lineIndices.length];
+        for (int i = 0; i < lineIndices.length; i++) {
+            lines[i] = this.activeDictionaryLines[lineIndices[i]];
+        }
+        return lines;
+    }
+
+    private DictionaryRangeIndex rangeIndex() {
+        DictionaryRangeIndex index = this.rangeIndex;
+        if (index == null) {
+            index = new DictionaryRangeIndex(this.activeDictionaryLines);
+            this.rangeIndex = index;
+        }
+        return index;
+    }
+
     public Set<String> getValidTags() {
         return this.validTags;
     }
@@ -314,7 +375,7 @@ public class Dictionary {
         return this.bucketHasDeletedFile.get(bucket);
     }
 
-    private static FileReference getBucketsPath(final FileReference dictFileParent, String commonRoot) {
+    static FileReference getBucketsPath(final FileReference dictFileParent, String commonRoot) {
         final boolean isAbsolute = PathUtils.isAbsolutePath(dictFileParent.physical);
         return commonRoot == null || isAbsolute || (dictFileParent.physical + '/').startsWith(commonRoot)
                 ? dictFileParent
@@ -327,6 +388,12 @@ public class Dictionary {
      * @return Cache object with all important info about the dictionary.
      */
     private static Dictionary processDictionary(String path, FileReader fileReader, String uniqueId, String commonRoot, boolean useCache) {
+        if (CompiledDictionary.READ_COMPILED && !Strings.isNullOrEmpty(uniqueId)) {
+            final Dictionary compiled = CompiledDictionary.load(path, fileReader, uniqueId, commonRoot, useCache);
+            if (compiled != null) {
+                return compiled;
+            }
+        }
         final List<Set<String>> bucketTagsList = new ArrayList<>();
         final List<String> resetBucketNames = new ArrayList<>();
         final IntArray bucketTotalCounts = new IntArray();
@@ -352,7 +419,7 @@ public class Dictionary {
             tagsToLines.forEach((tag, arr) -> newTagsToLines.put(tag, arr.toArray()));
             return new Dictionary(path, uniqueId, newTagsToLines, activeDictionaryLines.toArray(new DictionaryLine[0]), bucketToIdx,
                     bucketTotalCounts.toArray(), bucketActiveCount.toArray(), resetBucketNames.toArray(new String[0]),
-                    bucketTagsList.toArray(new Set[0]), bucketHasDeletedFile, validTags, useCache);
+                    bucketTagsList.toArray(new Set[0]), bucketHasDeletedFile, validTags, null, useCache);
         } catch (IOException ex) {
             throw new GorResourceException("Error Initializing Query. Can not open file " + path, path, ex);
         }
@@ -363,7 +430,7 @@ public class Dictionary {
                                     Set<String> validTags, Multimap<String, String> bucketHasDeletedFile, DictionaryLine dictLine) {
         if (dictLine.bucket != null) {
             final int bucketIdx = bucketToIdx.computeIfAbsent(dictLine.bucket, bucket -> {
-                resetBucketNames.add(resetFilePath(bucket, bucket.contains("://") ? new FileReference("") : bucketsParent).physical);
+                resetBucketNames.add(resolveBucketPath(bucket, bucketsParent));
                 bucketTagsList.add(new HashSet<>());
                 bucketActiveCount.add(0);
                 bucketTotalCounts.add(0);
@@ -468,6 +535,13 @@ public class Dictionary {
     }
 
     static public DictionaryLine parseDictionaryLine(String line, FileReference dictFileParent, String dictPath) {
+        return parseDictionaryLine(line, dictPath, file -> resolveFilePath(file, dictFileParent));
+    }
+
+    /**
+     * Parse a dictionary line, resolving the file of the line with the given function.
+     */
+    static DictionaryLine parseDictionaryLine(String line, String dictPath, Function<String, FileReference> fileResolver) {
         try {
             final ArrayList<String> parts = StringUtil.split(line);
             final int length = parts.size();
@@ -493,7 +567,7 @@ public class Dictionary {
                 }
 
                 if (!lineDeleted) {
-                    FileReference fileref = file.contains("://") ? resetFilePath(file, null) : resetFilePath(file, dictFileParent);
+                    FileReference fileref = fileResolver.apply(file);
                     final Set<String> tags;
                     if (length > 2) {
                         if (length >= 6) {
@@ -560,6 +634,19 @@ public class Dictionary {
             this.physical = Dictionary.removeDotDots(physical);
             this.isAcceptedAbsoluteRef = isAcceptedAbsoluteRef;
         }
+
+        private FileReference(String file, boolean isAcceptedAbsoluteRef) {
+            this.logical = file;
+            this.physical = file;
+            this.isAcceptedAbsoluteRef = isAcceptedAbsoluteRef;
+        }
+
+        /**
+         * @return reference to the file exactly as written in the dictionary, used when compiling the dictionary
+         */
+        static FileReference unresolved(String file) {
+            return new FileReference(file, false);
+        }
     }
 
     public static class DictionaryLine {
@@ -626,6 +713,14 @@ public class Dictionary {
         }
     }
 
+    static FileReference resolveFilePath(String file, FileReference dictFileParent) {
+        return file.contains("://") ? resetFilePath(file, null) : resetFilePath(file, dictFileParent);
+    }
+
+    static String resolveBucketPath(String bucket, FileReference bucketsParent) {
+        return resetFilePath(bucket, bucket.contains("://") ? new FileReference("") : bucketsParent).physical;
+    }
+
     private static FileReference resetFilePath(String file, final FileReference dictFileParent) {
         if (file != null) {
             if (file.startsWith("/")) {
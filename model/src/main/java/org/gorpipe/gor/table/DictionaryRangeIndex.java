@@ -0,0 +1,146 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.table;
+
+import org.gorpipe.util.collection.IntArray;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Genomic range index over the active lines of a dictionary.
+ * <p>
+ * Lines with a range are kept sorted by range start, together with the running maximum of the range stops. A
+ * query then only visits the lines between the first one that can reach the query start and the last one starting
+ * before the query end. Lines without a range overlap every query.
+ */
+class DictionaryRangeIndex {
+    private final Dictionary.DictionaryLine[] lines;
+    private final int[] order; //Indices of the lines with a range, sorted by range start.
+    private final int[] unranged; //Indices of the lines without a range.
+    private final int[] prefixMaxStop; //prefixMaxStop[i] = index of the line with the largest stop among order[0..i].
+
+    DictionaryRangeIndex(Dictionary.DictionaryLine[] lines) {
+        this(lines, sortedByStart(lines));
+    }
+
+    /**
+     * @param order indices of the lines with a range, sorted by range start
+     */
+    DictionaryRangeIndex(Dictionary.DictionaryLine[] lines, int[] order) {
+        this.lines = lines;
+        this.order = order;
+        final boolean[] ranged = new boolean[lines.length];
+        for (int i : order) ranged[i] = true;
+        final IntArray unrangedLines = new IntArray();
+        for (int i = 0; i < lines.length; i++) {
+            if (!ranged[i]) unrangedLines.add(i);
+        }
+        this.unranged = unrangedLines.toArray();
+        this.prefixMaxStop = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            prefixMaxStop[i] = i == 0 || compareStops(order[i], prefixMaxStop[i - 1]) > 0 ? order[i] : prefixMaxStop[i - 1];
+        }
+    }
+
+    /**
+     * @return indices of the lines with a range, sorted by range start
+     */
+    int[] getOrder() {
+        return order;
+    }
+
+    static boolean hasRange(Dictionary.DictionaryLine line) {
+        return line.startChr != null;
+    }
+
+    static int[] sortedByStart(Dictionary.DictionaryLine[] lines) {
+        final Integer[] ranged = new Integer[lines.length];
+        int count = 0;
+        for (int i = 0; i < lines.length; i++) {
+            if (hasRange(lines[i])) ranged[count++] = i;
+        }
+        final Comparator<Integer> byStart = (a, b) -> compare(lines[a].startChr, startPos(lines[a]), lines[b].startChr, startPos(lines[b]));
+        Arrays.sort(ranged, 0, count, byStart);
+        final int[] order = new int[count];
+        for (int i = 0; i < count; i++) order[i] = ranged[i];
+        return order;
+    }
+
+    /**
+     * @return indices of the lines overlapping chr:start-end, in dictionary order
+     */
+    int[] overlapping(String chr, int start, int end) {
+        // First position where the running maximum stop reaches the query start, no line before it can overlap
+        int lo = 0;
+        int hi = order.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (compareStop(lines[prefixMaxStop[mid]], chr, start) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        // First position where the lines start after the query end
+        int upTo = order.length;
+        int from = lo;
+        while (from < upTo) {
+            final int mid = (from + upTo) >>> 1;
+            final Dictionary.DictionaryLine line = lines[order[mid]];
+            if (compare(line.startChr, startPos(line), chr, end) <= 0) from = mid + 1;
+            else upTo = mid;
+        }
+
+        final IntArray result = new IntArray();
+        for (int i : unranged) result.add(i);
+        for (int i = lo; i < upTo; i++) {
+            if (compareStop(lines[order[i]], chr, start) >= 0) result.add(order[i]);
+        }
+        final int[] indices = result.toArray();
+        Arrays.sort(indices);
+        return indices;
+    }
+
+    private int compareStops(int a, int b) {
+        final Dictionary.DictionaryLine lineB = lines[b];
+        return lineB.stopChr == null ? (lines[a].stopChr == null ? 0 : -1) : compareStop(lines[a], lineB.stopChr, stopPos(lineB));
+    }
+
+    /**
+     * Compare the stop of the line to a position, a line without a stop chromosome is open ended.
+     */
+    private static int compareStop(Dictionary.DictionaryLine line, String chr, int pos) {
+        return line.stopChr == null ? 1 : compare(line.stopChr, stopPos(line), chr, pos);
+    }
+
+    private static int startPos(Dictionary.DictionaryLine line) {
+        return Math.max(line.startPos, 0);
+    }
+
+    private static int stopPos(Dictionary.DictionaryLine line) {
+        return line.stopPos < 0 ? Integer.MAX_VALUE : line.stopPos;
+    }
+
+    private static int compare(String chr1, int pos1, String chr2, int pos2) {
+        final int c = chr1.compareTo(chr2);
+        return c != 0 ? c : Integer.compare(pos1, pos2);
+    }
+}
@@ -33,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -213,23 +214,58 @@ public class DictionaryTableReader extends TableInfoBase<DictionaryEntry> {
      * @return The MD5 digest that is the file signature
      */
     public String getSignature(Boolean useCommonRoot, String commonRoot, String... tags) throws IOException {
+        return getSignature(getSignatureFiles(tags), getSecurityContext(), commonRoot);
+    }
+
+    /**
+     * Get the files the signature for the specified tags is calculated from, see getSignature.  The list only
+     * depends on the content of the dictionary, so it can be reused while the dictionary file is unchanged.
+     *
+     * @param tags The tags from the dictionary file that will be touched
+     * @return The physical files behind the tags or the dictionary itself
+     */
+    public List<String> getSignatureFiles(String... tags) {
         int maxFiles = Integer.parseInt(getConfigTableProperty("gor.table.signature.maxfiles", "10"));
-        ByteTextBuilder fingerPrintString;
         if ((tags != null && tags.length > 0 && tags.length <= maxFiles)) {
             List<DictionaryEntry> matchingLines = filter().tags(tags).get();
-            fingerPrintString = new ByteTextBuilder(matchingLines.size() * 300);
+            List<String> files = new ArrayList<>(matchingLines.size());
             for (DictionaryEntry line : matchingLines) {
-                fingerPrintString.append(getContentReal(line));
-                fingerPrintString.append((byte) '&');
-                fingerPrintString.append(getLastModifiedTime(getContentReal(line), getSecurityContext(), commonRoot));
+                files.add(getContentReal(line));
             }
+            return files;
         } else {
-            fingerPrintString = new ByteTextBuilder(300);
-            fingerPrintString.append(getPath());
-            fingerPrintString.append((byte) '&');
-            fingerPrintString.append(getLastModifiedTime(getPath(), getSecurityContext(), commonRoot));
+            return Collections.singletonList(getPath());
+        }
+    }
+
+    /**
+     * Calculate a MD5 digest from the name and last modification date of the given files.  The modification dates
+     * are looked up concurrently.
+     *
+     * @param files the files from getSignatureFiles
+     * @return The MD5 digest that is the file signature
+     */
+    public static String getSignature(List<String> files, String securityContext, String commonRoot) throws IOException {
+        long[] lastModified;
+        try {
+            Stream<String> fileStream = files.size() > 1 ? files.parallelStream() : files.stream();
+            lastModified = fileStream.mapToLong(file -> {
+                try {
+                    return getLastModifiedTime(file, securityContext, commonRoot);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toArray();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
 
+        ByteTextBuilder fingerPrintString = new ByteTextBuilder(Math.max(files.size(), 1) * 300);
+        for (int i = 0; i < files.size(); i++) {
+            fingerPrintString.append(files.get(i));
+            fingerPrintString.append((byte) '&');
+            fingerPrintString.append(lastModified[i]);
+        }
         return fingerPrintString.md5();
     }
 
@@ -1,6 +1,8 @@
 package org.gorpipe.gor.table.dictionary;
 
+import org.gorpipe.exceptions.GorException;
 import org.gorpipe.exceptions.GorSystemException;
+import org.gorpipe.gor.table.CompiledDictionary;
 import org.gorpipe.gor.table.livecycle.TableTwoPhaseCommitSupport;
 import org.gorpipe.gor.table.util.PathUtils;
 import org.slf4j.Logger;
@@ -65,5 +67,17 @@ public class DictionaryTwoPhaseCommitSupport extends TableTwoPhaseCommitSupport<
         } catch (IOException e) {
             throw new GorSystemException("Could not move header", e);
         }
+        if (CompiledDictionary.WRITE_COMPILED) {
+            compileDictionary();
+        }
+    }
+
+    private void compileDictionary() {
+        try {
+            CompiledDictionary.compile(table.getFileReader(), table.getPath());
+        } catch (IOException | GorException e) {
+            // The dictionary itself is committed, readers fall back to the text file
+            log.warn("Could not write compiled dictionary for {}", table.getPath(), e);
+        }
     }
 }
@@ -0,0 +1,241 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.util;
+
+import org.gorpipe.exceptions.GorDataException;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the blocks of a BGZF file and inflates them on the common fork join pool.
+ * <p>
+ * Compressed blocks are read sequentially by the caller and up to {@link #DEFAULT_READ_AHEAD} of them are inflated
+ * ahead of the one being consumed, so decompression runs in parallel with the parsing of the decompressed data.
+ * The reader can be moved to any block address, the underlying stream is then reopened at that address.
+ */
+public class BgzfBlockReader implements Closeable {
+    public static final int DEFAULT_READ_AHEAD = Integer.getInteger("gor.bgzf.readahead",
+            Math.min(16, 2 * Runtime.getRuntime().availableProcessors()));
+
+    private static final int GZIP_ID1 = 31;
+    private static final int GZIP_ID2 = 139;
+    private static final int GZIP_FLAG_EXTRA = 4;
+    private static final int FIXED_HEADER_LENGTH = 12;
+    private static final int FOOTER_LENGTH = 8;
+
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    /**
+     * Opens the compressed file at a byte offset.
+     */
+    public interface Opener {
+        InputStream open(long start) throws IOException;
+    }
+
+    /**
+     * A decompressed block and the address of the compressed block in the file.
+     */
+    public static final class Block {
+        public final long address;
+        public final byte[] data;
+        public final int length;
+
+        Block(long address, byte[] data, int length) {
+            this.address = address;
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    private final Opener opener;
+    private final int readAhead;
+    private final ArrayDeque<CompletableFuture<Block>> pending = new ArrayDeque<>();
+    private InputStream in;
+    private long address;
+    private boolean eof = false;
+
+    /**
+     * @param in stream positioned at the start of the file
+     * @param opener used to reopen the file when seeking, may be null if seeking is not needed
+     */
+    public BgzfBlockReader(InputStream in, Opener opener) {
+        this(in, opener, DEFAULT_READ_AHEAD);
+    }
+
+    public BgzfBlockReader(InputStream in, Opener opener, int readAhead) {
+        this.in = in;
+        this.opener = opener;
+        this.readAhead = Math.max(1, readAhead);
+    }
+
+    /**
+     * Check if the data starts with a BGZF block header, i.e. a gzip header with the BC extra subfield.
+     */
+    public static boolean isBgzf(byte[] header, int length) {
+        return length >= 16 && (header[0] & 0xff) == GZIP_ID1 && (header[1] & 0xff) == GZIP_ID2 && header[2] == 8
+                && (header[3] & GZIP_FLAG_EXTRA) != 0 && header[12] == 'B' && header[13] == 'C';
+    }
+
+    /**
+     * @return the next block with data, or null at the end of the file
+     */
+    public Block next() throws IOException {
+        fill();
+        while (!pending.isEmpty()) {
+            Block block = take(pending.poll());
+            fill();
+            if (block.length > 0) return block;
+        }
+        return null;
+    }
+
+    /**
+     * Move to the block starting at the given compressed address.
+     */
+    public void seek(long blockAddress) throws IOException {
+        if (opener == null) throw new IOException("Seek is not supported on this stream");
+        pending.clear();
+        in.close();
+        in = opener.open(blockAddress);
+        address = blockAddress;
+        eof = false;
+    }
+
+    private static Block take(CompletableFuture<Block> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw e;
+        }
+    }
+
+    private void fill() throws IOException {
+        while (!eof && pending.size() < readAhead) {
+            byte[] raw = readRawBlock();
+            if (raw == null) {
+                eof = true;
+            } else {
+                long blockAddress = address;
+                address += raw.length;
+                pending.add(CompletableFuture.supplyAsync(() -> inflate(blockAddress, raw)));
+            }
+        }
+    }
+
+    private byte[] readRawBlock() throws IOException {
+        byte[] header = new byte[FIXED_HEADER_LENGTH];
+        int read = readFully(header, 0, FIXED_HEADER_LENGTH);
+        if (read == 0) return null;
+        if (read < FIXED_HEADER_LENGTH || (header[0] & 0xff) != GZIP_ID1 || (header[1] & 0xff) != GZIP_ID2
+                || (header[3] & GZIP_FLAG_EXTRA) == 0) {
+            throw new GorDataException("Invalid BGZF block header at " + address);
+        }
+        int xlen = (header[10] & 0xff) | (header[11] & 0xff) << 8;
+        byte[] extra = new byte[xlen];
+        if (readFully(extra, 0, xlen) < xlen) throw new EOFException("Truncated BGZF block at " + address);
+
+        int blockSize = -1;
+        int i = 0;
+        while (i + 4 <= xlen) {
+            int slen = (extra[i + 2] & 0xff) | (extra[i + 3] & 0xff) << 8;
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && slen == 2) {
+                blockSize = ((extra[i + 4] & 0xff) | (extra[i + 5] & 0xff) << 8) + 1;
+            }
+            i += 4 + slen;
+        }
+        if (blockSize < FIXED_HEADER_LENGTH + xlen + FOOTER_LENGTH) {
+            throw new GorDataException("Missing BGZF block size at " + address);
+        }
+
+        byte[] raw = new byte[blockSize];
+        System.arraycopy(header, 0, raw, 0, FIXED_HEADER_LENGTH);
+        System.arraycopy(extra, 0, raw, FIXED_HEADER_LENGTH, xlen);
+        int offset = FIXED_HEADER_LENGTH + xlen;
+        if (readFully(raw, offset, blockSize - offset) < blockSize - offset) {
+            throw new EOFException("Truncated BGZF block at " + address);
+        }
+        return raw;
+    }
+
+    private int readFully(byte[] buf, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int r = in.read(buf, offset + total, length - total);
+            if (r < 0) break;
+            total += r;
+        }
+        return total;
+    }
+
+    static Block inflate(long address, byte[] raw) {
+        int xlen = (raw[10] & 0xff) | (raw[11] & 0xff) << 8;
+        int dataOffset = FIXED_HEADER_LENGTH + xlen;
+        int footer = raw.length - FOOTER_LENGTH;
+        int crc = readInt(raw, footer);
+        int size = readInt(raw, footer + 4);
+
+        byte[] data = new byte[size];
+        if (size > 0) {
+            Inflater inflater = inflaters.get();
+            inflater.reset();
+            inflater.setInput(raw, dataOffset, footer - dataOffset);
+            try {
+                int n = 0;
+                while (n < size && !inflater.finished()) {
+                    int r = inflater.inflate(data, n, size - n);
+                    if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                    n += r;
+                }
+                if (n != size) throw new GorDataException("Corrupt BGZF block at " + address + ", size mismatch");
+            } catch (DataFormatException e) {
+                throw new GorDataException("Corrupt BGZF block at " + address, e);
+            }
+            CRC32 crc32 = new CRC32();
+            crc32.update(data, 0, size);
+            if ((int) crc32.getValue() != crc) throw new GorDataException("Corrupt BGZF block at " + address + ", CRC mismatch");
+        }
+        return new Block(address, data, size);
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pending.clear();
+        in.close();
+    }
+}
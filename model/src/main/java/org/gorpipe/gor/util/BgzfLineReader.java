@@ -0,0 +1,151 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads lines from a BGZF file as bytes.
+ * <p>
+ * Lines are returned in place in the decompressed block when they fit in it, otherwise they are copied to a line
+ * buffer. The line content is valid until the next call to {@link #readLine()}. Every line has a virtual offset,
+ * the compressed block address shifted left by 16 bits or'ed with the offset of the line in the block, that can be
+ * passed to {@link #seek(long)}.
+ */
+public class BgzfLineReader implements Closeable {
+    private final BgzfBlockReader blocks;
+    private BgzfBlockReader.Block block;
+    private int blockPos;
+    private byte[] lineBuffer = new byte[1024];
+
+    private byte[] line;
+    private int lineStart;
+    private int lineEnd;
+    private long lineOffset;
+
+    public BgzfLineReader(BgzfBlockReader blocks) {
+        this.blocks = blocks;
+    }
+
+    public static long virtualOffset(long blockAddress, int offsetInBlock) {
+        return blockAddress << 16 | offsetInBlock;
+    }
+
+    private boolean nextBlock() throws IOException {
+        block = blocks.next();
+        blockPos = 0;
+        return block != null;
+    }
+
+    private static int indexOf(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private void appendToLineBuffer(byte[] data, int from, int to, int length) {
+        int n = to - from;
+        if (length + n > lineBuffer.length) {
+            lineBuffer = Arrays.copyOf(lineBuffer, Math.max(2 * lineBuffer.length, length + n));
+        }
+        System.arraycopy(data, from, lineBuffer, length, n);
+    }
+
+    /**
+     * @return true if a line was read, false at the end of the file
+     */
+    public boolean readLine() throws IOException {
+        if ((block == null || blockPos >= block.length) && !nextBlock()) return false;
+        lineOffset = virtualOffset(block.address, blockPos);
+
+        int nl = indexOf(block.data, blockPos, block.length);
+        if (nl >= 0) {
+            line = block.data;
+            lineStart = blockPos;
+            lineEnd = nl;
+            blockPos = nl + 1;
+        } else {
+            // The line continues in the next block
+            int length = 0;
+            appendToLineBuffer(block.data, blockPos, block.length, length);
+            length += block.length - blockPos;
+            while (nextBlock()) {
+                nl = indexOf(block.data, 0, block.length);
+                int end = nl >= 0 ? nl : block.length;
+                appendToLineBuffer(block.data, 0, end, length);
+                length += end;
+                if (nl >= 0) {
+                    blockPos = nl + 1;
+                    break;
+                }
+            }
+            line = lineBuffer;
+            lineStart = 0;
+            lineEnd = length;
+        }
+        if (lineEnd > lineStart && line[lineEnd - 1] == '\r') lineEnd--;
+        return true;
+    }
+
+    /**
+     * @return the line as a string or null at the end of the file
+     */
+    public String readLineAsString() throws IOException {
+        return readLine() ? new String(line, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Move to the line at the given virtual offset.
+     */
+    public void seek(long virtualOffset) throws IOException {
+        blocks.seek(virtualOffset >>> 16);
+        if (nextBlock()) {
+            blockPos = (int) (virtualOffset & 0xffff);
+        }
+    }
+
+    public byte[] getLine() {
+        return line;
+    }
+
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    public int getLineEnd() {
+        return lineEnd;
+    }
+
+    public long getLineOffset() {
+        return lineOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        blocks.close();
+    }
+}
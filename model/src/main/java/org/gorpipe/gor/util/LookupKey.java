@@ -0,0 +1,123 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.util;
+
+import org.gorpipe.gor.model.Row;
+
+/**
+ * Reusable view of the key columns of a row, used to look up rows in a {@link LookupTable} without building a
+ * key string per row. The key is the selected columns joined by tabs, optionally upper cased on the fly.
+ */
+public class LookupKey implements CharSequence {
+    // Upper casing ASCII characters one by one is only the same as String.toUpperCase in locales without special
+    // casing rules for ASCII letters
+    private static final boolean ASCII_UPPER_CASE = "i".toUpperCase().equals("I");
+
+    private final int[] columns;
+    private final boolean upperCase;
+    private final int[] lineStarts;
+    private final int[] keyStarts;
+    private final int[] lengths;
+    private CharSequence line;
+    private int length;
+    private int segment;
+
+    /**
+     * @param columns   the key columns
+     * @param upperCase true if the key should be upper cased
+     */
+    public LookupKey(int[] columns, boolean upperCase) {
+        this.columns = columns;
+        this.upperCase = upperCase;
+        lineStarts = new int[columns.length];
+        keyStarts = new int[columns.length];
+        lengths = new int[columns.length];
+    }
+
+    /**
+     * Point the key at the key columns of a row.
+     *
+     * @return true if the key can be viewed directly in the row, false if it has to be built the usual way, e.g.
+     * if the row does not have a split array, the columns do not exist or upper casing needs special handling
+     */
+    public boolean set(Row row) {
+        int[] splitArray = row.getSplitArray();
+        CharSequence allCols = row.getAllCols();
+        if (splitArray == null || allCols == null) return false;
+
+        int keyStart = 0;
+        for (int i = 0; i < columns.length; i++) {
+            int c = columns[i];
+            if (c < 0 || c >= splitArray.length || splitArray[c] > allCols.length()) return false;
+            int start = c == 0 ? 0 : splitArray[c - 1] + 1;
+            lineStarts[i] = start;
+            keyStarts[i] = keyStart;
+            lengths[i] = splitArray[c] - start;
+            keyStart += lengths[i] + 1;
+            if (upperCase && !isAsciiUpperCaseSafe(allCols, start, splitArray[c])) return false;
+        }
+        line = allCols;
+        length = keyStart - 1;
+        segment = 0;
+        return true;
+    }
+
+    private static boolean isAsciiUpperCaseSafe(CharSequence s, int start, int end) {
+        if (!ASCII_UPPER_CASE) return false;
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        int k = segment;
+        if (index < keyStarts[k]) k = 0;
+        while (k < columns.length - 1 && index >= keyStarts[k + 1]) k++;
+        segment = k;
+        int offset = index - keyStarts[k];
+        if (offset == lengths[k]) return '\t';
+        char c = line.charAt(lineStarts[k] + offset);
+        return upperCase && c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(charAt(i));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,480 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact string to string hash map used for lookup tables (MAP, MULTIMAP, INSET).
+ * <p>
+ * Keys and values are stored back to back in large byte pages, one byte per ASCII character, and the hash table
+ * itself is an open-addressing table of primitive arrays. This takes a fraction of the memory of a HashMap of
+ * Strings and puts no pressure on the garbage collector for large tables. Entries are iterated in insertion order
+ * and a replaced value is written over the old one when it fits, otherwise it is appended and the old bytes are
+ * dead. The pages are compacted once more than half of their bytes are dead.
+ * <p>
+ * Note that this class doesn't support concurrent modification, concurrent reads of a fully built table are safe.
+ */
+public class LookupTable extends AbstractMap<String, String> {
+    private static final int PAGE_SIZE = 1 << 20;
+    private static final int MIN_PAGE_SIZE = 1 << 10;
+    private static final int EXPECTED_ENTRY_SIZE = 32;
+    private static final int MARKER = 0x80;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final List<byte[]> pages = new ArrayList<>();
+    private byte[] page;
+    private int pageOffset;
+    private long pageBytes;
+    private long usedBytes;
+    private long deadBytes;
+
+    private int[] slotHashes;
+    private int[] slotEntries;    // Entry index + 1, 0 for empty slots
+    private int mask;
+
+    private long[] entryAddresses; // Page index in the high int, offset in the low int
+    private int count;
+
+    public LookupTable() {
+        this(16);
+    }
+
+    public LookupTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        slotHashes = new int[capacity];
+        slotEntries = new int[capacity];
+        mask = capacity - 1;
+        entryAddresses = new long[Math.max(16, expectedSize)];
+        newPage(firstPageSize((long) expectedSize * EXPECTED_ENTRY_SIZE));
+    }
+
+    /**
+     * Hash of a key, the same as {@link String#hashCode()} for the characters of the key.
+     */
+    public static int hash(CharSequence key) {
+        if (key instanceof String) return key.hashCode();
+        int h = 0;
+        for (int i = 0; i < key.length(); i++) {
+            h = 31 * h + key.charAt(i);
+        }
+        return h;
+    }
+
+    private static int spread(int h) {
+        return (h ^ (h >>> 16)) * 0x9E3779B9;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof CharSequence && find((CharSequence) key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof CharSequence)) return null;
+        int entry = find((CharSequence) key);
+        return entry >= 0 ? entryValue(entry) : null;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        int h = hash(key);
+        int slot = spread(h) & mask;
+        while (slotEntries[slot] != 0) {
+            int entry = slotEntries[slot] - 1;
+            if (slotHashes[slot] == h && keyEquals(entry, key)) {
+                String old = entryValue(entry);
+                replace(entry, key, value);
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (count == entryAddresses.length) {
+            entryAddresses = Arrays.copyOf(entryAddresses, count * 2);
+        }
+        entryAddresses[count] = append(key, value);
+        slotHashes[slot] = h;
+        slotEntries[slot] = ++count;
+        if (count > slotEntries.length * LOAD_FACTOR) {
+            rehash(slotEntries.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Find the entry for a key.
+     *
+     * @param key the key to look up
+     * @return entry index or -1 if the key is not in the table
+     */
+    public int find(CharSequence key) {
+        int h = hash(key);
+        int slot = spread(h) & mask;
+        int entry;
+        while ((entry = slotEntries[slot]) != 0) {
+            if (slotHashes[slot] == h && keyEquals(entry - 1, key)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the key of the entry at the given index, entries are indexed in insertion order
+     */
+    public String entryKey(int entry) {
+        long address = entryAddresses[entry];
+        byte[] p = pages.get((int) (address >>> 32));
+        int offset = (int) address;
+        return decode(p, offset);
+    }
+
+    /**
+     * @return the value of the entry at the given index, entries are indexed in insertion order
+     */
+    public String entryValue(int entry) {
+        long address = entryAddresses[entry];
+        byte[] p = pages.get((int) (address >>> 32));
+        int offset = skip(p, (int) address);
+        return decode(p, offset);
+    }
+
+    /**
+     * Append the value of the entry at the given index to a builder, without creating a string for it.
+     */
+    public void appendValue(int entry, StringBuilder sb) {
+        long address = entryAddresses[entry];
+        byte[] p = pages.get((int) (address >>> 32));
+        int offset = skip(p, (int) address);
+        int length = readVarInt(p, offset);
+        int i = offset + varIntLength(length);
+        int end = i + length;
+        sb.ensureCapacity(sb.length() + length);
+        while (i < end) {
+            int b = p[i++] & 0xFF;
+            if (b == MARKER) {
+                sb.append((char) (((p[i] & 0xFF) << 8) | (p[i + 1] & 0xFF)));
+                i += 2;
+            } else {
+                sb.append((char) b);
+            }
+        }
+    }
+
+    /**
+     * @return approximate number of bytes used by the table
+     */
+    public long getMemoryUsage() {
+        return pageBytes + 8L * slotEntries.length + 8L * entryAddresses.length;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<>() {
+                    int entry = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return entry < count;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (entry >= count) throw new NoSuchElementException();
+                        int e = entry++;
+                        return new SimpleImmutableEntry<>(entryKey(e), entryValue(e));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    /**
+     * View of the table as a multi map, where each value holds several newline separated values.
+     */
+    public Map<String, String[]> asMultiMap() {
+        return new AbstractMap<>() {
+            @Override
+            public String[] get(Object key) {
+                String value = LookupTable.this.get(key);
+                return value != null ? splitValues(value) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return LookupTable.this.containsKey(key);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+
+            @Override
+            public Set<Map.Entry<String, String[]>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public Iterator<Map.Entry<String, String[]>> iterator() {
+                        Iterator<Map.Entry<String, String>> it = LookupTable.this.entrySet().iterator();
+                        return new Iterator<>() {
+                            @Override
+                            public boolean hasNext() {
+                                return it.hasNext();
+                            }
+
+                            @Override
+                            public Map.Entry<String, String[]> next() {
+                                Map.Entry<String, String> e = it.next();
+                                return new SimpleImmutableEntry<>(e.getKey(), splitValues(e.getValue()));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return count;
+                    }
+                };
+            }
+        };
+    }
+
+    public static String[] splitValues(String value) {
+        return value.split("\n", -1);
+    }
+
+    private void rehash(int capacity) {
+        int[] oldHashes = slotHashes;
+        int[] oldEntries = slotEntries;
+        slotHashes = new int[capacity];
+        slotEntries = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldEntries.length; i++) {
+            if (oldEntries[i] != 0) {
+                int slot = spread(oldHashes[i]) & mask;
+                while (slotEntries[slot] != 0) slot = (slot + 1) & mask;
+                slotHashes[slot] = oldHashes[i];
+                slotEntries[slot] = oldEntries[i];
+            }
+        }
+    }
+
+    private static int firstPageSize(long bytes) {
+        return (int) Math.min(PAGE_SIZE, Math.max(MIN_PAGE_SIZE, bytes));
+    }
+
+    private void newPage(int size) {
+        page = new byte[size];
+        pages.add(page);
+        pageOffset = 0;
+        pageBytes += size;
+    }
+
+    /**
+     * Reserve bytes for an entry at the end of the pages. Pages grow by doubling up to {@link #PAGE_SIZE}.
+     */
+    private long reserve(int size) {
+        if (pageOffset + size > page.length) {
+            newPage(Math.max(Math.min(PAGE_SIZE, page.length * 2), size));
+        }
+        long address = ((long) (pages.size() - 1) << 32) | pageOffset;
+        pageOffset += size;
+        usedBytes += size;
+        return address;
+    }
+
+    private int entrySize(byte[] p, int offset) {
+        return skip(p, skip(p, offset)) - offset;
+    }
+
+    private void replace(int entry, String key, String value) {
+        long address = entryAddresses[entry];
+        byte[] p = pages.get((int) (address >>> 32));
+        int offset = (int) address;
+        int oldSize = entrySize(p, offset);
+        int valueOffset = skip(p, offset);
+        int valueLength = encodedLength(value);
+        int valueSize = varIntLength(valueLength) + valueLength;
+        if (valueOffset + valueSize <= offset + oldSize) {
+            write(p, value, valueLength, valueOffset);
+            deadBytes += offset + oldSize - valueOffset - valueSize;
+        } else {
+            entryAddresses[entry] = append(key, value);
+            deadBytes += oldSize;
+        }
+        if (deadBytes > usedBytes / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Copy the live entries to new pages, dropping the bytes of replaced values.
+     */
+    private void compact() {
+        List<byte[]> oldPages = new ArrayList<>(pages);
+        pages.clear();
+        pageBytes = 0;
+        newPage(firstPageSize(usedBytes - deadBytes));
+        usedBytes = 0;
+        deadBytes = 0;
+        for (int entry = 0; entry < count; entry++) {
+            long address = entryAddresses[entry];
+            byte[] p = oldPages.get((int) (address >>> 32));
+            int offset = (int) address;
+            int size = entrySize(p, offset);
+            long newAddress = reserve(size);
+            System.arraycopy(p, offset, page, (int) newAddress, size);
+            entryAddresses[entry] = newAddress;
+        }
+    }
+
+    private static int encodedLength(String s) {
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            len += s.charAt(i) < MARKER ? 1 : 3;
+        }
+        return len;
+    }
+
+    private static int varIntLength(int v) {
+        int len = 1;
+        while ((v >>>= 7) != 0) len++;
+        return len;
+    }
+
+    private long append(String key, String value) {
+        int keyLength = encodedLength(key);
+        int valueLength = encodedLength(value);
+        int size = varIntLength(keyLength) + keyLength + varIntLength(valueLength) + valueLength;
+        long address = reserve(size);
+        write(page, value, valueLength, write(page, key, keyLength, (int) address));
+        return address;
+    }
+
+    private static int write(byte[] page, String s, int length, int offset) {
+        int v = length;
+        while ((v & ~0x7F) != 0) {
+            page[offset++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        page[offset++] = (byte) v;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < MARKER) {
+                page[offset++] = (byte) c;
+            } else {
+                page[offset++] = (byte) MARKER;
+                page[offset++] = (byte) (c >>> 8);
+                page[offset++] = (byte) c;
+            }
+        }
+        return offset;
+    }
+
+    private static int readVarInt(byte[] p, int offset) {
+        int v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = p[offset++];
+            v |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return v;
+    }
+
+    private static int skip(byte[] p, int offset) {
+        int length = readVarInt(p, offset);
+        return offset + varIntLength(length) + length;
+    }
+
+    private static String decode(byte[] p, int offset) {
+        int length = readVarInt(p, offset);
+        int start = offset + varIntLength(length);
+        int end = start + length;
+        int i = start;
+        while (i < end && p[i] >= 0) i++;
+        if (i == end) {
+            return new String(p, start, length, StandardCharsets.ISO_8859_1);
+        }
+        char[] chars = new char[length];
+        int n = 0;
+        for (i = start; i < end; ) {
+            int b = p[i++] & 0xFF;
+            if (b == MARKER) {
+                chars[n++] = (char) (((p[i] & 0xFF) << 8) | (p[i + 1] & 0xFF));
+                i += 2;
+            } else {
+                chars[n++] = (char) b;
+            }
+        }
+        return new String(chars, 0, n);
+    }
+
+    private boolean keyEquals(int entry, CharSequence key) {
+        long address = entryAddresses[entry];
+        byte[] p = pages.get((int) (address >>> 32));
+        int offset = (int) address;
+        int length = readVarInt(p, offset);
+        int i = offset + varIntLength(length);
+        int end = i + length;
+        int keyLength = key.length();
+        if (keyLength > length) return false;
+        for (int k = 0; k < keyLength; k++) {
+            if (i >= end) return false;
+            char c = key.charAt(k);
+            int b = p[i++] & 0xFF;
+            if (b == MARKER) {
+                if (c != (char) (((p[i] & 0xFF) << 8) | (p[i + 1] & 0xFF))) return false;
+                i += 2;
+            } else if (c != b) {
+                return false;
+            }
+        }
+        return i == end;
+    }
+}
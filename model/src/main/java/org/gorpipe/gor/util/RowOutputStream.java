@@ -0,0 +1,162 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.util;
+
+import org.gorpipe.util.collection.ByteArrayWrapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Buffered output stream for row text.
+ * <p>
+ * Rows write their characters straight into the buffer with {@link #writeChars(CharSequence, int, int)}, ASCII
+ * characters as single bytes without an intermediate String or encoder. Characters from the first non-ASCII one of
+ * a write are encoded with the default charset, the same bytes an OutputStreamWriter or String.getBytes() gives.
+ * <p>
+ * Buffers of the default size are pooled and reused by the next stream after close.
+ */
+public class RowOutputStream extends OutputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 128 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 16;
+    private static final ConcurrentLinkedQueue<byte[]> bufferPool = new ConcurrentLinkedQueue<>();
+    private static final Charset charset = Charset.defaultCharset();
+
+    private final OutputStream target;
+    private byte[] buffer;
+    private int count = 0;
+
+    public RowOutputStream(OutputStream target) {
+        this(target, DEFAULT_BUFFER_SIZE);
+    }
+
+    public RowOutputStream(OutputStream target, int bufferSize) {
+        this.target = target;
+        byte[] pooled = bufferSize == DEFAULT_BUFFER_SIZE ? bufferPool.poll() : null;
+        buffer = pooled != null ? pooled : new byte[bufferSize];
+    }
+
+    /**
+     * Write characters to a stream, straight into the buffer when the stream is a RowOutputStream or a
+     * ByteArrayWrapper and otherwise as the bytes of a String.
+     */
+    public static void writeChars(OutputStream outputStream, CharSequence cs, int start, int end) throws IOException {
+        if (outputStream instanceof RowOutputStream) {
+            ((RowOutputStream) outputStream).writeChars(cs, start, end);
+        } else if (outputStream instanceof ByteArrayWrapper) {
+            ((ByteArrayWrapper) outputStream).writeChars(cs, start, end, charset);
+        } else {
+            outputStream.write(cs.subSequence(start, end).toString().getBytes(charset));
+        }
+    }
+
+    public void writeChars(CharSequence cs, int start, int end) throws IOException {
+        ensureOpen();
+        int i = start;
+        while (i < end) {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            int stop = Math.min(end, i + buffer.length - count);
+            while (i < stop) {
+                char c = cs.charAt(i);
+                if (c >= 0x80) {
+                    byte[] bytes = cs.subSequence(i, end).toString().getBytes(charset);
+                    write(bytes, 0, bytes.length);
+                    return;
+                }
+                buffer[count++] = (byte) c;
+                i++;
+            }
+        }
+    }
+
+    public void write(CharSequence cs) throws IOException {
+        writeChars(cs, 0, cs.length());
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len >= buffer.length) {
+            flushBuffer();
+            target.write(b, off, len);
+            return;
+        }
+        if (len > buffer.length - count) {
+            flushBuffer();
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    /**
+     * The buffer is given back to the pool on close, so nothing can be written after it.
+     */
+    private void ensureOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            target.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // Nothing is buffered after close
+        if (buffer == null) return;
+        flushBuffer();
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) return;
+        try {
+            flushBuffer();
+        } finally {
+            byte[] released = buffer;
+            buffer = null;
+            if (released.length == DEFAULT_BUFFER_SIZE && bufferPool.size() < MAX_POOLED_BUFFERS) {
+                bufferPool.offer(released);
+            }
+            target.close();
+        }
+    }
+}
@@ -26,7 +26,16 @@ import org.gorpipe.exceptions.GorParsingException
 import org.gorpipe.gor.model.Row
 
 
-case class BinAggregator(binFactory: BinFactory, numBins: Int, window: Int, useKeyForChrom: Boolean = false) {
+/**
+  * Keeps the bin states of a binned analysis and flushes them as the stream moves past their window.
+  *
+  * The memory of the open bins is checked every [[BinAggregator.MEMORY_CHECK_INTERVAL]] updates. When it exceeds
+  * the memory budget the largest bins are asked to spill until the open bins are within the budget again, a budget
+  * of zero or less turns spilling off. The peak estimate, i.e. the largest sum seen at a check, and the spills are
+  * kept as metrics for the query.
+  */
+case class BinAggregator(binFactory: BinFactory, numBins: Int, window: Int, useKeyForChrom: Boolean = false,
+                         memoryBudget: Long = BinAggregator.DEFAULT_MEMORY_BUDGET) {
   if (numBins < window) {
     throw new GorParsingException(s"Error in BinAggregator setup - numBins ($numBins) must be larger than window ($window): ")
   }
@@ -36,6 +45,16 @@ case class BinAggregator(binFactory: BinFactory, numBins: Int, window: Int, useK
   private var eBinID = 0
   private var currentKey: String = _
   private var nextProcessor: Processor = _
+  private var updatesSinceCheck = 0
+  private var peakMemory = 0L
+  private var spillCount = 0
+  private var spilledMemory = 0L
+
+  def peakMemoryEstimate: Long = peakMemory
+
+  def spills: Int = spillCount
+
+  def spilledMemoryEstimate: Long = spilledMemory
 
   def setNextProcessor(p: Processor): Unit = {
     nextProcessor = p
@@ -65,6 +84,12 @@ case class BinAggregator(binFactory: BinFactory, numBins: Int, window: Int, useK
     currentBinInfo.used = true
     currentBin.process(r)
 
+    updatesSinceCheck += 1
+    if (updatesSinceCheck >= BinAggregator.MEMORY_CHECK_INTERVAL) {
+      updatesSinceCheck = 0
+      checkMemory(allowSpill = true)
+    }
+
     if (eBinID < binID) {
       eBinID = binID
     }
@@ -75,6 +100,39 @@ case class BinAggregator(binFactory: BinFactory, numBins: Int, window: Int, useK
     }
   }
 
+  /**
+    * Sum the memory estimates of the open bins, update the peak and spill if the budget is exceeded.
+    */
+  def checkMemory(allowSpill: Boolean): Unit = {
+    var total = 0L
+    var i = 0
+    while (i < numBins) {
+      if (binInfo(i).used) total += bins(i).memoryEstimate
+      i += 1
+    }
+    if (total > peakMemory) peakMemory = total
+    if (allowSpill && memoryBudget > 0 && total > memoryBudget) {
+      spill(total - memoryBudget)
+    }
+  }
+
+  private def spill(toRelease: Long): Unit = {
+    val largestFirst = (0 until numBins).filter(binInfo(_).used).map(i => (i, bins(i).memoryEstimate)).sortBy(-_._2)
+    var released = 0L
+    val it = largestFirst.iterator
+    while (released < toRelease && it.hasNext) {
+      val (i, estimate) = it.next()
+      if (estimate > 0) {
+        val freed = bins(i).spill()
+        if (freed > 0) {
+          released += freed
+          spillCount += 1
+        }
+      }
+    }
+    spilledMemory += released
+  }
+
   def flush(newKey: String, curBinID: Int): Unit = {
     var mEnd = 0
     if (curBinID - sBinID >= numBins + window || newKey != currentKey) {
@@ -98,6 +156,7 @@ case class BinAggregator(binFactory: BinFactory, numBins: Int, window: Int, useK
   }
 
   def finalFlush(): Unit = {
+    checkMemory(allowSpill = false)
     val mEnd = eBinID - sBinID
     try {
       for (i <- 0 to mEnd) {
@@ -122,3 +181,13 @@ case class BinAggregator(binFactory: BinFactory, numBins: Int, window: Int, useK
   }
 }
 
+object BinAggregator {
+  /**
+    * Memory budget for the open bins of one aggregator, a quarter of the max heap unless set in MB with
+    * gor.binaggregator.memory.budget.mb, zero turns spilling off.
+    */
+  val DEFAULT_MEMORY_BUDGET: Long = Option(System.getProperty("gor.binaggregator.memory.budget.mb"))
+    .map(_.toLong * 1024 * 1024).getOrElse(Runtime.getRuntime.maxMemory / 4)
+
+  val MEMORY_CHECK_INTERVAL: Int = math.max(1, System.getProperty("gor.binaggregator.memory.checkinterval", "1000").toInt)
+}
@@ -25,6 +25,9 @@ package gorsat.Commands
 import org.gorpipe.gor.model.Row
 
 abstract class BinAnalysis(rowHandler: RowHandler, binAggregator: BinAggregator) extends Analysis {
+  statsSenderName = "BinAnalysis"
+  statsSenderAnnotation = getClass.getSimpleName
+
   override def setup(): Unit = {
     binAggregator.setNextProcessor(nextProcessor)
   }
@@ -35,5 +38,10 @@ abstract class BinAnalysis(rowHandler: RowHandler, binAggregator: BinAggregator)
 
   override def finish(): Unit = {
     binAggregator.finalFlush()
+    statsAdd("peakBinMemory", binAggregator.peakMemoryEstimate.toDouble)
+    if (binAggregator.spills > 0) {
+      statsAdd("binSpills", binAggregator.spills)
+      statsAdd("binSpilledMemory", binAggregator.spilledMemoryEstimate.toDouble)
+    }
   }
 }
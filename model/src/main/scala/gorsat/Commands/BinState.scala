@@ -32,4 +32,17 @@ abstract class BinState {
   def sendToNextProcessor(binInfo: BinInfo, nextProcessor: Processor): Unit
 
   def close(): Unit = {}
+
+  /**
+    * Estimated heap memory in bytes held by the state for the open bin, used by [[BinAggregator]] to keep the open
+    * bins within its memory budget. States that only aggregate a few values can leave this at zero.
+    */
+  def memoryEstimate: Long = 0L
+
+  /**
+    * Move buffered rows out of the heap, e.g. to a temporary file, when the open bins exceed the memory budget.
+    *
+    * @return estimated bytes released, zero if the state can not spill
+    */
+  def spill(): Long = 0L
 }
@@ -101,6 +101,8 @@ class DynamicRowSource(iteratorCommand : String, context: GorContext, fixHeader
   override def getAvgBasesPerMilliSecond: Double = theSource.getAvgBasesPerMilliSecond
   override def getAvgRowsPerMilliSecond: Double = theSource.getAvgRowsPerMilliSecond
   override def getAvgBatchSize: Double = theSource.getAvgBatchSize
+  override def getProducerStallTimeMilliSecond: Double = theSource.getProducerStallTimeMilliSecond
+  override def getConsumerStallTimeMilliSecond: Double = theSource.getConsumerStallTimeMilliSecond
 
   override def getCurrentBatchSize: Int = theSource.getCurrentBatchSize
   override def getCurrentBatchLoc: Int = theSource.getCurrentBatchLoc
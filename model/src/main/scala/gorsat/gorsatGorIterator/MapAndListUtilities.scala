@@ -25,7 +25,8 @@ package gorsat.gorsatGorIterator
 import java.nio.file.Files
 import java.util.stream.Collectors
 import org.gorpipe.gor.model.{DriverBackedFileReader, FileReader}
-import org.gorpipe.gor.session.GorSession
+import org.gorpipe.gor.session.{GorSession, LookupTableCache}
+import org.gorpipe.gor.util.LookupTable
 import org.gorpipe.model.gor.iterators.LineIterator
 
 import scala.jdk.CollectionConverters.IterableHasAsScala
@@ -114,47 +115,133 @@ object MapAndListUtilities {
   def getSingleHashMap(filename: String, iterator: LineIterator, caseInsensitive: Boolean, ic: Int,
                        oc: Array[Int], asSet: Boolean, skipEmpty: Boolean, session: GorSession): singleHashMap =  {
     val extFilename = "map" + filename + ic + oc.mkString(",") + asSet
-    val ocl = oc.length
     syncGetSingleHashMap(extFilename, session) match {
       case Some(theMap) =>
         iterator.close()
         theMap
       case None =>
-        try {
-          val colMap = new java.util.HashMap[String, String]()
+        val colMap = buildSingleLookupTable(iterator, caseInsensitive, ic, oc, asSet, skipEmpty)
+        syncAddSingleHashMap(extFilename, colMap, session)
+        colMap
+    }
+  }
 
-          val mmu: MemoryMonitorUtil =  new MemoryMonitorUtil(MemoryMonitorUtil.basicOutOfMemoryHandler)
+  /**
+    * Get a reference to a lookup table shared by all sessions in the process, see [[LookupTableCache]].
+    * The reference must be closed when the table is no longer used.
+    */
+  def acquireSingleLookupTable(filename: String, caseInsensitive: Boolean, ic: Int, oc: Array[Int],
+                               asSet: Boolean, skipEmpty: Boolean, session: GorSession): LookupTableCache.Reference = {
+    val fileReader = session.getProjectContext.getSystemFileReader
+    if (!exists(filename, fileReader)) return LookupTableCache.unshared(new LookupTable())
+
+    val key = "map" + fileReader.getFileSignature(filename) + "\t" + filename + "\t" + ic + "\t" + oc.mkString(",") +
+      "\t" + asSet + "\t" + caseInsensitive + "\t" + skipEmpty
+    LookupTableCache.acquire(key, () => buildSingleLookupTable(StreamingFileLineIterator(filename, fileReader),
+      caseInsensitive, ic, oc, asSet, skipEmpty))
+  }
 
-          while (iterator.hasNext) {
-            val x = iterator.nextLine
-            val cols = x.split("\t", -1)
-            mmu.check("getSingleHashMap", mmu.lineNum, x)
-            if (asSet) {
-              val lookupString =
-                if (caseInsensitive) cols.slice(0, 1.max(ic)).mkString("\t").toUpperCase
-                else cols.slice(0, 1.max(ic)).mkString("\t")
-              colMap.put(lookupString, "1")
+  /**
+    * Get a reference to a multi map lookup table shared by all sessions in the process, the values of each key
+    * are separated by newlines, see [[LookupTable.asMultiMap]].
+    */
+  def acquireMultiLookupTable(filename: String, caseInsensitive: Boolean, ic: Int, oc: Array[Int],
+                              session: GorSession): LookupTableCache.Reference = {
+    val fileReader = session.getProjectContext.getSystemFileReader
+    if (!exists(filename, fileReader)) return LookupTableCache.unshared(new LookupTable())
+
+    val key = "multimap" + fileReader.getFileSignature(filename) + "\t" + filename + "\t" + ic + "\t" +
+      oc.mkString(",") + "\t" + caseInsensitive
+    LookupTableCache.acquire(key, () => buildMultiLookupTable(StreamingFileLineIterator(filename, fileReader),
+      caseInsensitive, ic, oc))
+  }
+
+  def buildSingleLookupTable(iterator: LineIterator, caseInsensitive: Boolean, ic: Int, oc: Array[Int],
+                             asSet: Boolean, skipEmpty: Boolean): LookupTable = {
+    val ocl = oc.length
+    try {
+      val colMap = new LookupTable()
+
+      val mmu: MemoryMonitorUtil =  new MemoryMonitorUtil(MemoryMonitorUtil.basicOutOfMemoryHandler)
+
+      while (iterator.hasNext) {
+        val x = iterator.nextLine
+        val cols = x.split("\t", -1)
+        mmu.check("getSingleHashMap", mmu.lineNum, x)
+        if (asSet) {
+          val lookupString =
+            if (caseInsensitive) cols.slice(0, 1.max(ic)).mkString("\t").toUpperCase
+            else cols.slice(0, 1.max(ic)).mkString("\t")
+          colMap.put(lookupString, "1")
+        } else {
+          //            if (cols.length >= ic + oc) colMap += (cols.slice(0,ic).mkString("\t") -> cols.slice(ic,ic+oc).mkString("\t"))
+          if (cols.length >= ic + ocl) {
+            val lookupString =
+              if (caseInsensitive) cols.slice(0, ic).mkString("\t").toUpperCase
+              else cols.slice(0, ic).mkString("\t")
+            val existing = colMap.get(lookupString)
+            if (existing == null) {
+              colMap.put(lookupString, oc.tail.map(c => cols(c)).foldLeft(cols(oc.head))(_ + "\t" + _))
             } else {
-              //            if (cols.length >= ic + oc) colMap += (cols.slice(0,ic).mkString("\t") -> cols.slice(ic,ic+oc).mkString("\t"))
-              if (cols.length >= ic + ocl) {
-                val lookupString =
-                  if (caseInsensitive) cols.slice(0, ic).mkString("\t").toUpperCase
-                  else cols.slice(0, ic).mkString("\t")
-                if (colMap.getOrDefault(lookupString,null) == null) {
-                  colMap.put(lookupString, oc.tail.map(c => cols(c)).foldLeft(cols(oc.head))(_ + "\t" + _))
-                } else {
-                  val existingValues = colMap.get(lookupString).split("\t",-1)
-                  val newValues = if( skipEmpty ) existingValues.zip(oc.map(c => cols(c))).map(_.productIterator.filter(_.toString.nonEmpty).mkString(",")) else existingValues.zip(oc.map(c => cols(c))).map(x => x._1 + "," + x._2 )
-                  colMap.put(lookupString, newValues.tail.foldLeft(newValues.head)(_ + "\t" + _))
-                }
-              }
+              val existingValues = existing.split("\t",-1)
+              val newValues = if( skipEmpty ) existingValues.zip(oc.map(c => cols(c))).map(_.productIterator.filter(_.toString.nonEmpty).mkString(",")) else existingValues.zip(oc.map(c => cols(c))).map(x => x._1 + "," + x._2 )
+              colMap.put(lookupString, newValues.tail.foldLeft(newValues.head)(_ + "\t" + _))
             }
           }
-          syncAddSingleHashMap(extFilename, colMap, session)
-          colMap
-        } finally {
-          iterator.close()
         }
+      }
+      colMap
+    } finally {
+      iterator.close()
+    }
+  }
+
+  def buildMultiLookupTable(iterator: LineIterator, caseInsensitive: Boolean, ic: Int, oc: Array[Int]): LookupTable = {
+    val ocl = oc.length
+    try {
+      // Collect the values of each key first, so each key is put into the table once
+      val grouped = new java.util.LinkedHashMap[String, MultiValues]()
+      val mmu: MemoryMonitorUtil =  new MemoryMonitorUtil(MemoryMonitorUtil.basicOutOfMemoryHandler)
+
+      while (iterator.hasNext) {
+        val x = iterator.nextLine
+        val cols = x.split("\t", -1)
+        mmu.check("getMultiHashMap", mmu.lineNum, x)
+        if (cols.length >= ic + ocl) {
+          val (a, b) = (cols.slice(0, ic).mkString("\t"), oc.tail.map(c => cols(c)).foldLeft(cols(oc.head))(_ + "\t" + _))
+          val cisa = if (caseInsensitive) a.toUpperCase else a
+          grouped.computeIfAbsent(cisa, _ => new MultiValues).add(b)
+        }
+      }
+
+      val multiMap = new LookupTable(grouped.size)
+      grouped.forEach((key, values) => multiMap.put(key, values.mkString))
+      multiMap
+    } finally {
+      iterator.close()
+    }
+  }
+
+  /**
+    * Values of a multi map key, in the same order as getMultiHashMap builds them: each new value is appended to the
+    * reversed list of the previous values. The reversal is tracked with a flag so adding a value is constant time.
+    */
+  private class MultiValues {
+    private val values = new java.util.ArrayDeque[String]()
+    private var reversed = true
+
+    def add(value: String): Unit = {
+      reversed = !reversed
+      if (reversed) values.addFirst(value) else values.addLast(value)
+    }
+
+    def mkString: String = {
+      val it = if (reversed) values.descendingIterator() else values.iterator()
+      val sb = new java.lang.StringBuilder(it.next())
+      while (it.hasNext) {
+        sb.append('\n').append(it.next())
+      }
+      sb.toString
     }
   }
 
@@ -0,0 +1,99 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package gorsat.Commands;
+
+import org.gorpipe.gor.model.Row;
+import org.gorpipe.model.gor.RowObj;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UTestBinAggregator {
+
+    static class BufferState extends BinState {
+        long held = 0;
+
+        @Override
+        public void initialize(BinInfo binInfo) {
+            held = 0;
+        }
+
+        @Override
+        public void process(Row r) {
+            held += 100;
+        }
+
+        @Override
+        public void sendToNextProcessor(BinInfo binInfo, Processor nextProcessor) {
+            held = 0;
+        }
+
+        @Override
+        public long memoryEstimate() {
+            return held;
+        }
+
+        @Override
+        public long spill() {
+            long released = held;
+            held = 0;
+            return released;
+        }
+    }
+
+    static class BufferFactory extends BinFactory {
+        @Override
+        public BinState create() {
+            return new BufferState();
+        }
+    }
+
+    private static BinAggregator aggregate(long budget, int rows) {
+        BinAggregator aggregator = new BinAggregator(new BufferFactory(), 20, 10, false, budget);
+        Row row = RowObj.apply("chr1\t1\ta");
+        for (int i = 0; i < rows; i++) {
+            aggregator.update(row, 0, "chr1", 0, 1000);
+        }
+        aggregator.finalFlush();
+        return aggregator;
+    }
+
+    @Test
+    public void testSpillOverBudget() {
+        int interval = BinAggregator.MEMORY_CHECK_INTERVAL();
+        BinAggregator aggregator = aggregate(50L * interval, 2 * interval);
+
+        Assert.assertEquals(2, aggregator.spills());
+        Assert.assertEquals(200L * interval, aggregator.spilledMemoryEstimate());
+        Assert.assertEquals(100L * interval, aggregator.peakMemoryEstimate());
+    }
+
+    @Test
+    public void testNoSpillWithoutBudget() {
+        int interval = BinAggregator.MEMORY_CHECK_INTERVAL();
+        BinAggregator aggregator = aggregate(0, 2 * interval + 1);
+
+        Assert.assertEquals(0, aggregator.spills());
+        Assert.assertEquals(0L, aggregator.spilledMemoryEstimate());
+        Assert.assertEquals(100L * (2 * interval + 1), aggregator.peakMemoryEstimate());
+    }
+}
@@ -16,6 +16,7 @@ import gorsat.TestUtils;
 import org.apache.commons.io.FileUtils;
 import org.gorpipe.exceptions.GorDataException;
 import org.gorpipe.gor.session.ProjectContext;
+import org.gorpipe.gor.table.CompiledDictionary;
 import org.gorpipe.gor.table.Dictionary;
 import org.gorpipe.test.utils.FileTestUtils;
 import org.junit.Assert;
@@ -30,6 +31,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 
@@ -396,6 +398,99 @@ public class UTestDictionary {
         Assert.assertTrue(success);
     }
 
+    @Test
+    public void testCompiledDictionaryMatchesText() throws IOException {
+        File textFile = workDir.newFile("text.gord");
+        FileUtils.write(textFile, gort1, (Charset) null);
+        File compiledFile = new File(workDir.newFolder("compiled"), "text.gord");
+        FileUtils.write(compiledFile, gort1, (Charset) null);
+        CompiledDictionary.compile(ProjectContext.DEFAULT_READER, compiledFile.getPath());
+        Assert.assertTrue(new File(compiledFile.getPath() + CompiledDictionary.SUFFIX).exists());
+
+        Dictionary text = getDictionary(textFile.getPath(), ".");
+        Dictionary compiled = getDictionary(compiledFile.getPath(), ".");
+        Assert.assertEquals(text.getValidTags(), compiled.getValidTags());
+        Assert.assertEquals(text.getBucketDeletedFiles("bucket2"), compiled.getBucketDeletedFiles("bucket2"));
+
+        List<List<String>> tagLists = Arrays.asList(Collections.emptyList(), Arrays.asList("tagA", "tagF"),
+                Arrays.asList("tagI", "tagJ", "tag1000"), Arrays.asList("tagG", "tagH", "tagL"), Collections.singletonList("tagK"));
+        for (List<String> tags : tagLists) {
+            for (boolean allowBucketAccess : new boolean[]{true, false}) {
+                Assert.assertEquals(preciseStrings(text.getSources(new HashSet<>(tags), allowBucketAccess, false), textFile),
+                        preciseStrings(compiled.getSources(new HashSet<>(tags), allowBucketAccess, false), compiledFile));
+            }
+        }
+        Assert.assertEquals(preciseStrings(text.getActiveLinesOverlapping("chr1", 15000, 16000), textFile),
+                preciseStrings(compiled.getActiveLinesOverlapping("chr1", 15000, 16000), compiledFile));
+    }
+
+    @Test
+    public void testCompiledDictionaryIsUsedUntilDictionaryChanges() throws Exception {
+        File gordFile = workDir.newFile("compiledUsed.gord");
+        FileUtils.write(gordFile, gort1, (Charset) null);
+        CompiledDictionary.compile(ProjectContext.DEFAULT_READER, gordFile.getPath());
+        long lastModified = gordFile.lastModified();
+
+        // Same signature as the compiled dictionary, so the sidecar is read instead of the text
+        FileUtils.write(gordFile, "filepath1.gor\ttag0\n", (Charset) null);
+        Assert.assertTrue(gordFile.setLastModified(lastModified));
+        Assert.assertTrue(getDictionary(gordFile.getPath(), ".").getValidTags().contains("tagM"));
+
+        Assert.assertTrue(gordFile.setLastModified(lastModified + 2000));
+        Assert.assertEquals(Collections.singleton("tag0"), getDictionary(gordFile.getPath(), ".").getValidTags());
+    }
+
+    @Test
+    public void testActiveLinesOverlapping() throws IOException {
+        File gordFile = workDir.newFile("overlapping.gord");
+        FileUtils.write(gordFile, gort1, (Charset) null);
+        Dictionary dict = getDictionary(gordFile.getPath(), ".");
+
+        List<String> files = fileNames(dict.getActiveLinesOverlapping("chr1", 15000, 16000));
+        Assert.assertTrue(files.containsAll(Arrays.asList("filepath4.gor", "filepath5.gor", "filepath12.gor", "filepath1.gor", "filepath21.gor")));
+        Assert.assertFalse(files.contains("filepath6.gor"));
+        Assert.assertFalse(files.contains("filepath7.gor"));
+
+        files = fileNames(dict.getActiveLinesOverlapping("chr1", 25000, 35000));
+        Assert.assertTrue(files.containsAll(Arrays.asList("filepath4.gor", "filepath6.gor", "filepath12.gor")));
+        Assert.assertFalse(files.contains("filepath5.gor"));
+
+        files = fileNames(dict.getActiveLinesOverlapping("chr3", 1, 100));
+        Assert.assertFalse(files.contains("filepath7.gor"));
+        files = fileNames(dict.getActiveLinesOverlapping("chr3", 9000, 20000));
+        Assert.assertTrue(files.contains("filepath7.gor"));
+        Assert.assertEquals(14, dict.getActiveLinesOverlapping("chr22", 1, 100).length);
+    }
+
+    @Test
+    public void testSourcesRestrictedToRange() throws IOException {
+        File gordFile = workDir.newFile("rangesources.gord");
+        FileUtils.write(gordFile, gort1, (Charset) null);
+        Dictionary dict = getDictionary(gordFile.getPath(), ".");
+
+        Set<String> tags = new HashSet<>(Arrays.asList("tagF", "tagF1", "tagJ"));
+        List<String> files = fileNames(dict.getSources(tags, true, false, "chr1", 15000, 16000));
+        Assert.assertEquals(Arrays.asList("filepath12.gor", "filepath18.gor", "filepath5.gor"), files.stream().sorted().collect(Collectors.toList()));
+
+        List<String> all = fileNames(dict.getSources(Collections.emptySet(), false, false));
+        files = fileNames(dict.getSources(Collections.emptySet(), false, false, "chr1", 15000, 16000));
+        Assert.assertTrue(all.containsAll(files));
+        Assert.assertEquals(all.size() - 2, files.size());
+        Assert.assertFalse(files.contains("filepath6.gor"));
+        Assert.assertFalse(files.contains("filepath7.gor"));
+
+        Assert.assertEquals(all, fileNames(dict.getSources(Collections.emptySet(), false, false, null, 0, -1)));
+    }
+
+    private static List<String> preciseStrings(Dictionary.DictionaryLine[] lines, File dictFile) {
+        String parent = dictFile.getParentFile().getPath();
+        return Arrays.stream(lines).map(l -> l.toPreciseString().replace(parent, "")).collect(Collectors.toList());
+    }
+
+    private static List<String> fileNames(Dictionary.DictionaryLine[] lines) {
+        return Arrays.stream(lines).map(l -> new File(l.fileRef.physical).getName()).collect(Collectors.toList());
+    }
+
     public static Dictionary getDictionary(String path, String commonRoot) throws IOException {
         return Dictionary.getDictionary(path, ProjectContext.DEFAULT_READER, commonRoot, true);
     }
@@ -333,6 +333,36 @@ public class UTestBlockPacker extends TestCase {
                 size, zipped.length, (input.length() / (zipped.length * 1.0f)));
     }
 
+    /**
+     * Test that genotype value columns are packed and decode to the same text
+     *
+     * @throws Exception
+     */
+    public void testPackGenotypes() throws Exception {
+        long seed = new Random().nextLong();
+        Random rand = new Random(seed);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("chr1\t").append(1000 + i).append("\tb1\t");
+            for (int j = 0; j < 101; j++) {
+                sb.append((char) ('0' + rand.nextInt(4)));
+            }
+            // Not genotypes, the last row has a value outside 0-3
+            sb.append("\t012301230123012301230123").append(i < 199 ? '0' : '4').append('\n');
+        }
+        final byte[] input = sb.toString().getBytes();
+
+        final byte[] buf = new byte[input.length];
+        final int size = BlockPacker.encode(input, input.length, buf, new HashMap<>(), false, 0, true);
+        assertEquals(30, buf[2 + 3]);
+        assertTrue(buf[2 + 4] != 30);
+        log.info("seed = {}, strlen = {}, encoded len = {}", seed, input.length, size);
+
+        final byte[] bytes = new byte[input.length + 1];
+        final int len = BlockPacker.decode(buf, 0, bytes, 0);
+        assertEquals(sb.toString(), new String(bytes, 0, len));
+    }
+
     /**
      * Generate column data.
      *
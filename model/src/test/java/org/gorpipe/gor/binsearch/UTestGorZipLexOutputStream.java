@@ -120,6 +120,32 @@ public class UTestGorZipLexOutputStream {
         validateNotSoBigFile(path, header, otherCol, CHROMOSOMES, posPerChr);
     }
 
+    @Test
+    public void testParallelCompressionMatchesSerial() throws IOException {
+        final String header = "CHROM\tPOS\tREF\tALT\tCOL";
+        final String otherCols = "A\tC\tblablablablabla";
+        final int posPerChr = 10000;
+        final String serialPath = tf.newFile("serial.gorz").getAbsolutePath();
+        final String parallelPath = tf.newFile("parallel.gorz").getAbsolutePath();
+        for (String path : new String[]{serialPath, parallelPath}) {
+            if (path.equals(parallelPath)) System.setProperty("gor.gorz.parallel.blocks", "4");
+            try {
+                final GorZipLexOutputStream os = new GorZipLexOutputStream(path, false, true, false, false, GorIndexType.CHROMINDEX);
+                os.setHeader(header);
+                for (String chr : CHROMOSOMES) {
+                    for (int pos = 0; pos < posPerChr; ++pos) {
+                        os.write(RowObj.apply(chr + "\t" + pos + "\t" + otherCols));
+                    }
+                }
+                os.close();
+            } finally {
+                System.clearProperty("gor.gorz.parallel.blocks");
+            }
+        }
+        Assert.assertArrayEquals(readAllFile(serialPath), readAllFile(parallelPath));
+        Assert.assertArrayEquals(readAllFile(serialPath + ".gori"), readAllFile(parallelPath + ".gori"));
+    }
+
     @Test
     public void testEmptyKey() throws IOException {
         final String path = tf.newFile("emptyKey.gorz").getAbsolutePath();
@@ -0,0 +1,133 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.driver;
+
+import org.gorpipe.gor.driver.meta.SourceReference;
+import org.gorpipe.gor.driver.meta.SourceReferenceBuilder;
+import org.gorpipe.gor.driver.providers.stream.sources.StreamSource;
+import org.gorpipe.gor.driver.providers.stream.sources.file.FileSource;
+import org.gorpipe.gor.driver.providers.stream.sources.file.FileSourceProvider;
+import org.gorpipe.gor.driver.providers.stream.sources.wrappers.MetadataCacheWrapper;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.time.Duration;
+
+public class UTestDataSourceMetadataCache {
+
+    @Rule
+    public TemporaryFolder workDir = new TemporaryFolder();
+
+    private static StreamSource cached(DataSourceMetadataCache cache, File file, boolean writeSource) {
+        SourceReference ref = new SourceReferenceBuilder(file.getAbsolutePath()).writeSource(writeSource).build();
+        return new MetadataCacheWrapper(cache, new FileSource(ref));
+    }
+
+    @Test
+    public void testNegativeAnswerIsCachedUntilWrittenThroughDriver() throws IOException {
+        DataSourceMetadataCache cache = new DataSourceMetadataCache(Duration.ofMinutes(10), Duration.ofMinutes(10), 100);
+        File file = new File(workDir.getRoot(), "negative.gor");
+
+        Assert.assertFalse(cached(cache, file, false).exists());
+        Files.write(file.toPath(), "Chrom\tPos\n".getBytes());
+        // Written behind the back of the driver, the negative answer is kept until it expires
+        Assert.assertFalse(cached(cache, file, false).exists());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.getHitCount());
+
+        try (OutputStream out = cached(cache, file, true).getOutputStream()) {
+            out.write("Chrom\tPos\nchr1\t1\n".getBytes());
+        }
+        Assert.assertTrue(cached(cache, file, false).exists());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testNegativeTtl() throws IOException {
+        DataSourceMetadataCache cache = new DataSourceMetadataCache(Duration.ofMinutes(10), Duration.ZERO, 100);
+        File file = new File(workDir.getRoot(), "negativettl.gor");
+
+        Assert.assertFalse(cached(cache, file, false).exists());
+        Files.write(file.toPath(), "Chrom\tPos\n".getBytes());
+        Assert.assertTrue(cached(cache, file, false).exists());
+        Assert.assertTrue(cached(cache, file, false).exists());
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testMetadataIsCachedUntilInvalidated() throws IOException {
+        DataSourceMetadataCache cache = new DataSourceMetadataCache(Duration.ofMinutes(10), Duration.ofSeconds(5), 100);
+        File file = workDir.newFile("metadata.gor");
+        Files.write(file.toPath(), "Chrom\tPos\n".getBytes());
+
+        String uniqueId = cached(cache, file, false).getSourceMetadata().getUniqueId();
+        Assert.assertTrue(file.setLastModified(file.lastModified() - 60000));
+        Assert.assertEquals(uniqueId, cached(cache, file, false).getSourceMetadata().getUniqueId());
+
+        cached(cache, file, true).delete();
+        Assert.assertFalse(cached(cache, file, false).exists());
+        Assert.assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void testExistsAndFileExistsAreCachedApart() throws IOException {
+        DataSourceMetadataCache cache = new DataSourceMetadataCache(Duration.ofMinutes(10), Duration.ofMinutes(10), 100);
+        File dir = workDir.newFolder("prefix");
+        SourceReference ref = new SourceReferenceBuilder(dir.getAbsolutePath()).build();
+        // Like an object store, a directory exists but is not a file
+        StreamSource source = new MetadataCacheWrapper(cache, new FileSource(ref) {
+            @Override
+            public boolean fileExists() {
+                return Files.isRegularFile(dir.toPath());
+            }
+        });
+
+        Assert.assertTrue(source.exists());
+        Assert.assertFalse(source.fileExists());
+        Assert.assertTrue(source.exists());
+        Assert.assertFalse(source.fileExists());
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void testReadLinkThroughCacheWrapper() throws IOException {
+        DataSourceMetadataCache cache = new DataSourceMetadataCache(Duration.ofMinutes(10), Duration.ofMinutes(10), 100);
+        File link = workDir.newFile("data.gor.link");
+        Files.write(link.toPath(), "/some/where/data.gor\n".getBytes());
+
+        Assert.assertEquals("/some/where/data.gor", new FileSourceProvider().readLink(cached(cache, link, false)));
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        Assert.assertNull(DataSourceMetadataCache.fromConfig(GorDriverFactory.fromConfig().config()));
+    }
+}
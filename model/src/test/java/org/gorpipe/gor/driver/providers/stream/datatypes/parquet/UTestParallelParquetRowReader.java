@@ -0,0 +1,114 @@
+package org.gorpipe.gor.driver.providers.stream.datatypes.parquet;
+
+import org.apache.hadoop.fs.Path;
+import org.gorpipe.gor.model.Row;
+import org.gorpipe.model.gor.RowObj;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UTestParallelParquetRowReader {
+    private static final int BATCHES = 5;
+    private static final int BATCH_ROWS = 10;
+
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger maxOpen = new AtomicInteger();
+
+    private List<ParallelParquetRowReader.RowGroup> rowGroups(String file, int count) {
+        List<ParallelParquetRowReader.RowGroup> rowGroups = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rowGroups.add(new ParallelParquetRowReader.RowGroup(new Path(file), null, i, i + 1));
+        }
+        return rowGroups;
+    }
+
+    /**
+     * Rows of a row group have the row group index as position and the batch and row as the third column
+     */
+    private ParallelParquetRowReader.BatchDecoder decoder(ParallelParquetRowReader.RowGroup rowGroup) {
+        maxOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+        return new ParallelParquetRowReader.BatchDecoder() {
+            int batch = 0;
+
+            @Override
+            public List<Row> next() {
+                if (batch == BATCHES) return null;
+                List<Row> rows = new ArrayList<>();
+                for (int r = 0; r < BATCH_ROWS; r++) {
+                    rows.add(RowObj.apply(rowGroup.path.getName() + "\t" + rowGroup.start + "\t" + (batch * BATCH_ROWS + r)));
+                }
+                batch++;
+                return rows;
+            }
+
+            @Override
+            public void close() {
+                open.decrementAndGet();
+            }
+        };
+    }
+
+    @Test
+    public void testOrderedReadersShareBudget() {
+        Semaphore budget = new Semaphore(2);
+        List<ParallelParquetRowReader> readers = new ArrayList<>();
+        for (String file : new String[]{"chr1", "chr2", "chr3", "chr4"}) {
+            readers.add(new ParallelParquetRowReader(rowGroups(file, 8), this::decoder, budget, true));
+        }
+        // Read the files alternately, as a merge would
+        int[] expected = new int[readers.size()];
+        boolean any = true;
+        while (any) {
+            any = false;
+            for (int i = 0; i < readers.size(); i++) {
+                ParallelParquetRowReader reader = readers.get(i);
+                if (reader.row == null) continue;
+                Row row = reader.next();
+                Assert.assertEquals("chr" + (i + 1), row.chr);
+                Assert.assertEquals(expected[i] / (BATCHES * BATCH_ROWS), row.pos);
+                Assert.assertEquals(String.valueOf(expected[i] % (BATCHES * BATCH_ROWS)), row.colAsString(2).toString());
+                expected[i]++;
+                if (!reader.hasNext()) reader.row = null;
+                any = true;
+            }
+        }
+        for (int count : expected) {
+            Assert.assertEquals(8 * BATCHES * BATCH_ROWS, count);
+        }
+        // A row group read on the reader thread for each reader, and the ones decoded ahead with a permit
+        Assert.assertTrue("Open row groups " + maxOpen.get(), maxOpen.get() <= readers.size() + 2);
+        Assert.assertEquals(0, open.get());
+        Assert.assertEquals(2, budget.availablePermits());
+    }
+
+    @Test
+    public void testUnorderedReadsAllRows() {
+        Semaphore budget = new Semaphore(3);
+        List<ParallelParquetRowReader.RowGroup> rowGroups = rowGroups("chrN", 20);
+        ParallelParquetRowReader reader = new ParallelParquetRowReader(rowGroups, this::decoder, budget, false);
+        int[] counts = new int[rowGroups.size()];
+        if (reader.row != null) {
+            do {
+                counts[reader.next().pos]++;
+            } while (reader.hasNext());
+        }
+        for (int count : counts) {
+            Assert.assertEquals(BATCHES * BATCH_ROWS, count);
+        }
+        Assert.assertTrue("Open row groups " + maxOpen.get(), maxOpen.get() <= 4);
+        Assert.assertEquals(3, budget.availablePermits());
+    }
+
+    @Test
+    public void testCloseReleasesBudget() {
+        Semaphore budget = new Semaphore(2);
+        ParallelParquetRowReader reader = new ParallelParquetRowReader(rowGroups("chr1", 8), this::decoder, budget, true);
+        Assert.assertTrue(reader.hasNext());
+        reader.close();
+        Assert.assertEquals(2, budget.availablePermits());
+    }
+}
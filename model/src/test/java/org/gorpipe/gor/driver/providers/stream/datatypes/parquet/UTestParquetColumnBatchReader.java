@@ -0,0 +1,94 @@
+package org.gorpipe.gor.driver.providers.stream.datatypes.parquet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.io.api.Binary;
+import org.gorpipe.gor.driver.meta.SourceReference;
+import org.gorpipe.gor.driver.providers.stream.StreamSourceFile;
+import org.gorpipe.gor.driver.providers.stream.sources.file.FileSource;
+import org.gorpipe.gor.model.DriverBackedFileReader;
+import org.gorpipe.gor.session.GorSession;
+import org.gorpipe.gor.session.ProjectContext;
+import org.gorpipe.gor.session.SystemContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class UTestParquetColumnBatchReader {
+    private static final String PARQUET_FILE = "../tests/data/parquet/dbsnp_test.parquet";
+
+    private ParquetColumnBatchReader createReader(FilterPredicate predicate) throws IOException {
+        Configuration configuration = new Configuration(true);
+        return new ParquetColumnBatchReader(HadoopInputFile.fromPath(new Path(PARQUET_FILE), configuration),
+                configuration, null, predicate);
+    }
+
+    private List<String> readRows(ParquetColumnBatchReader reader, int batchSize) throws IOException {
+        List<String> rows = new ArrayList<>();
+        ParquetColumnBatch batch = reader.createBatch(batchSize);
+        while (reader.nextBatch(batch)) {
+            Assert.assertTrue(batch.size() <= batchSize);
+            for (int r = 0; r < batch.size(); r++) {
+                StringBuilder sb = new StringBuilder();
+                for (int c = 0; c < batch.numColumns(); c++) {
+                    if (c > 0) sb.append('\t');
+                    batch.appendValue(sb, c, r);
+                }
+                rows.add(sb.toString());
+            }
+        }
+        return rows;
+    }
+
+    private List<String> readRecordRows() throws IOException {
+        GorSession session = new GorSession("dummy");
+        DriverBackedFileReader fileReader = new DriverBackedFileReader("", java.nio.file.Path.of(".").toAbsolutePath().toString());
+        session.init(new ProjectContext.Builder().setFileReader(fileReader).build(), new SystemContext.Builder().build(), null);
+        ParquetFileIterator iterator = new ParquetFileIterator(new StreamSourceFile(new FileSource(new SourceReference(PARQUET_FILE))));
+        iterator.init(session);
+        List<String> rows = new ArrayList<>();
+        while (iterator.hasNext()) {
+            rows.add(iterator.next().toString());
+        }
+        iterator.close();
+        session.close();
+        return rows;
+    }
+
+    @Test
+    public void testBatchesMatchRecordReader() throws IOException {
+        List<String> expected = readRecordRows();
+        try (ParquetColumnBatchReader reader = createReader(null)) {
+            Assert.assertTrue(reader.isSupported());
+            Assert.assertEquals(expected, readRows(reader, 10));
+        }
+    }
+
+    @Test
+    public void testRowFilter() throws IOException {
+        FilterPredicate predicate = FilterApi.and(FilterApi.eq(FilterApi.binaryColumn("Chrom"), Binary.fromString("chr12")),
+                FilterApi.gtEq(FilterApi.intColumn("POS"), 60500));
+        try (ParquetColumnBatchReader reader = createReader(predicate)) {
+            ParquetBatchFilter rowFilter = ParquetBatchFilter.compile(predicate, reader.createBatch(0));
+            Assert.assertNotNull(rowFilter);
+            reader.setRowFilter(rowFilter);
+            List<String> rows = readRows(reader, 3);
+            Assert.assertEquals(1, rows.size());
+            Assert.assertEquals("chr12\t60545\tA\tT\trs570991495", rows.get(0));
+        }
+    }
+
+    @Test
+    public void testUnknownColumnIsNotCompiled() throws IOException {
+        FilterPredicate predicate = FilterApi.eq(FilterApi.binaryColumn("NotAColumn"), Binary.fromString("x"));
+        try (ParquetColumnBatchReader reader = createReader(null)) {
+            Assert.assertNull(ParquetBatchFilter.compile(predicate, reader.createBatch(0)));
+        }
+    }
+}
@@ -5,6 +5,12 @@ import ch.qos.logback.classic.LoggerContext;
 import gorsat.Commands.Analysis;
 import gorsat.ScalaTestUtils;
 import gorsat.TestUtils;
+import gorsat.parquet.GorParquetWriteSupport;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
 import org.gorpipe.exceptions.GorSystemException;
 import org.gorpipe.gor.model.DriverBackedFileReader;
 import org.gorpipe.gor.session.GorSession;
@@ -31,6 +37,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Base64;
 import java.util.Comparator;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
@@ -250,6 +257,26 @@ public class UTestParquetFileIterator {
                 "chr17\t460\tG\tA\trs554808397\n", result);
     }
 
+    @Test
+    public void testPushdownWhereCompound() {
+        String where = " | where (Chrom = 'chr12' or chrom = 'chrX') and len(reference) = 1 and not(pos <= 60200)";
+        String expected = TestUtils.runGorPipe("gor ../tests/data/gor/dbsnp_test.gor" + where);
+        String result = TestUtils.runGorPipe("gor ../tests/data/parquet/dbsnp_test.parquet" + where);
+        Assert.assertEquals("Wrong result from parquet pushdown query", expected, result);
+    }
+
+    @Test
+    public void seekWithEnd() throws IOException {
+        StreamSourceFile file = createStreamSourceFile("../tests/data/parquet/dbsnp_test.parquet");
+        ParquetFileIterator iterator = new ParquetFileIterator(file);
+        iterator.init(gorSession);
+
+        Assert.assertTrue(iterator.seek("chr22", 0, 16050100));
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals("Gor line after seek not correct", "chr22\t16050036\tA\tC\trs374742143", iterator.next().toString());
+        Assert.assertFalse(iterator.hasNext());
+    }
+
     @Test
     public void testParquetBigInt() throws IOException {
         String parqB64 = "UEFSMRUAFSwVLiwVBBUAFQYVCBwYEAAAAAAAAAACYp9m4MUwAAAYEAAAAAAAAAACYp9m4MUwAAAWAigQAAAAAAAAAAJin2bgxTAAABgQAAAAAAAAAAJin2bgxTAAAAAAABYQAgAAAAMBBTAAAAAAAmKfZuDFMAAAFQIZLEgMc3Bhcmtfc2NoZW1hFQIAFQ4VIBUCGA92YWx1ZV9hc19udW1iZXIlChUkFUwAFgQZHBkcJggcFQ4ZNQAGCBkYD3ZhbHVlX2FzX251bWJlchUCFgQW5gEW6AEmCDwYEAAAAAAAAAACYp9m4MUwAAAYEAAAAAAAAAACYp9m4MUwAAAWAigQAAAAAAAAAAJin2bgxTAAABgQAAAAAAAAAAJin2bgxTAAAAAZHBUAFQAVAgAAABbmARYEABksGBhvcmcuYXBhY2hlLnNwYXJrLnZlcnNpb24YBTMuMS4yABgpb3JnLmFwYWNoZS5zcGFyay5zcWwucGFycXVldC5yb3cubWV0YWRhdGEYbXsidHlwZSI6InN0cnVjdCIsImZpZWxkcyI6W3sibmFtZSI6InZhbHVlX2FzX251bWJlciIsInR5cGUiOiJkZWNpbWFsKDM4LDE4KSIsIm51bGxhYmxlIjp0cnVlLCJtZXRhZGF0YSI6e319XX0AGEpwYXJxdWV0LW1yIHZlcnNpb24gMS4xMC4xIChidWlsZCBhODlkZjhmOTkzMmI2ZWY2NjMzZDA2MDY5ZTUwYzliNzk3MGJlYmQxKRkcHAAAAM8BAABQQVIx";
@@ -319,6 +346,89 @@ public class UTestParquetFileIterator {
         }
     }
 
+    @Test
+    public void testParquetWriteBloomFilterAndRange() throws IOException {
+        Path parquetWrite = Files.createTempFile("write",".parquet");
+        try {
+            TestUtils.runGorPipe("gor ../tests/data/gor/dbsnp_test.gor | write -bloom differentrsIDs " + parquetWrite.toAbsolutePath());
+            try (ParquetFileReader reader = ParquetFileReader.open(HadoopInputFile.fromPath(
+                    new org.apache.hadoop.fs.Path(parquetWrite.toAbsolutePath().toString()), new Configuration()))) {
+                String range = reader.getFooter().getFileMetaData().getKeyValueMetaData().get(GorParquetWriteSupport.RANGE_KEY);
+                Assert.assertNotNull("Missing genomic range in parquet footer", range);
+                Assert.assertTrue(range, range.startsWith("chr1:10179-"));
+                BlockMetaData block = reader.getFooter().getBlocks().get(0);
+                for (ColumnChunkMetaData column : block.getColumns()) {
+                    boolean bloom = column.getPath().toDotString().equals("differentrsIDs");
+                    Assert.assertEquals("Bloom filter for " + column.getPath(), bloom, reader.readBloomFilter(column) != null);
+                }
+            }
+            String rereadResult = TestUtils.runGorPipe("gor "+ parquetWrite.toAbsolutePath() +" | top 1");
+            Assert.assertEquals("Wrong content in written parquet file", "Chrom\tPOS\treference\tallele\tdifferentrsIDs\n" +
+                    "chr1\t10179\tC\tCC\trs367896724\n", rereadResult);
+        } finally {
+            if(Files.exists(parquetWrite)) Files.delete(parquetWrite);
+        }
+    }
+
+    @Test
+    public void testParquetParallelWrites() throws IOException {
+        Path tmpdir = Files.createTempDirectory("parallel");
+        String query = "gorrows -p chr1:1-20000 | calc part mod(pos,3) | calc v 'value'+str(pos) | write ";
+        try {
+            TestUtils.runGorPipe(query + tmpdir.resolve("sequential.parquet"));
+            TestUtils.runGorPipe(query + "-f part -d " + tmpdir.resolve("sequential_fork.parquet"));
+            System.setProperty("gor.parquet.parallel.writes", "2");
+            try {
+                TestUtils.runGorPipe(query + tmpdir.resolve("parallel.parquet"));
+                TestUtils.runGorPipe(query + "-f part -d " + tmpdir.resolve("parallel_fork.parquet"));
+            } finally {
+                System.clearProperty("gor.parquet.parallel.writes");
+            }
+
+            String expected = TestUtils.runGorPipe("gor " + tmpdir.resolve("sequential.parquet"));
+            Assert.assertEquals(20001, expected.split("\n").length);
+            Assert.assertEquals("Rows written in parallel should be in order", expected,
+                    TestUtils.runGorPipe("gor " + tmpdir.resolve("parallel.parquet")));
+            Assert.assertEquals("Forked rows written in parallel should be in order",
+                    TestUtils.runGorPipe("gor " + tmpdir.resolve("sequential_fork.parquet")),
+                    TestUtils.runGorPipe("gor " + tmpdir.resolve("parallel_fork.parquet")));
+        } finally {
+            Files.walk(tmpdir).sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testParquetRowGroupSpan() throws IOException {
+        Path tmpdir = Files.createTempDirectory("span");
+        String query = "gorrows -p chr1:1-500000 | calc v str(pos)+'abcdefghijklmnopqrst' | write ";
+        try {
+            TestUtils.runGorPipe(query + tmpdir.resolve("default.parquet"));
+            // About 40 bytes per base, so row groups of about 2MB
+            System.setProperty("gor.parquet.rowgroup.span", "50000");
+            try {
+                TestUtils.runGorPipe(query + tmpdir.resolve("span.parquet"));
+            } finally {
+                System.clearProperty("gor.parquet.rowgroup.span");
+            }
+
+            Assert.assertEquals("Default row group size should hold all the rows", 1, rowGroups(tmpdir.resolve("default.parquet")).size());
+            List<BlockMetaData> spanGroups = rowGroups(tmpdir.resolve("span.parquet"));
+            Assert.assertTrue("Row groups should cover the span, found " + spanGroups.size(), spanGroups.size() > 1);
+            Assert.assertEquals(500000, spanGroups.stream().mapToLong(BlockMetaData::getRowCount).sum());
+            Assert.assertEquals(TestUtils.runGorPipe("gor " + tmpdir.resolve("default.parquet")),
+                    TestUtils.runGorPipe("gor " + tmpdir.resolve("span.parquet")));
+        } finally {
+            Files.walk(tmpdir).sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static List<BlockMetaData> rowGroups(Path parquetFile) throws IOException {
+        try (ParquetFileReader reader = ParquetFileReader.open(HadoopInputFile.fromPath(
+                new org.apache.hadoop.fs.Path(parquetFile.toAbsolutePath().toString()), new Configuration()))) {
+            return reader.getFooter().getBlocks();
+        }
+    }
+
     @Test
     public void testNorParquetWrite() throws IOException {
         Path parquetWrite = Files.createTempFile("write",".parquet");
@@ -402,6 +512,49 @@ public class UTestParquetFileIterator {
     }
 
 
+    @Test
+    public void testPartitionedParquetParallelRowGroups() throws IOException {
+        Path tmpdir = null;
+        try {
+            tmpdir = Files.createTempDirectory("mu");
+            Path tmpparquet = tmpdir.resolve("fork.parquet");
+            TestUtils.runGorPipe("gor ../tests/data/gor/dbsnp_test.gor | write -f Chrom -d " + tmpparquet);
+            String expected = TestUtils.runGorPipe("gor " + tmpparquet);
+            String expectedNor = TestUtils.runGorPipe("nor " + tmpparquet + " | sort -c #1,#2,#3");
+            System.setProperty("gor.parquet.parallel.rowgroups", "2");
+            try {
+                Assert.assertEquals("wrong result from parallel row group read", expected, TestUtils.runGorPipe("gor " + tmpparquet));
+                Assert.assertEquals("wrong result from parallel row group nor read", expectedNor,
+                        TestUtils.runGorPipe("nor " + tmpparquet + " | sort -c #1,#2,#3"));
+            } finally {
+                System.clearProperty("gor.parquet.parallel.rowgroups");
+            }
+        } finally {
+            if(tmpdir!=null) Files.walk(tmpdir).sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                } catch(Exception e) {
+                    // Ignore
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testPlainParquetParallelRowGroups() {
+        String file = "../tests/data/parquet/dbsnp_test.parquet";
+        String expected = TestUtils.runGorPipe("gor " + file);
+        String expectedRange = TestUtils.runGorPipe("gor -p chr1:10000-1000000 " + file);
+        System.setProperty("gor.parquet.parallel.rowgroups", "1");
+        try {
+            Assert.assertEquals("wrong result from parallel row group read", expected, TestUtils.runGorPipe("gor " + file));
+            Assert.assertEquals("wrong result from parallel row group range read", expectedRange,
+                    TestUtils.runGorPipe("gor -p chr1:10000-1000000 " + file));
+        } finally {
+            System.clearProperty("gor.parquet.parallel.rowgroups");
+        }
+    }
+
     private StreamSourceFile createStreamSourceFile(String fileUrl) {
         SourceReference sourceReference = new SourceReference(fileUrl);
         StreamSource fileSource = new FileSource(sourceReference);
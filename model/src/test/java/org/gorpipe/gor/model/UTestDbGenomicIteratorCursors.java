@@ -0,0 +1,161 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.model;
+
+import com.nextcode.gor.driver.utils.DatabaseHelper;
+import org.gorpipe.gor.driver.providers.rows.sources.db.DbScope;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class UTestDbGenomicIteratorCursors {
+    private static final String SOURCE = "rdacursors";
+    private static final String[] WIDE_CHROMOSOMES = {"chr1", "chr10", "chr2"};
+    private static final int WIDE_ROWS_PER_CHROMOSOME = 10000;
+
+    @BeforeClass
+    public static void setup() throws IOException, ClassNotFoundException, SQLException {
+        String[] paths = DatabaseHelper.createRdaDatabase();
+        try (Connection connection = DriverManager.getConnection("jdbc:derby:" + paths[1]);
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO RDA.VARIANT_ANNOTATIONS VALUES\n" +
+                    "('10004','chr2',5,'foo6','rda6','comment11')," +
+                    "('10004','chr10',7,'foo7','rda7','comment12')," +
+                    "('10004','chr2',1,'foo8','rda8','comment13')," +
+                    "('10005','chr10',2,'bar6','rda6','comment14')");
+            // Enough rows per chromosome to fill the batch queues of the cursors
+            statement.executeUpdate("CREATE TABLE RDA.WIDE_ANNOTATIONS (PROJECT_ID VARCHAR(30), CHROMO VARCHAR(10), POS INT, PN VARCHAR(30))");
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO RDA.WIDE_ANNOTATIONS VALUES ('10004',?,?,?)")) {
+                for (String chromosome : WIDE_CHROMOSOMES) {
+                    for (int pos = 0; pos < WIDE_ROWS_PER_CHROMOSOME; pos++) {
+                        insert.setString(1, chromosome);
+                        insert.setInt(2, pos);
+                        insert.setString(3, "pn" + pos);
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+            }
+        }
+        DbConnection.install(new DbConnection(SOURCE, "jdbc:derby:" + paths[1], "rda", "beta3"));
+    }
+
+    private GenomicIterator createIterator() {
+        return new DbGenomicIterator(null, SOURCE, "rda.v_variant_annotations", "chromo", "pos",
+                DbScope.parse("dbscope=project_id#int#10004|||"), null);
+    }
+
+    private GenomicIterator createWideIterator() {
+        return new DbGenomicIterator(null, SOURCE, "rda.wide_annotations", "chromo", "pos",
+                DbScope.parse("dbscope=project_id#int#10004|||"), null);
+    }
+
+    private List<String> readAll(GenomicIterator iterator) {
+        List<String> rows = new ArrayList<>();
+        while (iterator.hasNext()) {
+            rows.add(iterator.next().toString());
+        }
+        return rows;
+    }
+
+    @Test
+    public void testHeaderWithoutQuery() {
+        try (GenomicIterator iterator = createIterator()) {
+            Assert.assertEquals("CHROMO\tPOS\tPN\tFOO\tCOMMENT", iterator.getHeader());
+            Assert.assertEquals("chr1\t0\tfoo1\trda1\tcomment1", iterator.next().toString());
+        }
+    }
+
+    @Test
+    public void testParallelCursorsReturnOrderedRows() {
+        List<String> expected;
+        try (GenomicIterator iterator = createIterator()) {
+            expected = readAll(iterator);
+        }
+        Assert.assertEquals(8, expected.size());
+        Assert.assertEquals("chr1\t0\tfoo1\trda1\tcomment1", expected.get(0));
+        Assert.assertEquals("chr2\t5\tfoo6\trda6\tcomment11", expected.get(7));
+
+        System.setProperty("gor.db.parallel.cursors", "2");
+        try (GenomicIterator iterator = createIterator()) {
+            Assert.assertEquals(expected, readAll(iterator));
+        } finally {
+            System.clearProperty("gor.db.parallel.cursors");
+        }
+    }
+
+    @Test
+    public void testSeekWithParallelCursors() {
+        System.setProperty("gor.db.parallel.cursors", "2");
+        try (GenomicIterator iterator = createIterator()) {
+            Assert.assertTrue(iterator.hasNext());
+            Assert.assertTrue(iterator.seek("chr2", 2));
+            Assert.assertEquals("chr2\t5\tfoo6\trda6\tcomment11", iterator.next().toString());
+            Assert.assertFalse(iterator.hasNext());
+        } finally {
+            System.clearProperty("gor.db.parallel.cursors");
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testIteratorsReadAlternatelyOnOneThread() {
+        // More cursors than pool workers, so cursors of later iterators wait behind full queues of earlier ones
+        System.setProperty("gor.db.parallel.cursors", "4");
+        List<GenomicIterator> iterators = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                iterators.add(createWideIterator());
+            }
+            int[] counts = new int[iterators.size()];
+            boolean reading = true;
+            while (reading) {
+                reading = false;
+                for (int i = 0; i < iterators.size(); i++) {
+                    GenomicIterator iterator = iterators.get(i);
+                    if (iterator.hasNext()) {
+                        Row row = iterator.next();
+                        int expected = counts[i]++;
+                        Assert.assertEquals(WIDE_CHROMOSOMES[expected / WIDE_ROWS_PER_CHROMOSOME], row.chr);
+                        Assert.assertEquals(expected % WIDE_ROWS_PER_CHROMOSOME, row.pos);
+                        reading = true;
+                    }
+                }
+            }
+            for (int count : counts) {
+                Assert.assertEquals(WIDE_CHROMOSOMES.length * WIDE_ROWS_PER_CHROMOSOME, count);
+            }
+        } finally {
+            iterators.forEach(GenomicIterator::close);
+            System.clearProperty("gor.db.parallel.cursors");
+        }
+    }
+}
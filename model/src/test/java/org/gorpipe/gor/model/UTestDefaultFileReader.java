@@ -158,6 +158,23 @@ public class UTestDefaultFileReader {
         assertFalse(signature.isEmpty());
     }
 
+    @Test
+    public void getDictionarySignatureWithTags() throws IOException {
+        File a = FileTestUtils.createTempFile(workDir.getRoot(), "a.gor", "Chrom\tPos\n");
+        File b = FileTestUtils.createTempFile(workDir.getRoot(), "b.gor", "Chrom\tPos\n");
+        File dict = FileTestUtils.createTempFile(workDir.getRoot(), "test.gord", "a.gor\tA\nb.gor\tB\n");
+
+        final String signature = reader.getDictionarySignature(dict.getAbsolutePath(), new String[]{"A"});
+        assertFalse(signature.isEmpty());
+        assertEquals(signature, reader.getDictionarySignature(dict.getAbsolutePath(), new String[]{"A"}));
+
+        // Touching a file outside the tags does not change the signature, touching a tagged file does
+        assertTrue(b.setLastModified(b.lastModified() + 10000));
+        assertEquals(signature, reader.getDictionarySignature(dict.getAbsolutePath(), new String[]{"A"}));
+        assertTrue(a.setLastModified(a.lastModified() + 10000));
+        assertNotEquals(signature, reader.getDictionarySignature(dict.getAbsolutePath(), new String[]{"A"}));
+    }
+
     @Test
     public void getFileSignature() throws IOException {
         final String fileSignature = reader.getFileSignature(getFile().getAbsolutePath());
@@ -0,0 +1,107 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.model;
+
+import org.gorpipe.model.gor.RowObj;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UTestPackedGenotypes {
+
+    @Test
+    public void testPack() {
+        String values = "0123012301230123012301230123012301230";
+        PackedGenotypes packed = PackedGenotypes.pack(values, 0, values.length(), 1, null);
+        Assert.assertNotNull(packed);
+        Assert.assertEquals(values.length(), packed.size());
+        for (int i = 0; i < values.length(); i++) {
+            Assert.assertEquals(values.charAt(i), packed.charAt(i));
+        }
+        StringBuilder sb = new StringBuilder();
+        packed.appendTo(sb, (char) 0);
+        Assert.assertEquals(values, sb.toString());
+
+        packed.set(33, 0);
+        Assert.assertEquals(0, packed.get(33));
+        Assert.assertEquals(2, packed.get(34));
+    }
+
+    @Test
+    public void testPackWithSeparator() {
+        PackedGenotypes packed = PackedGenotypes.pack("x\t2,1,0,3", 2, 4, 2, null);
+        Assert.assertNotNull(packed);
+        Assert.assertEquals("2103", toString(packed));
+
+        // Reuse a larger holder for fewer values
+        PackedGenotypes reused = PackedGenotypes.pack("33", 0, 2, 1, packed);
+        Assert.assertSame(packed, reused);
+        Assert.assertEquals("33", toString(reused));
+    }
+
+    @Test
+    public void testNotHardCalls() {
+        Assert.assertNull(PackedGenotypes.pack("01240", 0, 5, 1, null));
+        Assert.assertNull(PackedGenotypes.pack("0 1", 0, 3, 1, null));
+        Assert.assertNull(PackedGenotypes.pack("0123", 0, 5, 1, null));
+        Assert.assertNull(PackedGenotypes.pack("0123\t0", 0, 4, 6, 2, null));
+    }
+
+    @Test
+    public void testPackToBytes() {
+        String values = "3210321";
+        byte[] packed = new byte[PackedGenotypes.packedLength(values.length())];
+        Assert.assertEquals(2, packed.length);
+        Assert.assertTrue(PackedGenotypes.packTo(values, packed, 0));
+        byte[] text = new byte[values.length()];
+        PackedGenotypes.unpackTo(packed, 0, values.length(), text, 0);
+        Assert.assertEquals(values, new String(text));
+
+        Assert.assertFalse(PackedGenotypes.packTo("0125", packed, 0));
+    }
+
+    @Test
+    public void testAttach() {
+        Row row = RowObj.apply("chr1\t100\tb1\t0120");
+        PackedGenotypes packed = PackedGenotypes.attachColumn(row, 3);
+        Assert.assertNotNull(packed);
+        Assert.assertEquals("0120", toString(packed));
+        Assert.assertSame(packed, PackedGenotypes.of(row, 3));
+        Assert.assertNull(PackedGenotypes.of(row, 2));
+
+        // Rows built from the row do not carry the values
+        Row copy = row.copyRow();
+        Assert.assertNull(PackedGenotypes.of(copy, 3));
+
+        // Nor does the row once the content is replaced
+        row.setColumn(1, "3333");
+        Assert.assertNull(PackedGenotypes.of(row, 3));
+
+        Assert.assertNull(PackedGenotypes.attachColumn(RowObj.apply("chr1\t100\tb1\t0124"), 3));
+    }
+
+    private static String toString(PackedGenotypes packed) {
+        StringBuilder sb = new StringBuilder();
+        packed.appendTo(sb, (char) 0);
+        return sb.toString();
+    }
+}
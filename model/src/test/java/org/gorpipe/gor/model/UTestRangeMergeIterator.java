@@ -33,11 +33,13 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -406,6 +408,34 @@ public class UTestRangeMergeIterator {
         }
     }
 
+    @Test
+    public void testOpenerAndInsertSource() {
+        final AtomicInteger opened = new AtomicInteger();
+        final RangeMergeIterator rmit = new RangeMergeIterator(sourceRefs, ref -> {
+            opened.incrementAndGet();
+            try {
+                final GenomicIterator it = ref.iterate(new DefaultChromoLookup(), null, null);
+                it.init(null);
+                it.setSourceName(new File(ref.file).getName());
+                return it;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, true);
+
+        Assert.assertTrue(rmit.isSourceAlreadyInserted());
+        Assert.assertTrue(rmit.getHeader().endsWith("\tSource"));
+        final int openedForHeader = opened.get();
+
+        Assert.assertTrue(rmit.seek("chr9", 258872));
+        final String row = rmit.next().toString();
+        Assert.assertTrue(row.startsWith("chr9\t258872\tblablabla\tchr"));
+        Assert.assertTrue(row.endsWith(".gor"));
+        Assert.assertTrue("Only sources overlapping the seek position should be opened",
+                opened.get() - openedForHeader < sourceRefs.size());
+        rmit.close();
+    }
+
     private static int compareKeys(String chr1, int pos1, String chr2, int pos2) {
         final int chrCmp = chr1.compareTo(chr2);
         if (chrCmp != 0) return chrCmp;
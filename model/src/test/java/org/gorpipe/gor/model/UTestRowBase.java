@@ -22,9 +22,32 @@
 
 package org.gorpipe.gor.model;
 
+import org.gorpipe.gor.util.RowOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
 public class UTestRowBase extends UTestRowImplementations {
 
     public Row createRow(CharSequence input) {
         return new RowBase(input);
     }
+
+    @Test
+    public void writeRowToRowOutputStream() throws IOException {
+        Row r = createRow("chr1\t1\tthis\tis\t\u00e1\ttest");
+        Row twoColumns = createRow("chr1\t2");
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        try (RowOutputStream out = new RowOutputStream(target)) {
+            r.writeRowToStream(out);
+            out.write('\n');
+            r.writeNorRowToStream(out);
+            out.write('\n');
+            twoColumns.writeNorRowToStream(out);
+        }
+        String expected = r.toString() + "\n" + r.otherCols() + "\n";
+        Assert.assertArrayEquals(expected.getBytes(), target.toByteArray());
+    }
 }
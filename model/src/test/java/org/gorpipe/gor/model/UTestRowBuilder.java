@@ -0,0 +1,76 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.model;
+
+import org.gorpipe.model.gor.RowObj;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UTestRowBuilder {
+
+    private static void assertSameColumns(Row expected, Row actual) {
+        Assert.assertEquals(expected.getAllCols().toString(), actual.getAllCols().toString());
+        Assert.assertArrayEquals(expected.getSplitArray(), actual.getSplitArray());
+        Assert.assertEquals(expected.chr, actual.chr);
+        Assert.assertEquals(expected.pos, actual.pos);
+    }
+
+    @Test
+    public void testBuild() {
+        RowBuilder builder = new RowBuilder(4);
+        builder.add("chr1").add(100).addColumns("a\t\tb").add('c');
+        builder.column().append(1.5);
+        builder.add(12345678901L).add("");
+
+        Row row = builder.build();
+        assertSameColumns(RowObj.apply("chr1\t100\ta\t\tb\tc\t1.5\t12345678901\t"), row);
+        Assert.assertEquals("b", row.colAsString(4).toString());
+    }
+
+    @Test
+    public void testReuse() {
+        RowBuilder builder = new RowBuilder();
+        builder.add("chr2").add(5).add("x");
+        Row first = builder.build("chr2", 5);
+        int prefix = builder.numColumns();
+        builder.add("y");
+        Row second = builder.build();
+        builder.truncate(prefix).add("z");
+        Row third = builder.build();
+
+        assertSameColumns(RowObj.apply("chr2\t5\tx"), first);
+        assertSameColumns(RowObj.apply("chr2\t5\tx\ty"), second);
+        assertSameColumns(RowObj.apply("chr2\t5\tx\tz"), third);
+
+        builder.clear().add("chr3").add(-1);
+        assertSameColumns(RowObj.apply("chr3\t-1"), builder.build());
+    }
+
+    @Test
+    public void testAddRow() {
+        Row base = RowObj.apply("chr1\t10\tA\tC\t");
+        RowBuilder builder = new RowBuilder();
+        builder.addRow(base).add(7);
+        assertSameColumns(RowObj.apply("chr1\t10\tA\tC\t\t7"), builder.build());
+    }
+}
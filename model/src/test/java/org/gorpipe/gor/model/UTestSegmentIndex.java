@@ -0,0 +1,119 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class UTestSegmentIndex {
+
+    private static int bruteForceSeek(String[] chrs, int[] starts, int[] stops, String chr, int pos) {
+        int seek = pos;
+        for (int i = 0; i < starts.length; i++) {
+            if (chrs[i].equals(chr) && stops[i] >= pos) seek = Math.min(seek, starts[i]);
+        }
+        return Math.max(seek, 0);
+    }
+
+    @Test
+    public void testSeekPositionIsSafe() {
+        Random random = new Random(17);
+        int n = 2000;
+        String[] chrs = new String[n];
+        int[] starts = new int[n];
+        int[] stops = new int[n];
+        SegmentIndex index = new SegmentIndex(2, 1000);
+        for (int i = 0; i < n; i++) {
+            chrs[i] = i < n / 2 ? "chr1" : "chr2";
+            starts[i] = random.nextInt(100000);
+            stops[i] = starts[i] + (random.nextInt(50) == 0 ? random.nextInt(20000) : random.nextInt(200));
+            index.add(chrs[i], starts[i], stops[i]);
+        }
+
+        for (int pos = 0; pos < 130000; pos += 97) {
+            for (String chr : new String[]{"chr1", "chr2"}) {
+                int seek = index.seekPosition(chr, pos);
+                Assert.assertTrue(seek <= bruteForceSeek(chrs, starts, stops, chr, pos));
+                Assert.assertTrue(seek <= pos);
+                Assert.assertTrue(seek >= pos - index.getMaxSegSize());
+            }
+        }
+    }
+
+    @Test
+    public void testOneLongSegmentDoesNotRewindEverywhere() {
+        SegmentIndex index = new SegmentIndex(2, 1000);
+        index.add("chr1", 1000, 3001000);
+        for (int start = 10000; start < 5000000; start += 1000) {
+            index.add("chr1", start, start + 100);
+        }
+        Assert.assertEquals(3000000, index.getMaxSegSize());
+        Assert.assertEquals(1000, index.seekPosition("chr1", 2000000));
+        Assert.assertEquals(4000000, index.seekPosition("chr1", 4000050));
+        Assert.assertEquals(1000000, index.seekPosition("chr2", 4000000));
+    }
+
+    @Test
+    public void testPartialIndexFallsBackToMaxSegSize() {
+        SegmentIndex index = new SegmentIndex(2, 1000);
+        index.add("chr1", 5000, 5100);
+        index.add("chr2", 5000, 5500);
+        index.markPartial("chr2");
+        Assert.assertFalse(index.isComplete());
+        Assert.assertEquals(5000, index.seekPosition("chr1", 5050));
+        Assert.assertEquals(9500, index.seekPosition("chr2", 10000));
+        Assert.assertEquals(9500, index.seekPosition("chr3", 10000));
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        SegmentIndex index = new SegmentIndex(3, 500);
+        index.add("chr1", 100, 2000);
+        index.add("chr1", 7000, 7100);
+        index.add("chrX", 300, 400);
+        index.setSignature("sig");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+        SegmentIndex read = SegmentIndex.read(new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(out.toByteArray()), StandardCharsets.UTF_8)));
+
+        Assert.assertEquals(3, read.getStopCol());
+        Assert.assertEquals(500, read.getBinSize());
+        Assert.assertEquals(index.getMaxSegSize(), read.getMaxSegSize());
+        Assert.assertEquals("sig", read.getSignature());
+        Assert.assertTrue(read.isComplete());
+        for (int pos = 0; pos < 8000; pos += 50) {
+            Assert.assertEquals(index.seekPosition("chr1", pos), read.seekPosition("chr1", pos));
+            Assert.assertEquals(index.seekPosition("chrX", pos), read.seekPosition("chrX", pos));
+        }
+    }
+}
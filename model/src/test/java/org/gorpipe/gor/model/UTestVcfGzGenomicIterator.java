@@ -0,0 +1,175 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.model;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.gorpipe.gor.driver.providers.stream.sources.file.FileSource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class UTestVcfGzGenomicIterator {
+
+    @Rule
+    public TemporaryFolder workDir = new TemporaryFolder();
+
+    private final List<String> rows = new ArrayList<>();
+    private File bgzfFile;
+    private File gzFile;
+
+    @Before
+    public void setUp() throws IOException {
+        byte[] content = vcf(new String[]{"1"}, new String[]{"1", "10", "2"}, rows);
+
+        bgzfFile = workDir.newFile("test.vcf.gz");
+        try (OutputStream os = new BlockCompressedOutputStream(bgzfFile)) {
+            os.write(content);
+        }
+        gzFile = workDir.newFile("testplain.vcf.gz");
+        try (OutputStream os = new GZIPOutputStream(new FileOutputStream(gzFile))) {
+            os.write(content);
+        }
+    }
+
+    private static byte[] vcf(String[] contigs, String[] chrs, List<String> rows) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("##fileformat=VCFv4.2\n");
+        for (String contig : contigs) {
+            sb.append("##contig=<ID=").append(contig).append(",length=249250621>\n");
+        }
+        sb.append("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tSAMPLE\n");
+        for (String chr : chrs) {
+            for (int i = 1; i <= 5000; i++) {
+                String row = "\t" + (i * 10) + "\trs" + i + "\tA\tC\t50\tPASS\tAC=" + i + "\tGT\t0/1";
+                rows.add("chr" + chr + row);
+                sb.append(chr).append(row).append('\n');
+            }
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private File bgzf(String name, byte[] content) throws IOException {
+        File file = workDir.newFile(name);
+        try (OutputStream os = new BlockCompressedOutputStream(file)) {
+            os.write(content);
+        }
+        return file;
+    }
+
+    private VcfGzGenomicIterator open(File file) throws IOException {
+        return new VcfGzGenomicIterator(new DefaultChromoLookup(), file.getName(), new FileSource(file.getAbsolutePath(), null), true);
+    }
+
+    private void assertRowsFrom(VcfGzGenomicIterator it, int index, int count) {
+        for (int i = index; i < index + count; i++) {
+            Assert.assertTrue(it.hasNext());
+            Row row = it.next();
+            Assert.assertEquals(rows.get(i), row.toString());
+            Assert.assertEquals(row.chr, row.colAsString(0).toString());
+            Assert.assertEquals(row.pos, row.colAsInt(1));
+        }
+    }
+
+    @Test
+    public void testReadAll() throws IOException {
+        for (File file : new File[]{bgzfFile, gzFile}) {
+            try (VcfGzGenomicIterator it = open(file)) {
+                Assert.assertEquals("CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tVALUES", it.getHeader());
+                assertRowsFrom(it, 0, rows.size());
+                Assert.assertFalse(it.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void testSeek() throws IOException {
+        try (VcfGzGenomicIterator it = open(bgzfFile)) {
+            Assert.assertTrue(it.seek("chr10", 25));
+            assertRowsFrom(it, 5002, 10);
+            Assert.assertTrue(it.seek("chr2", 1));
+            assertRowsFrom(it, 10000, 10);
+            // Back to an indexed block
+            Assert.assertTrue(it.seek("chr10", 40000));
+            assertRowsFrom(it, 8999, 10);
+            // Back before the first row
+            Assert.assertTrue(it.seek("chr1", 0));
+            assertRowsFrom(it, 0, 10);
+            Assert.assertFalse(it.seek("chrX", 1));
+            Assert.assertTrue(it.seek("chr1", 49995));
+            assertRowsFrom(it, 4999, 10);
+        }
+    }
+
+    @Test
+    public void testSeekKaryotypicOrder() throws IOException {
+        rows.clear();
+        File file = bgzf("karyotypic.vcf.gz", vcf(new String[]{"1", "2", "10"}, new String[]{"1", "2", "10"}, rows));
+        try (VcfGzGenomicIterator it = open(file)) {
+            Assert.assertTrue(it.seek("chr10", 25));
+            assertRowsFrom(it, 10002, 10);
+            Assert.assertTrue(it.seek("chr2", 1));
+            assertRowsFrom(it, 5000, 10);
+            Assert.assertTrue(it.seek("chr10", 40000));
+            assertRowsFrom(it, 13999, 10);
+            Assert.assertTrue(it.seek("chr2", 49995));
+            assertRowsFrom(it, 9999, 10);
+            Assert.assertFalse(it.seek("chrX", 1));
+        }
+    }
+
+    @Test
+    public void testSeekRowsNotGroupedByChromosome() throws IOException {
+        rows.clear();
+        File file = bgzf("unordered.vcf.gz", vcf(new String[]{}, new String[]{"1", "2", "1"}, rows));
+        try (VcfGzGenomicIterator it = open(file)) {
+            Assert.assertTrue(it.seek("chr2", 1));
+            assertRowsFrom(it, 5000, 10);
+            Assert.assertTrue(it.seek("chr1", 49995));
+            assertRowsFrom(it, 4999, 10);
+            // Reads the second chr1 block, after which seeks scan from the first row
+            Assert.assertFalse(it.seek("chrX", 1));
+            Assert.assertTrue(it.seek("chr2", 25));
+            assertRowsFrom(it, 5002, 10);
+            Assert.assertTrue(it.seek("chr1", 25));
+            assertRowsFrom(it, 2, 10);
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testSeekPlainGzip() throws IOException {
+        try (VcfGzGenomicIterator it = open(gzFile)) {
+            it.seek("chr1", 100);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+package org.gorpipe.gor.util;
+
+import gorsat.gorsatGorIterator.FileLineIterator;
+import gorsat.gorsatGorIterator.MapAndListUtilities;
+import org.gorpipe.gor.model.DriverBackedFileReader;
+import org.gorpipe.gor.session.LookupTableCache;
+import org.gorpipe.model.gor.RowObj;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UTestLookupTable {
+
+    @Test
+    public void testSameContentAsHashMap() {
+        Random random = new Random(1);
+        LookupTable table = new LookupTable();
+        Map<String, String> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            String key = "key" + random.nextInt(50000) + (i % 97 == 0 ? "\u00e9\u4e2d" : "");
+            String value = "value\t" + i;
+            table.put(key, value);
+            expected.put(key, value);
+        }
+
+        Assert.assertEquals(expected.size(), table.size());
+        for (Map.Entry<String, String> e : expected.entrySet()) {
+            Assert.assertEquals(e.getValue(), table.get(e.getKey()));
+            Assert.assertEquals(e.getValue(), table.get(new StringBuilder(e.getKey())));
+        }
+        Assert.assertNull(table.get("missing"));
+        Assert.assertNull(table.get("key1\u00e9"));
+    }
+
+    @Test
+    public void testIterationInInsertionOrder() {
+        LookupTable table = new LookupTable();
+        table.put("c", "1");
+        table.put("a", "2");
+        table.put("b", "3");
+        table.put("a", "4");
+
+        Iterator<Map.Entry<String, String>> it = table.entrySet().iterator();
+        Assert.assertEquals(Map.entry("c", "1"), it.next());
+        Assert.assertEquals(Map.entry("a", "4"), it.next());
+        Assert.assertEquals(Map.entry("b", "3"), it.next());
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testOverwriteReusesSpace() {
+        LookupTable table = new LookupTable();
+        table.put("a", "12345");
+        long usage = table.getMemoryUsage();
+        for (int i = 0; i < 100000; i++) {
+            table.put("a", i % 2 == 0 ? "1234567890" : "1");
+            table.put("b" + (i % 10), "x" + i);
+        }
+        Assert.assertEquals(11, table.size());
+        Assert.assertEquals("1", table.get("a"));
+        Assert.assertEquals("x99999", table.get("b9"));
+        Assert.assertEquals("Replaced values should not grow the pages", usage, table.getMemoryUsage());
+    }
+
+    @Test
+    public void testFirstPageSizedFromExpectedSize() {
+        Assert.assertTrue(new LookupTable().getMemoryUsage() < 4096);
+        Assert.assertTrue(new LookupTable(100000).getMemoryUsage() >= 1 << 20);
+    }
+
+    @Test
+    public void testBuildMultiLookupTableValueOrder() throws Exception {
+        Path file = Files.createTempFile("multimap", ".tsv");
+        try {
+            Files.write(file, List.of("a\t1", "b\t1", "a\t2", "a\t3", "a\t4", "b\t"));
+            LookupTable table = MapAndListUtilities.buildMultiLookupTable(
+                    new FileLineIterator(file.toString(), new DriverBackedFileReader("")), false, 1, new int[]{1});
+            Assert.assertEquals(List.of("a", "b"), new ArrayList<>(table.keySet()));
+            Assert.assertArrayEquals(new String[]{"3", "1", "2", "4"}, table.asMultiMap().get("a"));
+            Assert.assertArrayEquals(new String[]{"1", ""}, table.asMultiMap().get("b"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testMultiMapView() {
+        LookupTable table = new LookupTable();
+        table.put("a", "1\tx\n2\ty");
+        Assert.assertArrayEquals(new String[]{"1\tx", "2\ty"}, table.asMultiMap().get("a"));
+        Assert.assertNull(table.asMultiMap().get("b"));
+    }
+
+    @Test
+    public void testLookupKeyFromRow() {
+        LookupTable table = new LookupTable();
+        table.put("A\t1", "first");
+        table.put("B\t2", "second");
+
+        LookupKey key = new LookupKey(new int[]{2, 3}, false);
+        Assert.assertTrue(key.set(RowObj.apply("chr1\t1\tA\t1\tx")));
+        Assert.assertEquals("A\t1", key.toString());
+        Assert.assertEquals("first", table.entryValue(table.find(key)));
+        Assert.assertTrue(key.set(RowObj.apply("chr1\t1\tB\t2")));
+        Assert.assertEquals("second", table.entryValue(table.find(key)));
+        Assert.assertTrue(key.set(RowObj.apply("chr1\t1\tb\t2")));
+        Assert.assertEquals(-1, table.find(key));
+        Assert.assertFalse(key.set(RowObj.apply("chr1\t1\tA")));
+    }
+
+    @Test
+    public void testLookupKeyUpperCase() {
+        LookupTable table = new LookupTable();
+        table.put("ABC", "1");
+
+        LookupKey key = new LookupKey(new int[]{2}, true);
+        Assert.assertTrue(key.set(RowObj.apply("chr1\t1\taBc")));
+        Assert.assertEquals(0, table.find(key));
+        Assert.assertFalse("Non ascii keys are upper cased with String.toUpperCase", key.set(RowObj.apply("chr1\t1\tab\u00e9")));
+    }
+
+    @Test
+    public void testAppendValue() {
+        LookupTable table = new LookupTable();
+        table.put("a", "x\ty\u00e9");
+        StringBuilder sb = new StringBuilder("pre\t");
+        table.appendValue(table.find("a"), sb);
+        Assert.assertEquals("pre\tx\ty\u00e9", sb.toString());
+    }
+
+    @Test
+    public void testCacheBuildsOnce() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<LookupTableCache.Reference>> references = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                references.add(executor.submit(() -> LookupTableCache.acquire("UTestLookupTable.testCacheBuildsOnce", () -> {
+                    builds.incrementAndGet();
+                    LookupTable table = new LookupTable();
+                    table.put("a", "1");
+                    return table;
+                })));
+            }
+            LookupTable first = references.get(0).get().getTable();
+            for (Future<LookupTableCache.Reference> reference : references) {
+                Assert.assertSame(first, reference.get().getTable());
+                reference.get().close();
+            }
+            Assert.assertEquals(1, builds.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCacheFailedBuildIsNotCached() {
+        String key = "UTestLookupTable.testCacheFailedBuildIsNotCached";
+        Assert.assertThrows(IllegalStateException.class, () -> LookupTableCache.acquire(key, () -> {
+            throw new IllegalStateException("failed");
+        }));
+        try (LookupTableCache.Reference reference = LookupTableCache.acquire(key, LookupTable::new)) {
+            Assert.assertEquals(0, reference.getTable().size());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *  BEGIN_COPYRIGHT
+ *
+ *  Copyright (C) 2011-2013 deCODE genetics Inc.
+ *  Copyright (C) 2013-2019 WuXi NextCode Inc.
+ *  All Rights Reserved.
+ *
+ *  GORpipe is free software: you can redistribute it and/or modify
+ *  it under the terms of the AFFERO GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  GORpipe is distributed "AS-IS" AND WITHOUT ANY WARRANTY OF ANY KIND,
+ *  INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY,
+ *  NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR PURPOSE. See
+ *  the AFFERO GNU General Public License for the complete license terms.
+ *
+ *  You should have received a copy of the AFFERO GNU General Public License
+ *  along with GORpipe.  If not, see <http://www.gnu.org/licenses/agpl-3.0.html>
+ *
+ *  END_COPYRIGHT
+ */
+
+package org.gorpipe.gor.util;
+
+import org.gorpipe.util.collection.ByteArrayWrapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+public class UTestRowOutputStream {
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(Charset.defaultCharset());
+    }
+
+    @Test
+    public void testWriteChars() throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        try (RowOutputStream out = new RowOutputStream(target, 8)) {
+            out.write("#header\n");
+            out.writeChars("xxchr1\t10\tlonger than the buffer!", 2, 32);
+            out.write('\n');
+            out.write(bytes("chr1\t11\n"));
+            out.write("chr1\t12\tnon-ascii \u00e9\u00f0 end\n");
+        }
+        Assert.assertArrayEquals(bytes("#header\nchr1\t10\tlonger than the buffer\nchr1\t11\nchr1\t12\tnon-ascii \u00e9\u00f0 end\n"), target.toByteArray());
+    }
+
+    @Test
+    public void testWriteCharsToOtherStreams() throws IOException {
+        String text = "chr2\t5\ta\u00e9b";
+
+        ByteArrayWrapper wrapper = new ByteArrayWrapper(4);
+        RowOutputStream.writeChars(wrapper, text, 0, text.length());
+        Assert.assertArrayEquals(bytes(text), Arrays.copyOf(wrapper.getBuffer(), wrapper.size()));
+
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        RowOutputStream.writeChars(plain, text, 5, text.length());
+        Assert.assertArrayEquals(bytes(text.substring(5)), plain.toByteArray());
+    }
+
+    @Test
+    public void testWriteAfterClose() throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        RowOutputStream out = new RowOutputStream(target);
+        out.write("chr1\t1\n");
+        out.close();
+
+        Assert.assertThrows(IOException.class, () -> out.write("chr1\t2\n"));
+        Assert.assertThrows(IOException.class, () -> out.write('\n'));
+        Assert.assertThrows(IOException.class, () -> out.write(bytes("chr1\t3\n")));
+        // Flushing and closing again do nothing
+        out.flush();
+        out.close();
+        Assert.assertArrayEquals(bytes("chr1\t1\n"), target.toByteArray());
+    }
+}
@@ -27,4 +27,106 @@ public class NumericUtils {
         }
     }
 
+
+    /**
+     * Appends {@code value} formatted as {@code String.format("%.<precision>g", value)} would format it with a '.'
+     * decimal separator, without the overhead of parsing the format and creating a formatter.
+     *
+     * @param sb the builder to append to
+     * @param value the value to format
+     * @param precision number of significant digits
+     * @return the builder
+     */
+    public static StringBuilder appendGeneralFormat(StringBuilder sb, double value, int precision) {
+        if (Double.isNaN(value)) {
+            return sb.append("NaN");
+        }
+        if (Double.compare(value, 0.0) < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        if (Double.isInfinite(value)) {
+            return sb.append("Infinity");
+        }
+        final int prec = precision <= 0 ? 1 : precision;
+        if (value == 0.0) {
+            sb.append('0');
+            if (prec > 1) {
+                sb.append('.');
+                appendZeros(sb, prec - 1);
+            }
+            return sb;
+        }
+
+        // The shortest decimal digits of the value, which is 0.d1d2d3... * 10^decExp
+        final String str = Double.toString(value);
+        final char[] digits = new char[Math.max(str.length(), prec + 1)];
+        int nDigits = 0;
+        int decExp = 0;
+        boolean seenDot = false;
+        int i = 0;
+        for (; i < str.length(); i++) {
+            final char c = str.charAt(i);
+            if (c == '.') {
+                seenDot = true;
+            } else if (c == 'E') {
+                decExp += Integer.parseInt(str, i + 1, str.length(), 10);
+                break;
+            } else if (nDigits == 0 && c == '0') {
+                if (seenDot) decExp--;
+            } else {
+                digits[nDigits++] = c;
+                if (!seenDot) decExp++;
+            }
+        }
+
+        // Round half up to the precision as the formatter does
+        if (nDigits > prec) {
+            if (digits[prec] >= '5') {
+                int j = prec - 1;
+                while (j >= 0 && digits[j] == '9') {
+                    digits[j--] = '0';
+                }
+                if (j < 0) {
+                    digits[0] = '1';
+                    decExp++;
+                } else {
+                    digits[j]++;
+                }
+            }
+            nDigits = prec;
+        }
+        while (nDigits < prec) {
+            digits[nDigits++] = '0';
+        }
+
+        final int exp = decExp - 1;
+        if (exp < -4 || exp >= prec) {
+            sb.append(digits[0]);
+            if (prec > 1) {
+                sb.append('.').append(digits, 1, prec - 1);
+            }
+            sb.append('e').append(exp < 0 ? '-' : '+');
+            final int absExp = Math.abs(exp);
+            if (absExp < 10) sb.append('0');
+            sb.append(absExp);
+        } else if (exp >= 0) {
+            sb.append(digits, 0, exp + 1);
+            if (prec > exp + 1) {
+                sb.append('.').append(digits, exp + 1, prec - exp - 1);
+            }
+        } else {
+            sb.append("0.");
+            appendZeros(sb, -exp - 1);
+            sb.append(digits, 0, prec);
+        }
+        return sb;
+    }
+
+    private static void appendZeros(StringBuilder sb, int count) {
+        for (int i = 0; i < count; i++) {
+            sb.append('0');
+        }
+    }
+
 }
\ No newline at end of file
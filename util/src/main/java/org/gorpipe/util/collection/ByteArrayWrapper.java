@@ -23,6 +23,8 @@
 package org.gorpipe.util.collection;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 public class ByteArrayWrapper extends ByteArrayOutputStream {
 
@@ -46,4 +48,24 @@ public class ByteArrayWrapper extends ByteArrayOutputStream {
     public void setPos(int n) {
         this.count = n;
     }
+
+    /**
+     * Append the characters from start to end. ASCII characters are copied straight into the buffer, the characters
+     * from the first non-ASCII one are encoded with the given charset.
+     */
+    public void writeChars(CharSequence cs, int start, int end, Charset charset) {
+        int len = end - start;
+        if (count + len > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(2 * buf.length, count + len));
+        }
+        for (int i = start; i < end; i++) {
+            char c = cs.charAt(i);
+            if (c >= 0x80) {
+                byte[] bytes = cs.subSequence(i, end).toString().getBytes(charset);
+                write(bytes, 0, bytes.length);
+                return;
+            }
+            buf[count++] = (byte) c;
+        }
+    }
 }
\ No newline at end of file
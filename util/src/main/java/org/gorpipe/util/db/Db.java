@@ -94,6 +94,7 @@ public class Db {
             ds.setIdleTimeout(parseInt(System.getProperty("gor.hikari.idletimeout", "10000")));
             ds.setLeakDetectionThreshold(parseInt(System.getProperty("gor.hikari.leakdetectionthreashold", "30000")));
             ds.setAutoCommit(false);
+            setStatementCache(url, parseInt(System.getProperty("gor.hikari.statementcachesize", "0")));
 
             // The rest of the Hikari config has sane defaults but here are the options that can be adjusted:
             // https://github.com/brettwooldridge/HikariCP#frequently-used
@@ -110,6 +111,20 @@ public class Db {
             log.debug("Created Hikari Pool: " + ds.getPoolName() + " url:" + url + " u:" + user);
         }
 
+        /**
+         * Let the driver cache prepared statements per pooled connection, so the queries repeated by iterators
+         * on the same tables are not parsed again on every connection checkout.
+         */
+        private void setStatementCache(String url, int size) {
+            if (size <= 0) return;
+            if (url.startsWith("jdbc:postgresql:")) {
+                ds.addDataSourceProperty("preparedStatementCacheQueries", String.valueOf(size));
+                ds.addDataSourceProperty("prepareThreshold", "1");
+            } else if (url.startsWith("jdbc:oracle:")) {
+                ds.addDataSourceProperty("oracle.jdbc.implicitStatementCacheSize", String.valueOf(size));
+            }
+        }
+
         /**
          * Get a Connection from this pool.
          * TODO:
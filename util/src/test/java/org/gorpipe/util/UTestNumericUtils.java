@@ -3,6 +3,9 @@ package org.gorpipe.util;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Locale;
+import java.util.Random;
+
 public class UTestNumericUtils {
     /**
      * Test if a String is an Integer
@@ -35,4 +38,27 @@ public class UTestNumericUtils {
         Assert.assertFalse(NumericUtils.isStringLong("9223372036854775808"));
         Assert.assertFalse(NumericUtils.isStringLong("5.0"));
     }
+
+    /**
+     * Test that doubles are formatted as String.format does with the %g conversion
+     */
+    @Test
+    public void testAppendGeneralFormat() {
+        final double[] values = {0.0, -0.0, 1.0, -1.0, 0.5, 100.0, 99999.5, 999995.0, 9.99995, 1.23455, 0.0001,
+                0.00009999995, 1.0E-5, 123456.0, -0.020582, 1.5046, 1e300, -1e-300, Double.MIN_VALUE, Double.MAX_VALUE,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int precision : new int[]{0, 1, 5, 10}) {
+            for (double value : values) {
+                Assert.assertEquals(String.format(Locale.ROOT, "%." + precision + "g", value),
+                        NumericUtils.appendGeneralFormat(new StringBuilder(), value, precision).toString());
+            }
+        }
+
+        final Random random = new Random(17);
+        for (int i = 0; i < 10000; i++) {
+            final double value = random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10);
+            Assert.assertEquals(String.format(Locale.ROOT, "%.5g", value),
+                    NumericUtils.appendGeneralFormat(new StringBuilder(), value, 5).toString());
+        }
+    }
 }
\ No newline at end of file